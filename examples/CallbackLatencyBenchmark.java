@@ -0,0 +1,212 @@
+/* CallbackLatencyBenchmark.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+import java.io.ByteArrayOutputStream;
+import com.wolfssl.*;
+
+/**
+ * Measures the latency of wolfSSL_write() calls that invoke a Java I/O send
+ * callback.
+ *
+ * A client and server WolfSSLSession complete a TLS 1.2 handshake over
+ * in-memory queues. The client then writes a fixed number of records, with
+ * its send callback discarding the encrypted data, so the time per record
+ * is the cost of encryption plus the native to Java callback transition,
+ * including the JNIEnv lookup done by each callback.
+ *
+ * Usage: CallbackLatencyBenchmark [-n records] [-s recordSize]
+ */
+public class CallbackLatencyBenchmark {
+
+    private static final String serverCert = "../certs/server-cert.pem";
+    private static final String serverKey  = "../certs/server-key.pem";
+
+    /* in-memory queue used as the transport between client and server */
+    static class MemQueue {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int readIdx = 0;
+        boolean discard = false;
+
+        synchronized void put(byte[] buf, int sz) {
+            if (!discard) {
+                data.write(buf, 0, sz);
+            }
+        }
+
+        synchronized int get(byte[] buf, int sz) {
+            byte[] all = data.toByteArray();
+            int avail = all.length - readIdx;
+
+            if (avail <= 0) {
+                return WolfSSL.WOLFSSL_CBIO_ERR_WANT_READ;
+            }
+            if (sz > avail) {
+                sz = avail;
+            }
+            System.arraycopy(all, readIdx, buf, 0, sz);
+            readIdx += sz;
+            if (readIdx == all.length) {
+                data.reset();
+                readIdx = 0;
+            }
+
+            return sz;
+        }
+    }
+
+    static class MemRecvCallback implements WolfSSLIORecvCallback {
+        public int receiveCallback(WolfSSLSession ssl, byte[] buf, int sz,
+                Object ctx) {
+            return ((MemQueue)ctx).get(buf, sz);
+        }
+    }
+
+    static class MemSendCallback implements WolfSSLIOSendCallback {
+        public int sendCallback(WolfSSLSession ssl, byte[] buf, int sz,
+                Object ctx) {
+            ((MemQueue)ctx).put(buf, sz);
+            return sz;
+        }
+    }
+
+    private static WolfSSLContext createContext(long method)
+        throws WolfSSLException, WolfSSLJNIException {
+
+        WolfSSLContext ctx = new WolfSSLContext(method);
+        ctx.setVerify(WolfSSL.SSL_VERIFY_NONE, null);
+        ctx.setIORecv(new MemRecvCallback());
+        ctx.setIOSend(new MemSendCallback());
+
+        return ctx;
+    }
+
+    private static boolean handshakeStep(WolfSSLSession ssl, boolean client,
+            boolean done) throws Exception {
+
+        int ret, err;
+
+        if (done) {
+            return true;
+        }
+
+        ret = client ? ssl.connect() : ssl.accept();
+        if (ret == WolfSSL.SSL_SUCCESS) {
+            return true;
+        }
+
+        err = ssl.getError(ret);
+        if (err != WolfSSL.SSL_ERROR_WANT_READ &&
+            err != WolfSSL.SSL_ERROR_WANT_WRITE) {
+            throw new Exception((client ? "connect" : "accept") +
+                " failed, err = " + err);
+        }
+
+        return false;
+    }
+
+    private static void printResult(String label, int records, long elapsed) {
+        System.out.println(label + ": " +
+            (elapsed / 1000.0 / records) + " usec/record");
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int records = 100000;
+        int recordSize = 64;
+        int i, ret;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                records = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-s") && i + 1 < args.length) {
+                recordSize = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: CallbackLatencyBenchmark " +
+                    "[-n records] [-s recordSize]");
+                return;
+            }
+        }
+
+        WolfSSL.loadLibrary();
+        WolfSSL sslLib = new WolfSSL();
+
+        WolfSSLContext srvCtx = createContext(WolfSSL.TLSv1_2_ServerMethod());
+        WolfSSLContext cliCtx = createContext(WolfSSL.TLSv1_2_ClientMethod());
+
+        if (srvCtx.useCertificateFile(serverCert, WolfSSL.SSL_FILETYPE_PEM)
+                != WolfSSL.SSL_SUCCESS ||
+            srvCtx.usePrivateKeyFile(serverKey, WolfSSL.SSL_FILETYPE_PEM)
+                != WolfSSL.SSL_SUCCESS) {
+            System.out.println("Failed to load server certificate or key");
+            return;
+        }
+
+        MemQueue cToS = new MemQueue();
+        MemQueue sToC = new MemQueue();
+
+        WolfSSLSession server = new WolfSSLSession(srvCtx);
+        WolfSSLSession client = new WolfSSLSession(cliCtx);
+        server.setIOReadCtx(cToS);
+        server.setIOWriteCtx(sToC);
+        client.setIOReadCtx(sToC);
+        client.setIOWriteCtx(cToS);
+
+        boolean cliDone = false;
+        boolean srvDone = false;
+        for (i = 0; i < 100 && !(cliDone && srvDone); i++) {
+            cliDone = handshakeStep(client, true, cliDone);
+            srvDone = handshakeStep(server, false, srvDone);
+        }
+        if (!(cliDone && srvDone)) {
+            System.out.println("Handshake did not complete");
+            return;
+        }
+
+        /* client records are dropped by its send callback from here on */
+        cToS.discard = true;
+        byte[] data = new byte[recordSize];
+
+        System.out.println("records     : " + records);
+        System.out.println("record size : " + recordSize);
+
+        /* warm up, then measure */
+        for (int pass = 0; pass < 2; pass++) {
+
+            long start = System.nanoTime();
+            for (i = 0; i < records; i++) {
+                ret = client.write(data, recordSize);
+                if (ret != recordSize) {
+                    throw new Exception("write failed: " + ret);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            if (pass == 1) {
+                printResult("send callback", records, elapsed);
+            }
+        }
+
+        client.freeSSL();
+        server.freeSSL();
+        cliCtx.free();
+        srvCtx.free();
+    }
+}
@@ -0,0 +1,5 @@
+#!/bin/bash
+
+cd ./examples/build
+export LD_LIBRARY_PATH=$LD_LIBRARY_PATH:../../lib/:/usr/local/lib
+java -classpath ../../lib/wolfssl.jar:./ -Dsun.boot.library.path=../../lib/ CallbackLatencyBenchmark $@
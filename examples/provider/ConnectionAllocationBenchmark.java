@@ -0,0 +1,172 @@
+/* ConnectionAllocationBenchmark.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.Security;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.wolfssl.provider.jsse.WolfSSLProvider;
+
+/**
+ * Measures Java heap bytes allocated per short-lived connection made with
+ * wolfJSSE SSLEngine objects connected in memory.
+ *
+ * Each connection creates a client and a server SSLEngine, completes a
+ * handshake and closes both engines. Connections after the first resume
+ * the client's cached session. Bytes allocated by the current thread are
+ * sampled with com.sun.management.ThreadMXBean before and after the loop,
+ * so GC activity does not skew the result. Run this on different revisions
+ * of wolfJSSE to compare per-connection allocation cost.
+ *
+ * Usage: ConnectionAllocationBenchmark [-n connections]
+ */
+public class ConnectionAllocationBenchmark {
+
+    private static final String serverJKS = "./examples/provider/server.jks";
+    private static final String clientJKS = "./examples/provider/client.jks";
+    private static final char[] jksPass = "wolfSSL test".toCharArray();
+
+    private static SSLContext createContext(String keyStore) throws Exception {
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(new FileInputStream(keyStore), jksPass);
+
+        KeyManagerFactory km = KeyManagerFactory.getInstance("SunX509");
+        km.init(ks, jksPass);
+
+        TrustManagerFactory tm = TrustManagerFactory.getInstance("SunX509");
+        tm.init(ks);
+
+        SSLContext ctx = SSLContext.getInstance("TLS", "wolfJSSE");
+        ctx.init(km.getKeyManagers(), tm.getTrustManagers(), null);
+
+        return ctx;
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server,
+            ByteBuffer cToS, ByteBuffer sToC, ByteBuffer app)
+        throws Exception {
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        int i;
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (i = 0; i < 100; i++) {
+            client.wrap(empty, cToS);
+            server.wrap(empty, sToC);
+
+            cToS.flip();
+            sToC.flip();
+            app.clear();
+            client.unwrap(sToC, app);
+            app.clear();
+            server.unwrap(cToS, app);
+            cToS.compact();
+            sToC.compact();
+
+            if (client.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                server.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                cToS.position() == 0 && sToC.position() == 0 && i > 0) {
+                return;
+            }
+        }
+
+        throw new Exception("Handshake did not complete");
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int connections = 100000;
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                connections = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: ConnectionAllocationBenchmark " +
+                    "[-n connections]");
+                return;
+            }
+        }
+
+        Security.insertProviderAt(new WolfSSLProvider(), 1);
+
+        SSLContext serverCtx = createContext(serverJKS);
+        SSLContext clientCtx = createContext(clientJKS);
+
+        /* engine buffers are reused, only per-connection objects count */
+        SSLEngine probe = clientCtx.createSSLEngine();
+        int netSz = probe.getSession().getPacketBufferSize();
+        int appSz = probe.getSession().getApplicationBufferSize();
+        ByteBuffer cToS = ByteBuffer.allocate(netSz);
+        ByteBuffer sToC = ByteBuffer.allocate(netSz);
+        ByteBuffer app = ByteBuffer.allocate(appSz);
+
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        /* warm up, then measure */
+        for (int pass = 0; pass < 2; pass++) {
+            int n = (pass == 0) ? Math.min(1000, connections) : connections;
+            long startBytes = mx.getThreadAllocatedBytes(tid);
+            long startTime = System.nanoTime();
+
+            for (i = 0; i < n; i++) {
+                SSLEngine server = serverCtx.createSSLEngine();
+                SSLEngine client = clientCtx.createSSLEngine(
+                        "wolfSSL allocation benchmark", 11111);
+                server.setUseClientMode(false);
+                server.setNeedClientAuth(false);
+                client.setUseClientMode(true);
+
+                cToS.clear();
+                sToC.clear();
+                handshake(client, server, cToS, sToC, app);
+
+                client.closeOutbound();
+                server.closeOutbound();
+            }
+
+            long allocated = mx.getThreadAllocatedBytes(tid) - startBytes;
+            long elapsed = System.nanoTime() - startTime;
+
+            if (pass == 1) {
+                System.out.println("connections      : " + n);
+                System.out.println("bytes/connection : " + (allocated / n));
+                System.out.println("usec/connection  : " +
+                                   (elapsed / 1000.0 / n));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/* EngineAllocationBenchmark.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.Security;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.wolfssl.provider.jsse.WolfSSLProvider;
+
+/**
+ * Measures Java heap bytes allocated per application record passed through
+ * a pair of wolfJSSE SSLEngine objects connected in memory.
+ *
+ * After completing a handshake, the client wraps and the server unwraps
+ * a fixed number of records. Bytes allocated by the current thread are
+ * sampled with com.sun.management.ThreadMXBean before and after the loop,
+ * so GC activity does not skew the result. Run this on different revisions
+ * of wolfJSSE to compare the allocation cost of the engine data path.
+ *
+ * Usage: EngineAllocationBenchmark [-n records] [-s recordSize] [-direct]
+ */
+public class EngineAllocationBenchmark {
+
+    private static final String serverJKS = "./examples/provider/server.jks";
+    private static final String clientJKS = "./examples/provider/client.jks";
+    private static final char[] jksPass = "wolfSSL test".toCharArray();
+
+    private static SSLContext createContext(String keyStore) throws Exception {
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        ks.load(new FileInputStream(keyStore), jksPass);
+
+        KeyManagerFactory km = KeyManagerFactory.getInstance("SunX509");
+        km.init(ks, jksPass);
+
+        TrustManagerFactory tm = TrustManagerFactory.getInstance("SunX509");
+        tm.init(ks);
+
+        SSLContext ctx = SSLContext.getInstance("TLS", "wolfJSSE");
+        ctx.init(km.getKeyManagers(), tm.getTrustManagers(), null);
+
+        return ctx;
+    }
+
+    private static ByteBuffer alloc(int sz, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(sz);
+        }
+        return ByteBuffer.allocate(sz);
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server,
+            ByteBuffer cToS, ByteBuffer sToC, ByteBuffer app)
+        throws Exception {
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        int i;
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (i = 0; i < 100; i++) {
+            client.wrap(empty, cToS);
+            server.wrap(empty, sToC);
+
+            cToS.flip();
+            sToC.flip();
+            app.clear();
+            client.unwrap(sToC, app);
+            app.clear();
+            server.unwrap(cToS, app);
+            cToS.compact();
+            sToC.compact();
+
+            if (client.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                server.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                cToS.position() == 0 && sToC.position() == 0 && i > 0) {
+                return;
+            }
+        }
+
+        throw new Exception("Handshake did not complete");
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int records = 10000;
+        int recordSize = 1024;
+        boolean direct = false;
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                records = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-s") && i + 1 < args.length) {
+                recordSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-direct")) {
+                direct = true;
+            } else {
+                System.out.println("Usage: EngineAllocationBenchmark " +
+                    "[-n records] [-s recordSize] [-direct]");
+                return;
+            }
+        }
+
+        Security.insertProviderAt(new WolfSSLProvider(), 1);
+
+        SSLEngine server = createContext(serverJKS).createSSLEngine();
+        SSLEngine client = createContext(clientJKS).createSSLEngine(
+                "wolfSSL engine benchmark", 11111);
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(false);
+        client.setUseClientMode(true);
+
+        int netSz = client.getSession().getPacketBufferSize();
+        int appSz = client.getSession().getApplicationBufferSize();
+        ByteBuffer cToS = alloc(netSz, direct);
+        ByteBuffer sToC = alloc(netSz, direct);
+        ByteBuffer plain = alloc(recordSize, direct);
+        ByteBuffer app = alloc(Math.max(appSz, recordSize), direct);
+
+        handshake(client, server, cToS, sToC, app);
+
+        com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        /* warm up, then measure */
+        for (int pass = 0; pass < 2; pass++) {
+            long startBytes = mx.getThreadAllocatedBytes(tid);
+            long startTime = System.nanoTime();
+
+            for (i = 0; i < records; i++) {
+                plain.clear();
+                cToS.clear();
+                SSLEngineResult r = client.wrap(plain, cToS);
+                if (r.getStatus() != SSLEngineResult.Status.OK) {
+                    throw new Exception("wrap failed: " + r);
+                }
+
+                cToS.flip();
+                app.clear();
+                r = server.unwrap(cToS, app);
+                if (r.getStatus() != SSLEngineResult.Status.OK) {
+                    throw new Exception("unwrap failed: " + r);
+                }
+            }
+
+            long allocated = mx.getThreadAllocatedBytes(tid) - startBytes;
+            long elapsed = System.nanoTime() - startTime;
+
+            if (pass == 1) {
+                System.out.println("records          : " + records);
+                System.out.println("record size      : " + recordSize);
+                System.out.println("direct buffers   : " + direct);
+                System.out.println("bytes/record     : " +
+                                   (allocated / records));
+                System.out.println("usec/record      : " +
+                                   (elapsed / 1000.0 / records));
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/* TrustManagerBenchmark.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Enumeration;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import com.wolfssl.provider.jsse.WolfSSLProvider;
+
+/**
+ * Measures certificate verification and full handshake rate with the
+ * wolfJSSE X509TrustManager and a large set of trusted CAs.
+ *
+ * Trusted certificates are the CAs of the JDK cacerts file, if found,
+ * plus the wolfSSL example CAs. The server chain is first verified
+ * directly with checkServerTrusted(). Full handshakes are then made
+ * between SSLEngine objects connected in memory, with the client
+ * TrustManager wrapped so wolfJSSE calls checkServerTrusted() on every
+ * handshake instead of verifying natively. Sessions are not resumed.
+ *
+ * Usage: TrustManagerBenchmark [-n iterations] [-cacerts path]
+ */
+public class TrustManagerBenchmark {
+
+    private static final String serverJKS = "./examples/provider/server.jks";
+    private static final String clientJKS = "./examples/provider/client.jks";
+    private static final char[] jksPass = "wolfSSL test".toCharArray();
+
+    /* hides the wolfJSSE TrustManager from the provider, so it is called
+     * through checkServerTrusted() like an application TrustManager */
+    private static class WrappedTrustManager implements X509TrustManager {
+        private final X509TrustManager tm;
+
+        WrappedTrustManager(X509TrustManager tm) {
+            this.tm = tm;
+        }
+
+        public void checkClientTrusted(X509Certificate[] chain, String type)
+            throws CertificateException {
+            tm.checkClientTrusted(chain, type);
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String type)
+            throws CertificateException {
+            tm.checkServerTrusted(chain, type);
+        }
+
+        public X509Certificate[] getAcceptedIssuers() {
+            return tm.getAcceptedIssuers();
+        }
+    }
+
+    private static KeyStore loadKeyStore(String path, char[] pass)
+        throws Exception {
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        FileInputStream in = new FileInputStream(path);
+        try {
+            ks.load(in, pass);
+        } finally {
+            in.close();
+        }
+        return ks;
+    }
+
+    /* copy first certificate of each entry into trust store */
+    private static int addCerts(KeyStore from, KeyStore to, String prefix)
+        throws Exception {
+
+        int count = 0;
+        Enumeration<String> aliases = from.aliases();
+
+        while (aliases.hasMoreElements()) {
+            String name = aliases.nextElement();
+            Certificate cert;
+
+            if (from.isKeyEntry(name)) {
+                Certificate[] chain = from.getCertificateChain(name);
+                cert = (chain != null) ? chain[0] : null;
+            } else {
+                cert = from.getCertificate(name);
+            }
+            if (cert != null) {
+                to.setCertificateEntry(prefix + name, cert);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server,
+            ByteBuffer cToS, ByteBuffer sToC, ByteBuffer app)
+        throws Exception {
+
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        int i;
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (i = 0; i < 100; i++) {
+            client.wrap(empty, cToS);
+            server.wrap(empty, sToC);
+
+            cToS.flip();
+            sToC.flip();
+            app.clear();
+            client.unwrap(sToC, app);
+            app.clear();
+            server.unwrap(cToS, app);
+            cToS.compact();
+            sToC.compact();
+
+            if (client.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                server.getHandshakeStatus() ==
+                    HandshakeStatus.NOT_HANDSHAKING &&
+                cToS.position() == 0 && sToC.position() == 0 && i > 0) {
+                return;
+            }
+        }
+
+        throw new Exception("Handshake did not complete");
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int iterations = 10000;
+        String cacerts = System.getProperty("java.home") +
+            File.separator + "lib" + File.separator + "security" +
+            File.separator + "cacerts";
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-n") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-cacerts") && i + 1 < args.length) {
+                cacerts = args[++i];
+            } else {
+                System.out.println("Usage: TrustManagerBenchmark " +
+                    "[-n iterations] [-cacerts path]");
+                return;
+            }
+        }
+
+        Security.insertProviderAt(new WolfSSLProvider(), 1);
+
+        KeyStore serverKs = loadKeyStore(serverJKS, jksPass);
+        KeyStore trust = KeyStore.getInstance("JKS");
+        trust.load(null, null);
+
+        int trusted = addCerts(loadKeyStore(clientJKS, jksPass), trust, "");
+        if (new File(cacerts).exists()) {
+            trusted += addCerts(loadKeyStore(cacerts,
+                "changeit".toCharArray()), trust, "jdk-");
+        }
+
+        TrustManagerFactory tmf =
+            TrustManagerFactory.getInstance("SunX509", "wolfJSSE");
+        tmf.init(trust);
+        X509TrustManager tm = (X509TrustManager)tmf.getTrustManagers()[0];
+
+        Certificate[] c = serverKs.getCertificateChain("server");
+        X509Certificate[] chain = new X509Certificate[c.length];
+        for (i = 0; i < c.length; i++) {
+            chain[i] = (X509Certificate)c[i];
+        }
+
+        System.out.println("trusted certs    : " + trusted);
+
+        /* direct verification, warm up then measure */
+        for (int pass = 0; pass < 2; pass++) {
+            int n = (pass == 0) ? Math.min(1000, iterations) : iterations;
+            long start = System.nanoTime();
+
+            for (i = 0; i < n; i++) {
+                tm.checkServerTrusted(chain, "RSA");
+            }
+
+            if (pass == 1) {
+                double usec = (System.nanoTime() - start) / 1000.0 / n;
+                System.out.println("usec/verify      : " + usec);
+            }
+        }
+
+        /* full handshakes through checkServerTrusted() */
+        KeyManagerFactory km = KeyManagerFactory.getInstance("SunX509");
+        km.init(serverKs, jksPass);
+        SSLContext serverCtx = SSLContext.getInstance("TLS", "wolfJSSE");
+        serverCtx.init(km.getKeyManagers(), null, null);
+
+        SSLContext clientCtx = SSLContext.getInstance("TLS", "wolfJSSE");
+        clientCtx.init(null,
+            new TrustManager[] { new WrappedTrustManager(tm) }, null);
+
+        SSLEngine probe = clientCtx.createSSLEngine();
+        int netSz = probe.getSession().getPacketBufferSize();
+        int appSz = probe.getSession().getApplicationBufferSize();
+        ByteBuffer cToS = ByteBuffer.allocate(netSz);
+        ByteBuffer sToC = ByteBuffer.allocate(netSz);
+        ByteBuffer app = ByteBuffer.allocate(appSz);
+
+        int handshakes = Math.max(1, iterations / 10);
+        for (int pass = 0; pass < 2; pass++) {
+            int n = (pass == 0) ? Math.min(100, handshakes) : handshakes;
+            long start = System.nanoTime();
+
+            for (i = 0; i < n; i++) {
+                SSLEngine server = serverCtx.createSSLEngine();
+                SSLEngine client = clientCtx.createSSLEngine();
+                server.setUseClientMode(false);
+                server.setNeedClientAuth(false);
+                client.setUseClientMode(true);
+
+                cToS.clear();
+                sToC.clear();
+                handshake(client, server, cToS, sToC, app);
+
+                client.closeOutbound();
+                server.closeOutbound();
+            }
+
+            if (pass == 1) {
+                double sec = (System.nanoTime() - start) / 1e9;
+                System.out.println("handshakes       : " + n);
+                System.out.println("handshakes/sec   : " + (n / sec));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/* X509ConversionBenchmark.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+import com.wolfssl.WolfSSL;
+import com.wolfssl.WolfSSLCertificate;
+import com.wolfssl.provider.jsse.WolfSSLProvider;
+
+/**
+ * Measures the cost of converting a peer certificate chain for an
+ * application X509TrustManager.
+ *
+ * Two conversions are compared for the key entry chain of a KeyStore:
+ *
+ * legacy: each DER certificate is parsed by native wolfSSL into a
+ *         WolfSSLCertificate, converted with getX509Certificate(), and the
+ *         authType is matched from the signature type string.
+ * single: each DER certificate is parsed once by a CertificateFactory and
+ *         the authType is taken from the cipher suite name.
+ *
+ * The examples/provider/X509ConversionBenchmark.sh script generates
+ * RSA-4096 and ECDSA P-256 chains with keytool and runs both.
+ *
+ * Usage: X509ConversionBenchmark -ks keystore [-pass password]
+ *        [-alias alias] [-n iterations]
+ */
+public class X509ConversionBenchmark {
+
+    private static final String suite =
+        "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256";
+
+    private static int legacy(byte[][] der) throws Exception {
+        X509Certificate[] out = new X509Certificate[der.length];
+        String authType = null;
+
+        for (int i = 0; i < der.length; i++) {
+            WolfSSLCertificate cert = new WolfSSLCertificate(der[i]);
+            out[i] = cert.getX509Certificate();
+            if (i == 0) {
+                String sig = cert.getSignatureType();
+                if (sig.contains("RSA")) {
+                    authType = "RSA";
+                } else if (sig.contains("ECDSA")) {
+                    authType = "ECDSA";
+                } else if (sig.contains("DSA")) {
+                    authType = "DSA";
+                }
+            }
+            cert.free();
+        }
+        return out.length + (authType == null ? 0 : 1);
+    }
+
+    private static int single(CertificateFactory cf, byte[][] der)
+        throws Exception {
+
+        X509Certificate[] out = new X509Certificate[der.length];
+        String authType = suite.substring(4, suite.indexOf("_WITH_"));
+
+        for (int i = 0; i < der.length; i++) {
+            out[i] = (X509Certificate)cf.generateCertificate(
+                new ByteArrayInputStream(der[i]));
+        }
+        return out.length + (authType == null ? 0 : 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        String ksPath = null;
+        char[] pass = "wolfSSL test".toCharArray();
+        String alias = null;
+        int iterations = 10000;
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-ks") && i + 1 < args.length) {
+                ksPath = args[++i];
+            } else if (args[i].equals("-pass") && i + 1 < args.length) {
+                pass = args[++i].toCharArray();
+            } else if (args[i].equals("-alias") && i + 1 < args.length) {
+                alias = args[++i];
+            } else if (args[i].equals("-n") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else {
+                ksPath = null;
+                break;
+            }
+        }
+        if (ksPath == null) {
+            System.out.println("Usage: X509ConversionBenchmark -ks keystore " +
+                "[-pass password] [-alias alias] [-n iterations]");
+            return;
+        }
+
+        Security.insertProviderAt(new WolfSSLProvider(), 1);
+        WolfSSL.loadLibrary();
+
+        KeyStore ks = KeyStore.getInstance("JKS");
+        FileInputStream in = new FileInputStream(ksPath);
+        try {
+            ks.load(in, pass);
+        } finally {
+            in.close();
+        }
+
+        if (alias == null) {
+            alias = ks.aliases().nextElement();
+        }
+        Certificate[] chain = ks.getCertificateChain(alias);
+        if (chain == null) {
+            System.out.println("No key entry chain for alias: " + alias);
+            return;
+        }
+
+        byte[][] der = new byte[chain.length][];
+        for (i = 0; i < chain.length; i++) {
+            der[i] = chain[i].getEncoded();
+        }
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        X509Certificate leaf = (X509Certificate)chain[0];
+
+        System.out.println("keystore         : " + ksPath);
+        System.out.println("chain length     : " + der.length);
+        System.out.println("leaf key         : " +
+            leaf.getPublicKey().getAlgorithm());
+
+        /* warm up then measure, legacy and single pass alternating */
+        for (int round = 0; round < 2; round++) {
+            int n = (round == 0) ? Math.min(1000, iterations) : iterations;
+            long start;
+            double legacyUsec, singleUsec;
+            int sink = 0;
+
+            start = System.nanoTime();
+            for (i = 0; i < n; i++) {
+                sink += legacy(der);
+            }
+            legacyUsec = (System.nanoTime() - start) / 1000.0 / n;
+
+            start = System.nanoTime();
+            for (i = 0; i < n; i++) {
+                sink += single(cf, der);
+            }
+            singleUsec = (System.nanoTime() - start) / 1000.0 / n;
+
+            if (round == 1 && sink > 0) {
+                System.out.println("legacy usec/chain: " + legacyUsec);
+                System.out.println("single usec/chain: " + singleUsec);
+            }
+        }
+    }
+}
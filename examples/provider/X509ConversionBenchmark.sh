@@ -0,0 +1,39 @@
+#!/bin/bash
+
+# Generates RSA-4096 and ECDSA P-256 CA and server chains with keytool,
+# then runs X509ConversionBenchmark on each. Extra arguments are passed
+# to the benchmark, for example: -n 20000
+
+export LD_LIBRARY_PATH=$LD_LIBRARY_PATH:./lib/:/usr/local/lib
+
+TMP=$(mktemp -d)
+trap "rm -rf $TMP" EXIT
+PASS="wolfSSL test"
+
+gen_chain() {
+    # $1 keystore, $2 keytool -keyalg, $3 -keysize, $4 -sigalg
+    keytool -genkeypair -keystore $TMP/ca.jks -storepass "$PASS" \
+        -alias ca -keyalg $2 -keysize $3 -sigalg $4 -ext bc:c \
+        -dname "CN=Benchmark CA $2" -validity 30 || exit 1
+    keytool -genkeypair -keystore $1 -storepass "$PASS" \
+        -alias server -keyalg $2 -keysize $3 -sigalg $4 \
+        -dname "CN=localhost" -validity 30 || exit 1
+    keytool -certreq -keystore $1 -storepass "$PASS" -alias server | \
+        keytool -gencert -keystore $TMP/ca.jks -storepass "$PASS" \
+        -alias ca -sigalg $4 -validity 30 -rfc > $TMP/server.pem || exit 1
+    keytool -exportcert -keystore $TMP/ca.jks -storepass "$PASS" \
+        -alias ca -rfc > $TMP/ca.pem || exit 1
+    keytool -importcert -noprompt -keystore $1 -storepass "$PASS" \
+        -alias ca -file $TMP/ca.pem || exit 1
+    keytool -importcert -keystore $1 -storepass "$PASS" \
+        -alias server -file $TMP/server.pem || exit 1
+    rm -f $TMP/ca.jks
+}
+
+gen_chain $TMP/rsa4096.jks RSA 4096 SHA256withRSA
+gen_chain $TMP/ecdsa.jks EC 256 SHA256withECDSA
+
+for ks in $TMP/rsa4096.jks $TMP/ecdsa.jks; do
+    java -classpath ./lib/wolfssl.jar:./lib/wolfssl-jsse.jar:./examples/build -Dsun.boot.library.path=./lib/ X509ConversionBenchmark -ks $ks -pass "$PASS" -alias server $@
+    echo
+done
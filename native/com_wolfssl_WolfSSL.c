@@ -20,6 +20,9 @@
  */
 
 #include <stdio.h>
+#ifndef _WIN32
+    #include <pthread.h>
+#endif
 #include <wolfssl/options.h>
 #include <wolfssl/ssl.h>
 #include <wolfssl/error-ssl.h>
@@ -39,13 +42,322 @@ static jobject g_loggingCbIfaceObj;
 /* custom native fn prototypes */
 void NativeLoggingCallback(const int logLevel, const char *const logMessage);
 
+/* cached class, method and field IDs, see com_wolfssl_globals.h */
+jclass    g_jniExcClass;
+jclass    g_sslExcClass;
+jmethodID g_sessGetCtxMethodId;
+jmethodID g_sessIORecvMethodId;
+jmethodID g_sessIOSendMethodId;
+jfieldID  g_sessIOBufReuseFid;
+jfieldID  g_sessIORecvBufFid;
+jfieldID  g_sessIOSendBufFid;
+jmethodID g_ctxIORecvMethodId;
+jmethodID g_ctxIOSendMethodId;
+jmethodID g_ctxGenCookieMethodId;
+jmethodID g_ctxTicketEncMethodId;
+jmethodID g_ctxSessionNewMethodId;
+jmethodID g_ctxSessionGetMethodId;
+jmethodID g_ctxMacEncryptMethodId;
+jmethodID g_ctxDecryptVerifyMethodId;
+jmethodID g_ctxEccSignMethodId;
+jmethodID g_ctxEccVerifyMethodId;
+jmethodID g_ctxEccSharedSecretMethodId;
+jmethodID g_ctxRsaSignMethodId;
+jmethodID g_ctxRsaVerifyMethodId;
+jmethodID g_ctxRsaEncMethodId;
+jmethodID g_ctxRsaDecMethodId;
+jclass    g_ctxClass;
+jmethodID g_ctxOCSPIOMethodId;
+jmethodID g_verifyCbMethodId;
+jmethodID g_crlCbMethodId;
+
+/* initial size of per-session callback scratch arrays, large enough to
+ * hold one max size TLS record so most sessions never reallocate */
+#define SCRATCH_ARRAY_MIN_SZ (16384 + 2048 + 5)
+
+/* get global class reference, returns NULL on error */
+static jclass GetGlobalClassRef(JNIEnv* jenv, const char* name)
+{
+    jclass local;
+    jclass global;
+
+    local = (*jenv)->FindClass(jenv, name);
+    if (local == NULL) {
+        return NULL;
+    }
+
+    global = (jclass)(*jenv)->NewGlobalRef(jenv, local);
+    (*jenv)->DeleteLocalRef(jenv, local);
+
+    return global;
+}
+
+/* resolve class, method and field IDs used by native callbacks.
+ * return 0 on success, negative on error */
+static int CacheJNIIds(JNIEnv* jenv)
+{
+    jclass sessClass;
+    jclass ctxClass;
+    jclass cbClass;
+    const char* ioSig = "(Lcom/wolfssl/WolfSSLSession;[BI)I";
+
+    g_jniExcClass = GetGlobalClassRef(jenv, "com/wolfssl/WolfSSLJNIException");
+    g_sslExcClass = GetGlobalClassRef(jenv, "com/wolfssl/WolfSSLException");
+    if (g_jniExcClass == NULL || g_sslExcClass == NULL) {
+        return -1;
+    }
+
+    sessClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLSession");
+    if (sessClass == NULL) {
+        return -1;
+    }
+    g_sessGetCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
+            "getAssociatedContextPtr", "()Lcom/wolfssl/WolfSSLContext;");
+    g_sessIORecvMethodId = (*jenv)->GetMethodID(jenv, sessClass,
+            "internalIOSSLRecvCallback", ioSig);
+    g_sessIOSendMethodId = (*jenv)->GetMethodID(jenv, sessClass,
+            "internalIOSSLSendCallback", ioSig);
+    g_sessIOBufReuseFid = (*jenv)->GetFieldID(jenv, sessClass,
+            "ioBufferReuse", "Z");
+    g_sessIORecvBufFid = (*jenv)->GetFieldID(jenv, sessClass,
+            "ioRecvBuf", "[B");
+    g_sessIOSendBufFid = (*jenv)->GetFieldID(jenv, sessClass,
+            "ioSendBuf", "[B");
+    (*jenv)->DeleteLocalRef(jenv, sessClass);
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        return -1;
+    }
+
+    ctxClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLContext");
+    if (ctxClass == NULL) {
+        return -1;
+    }
+    g_ctxIORecvMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalIORecvCallback", ioSig);
+    g_ctxIOSendMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalIOSendCallback", ioSig);
+    g_ctxGenCookieMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalGenCookieCallback", ioSig);
+    g_ctxTicketEncMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalSessionTicketCallback",
+            "(Lcom/wolfssl/WolfSSLSession;[B[B[BI[BI[I)I");
+    g_ctxSessionNewMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalSessionNewCallback",
+            "(Lcom/wolfssl/WolfSSLSession;[B[B)I");
+    g_ctxSessionGetMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalSessionGetCallback",
+            "(Lcom/wolfssl/WolfSSLSession;[B)[B");
+    g_ctxMacEncryptMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalMacEncryptCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "[BJIILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I");
+    g_ctxDecryptVerifyMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalDecryptVerifyCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;[BJII[J)I");
+    g_ctxEccSignMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalEccSignCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;[JLjava/nio/ByteBuffer;J)I");
+    g_ctxEccVerifyMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalEccVerifyCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J[I)I");
+    g_ctxEccSharedSecretMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalEccSharedSecretCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Lcom/wolfssl/wolfcrypt/EccKey;"
+            "Ljava/nio/ByteBuffer;[JLjava/nio/ByteBuffer;[JI)I");
+    g_ctxRsaSignMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalRsaSignCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;J)I");
+    g_ctxRsaVerifyMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalRsaVerifyCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J)I");
+    g_ctxRsaEncMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalRsaEncCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;J)I");
+    g_ctxRsaDecMethodId = (*jenv)->GetMethodID(jenv, ctxClass,
+            "internalRsaDecCallback",
+            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
+            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J)I");
+    (*jenv)->DeleteLocalRef(jenv, ctxClass);
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        return -1;
+    }
+
+    /* OCSP I/O callback has no WOLFSSL to find the context object from,
+     * it calls a static method with the WOLFSSL_CTX pointer */
+    g_ctxClass = GetGlobalClassRef(jenv, "com/wolfssl/WolfSSLContext");
+    if (g_ctxClass == NULL) {
+        return -1;
+    }
+    g_ctxOCSPIOMethodId = (*jenv)->GetStaticMethodID(jenv, g_ctxClass,
+            "internalOCSPIOCallback", "(JLjava/lang/String;[B)[B");
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        return -1;
+    }
+
+    /* interface method IDs are valid for any implementing object */
+    cbClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLVerifyCallback");
+    if (cbClass == NULL) {
+        return -1;
+    }
+    g_verifyCbMethodId = (*jenv)->GetMethodID(jenv, cbClass,
+            "verifyCallback", "(IJ)I");
+    (*jenv)->DeleteLocalRef(jenv, cbClass);
+
+    cbClass = (*jenv)->FindClass(jenv,
+            "com/wolfssl/WolfSSLMissingCRLCallback");
+    if (cbClass == NULL) {
+        return -1;
+    }
+    g_crlCbMethodId = (*jenv)->GetMethodID(jenv, cbClass,
+            "missingCRLCallback", "(Ljava/lang/String;)V");
+    (*jenv)->DeleteLocalRef(jenv, cbClass);
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        return -1;
+    }
+
+    return 0;
+}
+
+jbyteArray GetSessionScratchArray(JNIEnv* jenv, jobject sessObj,
+                                  jfieldID fid, int sz)
+{
+    jbyteArray arr;
+
+    if (jenv == NULL || sessObj == NULL || fid == NULL || sz < 0) {
+        return NULL;
+    }
+
+    /* reuse not enabled, callbacks get a new array of exact size */
+    if ((*jenv)->GetBooleanField(jenv, sessObj, g_sessIOBufReuseFid) ==
+            JNI_FALSE) {
+        return (*jenv)->NewByteArray(jenv, sz);
+    }
+
+    arr = (jbyteArray)(*jenv)->GetObjectField(jenv, sessObj, fid);
+    if (arr != NULL) {
+        if ((*jenv)->GetArrayLength(jenv, arr) >= sz) {
+            return arr;
+        }
+        (*jenv)->DeleteLocalRef(jenv, arr);
+    }
+
+    /* allocate new array, kept in WolfSSLSession for later callbacks */
+    arr = (*jenv)->NewByteArray(jenv,
+            (sz > SCRATCH_ARRAY_MIN_SZ) ? sz : SCRATCH_ARRAY_MIN_SZ);
+    if (arr == NULL) {
+        return NULL;
+    }
+    (*jenv)->SetObjectField(jenv, sessObj, fid, arr);
+
+    return arr;
+}
+
+#ifndef _WIN32
+/* thread-local key whose destructor detaches native threads from the JVM */
+static pthread_key_t  g_jniEnvKey;
+static pthread_once_t g_jniEnvKeyOnce = PTHREAD_ONCE_INIT;
+static int            g_jniEnvKeyReady = 0;
+
+/* called by pthreads at native thread exit, arg is JavaVM pointer */
+static void DetachJNIEnvAtThreadExit(void* arg)
+{
+    JavaVM* vm = (JavaVM*)arg;
+
+    if (vm != NULL) {
+        (*vm)->DetachCurrentThread(vm);
+    }
+}
+
+static void CreateJNIEnvKey(void)
+{
+    if (pthread_key_create(&g_jniEnvKey, DetachJNIEnvAtThreadExit) == 0) {
+        g_jniEnvKeyReady = 1;
+    }
+}
+#endif /* !_WIN32 */
+
+jint AttachJNIEnv(JNIEnv** jenv, int* needsDetach)
+{
+    jint ret;
+
+    if (g_vm == NULL || jenv == NULL) {
+        return JNI_ERR;
+    }
+
+    /* attach as daemon, a thread kept attached must not block JVM exit */
+#ifdef __ANDROID__
+    ret = (*g_vm)->AttachCurrentThreadAsDaemon(g_vm, jenv, NULL);
+#else
+    ret = (*g_vm)->AttachCurrentThreadAsDaemon(g_vm, (void**)jenv, NULL);
+#endif
+    if (ret != JNI_OK) {
+        return ret;
+    }
+
+#ifndef _WIN32
+    pthread_once(&g_jniEnvKeyOnce, CreateJNIEnvKey);
+    if (g_jniEnvKeyReady &&
+        pthread_setspecific(g_jniEnvKey, (void*)g_vm) == 0) {
+        if (needsDetach != NULL) {
+            *needsDetach = JNIENV_ATTACHED;
+        }
+        return JNI_OK;
+    }
+#endif
+
+    /* no thread exit hook available, caller detaches when done */
+    if (needsDetach != NULL) {
+        *needsDetach = JNIENV_DETACH;
+    }
+
+    return JNI_OK;
+}
+
+void ReleaseJNIEnv(JNIEnv* jenv, int needsDetach)
+{
+    /* Java thread, pending exception is thrown when native call returns */
+    if (needsDetach == 0 || jenv == NULL) {
+        return;
+    }
+
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        (*jenv)->ExceptionDescribe(jenv);
+        (*jenv)->ExceptionClear(jenv);
+    }
+
+    if (needsDetach == JNIENV_DETACH && g_vm != NULL) {
+        (*g_vm)->DetachCurrentThread(g_vm);
+    }
+}
+
 /* called when native library is loaded */
 jint JNI_OnLoad(JavaVM* vm, void* reserved)
 {
+    JNIEnv* jenv;
     (void)reserved;
 
     /* store JavaVM */
     g_vm = vm;
+
+    if ((*vm)->GetEnv(vm, (void**)&jenv, JNI_VERSION_1_6) != JNI_OK) {
+        return JNI_ERR;
+    }
+
+    /* cache IDs used by native callbacks */
+    if (CacheJNIIds(jenv) != 0) {
+        if ((*jenv)->ExceptionOccurred(jenv)) {
+            (*jenv)->ExceptionDescribe(jenv);
+            (*jenv)->ExceptionClear(jenv);
+        }
+        printf("Failed to cache JNI class, method and field IDs\n");
+        return JNI_ERR;
+    }
+
     return JNI_VERSION_1_6;
 }
 
@@ -595,6 +907,7 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
 {
     JNIEnv*   jenv;
     jint      vmret  = 0;
+    int       needsDetach = 0;
     jclass    excClass;
     jmethodID logMethod;
     jobjectRefType refcheck;
@@ -602,11 +915,7 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
     /* get JNIEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             printf("Failed to attach JNIEnv to thread\n");
         }
@@ -636,12 +945,14 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
 
             (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLLoggingCallback class reference");
+            ReleaseJNIEnv(jenv, needsDetach);
             return;
         }
 
         logMethod = (*jenv)->GetMethodID(jenv, logClass,
                                             "loggingCallback",
                                             "(ILjava/lang/String;)V");
+        (*jenv)->DeleteLocalRef(jenv, logClass);
         if (logMethod == 0) {
             if ((*jenv)->ExceptionOccurred(jenv)) {
                 (*jenv)->ExceptionDescribe(jenv);
@@ -649,6 +960,7 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
             }
             (*jenv)->ThrowNew(jenv, excClass,
                 "Error getting loggingCallback method from JNI");
+            ReleaseJNIEnv(jenv, needsDetach);
             return;
         }
 
@@ -657,6 +969,7 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
 
         (*jenv)->CallVoidMethod(jenv, g_loggingCbIfaceObj, logMethod,
                 logLevel, logMsg);
+        (*jenv)->DeleteLocalRef(jenv, logMsg);
 
         if ((*jenv)->ExceptionOccurred(jenv)) {
             (*jenv)->ExceptionDescribe(jenv);
@@ -664,6 +977,7 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
 
             (*jenv)->ThrowNew(jenv, excClass,
                     "Error calling logging callback from JNI");
+            ReleaseJNIEnv(jenv, needsDetach);
             return;
         }
 
@@ -675,7 +989,11 @@ void NativeLoggingCallback(const int logLevel, const char *const logMessage)
 
         (*jenv)->ThrowNew(jenv, excClass,
                 "Object reference invalid in NativeLoggingCallback");
+        ReleaseJNIEnv(jenv, needsDetach);
     }
+
+    /* threads stay attached, release local refs made in this callback */
+    (*jenv)->DeleteLocalRef(jenv, excClass);
 }
 
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memsaveSessionCache
@@ -746,6 +1064,82 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memrestoreSessionCache
 #endif
 }
 
+/* Returns address of sz bytes at position in direct ByteBuffer, or NULL if
+ * mem is not a direct buffer or too small */
+#ifdef PERSIST_SESSION_CACHE
+static byte* GetDirectBufferRegion(JNIEnv* jenv, jobject mem, jint position,
+    jint sz)
+{
+    byte* buf;
+    jlong cap;
+
+    if (mem == NULL || position < 0 || sz <= 0) {
+        return NULL;
+    }
+
+    buf = (byte*)(*jenv)->GetDirectBufferAddress(jenv, mem);
+    cap = (*jenv)->GetDirectBufferCapacity(jenv, mem);
+    if (buf == NULL || cap < 0 || ((jlong)position + sz) > cap) {
+        return NULL;
+    }
+
+    return buf + position;
+}
+#endif
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memsaveSessionCacheBuffer
+  (JNIEnv* jenv, jclass jcl, jobject mem, jint position, jint sz)
+{
+#ifdef PERSIST_SESSION_CACHE
+    byte* buf;
+
+    (void)jcl;
+
+    if (!jenv)
+        return BAD_FUNC_ARG;
+
+    buf = GetDirectBufferRegion(jenv, mem, position, sz);
+    if (buf == NULL)
+        return BAD_FUNC_ARG;
+
+    /* write directly into buffer, which may be a mapped file */
+    return wolfSSL_memsave_session_cache(buf, sz);
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)mem;
+    (void)position;
+    (void)sz;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memrestoreSessionCacheBuffer
+  (JNIEnv* jenv, jclass jcl, jobject mem, jint position, jint sz)
+{
+#ifdef PERSIST_SESSION_CACHE
+    byte* buf;
+
+    (void)jcl;
+
+    if (!jenv)
+        return BAD_FUNC_ARG;
+
+    buf = GetDirectBufferRegion(jenv, mem, position, sz);
+    if (buf == NULL)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_memrestore_session_cache(buf, sz);
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)mem;
+    (void)position;
+    (void)sz;
+    return NOT_COMPILED_IN;
+#endif
+}
+
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_getSessionCacheMemsize
   (JNIEnv* jenv, jclass jcl)
 {
@@ -908,6 +1302,20 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledOCSP
 #endif
 }
 
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledOCSPStapling
+  (JNIEnv* jenv, jclass jcl)
+{
+    (void)jenv;
+    (void)jcl;
+
+#if defined(HAVE_OCSP) && (defined(HAVE_CERTIFICATE_STATUS_REQUEST) || \
+    defined(HAVE_CERTIFICATE_STATUS_REQUEST_V2))
+    return 1;
+#else
+    return 0;
+#endif
+}
+
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledPSK
   (JNIEnv* jenv, jclass jcl)
 {
@@ -79,12 +79,24 @@ extern "C" {
 #define com_wolfssl_WolfSSL_SSL_ERROR_SSL 85L
 #undef com_wolfssl_WolfSSL_SSL_ERROR_SOCKET_PEER_CLOSED
 #define com_wolfssl_WolfSSL_SSL_ERROR_SOCKET_PEER_CLOSED -397L
+#undef com_wolfssl_WolfSSL_WOLFJNI_IO_EVENT_TIMEOUT
+#define com_wolfssl_WolfSSL_WOLFJNI_IO_EVENT_TIMEOUT -11L
 #undef com_wolfssl_WolfSSL_WOLFSSL_CRL_CHECKALL
 #define com_wolfssl_WolfSSL_WOLFSSL_CRL_CHECKALL 1L
 #undef com_wolfssl_WolfSSL_WOLFSSL_OCSP_URL_OVERRIDE
 #define com_wolfssl_WolfSSL_WOLFSSL_OCSP_URL_OVERRIDE 1L
 #undef com_wolfssl_WolfSSL_WOLFSSL_OCSP_NO_NONCE
 #define com_wolfssl_WolfSSL_WOLFSSL_OCSP_NO_NONCE 2L
+#undef com_wolfssl_WolfSSL_WOLFSSL_CSR_OCSP
+#define com_wolfssl_WolfSSL_WOLFSSL_CSR_OCSP 1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_CSR_OCSP_USE_NONCE
+#define com_wolfssl_WolfSSL_WOLFSSL_CSR_OCSP_USE_NONCE 1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP
+#define com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP 1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP_MULTI
+#define com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP_MULTI 2L
+#undef com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP_USE_NONCE
+#define com_wolfssl_WolfSSL_WOLFSSL_CSR2_OCSP_USE_NONCE 1L
 #undef com_wolfssl_WolfSSL_WOLFSSL_CBIO_ERR_GENERAL
 #define com_wolfssl_WolfSSL_WOLFSSL_CBIO_ERR_GENERAL -1L
 #undef com_wolfssl_WolfSSL_WOLFSSL_CBIO_ERR_WANT_READ
@@ -167,6 +179,26 @@ extern "C" {
 #define com_wolfssl_WolfSSL_NOT_COMPILED_IN -174L
 #undef com_wolfssl_WolfSSL_NO_PASSWORD
 #define com_wolfssl_WolfSSL_NO_PASSWORD -176L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_FATAL
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_FATAL -1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_OK
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_OK 0L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_REJECT
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_REJECT 1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_CREATE
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_RET_CREATE 2L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_NAME_SZ
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_NAME_SZ 16L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_IV_SZ
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_IV_SZ 16L
+#undef com_wolfssl_WolfSSL_WOLFSSL_TICKET_MAC_SZ
+#define com_wolfssl_WolfSSL_WOLFSSL_TICKET_MAC_SZ 32L
+#undef com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_NOT_SENT
+#define com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_NOT_SENT 0L
+#undef com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_REJECTED
+#define com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_REJECTED 1L
+#undef com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_ACCEPTED
+#define com_wolfssl_WolfSSL_WOLFSSL_EARLY_DATA_ACCEPTED 2L
 #undef com_wolfssl_WolfSSL_MD5
 #define com_wolfssl_WolfSSL_MD5 0L
 #undef com_wolfssl_WolfSSL_SHA
@@ -611,6 +643,22 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memrestoreSessionCache
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_getSessionCacheMemsize
   (JNIEnv *, jclass);
 
+/*
+ * Class:     com_wolfssl_WolfSSL
+ * Method:    memsaveSessionCacheBuffer
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memsaveSessionCacheBuffer
+  (JNIEnv *, jclass, jobject, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSL
+ * Method:    memrestoreSessionCacheBuffer
+ * Signature: (Ljava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_memrestoreSessionCacheBuffer
+  (JNIEnv *, jclass, jobject, jint, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSL
  * Method:    getPkcs8TraditionalOffset
@@ -659,6 +707,14 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledCRLMonitor
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledOCSP
   (JNIEnv *, jclass);
 
+/*
+ * Class:     com_wolfssl_WolfSSL
+ * Method:    isEnabledOCSPStapling
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSL_isEnabledOCSPStapling
+  (JNIEnv *, jclass);
+
 /*
  * Class:     com_wolfssl_WolfSSL
  * Method:    isEnabledPSK
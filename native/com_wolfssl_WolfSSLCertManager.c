@@ -116,3 +116,74 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerVerifyBuff
     return (jint)ret;
 }
 
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerEnableCRL
+  (JNIEnv* jenv, jclass jcl, jlong cm, jint options)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_CRL
+    if (cm == 0)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_CertManagerEnableCRL((WOLFSSL_CERT_MANAGER*)(uintptr_t)cm,
+                                        options);
+#else
+    (void)cm;
+    (void)options;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerDisableCRL
+  (JNIEnv* jenv, jclass jcl, jlong cm)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_CRL
+    if (cm == 0)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_CertManagerDisableCRL((WOLFSSL_CERT_MANAGER*)(uintptr_t)cm);
+#else
+    (void)cm;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerLoadCRLBuffer
+  (JNIEnv* jenv, jclass jcl, jlong cm, jbyteArray in, jlong sz, jint type)
+{
+#ifdef HAVE_CRL
+    int ret = 0;
+    word32 buffSz = 0;
+    byte* buff = NULL;
+    (void)jcl;
+
+    if (jenv == NULL || cm == 0 || in == NULL || (sz < 0))
+        return BAD_FUNC_ARG;
+
+    buffSz = (*jenv)->GetArrayLength(jenv, in);
+    if (sz < buffSz)
+        buffSz = (word32)sz;
+
+    buff = (byte*)(*jenv)->GetByteArrayElements(jenv, in, NULL);
+    if (buff == NULL)
+        return MEMORY_E;
+
+    ret = wolfSSL_CertManagerLoadCRLBuffer(
+            (WOLFSSL_CERT_MANAGER*)(uintptr_t)cm, buff, buffSz, type);
+
+    (*jenv)->ReleaseByteArrayElements(jenv, in, (jbyte*)buff, JNI_ABORT);
+
+    return (jint)ret;
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)cm;
+    (void)in;
+    (void)sz;
+    (void)type;
+    return NOT_COMPILED_IN;
+#endif
+}
@@ -47,6 +47,30 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerLoadCABuff
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerVerifyBuffer
   (JNIEnv *, jclass, jlong, jbyteArray, jlong, jint);
 
+/*
+ * Class:     com_wolfssl_WolfSSLCertManager
+ * Method:    CertManagerEnableCRL
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerEnableCRL
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLCertManager
+ * Method:    CertManagerDisableCRL
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerDisableCRL
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLCertManager
+ * Method:    CertManagerLoadCRLBuffer
+ * Signature: (J[BJI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLCertManager_CertManagerLoadCRLBuffer
+  (JNIEnv *, jclass, jlong, jbyteArray, jlong, jint);
+
 #ifdef __cplusplus
 }
 #endif
@@ -41,8 +41,23 @@ static jobject g_crlCtxCbIfaceObj;
 int  NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
 int  NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
 int  NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx);
+#ifdef HAVE_SESSION_TICKET
+int  NativeSessionTicketCb(WOLFSSL* ssl, unsigned char* keyName,
+        unsigned char* iv, unsigned char* mac, int enc, unsigned char* ticket,
+        int inLen, int* outLen, void* ctx);
+#endif
+#ifdef HAVE_EXT_CACHE
+int  NativeSessionNewCb(WOLFSSL* ssl, WOLFSSL_SESSION* session);
+WOLFSSL_SESSION* NativeSessionGetCb(WOLFSSL* ssl, const unsigned char* id,
+        int idLen, int* copy);
+#endif
 int  NativeVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store);
 void NativeCtxMissingCRLCallback(const char* url);
+#ifdef HAVE_OCSP
+int  NativeOCSPIOCb(void* ctx, const char* url, int urlSz,
+        unsigned char* request, int requestSz, unsigned char** response);
+void NativeOCSPRespFreeCb(void* ctx, unsigned char* response);
+#endif
 int  NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
         const unsigned char* macIn, unsigned int macInSz, int macContent,
         int macVerify, unsigned char* encOut, const unsigned char* encIn,
@@ -76,8 +91,8 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
 #if defined(HAVE_PK_CALLBACKS) && defined(HAVE_ECC)
 
 /* get JavaEnv from JavaVM
- * sets needDetach == 1 if DeteachCurrentThread() needs to be called
- * upon caller exit/cleanup
+ * sets needsDetach, which is passed to ReleaseJNIEnv() upon caller
+ * exit/cleanup
  * return 0 on success, negative on error */
 static int GetJNIEnvFromVM(JavaVM* vm, JNIEnv** jenv, int* needsDetach)
 {
@@ -85,15 +100,10 @@ static int GetJNIEnvFromVM(JavaVM* vm, JNIEnv** jenv, int* needsDetach)
 
     ret = (int)((*vm)->GetEnv(vm, (void**)jenv, JNI_VERSION_1_6));
     if (ret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        ret = (*vm)->AttachCurrentThread(vm, jenv, NULL);
-#else
-        ret = (*vm)->AttachCurrentThread(vm, (void**)jenv, NULL);
-#endif
+        ret = AttachJNIEnv(jenv, needsDetach);
         if (ret) {
             return -1;
         }
-        *needsDetach = 1;
     } else if (ret != JNI_OK) {
         return -1;
     }
@@ -121,8 +131,8 @@ static int CheckException(JNIEnv* jenv)
     return ret;
 }
 
-/* throw WolfSSLJNIException with given message, detach current
- * thread from VM if needsDetach is set to 1 */
+/* throw WolfSSLJNIException with given message, then release JNIEnv
+ * with ReleaseJNIEnv() */
 static void throwWolfSSLJNIExceptionWithMsg(JNIEnv* jenv, const char* msg,
                                             int needsDetach)
 {
@@ -135,15 +145,13 @@ static void throwWolfSSLJNIExceptionWithMsg(JNIEnv* jenv, const char* msg,
     if ((*jenv)->ExceptionOccurred(jenv)) {
         (*jenv)->ExceptionDescribe(jenv);
         (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return;
     }
 
     (*jenv)->ThrowNew(jenv, class, msg);
 
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return;
 }
@@ -353,6 +361,7 @@ int NativeVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
 {
     JNIEnv*   jenv;
     jint      vmret  = 0;
+    int       needsDetach = 0;
     jint      retval = -1;
     jclass    excClass;
     jmethodID verifyMethod;
@@ -366,11 +375,7 @@ int NativeVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
     /* get JNIEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -101;    /* failed to attach JNIEnv to thread */
         }
@@ -378,43 +383,15 @@ int NativeVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
         return -102;        /* unable to get JNIEnv from JavaVM */
     }
 
-    /* find exception class */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLException");
-    if( (*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        return -103;
-    }
+    /* cached exception class */
+    excClass = g_sslExcClass;
 
     /* check if our stored object reference is valid */
     refcheck = (*jenv)->GetObjectRefType(jenv, g_verifyCbIfaceObj);
     if (refcheck == 2) {
 
-        /* lookup WolfSSLVerifyCallback class from global object ref */
-        jclass verifyClass = (*jenv)->GetObjectClass(jenv, g_verifyCbIfaceObj);
-        if (!verifyClass) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Can't get native WolfSSLVerifyCallback class reference");
-            return -104;
-        }
-
-        verifyMethod = (*jenv)->GetMethodID(jenv, verifyClass,
-                                            "verifyCallback", "(IJ)I");
-        if (verifyMethod == 0) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting verifyCallback method from JNI");
-            return -105;
-        }
+        /* interface method ID cached in JNI_OnLoad */
+        verifyMethod = g_verifyCbMethodId;
 
         retval = (*jenv)->CallIntMethod(jenv, g_verifyCbIfaceObj,
                 verifyMethod, preverify_ok, (jlong)(uintptr_t)store);
@@ -434,6 +411,7 @@ int NativeVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
 
         (*jenv)->ThrowNew(jenv, excClass,
                 "Object reference invalid in NativeVerifyCallback");
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -590,6 +568,20 @@ JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLContext_getCacheSize
     return wolfSSL_CTX_sess_get_cache_size((WOLFSSL_CTX*)(uintptr_t)ctx);
 }
 
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTimeout
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jlong to)
+{
+    (void)jenv;
+    (void)jcl;
+
+    if (ctx <= 0 || to < 0 || to > (jlong)0xFFFFFFFF) {
+        return BAD_FUNC_ARG;
+    }
+
+    return (jint)wolfSSL_CTX_set_timeout((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                         (unsigned int)to);
+}
+
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setCipherList
   (JNIEnv* jenv, jobject jcl, jlong ctx, jstring list)
 {
@@ -804,12 +796,8 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  recvCbMethodId;        /* internalIORecvCallback ID */
     jbyteArray inData;
 
@@ -821,28 +809,16 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -850,103 +826,32 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID in NativeIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* find WolfSSLContext.getAssociatedContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID in "
-            "NativeIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
     /* get WolfSSLContext(ctx) object from Java WolfSSLSession object */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* get WolfSSLContext class reference from object */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference in "
-            "NativeIORecvCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
     /* call internal I/O recv callback */
-    recvCbMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalIORecvCallback",
-            "(Lcom/wolfssl/WolfSSLSession;[BI)I");
-    if (!recvCbMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalIORecvCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    recvCbMethodId = g_ctxIORecvMethodId;
 
-    /* create jbyteArray to hold received data */
-    inData = (*jenv)->NewByteArray(jenv, sz);
+    /* get reusable per-session jbyteArray to hold received data */
+    inData = GetSessionScratchArray(jenv, (jobject)(*g_cachedSSLObj),
+            g_sessIORecvBufFid, sz);
     if (!inData) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Error getting internalIORecvCallback method from JNI");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
@@ -961,8 +866,15 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ExceptionClear(jenv);
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inData);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    /* scratch array may be larger than buf, don't copy past sz */
+    if (retval > sz) {
+        (*jenv)->DeleteLocalRef(jenv, inData);
+        (*jenv)->DeleteLocalRef(jenv, ctxRef);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
@@ -975,8 +887,7 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, inData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
     }
@@ -984,8 +895,7 @@ int NativeIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     /* delete local refs, detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
     (*jenv)->DeleteLocalRef(jenv, inData);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -1023,12 +933,8 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  sendCbMethodId;        /* internalIOSendCallback ID */
     jbyteArray outData;               /* jbyteArray for data to send */
 
@@ -1040,28 +946,16 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -1069,104 +963,34 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeIOSendCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID in NativeIOSendCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* find WolfSSLContext.getAssociatedContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID in "
-            "NativeIOSendCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
     /* get WolfSSLContext(ctx) object from Java WolfSSLSession object */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeIOSendCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference in "
-            "NativeIOSendCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
     /* call internal I/O recv callback */
-    sendCbMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalIOSendCallback",
-            "(Lcom/wolfssl/WolfSSLSession;[BI)I");
-    if (!sendCbMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalIOSendCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    sendCbMethodId = g_ctxIOSendMethodId;
 
     if (sz >= 0)
     {
-        /* create jbyteArray to hold received data */
-        outData = (*jenv)->NewByteArray(jenv, sz);
+        /* get reusable per-session jbyteArray to hold data to send */
+        outData = GetSessionScratchArray(jenv, (jobject)(*g_cachedSSLObj),
+                g_sessIOSendBufFid, sz);
         if (!outData) {
             (*jenv)->ThrowNew(jenv, excClass,
                     "Error getting internalIOSendCallback method from JNI");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -1176,8 +1000,7 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, outData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -1191,8 +1014,7 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, outData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -1202,8 +1024,7 @@ int NativeIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
 
     /* delete local refs, detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -1248,12 +1069,8 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  cookieCbMethodId;      /* internalGenCookieCallback ID */
     jbyteArray inData;                /* jbyteArray to hold cookie data */
 
@@ -1267,28 +1084,16 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return GEN_COOKIE_E;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return GEN_COOKIE_E;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -1296,96 +1101,23 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeGenCookieCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeGenCookieCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID in "
-            "NativeGenCookieCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
-
-    /* find WolfSSLSession.getAssociatedContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID in "
-            "NativeGenCookieCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return GEN_COOKIE_E;
     }
 
     /* get WolfSSLContext(ctx) object from WolfSSLSession object */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeGenCookieCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference in "
-            "NativeGenCookieCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return GEN_COOKIE_E;
     }
 
     /* call internal gen cookie callback */
-    cookieCbMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalGenCookieCallback",
-            "(Lcom/wolfssl/WolfSSLSession;[BI)I");
-
-   if (!cookieCbMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalGenCookieCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return GEN_COOKIE_E;
-    }
+    cookieCbMethodId = g_ctxGenCookieMethodId;
 
     if (sz >= 0)
     {
@@ -1395,8 +1127,7 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
             (*jenv)->ThrowNew(jenv, excClass,
                     "Error getting internalGenCookieCallback method from JNI");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return GEN_COOKIE_E;
         }
 
@@ -1410,8 +1141,7 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, inData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return GEN_COOKIE_E;
         }
 
@@ -1424,8 +1154,7 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
                 (*jenv)->ExceptionClear(jenv);
                 (*jenv)->DeleteLocalRef(jenv, ctxRef);
                 (*jenv)->DeleteLocalRef(jenv, inData);
-                if (needsDetach)
-                    (*g_vm)->DetachCurrentThread(g_vm);
+                ReleaseJNIEnv(jenv, needsDetach);
                 return GEN_COOKIE_E;
             }
         }
@@ -1436,83 +1165,509 @@ int NativeGenCookieCb(WOLFSSL *ssl, unsigned char *buf, int sz, void *ctx)
 
     /* delete local refs, detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_enableCRL
-  (JNIEnv* jenv, jobject jcl, jlong ctx, jint options)
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTicketEncCb
+  (JNIEnv* jenv, jobject jcl, jlong ctx)
 {
     (void)jenv;
     (void)jcl;
-#ifdef HAVE_CRL
-    if (!ctx)
+#ifdef HAVE_SESSION_TICKET
+    if (ctx <= 0) {
         return BAD_FUNC_ARG;
+    }
 
-    return wolfSSL_CTX_EnableCRL((WOLFSSL_CTX*)(uintptr_t)ctx, options);
+    return wolfSSL_CTX_set_TicketEncCb((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                       NativeSessionTicketCb);
 #else
+    (void)ctx;
     return NOT_COMPILED_IN;
 #endif
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_disableCRL
-  (JNIEnv* jenv, jobject jcl, jlong ctx)
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTicketHint
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jint hint)
 {
     (void)jenv;
     (void)jcl;
-#ifdef HAVE_CRL
-    if (!ctx)
+#ifdef HAVE_SESSION_TICKET
+    if (ctx <= 0) {
         return BAD_FUNC_ARG;
+    }
 
-    return wolfSSL_CTX_DisableCRL((WOLFSSL_CTX*)(uintptr_t)ctx);
+    return wolfSSL_CTX_set_TicketHint((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                      (int)hint);
 #else
+    (void)ctx;
+    (void)hint;
     return NOT_COMPILED_IN;
 #endif
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_loadCRL
-  (JNIEnv* jenv, jobject jcl, jlong ctx, jstring path, jint type, jint monitor)
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setMaxEarlyData
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jint sz)
 {
-#ifdef HAVE_CRL
-    int ret;
-    const char* crlPath;
-
+    (void)jenv;
     (void)jcl;
-
-    if (!jenv || !ctx || !path)
+#ifdef WOLFSSL_EARLY_DATA
+    if (ctx <= 0 || sz < 0) {
         return BAD_FUNC_ARG;
+    }
 
-    crlPath = (*jenv)->GetStringUTFChars(jenv, path, 0);
-
-    ret = wolfSSL_CTX_LoadCRL((WOLFSSL_CTX*)(uintptr_t)ctx, crlPath, type,
-                              monitor);
-
-    (*jenv)->ReleaseStringUTFChars(jenv, path, crlPath);
-
-    return ret;
+    return wolfSSL_CTX_set_max_early_data((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                          (unsigned int)sz);
 #else
-    (void)jenv;
-    (void)jcl;
     (void)ctx;
-    (void)path;
-    (void)type;
-    (void)monitor;
+    (void)sz;
     return NOT_COMPILED_IN;
 #endif
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setCRLCb
-  (JNIEnv* jenv, jobject jcl, jlong ctx, jobject cb)
+#ifdef HAVE_SESSION_TICKET
+
+/* Session ticket encrypt/decrypt callback, calls
+ * WolfSSLContext.internalSessionTicketCallback(). On encrypt, ticket holds
+ * inLen bytes of plaintext in a buffer of *outLen bytes, and key name, IV
+ * and MAC are filled in by the callback. On decrypt, ticket holds inLen
+ * bytes of ciphertext, which are replaced by the plaintext.
+ * Returns WOLFSSL_TICKET_RET_* value, FATAL on any JNI error. */
+int NativeSessionTicketCb(WOLFSSL* ssl, unsigned char* keyName,
+        unsigned char* iv, unsigned char* mac, int enc, unsigned char* ticket,
+        int inLen, int* outLen, void* ctx)
 {
-#ifdef HAVE_CRL
-    int ret = 0;
-    jclass excClass;
+    jint       retval = WOLFSSL_TICKET_RET_FATAL;
+    jint       vmret  = 0;
+    JNIEnv*    jenv;
+    int        needsDetach = 0;
+    int        cap;                   /* bytes available in ticket buffer */
+    int        ok = 0;
+    jobject*   sslObj;                /* WolfSSLSession object */
+    jobject    ctxRef = NULL;         /* WolfSSLContext object */
+    jbyteArray nameArr = NULL;
+    jbyteArray ivArr = NULL;
+    jbyteArray macArr = NULL;
+    jbyteArray ticketArr = NULL;
+    jintArray  outLenArr = NULL;
+    jint       outSz = 0;
 
-    (void)jcl;
+    (void)ctx;
 
-    if (!jenv || !ctx || !cb) {
+    if (!g_vm || !ssl || !keyName || !iv || !mac || !ticket ||
+        !outLen || inLen < 0) {
+        return WOLFSSL_TICKET_RET_FATAL;
+    }
+
+    /* on decrypt, *outLen is output only */
+    cap = enc ? *outLen : inLen;
+    if (cap < inLen) {
+        return WOLFSSL_TICKET_RET_FATAL;
+    }
+
+    vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
+    if (vmret == JNI_EDETACHED) {
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
+        if (vmret) {
+            return WOLFSSL_TICKET_RET_FATAL;
+        }
+    } else if (vmret != JNI_OK) {
+        return WOLFSSL_TICKET_RET_FATAL;
+    }
+
+    sslObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
+    if (!sslObj) {
+        goto cleanup;
+    }
+
+    ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*sslObj),
+            g_sessGetCtxMethodId);
+    if (CheckException(jenv) || !ctxRef) {
+        goto cleanup;
+    }
+
+    nameArr = (*jenv)->NewByteArray(jenv, WOLFSSL_TICKET_NAME_SZ);
+    ivArr = (*jenv)->NewByteArray(jenv, WOLFSSL_TICKET_IV_SZ);
+    macArr = (*jenv)->NewByteArray(jenv, WOLFSSL_TICKET_MAC_SZ);
+    ticketArr = (*jenv)->NewByteArray(jenv, cap);
+    outLenArr = (*jenv)->NewIntArray(jenv, 1);
+    if (CheckException(jenv) || !nameArr || !ivArr || !macArr ||
+        !ticketArr || !outLenArr) {
+        goto cleanup;
+    }
+
+    if (!enc) {
+        (*jenv)->SetByteArrayRegion(jenv, nameArr, 0,
+                WOLFSSL_TICKET_NAME_SZ, (jbyte*)keyName);
+        (*jenv)->SetByteArrayRegion(jenv, ivArr, 0,
+                WOLFSSL_TICKET_IV_SZ, (jbyte*)iv);
+        (*jenv)->SetByteArrayRegion(jenv, macArr, 0,
+                WOLFSSL_TICKET_MAC_SZ, (jbyte*)mac);
+    }
+    (*jenv)->SetByteArrayRegion(jenv, ticketArr, 0, inLen, (jbyte*)ticket);
+    if (CheckException(jenv)) {
+        goto cleanup;
+    }
+
+    retval = (*jenv)->CallIntMethod(jenv, ctxRef, g_ctxTicketEncMethodId,
+            (jobject)(*sslObj), nameArr, ivArr, macArr, (jint)enc,
+            ticketArr, (jint)inLen, outLenArr);
+    if (CheckException(jenv)) {
+        retval = WOLFSSL_TICKET_RET_FATAL;
+        goto cleanup;
+    }
+
+    if (retval != WOLFSSL_TICKET_RET_OK &&
+        retval != WOLFSSL_TICKET_RET_CREATE) {
+        /* REJECT or FATAL, nothing to copy back */
+        ok = 1;
+        goto cleanup;
+    }
+
+    (*jenv)->GetIntArrayRegion(jenv, outLenArr, 0, 1, &outSz);
+    if (CheckException(jenv) || outSz < 0 || outSz > cap) {
+        retval = WOLFSSL_TICKET_RET_FATAL;
+        goto cleanup;
+    }
+
+    if (enc) {
+        (*jenv)->GetByteArrayRegion(jenv, nameArr, 0,
+                WOLFSSL_TICKET_NAME_SZ, (jbyte*)keyName);
+        (*jenv)->GetByteArrayRegion(jenv, ivArr, 0,
+                WOLFSSL_TICKET_IV_SZ, (jbyte*)iv);
+        (*jenv)->GetByteArrayRegion(jenv, macArr, 0,
+                WOLFSSL_TICKET_MAC_SZ, (jbyte*)mac);
+    }
+    (*jenv)->GetByteArrayRegion(jenv, ticketArr, 0, outSz, (jbyte*)ticket);
+    if (CheckException(jenv)) {
+        retval = WOLFSSL_TICKET_RET_FATAL;
+        goto cleanup;
+    }
+    *outLen = (int)outSz;
+    ok = 1;
+
+cleanup:
+    if (!ok) {
+        retval = WOLFSSL_TICKET_RET_FATAL;
+    }
+    if (nameArr)   (*jenv)->DeleteLocalRef(jenv, nameArr);
+    if (ivArr)     (*jenv)->DeleteLocalRef(jenv, ivArr);
+    if (macArr)    (*jenv)->DeleteLocalRef(jenv, macArr);
+    if (ticketArr) (*jenv)->DeleteLocalRef(jenv, ticketArr);
+    if (outLenArr) (*jenv)->DeleteLocalRef(jenv, outLenArr);
+    if (ctxRef)    (*jenv)->DeleteLocalRef(jenv, ctxRef);
+    ReleaseJNIEnv(jenv, needsDetach);
+
+    return (int)retval;
+}
+
+#endif /* HAVE_SESSION_TICKET */
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setSessionCacheCb
+  (JNIEnv* jenv, jobject jcl, jlong ctx)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_EXT_CACHE
+    if (ctx <= 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    wolfSSL_CTX_sess_set_new_cb((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                NativeSessionNewCb);
+    wolfSSL_CTX_sess_set_get_cb((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                NativeSessionGetCb);
+
+    return SSL_SUCCESS;
+#else
+    (void)ctx;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+#ifdef HAVE_EXT_CACHE
+
+/* New session callback, serializes session and passes it to
+ * WolfSSLContext.internalSessionNewCallback(). Always returns 0, the
+ * session is not retained. */
+int NativeSessionNewCb(WOLFSSL* ssl, WOLFSSL_SESSION* session)
+{
+    jint       vmret  = 0;
+    JNIEnv*    jenv;
+    int        needsDetach = 0;
+    jobject*   sslObj;                /* WolfSSLSession object */
+    jobject    ctxRef = NULL;         /* WolfSSLContext object */
+    jbyteArray idArr = NULL;
+    jbyteArray sesArr = NULL;
+    const unsigned char* id;
+    unsigned int idLen = 0;
+    unsigned char* der = NULL;
+    unsigned char* p;
+    int        derSz;
+
+    if (!g_vm || !ssl || !session) {
+        return 0;
+    }
+
+    id = wolfSSL_SESSION_get_id(session, &idLen);
+    if (!id || idLen == 0) {
+        return 0;
+    }
+
+    derSz = wolfSSL_i2d_SSL_SESSION(session, NULL);
+    if (derSz <= 0) {
+        return 0;
+    }
+    der = (unsigned char*)XMALLOC(derSz, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (der == NULL) {
+        return 0;
+    }
+    p = der;
+    if (wolfSSL_i2d_SSL_SESSION(session, &p) != derSz) {
+        XFREE(der, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        return 0;
+    }
+
+    vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
+    if (vmret == JNI_EDETACHED) {
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
+        if (vmret) {
+            XFREE(der, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+            return 0;
+        }
+    } else if (vmret != JNI_OK) {
+        XFREE(der, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        return 0;
+    }
+
+    sslObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
+    if (!sslObj) {
+        goto cleanup;
+    }
+
+    ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*sslObj),
+            g_sessGetCtxMethodId);
+    if (CheckException(jenv) || !ctxRef) {
+        goto cleanup;
+    }
+
+    idArr = (*jenv)->NewByteArray(jenv, idLen);
+    sesArr = (*jenv)->NewByteArray(jenv, derSz);
+    if (CheckException(jenv) || !idArr || !sesArr) {
+        goto cleanup;
+    }
+    (*jenv)->SetByteArrayRegion(jenv, idArr, 0, idLen, (jbyte*)id);
+    (*jenv)->SetByteArrayRegion(jenv, sesArr, 0, derSz, (jbyte*)der);
+    if (CheckException(jenv)) {
+        goto cleanup;
+    }
+
+    (*jenv)->CallIntMethod(jenv, ctxRef, g_ctxSessionNewMethodId,
+            (jobject)(*sslObj), idArr, sesArr);
+    CheckException(jenv);
+
+cleanup:
+    XFREE(der, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (idArr)  (*jenv)->DeleteLocalRef(jenv, idArr);
+    if (sesArr) (*jenv)->DeleteLocalRef(jenv, sesArr);
+    if (ctxRef) (*jenv)->DeleteLocalRef(jenv, ctxRef);
+    ReleaseJNIEnv(jenv, needsDetach);
+
+    return 0;
+}
+
+/* Get session callback, called by a server when a session ID is not found
+ * in the internal session cache. Looks up serialized session with
+ * WolfSSLContext.internalSessionGetCallback(). Returns new WOLFSSL_SESSION
+ * owned by the caller (*copy set to 0), or NULL if not found. */
+WOLFSSL_SESSION* NativeSessionGetCb(WOLFSSL* ssl, const unsigned char* id,
+        int idLen, int* copy)
+{
+    jint       vmret  = 0;
+    JNIEnv*    jenv;
+    int        needsDetach = 0;
+    jobject*   sslObj;                /* WolfSSLSession object */
+    jobject    ctxRef = NULL;         /* WolfSSLContext object */
+    jbyteArray idArr = NULL;
+    jbyteArray sesArr = NULL;
+    jbyte*     der = NULL;
+    jsize      derSz = 0;
+    const unsigned char* p;
+    WOLFSSL_SESSION* session = NULL;
+
+    if (!g_vm || !ssl || !id || idLen <= 0 || !copy) {
+        return NULL;
+    }
+    *copy = 0;
+
+    vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
+    if (vmret == JNI_EDETACHED) {
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
+        if (vmret) {
+            return NULL;
+        }
+    } else if (vmret != JNI_OK) {
+        return NULL;
+    }
+
+    sslObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
+    if (!sslObj) {
+        goto cleanup;
+    }
+
+    ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*sslObj),
+            g_sessGetCtxMethodId);
+    if (CheckException(jenv) || !ctxRef) {
+        goto cleanup;
+    }
+
+    idArr = (*jenv)->NewByteArray(jenv, idLen);
+    if (CheckException(jenv) || !idArr) {
+        goto cleanup;
+    }
+    (*jenv)->SetByteArrayRegion(jenv, idArr, 0, idLen, (jbyte*)id);
+    if (CheckException(jenv)) {
+        goto cleanup;
+    }
+
+    sesArr = (jbyteArray)(*jenv)->CallObjectMethod(jenv, ctxRef,
+            g_ctxSessionGetMethodId, (jobject)(*sslObj), idArr);
+    if (CheckException(jenv) || !sesArr) {
+        goto cleanup;
+    }
+
+    derSz = (*jenv)->GetArrayLength(jenv, sesArr);
+    der = (*jenv)->GetByteArrayElements(jenv, sesArr, NULL);
+    if (der == NULL || derSz <= 0) {
+        goto cleanup;
+    }
+
+    p = (const unsigned char*)der;
+    session = wolfSSL_d2i_SSL_SESSION(NULL, &p, (long)derSz);
+
+cleanup:
+    if (der)    (*jenv)->ReleaseByteArrayElements(jenv, sesArr, der,
+                    JNI_ABORT);
+    if (idArr)  (*jenv)->DeleteLocalRef(jenv, idArr);
+    if (sesArr) (*jenv)->DeleteLocalRef(jenv, sesArr);
+    if (ctxRef) (*jenv)->DeleteLocalRef(jenv, ctxRef);
+    ReleaseJNIEnv(jenv, needsDetach);
+
+    return session;
+}
+
+#endif /* HAVE_EXT_CACHE */
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_enableCRL
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jint options)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_CRL
+    if (!ctx)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_CTX_EnableCRL((WOLFSSL_CTX*)(uintptr_t)ctx, options);
+#else
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_disableCRL
+  (JNIEnv* jenv, jobject jcl, jlong ctx)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_CRL
+    if (!ctx)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_CTX_DisableCRL((WOLFSSL_CTX*)(uintptr_t)ctx);
+#else
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_loadCRL
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jstring path, jint type, jint monitor)
+{
+#ifdef HAVE_CRL
+    int ret;
+    const char* crlPath;
+
+    (void)jcl;
+
+    if (!jenv || !ctx || !path)
+        return BAD_FUNC_ARG;
+
+    crlPath = (*jenv)->GetStringUTFChars(jenv, path, 0);
+
+    ret = wolfSSL_CTX_LoadCRL((WOLFSSL_CTX*)(uintptr_t)ctx, crlPath, type,
+                              monitor);
+
+    (*jenv)->ReleaseStringUTFChars(jenv, path, crlPath);
+
+    return ret;
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)ctx;
+    (void)path;
+    (void)type;
+    (void)monitor;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_loadCRLBuffer
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jbyteArray in, jlong sz, jint type)
+{
+#ifdef HAVE_CRL
+    int ret;
+    word32 buffSz;
+    byte* buff;
+
+    (void)jcl;
+
+    if (!jenv || !ctx || !in || sz < 0)
+        return BAD_FUNC_ARG;
+
+    buffSz = (*jenv)->GetArrayLength(jenv, in);
+    if (sz < buffSz)
+        buffSz = (word32)sz;
+
+    buff = (byte*)(*jenv)->GetByteArrayElements(jenv, in, NULL);
+    if (buff == NULL)
+        return MEMORY_E;
+
+    ret = wolfSSL_CTX_LoadCRLBuffer((WOLFSSL_CTX*)(uintptr_t)ctx, buff,
+                                    buffSz, type);
+
+    (*jenv)->ReleaseByteArrayElements(jenv, in, (jbyte*)buff, JNI_ABORT);
+
+    return ret;
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)ctx;
+    (void)in;
+    (void)sz;
+    (void)type;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setCRLCb
+  (JNIEnv* jenv, jobject jcl, jlong ctx, jobject cb)
+{
+#ifdef HAVE_CRL
+    int ret = 0;
+    jclass excClass;
+
+    (void)jcl;
+
+    if (!jenv || !ctx || !cb) {
         return BAD_FUNC_ARG;
     }
 
@@ -1548,6 +1703,7 @@ void NativeCtxMissingCRLCallback(const char* url)
 {
     JNIEnv*   jenv;
     jint      vmret  = 0;
+    int       needsDetach = 0;
     jclass    excClass;
     jmethodID crlMethod;
     jobjectRefType refcheck;
@@ -1555,11 +1711,7 @@ void NativeCtxMissingCRLCallback(const char* url)
     /* get JNIEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             printf("Failed to attach JNIEnv to thread\n");
         }
@@ -1567,45 +1719,22 @@ void NativeCtxMissingCRLCallback(const char* url)
         printf("Unable to get JNIEnv from JavaVM\n");
     }
 
-    /* find exception class */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        return;
-    }
+    /* cached exception class */
+    excClass = g_jniExcClass;
 
     /* check if our stored object reference is valid */
     refcheck = (*jenv)->GetObjectRefType(jenv, g_crlCtxCbIfaceObj);
     if (refcheck == 2) {
 
-        /* lookup WolfSSLMissingCRLCallback class from global object ref */
-        jclass crlClass = (*jenv)->GetObjectClass(jenv, g_crlCtxCbIfaceObj);
-        if (!crlClass) {
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Can't get native WolfSSLMissingCRLCallback class reference");
-            return;
-        }
-
-        crlMethod = (*jenv)->GetMethodID(jenv, crlClass,
-                                            "missingCRLCallback",
-                                            "(Ljava/lang/String;)V");
-        if (crlMethod == 0) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting missingCRLCallback method from JNI");
-            return;
-        }
+        /* interface method ID cached in JNI_OnLoad */
+        crlMethod = g_crlCbMethodId;
 
         /* create jstring from char* */
         jstring missingUrl = (*jenv)->NewStringUTF(jenv, url);
 
         (*jenv)->CallVoidMethod(jenv, g_crlCtxCbIfaceObj, crlMethod,
                 missingUrl);
+        (*jenv)->DeleteLocalRef(jenv, missingUrl);
 
         if ((*jenv)->ExceptionOccurred(jenv)) {
             (*jenv)->ExceptionDescribe(jenv);
@@ -1621,6 +1750,7 @@ void NativeCtxMissingCRLCallback(const char* url)
 
         (*jenv)->ThrowNew(jenv, excClass,
                 "Object reference invalid in NativeMissingCRLCallback");
+        ReleaseJNIEnv(jenv, needsDetach);
     }
 }
 
@@ -1686,18 +1816,161 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setOCSPOverrideUrl
     ret = (jint) wolfSSL_CTX_SetOCSP_OverrideURL((WOLFSSL_CTX*)(uintptr_t)ctx,
                                                  url);
 
-    (*jenv)->ReleaseStringUTFChars(jenv, urlString, url);
+    (*jenv)->ReleaseStringUTFChars(jenv, urlString, url);
+
+    return ret;
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)ctx;
+    (void)urlString;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setOCSPIOCb
+  (JNIEnv* jenv, jobject jcl, jlong ctx)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef HAVE_OCSP
+    if (!ctx)
+        return BAD_FUNC_ARG;
+
+    /* WOLFSSL_CTX pointer is passed back as callback context, used to
+     * find the WolfSSLContext object */
+    return wolfSSL_CTX_SetOCSP_Cb((WOLFSSL_CTX*)(uintptr_t)ctx,
+                                  NativeOCSPIOCb, NativeOCSPRespFreeCb,
+                                  (void*)(uintptr_t)ctx);
+#else
+    (void)ctx;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_enableOCSPStapling
+  (JNIEnv* jenv, jobject jcl, jlong ctx)
+{
+    (void)jenv;
+    (void)jcl;
+#if defined(HAVE_OCSP) && (defined(HAVE_CERTIFICATE_STATUS_REQUEST) || \
+    defined(HAVE_CERTIFICATE_STATUS_REQUEST_V2))
+    if (!ctx)
+        return BAD_FUNC_ARG;
+
+    return wolfSSL_CTX_EnableOCSPStapling((WOLFSSL_CTX*)(uintptr_t)ctx);
+#else
+    (void)ctx;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+#ifdef HAVE_OCSP
+
+/* OCSP I/O callback, calls static WolfSSLContext.internalOCSPIOCallback()
+ * with the WOLFSSL_CTX pointer registered as callback context. On success
+ * *response is set to an allocated buffer holding the DER OCSP response,
+ * freed by NativeOCSPRespFreeCb(), and its size is returned. Returns -1
+ * if no response is available or on any JNI error. */
+int NativeOCSPIOCb(void* ctx, const char* url, int urlSz,
+        unsigned char* request, int requestSz, unsigned char** response)
+{
+    int        ret = -1;
+    jint       vmret = 0;
+    JNIEnv*    jenv;
+    int        needsDetach = 0;
+    char*      urlCopy = NULL;
+    jstring    urlStr = NULL;
+    jbyteArray reqArr = NULL;
+    jbyteArray respArr = NULL;
+    jsize      respSz = 0;
+    unsigned char* out = NULL;
+
+    if (!g_vm || !g_ctxClass || !g_ctxOCSPIOMethodId || !request ||
+        requestSz < 0 || !response) {
+        return -1;
+    }
+    *response = NULL;
+
+    vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
+    if (vmret == JNI_EDETACHED) {
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
+        if (vmret) {
+            return -1;
+        }
+    } else if (vmret != JNI_OK) {
+        return -1;
+    }
+
+    /* url is not always NULL terminated */
+    if (url != NULL && urlSz > 0) {
+        urlCopy = (char*)XMALLOC(urlSz + 1, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        if (urlCopy == NULL) {
+            goto cleanup;
+        }
+        XMEMCPY(urlCopy, url, urlSz);
+        urlCopy[urlSz] = '\0';
+        urlStr = (*jenv)->NewStringUTF(jenv, urlCopy);
+        if (CheckException(jenv) || !urlStr) {
+            goto cleanup;
+        }
+    }
+
+    reqArr = (*jenv)->NewByteArray(jenv, requestSz);
+    if (CheckException(jenv) || !reqArr) {
+        goto cleanup;
+    }
+    (*jenv)->SetByteArrayRegion(jenv, reqArr, 0, requestSz, (jbyte*)request);
+    if (CheckException(jenv)) {
+        goto cleanup;
+    }
+
+    respArr = (jbyteArray)(*jenv)->CallStaticObjectMethod(jenv, g_ctxClass,
+            g_ctxOCSPIOMethodId, (jlong)(uintptr_t)ctx, urlStr, reqArr);
+    if (CheckException(jenv) || !respArr) {
+        goto cleanup;
+    }
+
+    respSz = (*jenv)->GetArrayLength(jenv, respArr);
+    if (respSz <= 0) {
+        goto cleanup;
+    }
+
+    out = (unsigned char*)XMALLOC(respSz, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (out == NULL) {
+        goto cleanup;
+    }
+    (*jenv)->GetByteArrayRegion(jenv, respArr, 0, respSz, (jbyte*)out);
+    if (CheckException(jenv)) {
+        XFREE(out, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        goto cleanup;
+    }
+
+    *response = out;
+    ret = (int)respSz;
+
+cleanup:
+    if (urlCopy) XFREE(urlCopy, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (urlStr) (*jenv)->DeleteLocalRef(jenv, urlStr);
+    if (reqArr) (*jenv)->DeleteLocalRef(jenv, reqArr);
+    if (respArr) (*jenv)->DeleteLocalRef(jenv, respArr);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return ret;
-#else
-    (void)jenv;
-    (void)jcl;
+}
+
+/* frees response allocated by NativeOCSPIOCb() */
+void NativeOCSPRespFreeCb(void* ctx, unsigned char* response)
+{
     (void)ctx;
-    (void)urlString;
-    return NOT_COMPILED_IN;
-#endif
+
+    if (response != NULL) {
+        XFREE(response, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    }
 }
 
+#endif /* HAVE_OCSP */
+
 JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLContext_setMacEncryptCb
   (JNIEnv* jenv, jobject jcl, jlong ctx)
 {
@@ -1775,12 +2048,8 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  macEncryptMethodId;    /* internalMacEncryptCallback ID */
 
     int        hmacSize;
@@ -1795,28 +2064,16 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -1824,98 +2081,24 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID in "
-            "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID in "
-            "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv,
             (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference in "
-            "NativeMacEncryptCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get ref to internal MAC encrypt callback */
-    macEncryptMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalMacEncryptCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "[BJIILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;J)I");
-
-    if (!macEncryptMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalMacEncryptCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        retval = -1;
-    }
+    macEncryptMethodId = g_ctxMacEncryptMethodId;
 
     if (retval == 0)
     {
@@ -1928,8 +2111,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
             (*jenv)->ThrowNew(jenv, excClass,
                     "failed to create macOut ByteBuffer");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -1940,8 +2122,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
                     "failed to create macIn ByteBuffer");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, macOutBB);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -1953,8 +2134,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, macOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_macIn);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -1967,8 +2147,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, macOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_macIn);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -1985,8 +2164,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
             (*jenv)->DeleteLocalRef(jenv, macOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_macIn);
             (*jenv)->DeleteLocalRef(jenv, encOutBB);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2005,8 +2183,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
             (*jenv)->DeleteLocalRef(jenv, j_macIn);
             (*jenv)->DeleteLocalRef(jenv, encOutBB);
             (*jenv)->DeleteLocalRef(jenv, encInBB);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2019,8 +2196,7 @@ int NativeMacEncryptCb(WOLFSSL* ssl, unsigned char* macOut,
 
     /* detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -2037,12 +2213,8 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  decryptVerifyMethodId;
 
     jbyteArray j_decIn;
@@ -2057,28 +2229,16 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -2086,97 +2246,23 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeMacEncryptCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeDecryptVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeDecryptVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeDecryptVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeDecryptVerifyCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal decrypt/verify callback */
-    decryptVerifyMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalDecryptVerifyCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;[BJII[J)I");
-
-    if (!decryptVerifyMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalDecryptVerifyCallback method "
-                "from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    decryptVerifyMethodId = g_ctxDecryptVerifyMethodId;
 
     if (retval == 0)
     {
@@ -2187,8 +2273,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
             (*jenv)->ThrowNew(jenv, excClass,
                     "failed to create decOut ByteBuffer");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2199,8 +2284,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
                     "failed to create decIn ByteArray");
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, decOutBB);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2211,8 +2295,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, decOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_decIn);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2225,8 +2308,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, decOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_decIn);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2243,8 +2325,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
             (*jenv)->DeleteLocalRef(jenv, decOutBB);
             (*jenv)->DeleteLocalRef(jenv, j_decIn);
             (*jenv)->DeleteLocalRef(jenv, j_padSz);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
 
@@ -2259,8 +2340,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
                 (*jenv)->DeleteLocalRef(jenv, decOutBB);
                 (*jenv)->DeleteLocalRef(jenv, j_decIn);
                 (*jenv)->DeleteLocalRef(jenv, j_padSz);
-                if (needsDetach)
-                    (*g_vm)->DetachCurrentThread(g_vm);
+                ReleaseJNIEnv(jenv, needsDetach);
                 return -1;
             }
             *padSz = (unsigned int)tmpVal;
@@ -2274,8 +2354,7 @@ int  NativeDecryptVerifyCb(WOLFSSL* ssl, unsigned char* decOut,
 
     /* delete local refs, detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -2327,12 +2406,8 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  eccSignMethodId;
 
     jlongArray j_outSz;
@@ -2345,28 +2420,16 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -2374,98 +2437,23 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeEccSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeEccSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeEccSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeEccSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeEccSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeEccSignCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal decrypt/verify callback */
-    eccSignMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalEccSignCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;[JLjava/nio/ByteBuffer;J)I");
-
-    if (!eccSignMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalEccSignCallback method "
-                "from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    eccSignMethodId = g_ctxEccSignMethodId;
 
     /* create ByteBuffer to wrap out */
     jobject outBB = (*jenv)->NewDirectByteBuffer(jenv, out, *outSz);
@@ -2473,8 +2461,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "failed to create eccSign out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2485,8 +2472,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
                 "failed to create eccSign in ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, outBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2499,8 +2485,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, inBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2514,8 +2499,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2531,8 +2515,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_outSz);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2559,8 +2542,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
             (*jenv)->DeleteLocalRef(jenv, inBB);
             (*jenv)->DeleteLocalRef(jenv, keyDerBB);
             (*jenv)->DeleteLocalRef(jenv, j_outSz);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
         *outSz = (unsigned int)tmpVal;
@@ -2574,8 +2556,7 @@ int  NativeEccSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     (*jenv)->DeleteLocalRef(jenv, j_outSz);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -2629,12 +2610,8 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  eccVerifyMethodId;
     jintArray  j_result;
 
@@ -2646,28 +2623,16 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -2675,97 +2640,23 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeEccVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeEccVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeEccVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeEccVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeEccVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeEccVerifyCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal ECC verify callback */
-    eccVerifyMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalEccVerifyCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J[I)I");
-
-    if (!eccVerifyMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalEccVerifyCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    eccVerifyMethodId = g_ctxEccVerifyMethodId;
 
     /* create ByteBuffer to wrap 'sig' */
     jobject sigBB = (*jenv)->NewDirectByteBuffer(jenv, (void*)sig, sigSz);
@@ -2773,8 +2664,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Failed to create eccVerify out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2785,8 +2675,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
                 "Failed to create eccVerify hash ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, sigBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2799,8 +2688,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, sigBB);
         (*jenv)->DeleteLocalRef(jenv, hashBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2814,8 +2702,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->DeleteLocalRef(jenv, sigBB);
         (*jenv)->DeleteLocalRef(jenv, hashBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2833,8 +2720,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->DeleteLocalRef(jenv, hashBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_result);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -2849,8 +2735,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
         (*jenv)->DeleteLocalRef(jenv, hashBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_result);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
     *result = tmpVal;
@@ -2863,8 +2748,7 @@ int  NativeEccVerifyCb(WOLFSSL* ssl, const unsigned char* sig,
     (*jenv)->DeleteLocalRef(jenv, j_result);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -2883,80 +2767,30 @@ JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLContext_setEccSharedSecretCb
 
     } else {
         throwWolfSSLJNIExceptionWithMsg(jenv,
-                "Input WolfSSLContext object was null when setting "
-                "EccSharedSecretCb", 0);
-    }
-#else
-    (void)ctx;
-    throwWolfSSLJNIExceptionWithMsg(jenv,
-             "wolfSSL not compiled with PK Callback support "
-             "(HAVE_PK_CALLBACKS)", 0);
-#endif
-}
-
-#if defined(HAVE_PK_CALLBACKS) && defined(HAVE_ECC)
-
-/* Get MethodID from provided object, method name, and method signature.
- * Stores MethodID in mid.
- * return 0 on success, negative on error. */
-static int GetMethodIDFromObject(JNIEnv* jenv, jobject obj,
-               const char* methodName, const char* methodSig,
-               jmethodID* mid)
-{
-    jclass class;
-
-    if (jenv == NULL || methodName == NULL || methodSig == NULL)
-        return BAD_FUNC_ARG;
-
-    class = (*jenv)->GetObjectClass(jenv, obj);
-    if (!class) {
-        printf("GetObjectClass failed in GetMethodIDFromObject");
-        return -1;
-    }
-
-    *mid = (*jenv)->GetMethodID(jenv, class, methodName, methodSig);
-    if (*mid == NULL) {
-        printf("GetMethodID failed in GetMethodIDFromObject");
-        CheckException(jenv);
-        return -1;
+                "Input WolfSSLContext object was null when setting "
+                "EccSharedSecretCb", 0);
     }
-
-    return 0;
+#else
+    (void)ctx;
+    throwWolfSSLJNIExceptionWithMsg(jenv,
+             "wolfSSL not compiled with PK Callback support "
+             "(HAVE_PK_CALLBACKS)", 0);
+#endif
 }
 
+#if defined(HAVE_PK_CALLBACKS) && defined(HAVE_ECC)
+
 /* get WolfSSLContext from WolfSSLSession ID, storing context in ctxRef.
  * return 0 on success, negative on error */
 static int GetWolfSSLContextFromSessionObj(JNIEnv* jenv, jobject* sessObj,
                                     jobject* ctxRef)
 {
-    jclass     sessClass;       /* WolfSSLSession class */
-    jmethodID  getCtxMethodId;  /* WolfSSLSession->getAssCtxPtr() ID */
-
     if (jenv == NULL || sessObj == NULL || ctxRef == NULL)
         return BAD_FUNC_ARG;
 
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*sessObj));
-    if (!sessClass) {
-        printf("Can't get native WolfSSLSession class reference in "
-               "GetWolfSSLContextFromSessionObj");
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-                "getAssociatedContextPtr",
-                "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        CheckException(jenv);
-        printf("Can't get getAssociatedContextPtr() methodID in "
-               "GetWolfSSLContextFromSessionObj");
-        return -1;
-    }
-
     /* get WolfSSLContext ctx object from Java land */
     *ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*sessObj),
-                                        getCtxMethodId);
+                                        g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!(*ctxRef)) {
         printf("Can't get WolfSSLContext object in "
@@ -3073,19 +2907,8 @@ int  NativeEccSharedSecretCb(WOLFSSL* ssl, ecc_key* otherKey,
         return ret;
     }
 
-    /* find internal ecc shared secret callback */
-    ret = GetMethodIDFromObject(jenv, ctxRef,
-            "internalEccSharedSecretCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Lcom/wolfssl/wolfcrypt/EccKey;"
-            "Ljava/nio/ByteBuffer;[JLjava/nio/ByteBuffer;[JI)I",
-            &eccSharedSecretMethodId);
-
-    if (ret != 0) {
-        throwWolfSSLJNIExceptionWithMsg(jenv,
-            "GetMethodIDFromObject failed in NativeEccSharedSecretCb",
-            needsDetach);
-        return -1;
-    }
+    /* internal ecc shared secret callback, cached in JNI_OnLoad */
+    eccSharedSecretMethodId = g_ctxEccSharedSecretMethodId;
 
     /* SETUP: otherKey - holds server's public key on client end, otherwise
      * holds server's private key on server end. */
@@ -3268,8 +3091,7 @@ int  NativeEccSharedSecretCb(WOLFSSL* ssl, ecc_key* otherKey,
             (*jenv)->DeleteLocalRef(jenv, j_pubKeyDerSz);
             (*jenv)->DeleteLocalRef(jenv, j_outSz);
             (*jenv)->DeleteLocalRef(jenv, outBB);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
         *outlen = (unsigned int)tmpVal;
@@ -3280,8 +3102,7 @@ int  NativeEccSharedSecretCb(WOLFSSL* ssl, ecc_key* otherKey,
                 (*jenv)->DeleteLocalRef(jenv, j_pubKeyDerSz);
                 (*jenv)->DeleteLocalRef(jenv, j_outSz);
                 (*jenv)->DeleteLocalRef(jenv, outBB);
-                if (needsDetach)
-                    (*g_vm)->DetachCurrentThread(g_vm);
+                ReleaseJNIEnv(jenv, needsDetach);
                 return -1;
             }
             *pubKeySz = (unsigned int)tmpVal;
@@ -3293,8 +3114,7 @@ int  NativeEccSharedSecretCb(WOLFSSL* ssl, ecc_key* otherKey,
                 (*jenv)->DeleteLocalRef(jenv, j_pubKeyDerSz);
                 (*jenv)->DeleteLocalRef(jenv, j_outSz);
                 (*jenv)->DeleteLocalRef(jenv, outBB);
-                if (needsDetach)
-                    (*g_vm)->DetachCurrentThread(g_vm);
+                ReleaseJNIEnv(jenv, needsDetach);
                 return -1;
             } else if (ret > 0) {
                 *pubKeySz = ret;
@@ -3308,8 +3128,7 @@ int  NativeEccSharedSecretCb(WOLFSSL* ssl, ecc_key* otherKey,
     (*jenv)->DeleteLocalRef(jenv, outBB);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -3360,12 +3179,8 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  rsaSignMethodId;
     jintArray j_outSz;
 
@@ -3377,28 +3192,16 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -3406,97 +3209,23 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeRsaSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeRsaSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeRsaSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeRsaSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeRsaSignCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeRsaSignCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal RSA sign callback */
-    rsaSignMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalRsaSignCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;J)I");
-
-    if (!rsaSignMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalRsaSignCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    rsaSignMethodId = g_ctxRsaSignMethodId;
 
     /* create ByteBuffer to wrap 'in' */
     jobject inBB = (*jenv)->NewDirectByteBuffer(jenv, (void*)in, inSz);
@@ -3504,8 +3233,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
             "Failed to create rsaSign in ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3516,8 +3244,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
             "Failed to create rsaSign out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3530,8 +3257,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3545,8 +3271,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3562,8 +3287,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_outSz);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3581,8 +3305,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_outSz);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
     }
 
     if (retval == 0) {
@@ -3597,8 +3320,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
             (*jenv)->DeleteLocalRef(jenv, outBB);
             (*jenv)->DeleteLocalRef(jenv, keyDerBB);
             (*jenv)->DeleteLocalRef(jenv, j_outSz);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
         *outSz = tmpVal;
@@ -3612,8 +3334,7 @@ int  NativeRsaSignCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     (*jenv)->DeleteLocalRef(jenv, j_outSz);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -3665,12 +3386,8 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  rsaVerifyMethodId;
 
     (void)ctx;
@@ -3681,28 +3398,16 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -3710,97 +3415,23 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeRsaVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeRsaVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeRsaVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeRsaVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeRsaVerifyCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeRsaVerifyCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal RSA verify callback */
-    rsaVerifyMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalRsaVerifyCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J)I");
-
-    if (!rsaVerifyMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalRsaVerifyCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    rsaVerifyMethodId = g_ctxRsaVerifyMethodId;
 
     /* create ByteBuffer to wrap 'sig' */
     jobject sigBB = (*jenv)->NewDirectByteBuffer(jenv, sig, sigSz);
@@ -3808,8 +3439,7 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
         (*jenv)->ThrowNew(jenv, excClass,
             "Failed to create rsaVerify sig ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3822,8 +3452,7 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
             "Failed to create rsaVerify out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, sigBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3836,8 +3465,7 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, sigBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -3863,7 +3491,7 @@ int  NativeRsaVerifyCb(WOLFSSL* ssl, unsigned char* sig, unsigned int sigSz,
     (*jenv)->DeleteLocalRef(jenv, keyDerBB);
 
     /* detach JNIEnv from thread */
-    (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -3914,12 +3542,8 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  rsaEncMethodId;
     jintArray j_outSz;
 
@@ -3931,28 +3555,16 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -3960,97 +3572,23 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeRsaEncCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeRsaEncCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeRsaEncCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeRsaEncCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeRsaEncCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeRsaEncCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal RSA enc callback */
-    rsaEncMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalRsaEncCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;J)I");
-
-    if (!rsaEncMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalRsaEncCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    rsaEncMethodId = g_ctxRsaEncMethodId;
 
     /* create ByteBuffer to wrap 'in' */
     jobject inBB = (*jenv)->NewDirectByteBuffer(jenv, (void*)in, inSz);
@@ -4058,8 +3596,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
             "Failed to create rsaEnc in ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4070,8 +3607,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
             "Failed to create rsaEnc out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4084,8 +3620,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4099,8 +3634,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4116,8 +3650,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, outBB);
         (*jenv)->DeleteLocalRef(jenv, keyDerBB);
         (*jenv)->DeleteLocalRef(jenv, j_outSz);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4144,8 +3677,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
             (*jenv)->DeleteLocalRef(jenv, outBB);
             (*jenv)->DeleteLocalRef(jenv, keyDerBB);
             (*jenv)->DeleteLocalRef(jenv, j_outSz);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return -1;
         }
         *outSz = tmpVal;
@@ -4159,8 +3691,7 @@ int  NativeRsaEncCb(WOLFSSL* ssl, const unsigned char* in, unsigned int inSz,
     (*jenv)->DeleteLocalRef(jenv, j_outSz);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -4211,12 +3742,8 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sessClass;             /* WolfSSLSession class */
-    jfieldID   ctxFid;                /* WolfSSLSession->ctx FieldID */
-    jmethodID  getCtxMethodId;        /* WolfSSLSession->getAssCtxPtr() ID */
 
     jobject    ctxRef;                /* WolfSSLContext object */
-    jclass     innerCtxClass;         /* WolfSSLContext class */
     jmethodID  rsaDecMethodId;
 
     (void)ctx;
@@ -4227,28 +3754,16 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -1;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return -1;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)ssl);
@@ -4256,97 +3771,23 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeRsaDecCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLSession class from object */
-    sessClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sessClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeRsaDecCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* lookup WolfSSLContext private member fieldID */
-    ctxFid = (*jenv)->GetFieldID(jenv, sessClass, "ctx",
-            "Lcom/wolfssl/WolfSSLContext;");
-    if (!ctxFid) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext field ID "
-            "in NativeRsaDecCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* find getContextPtr() method */
-    getCtxMethodId = (*jenv)->GetMethodID(jenv, sessClass,
-        "getAssociatedContextPtr",
-        "()Lcom/wolfssl/WolfSSLContext;");
-    if (!getCtxMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get getAssociatedContextPtr() method ID "
-            "in NativeRsaDecCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* get WolfSSLContext ctx object from Java land */
     ctxRef = (*jenv)->CallObjectMethod(jenv, (jobject)(*g_cachedSSLObj),
-            getCtxMethodId);
+            g_sessGetCtxMethodId);
     CheckException(jenv);
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Can't get WolfSSLContext object in NativeRsaDecCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
-
-    /* get WolfSSLContext class reference from Java land */
-    innerCtxClass = (*jenv)->GetObjectClass(jenv, ctxRef);
-    if (!innerCtxClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLContext class reference "
-            "in NativeRsaDecCb");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
     /* call internal ECC verify callback */
-    rsaDecMethodId = (*jenv)->GetMethodID(jenv, innerCtxClass,
-            "internalRsaDecCallback",
-            "(Lcom/wolfssl/WolfSSLSession;Ljava/nio/ByteBuffer;"
-            "JLjava/nio/ByteBuffer;JLjava/nio/ByteBuffer;J)I");
-
-    if (!rsaDecMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalRsaDecCallback method from JNI");
-        (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return -1;
-    }
+    rsaDecMethodId = g_ctxRsaDecMethodId;
 
     /* create ByteBuffer to wrap 'in' */
     jobject inBB = (*jenv)->NewDirectByteBuffer(jenv, in, inSz);
@@ -4354,8 +3795,7 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
         (*jenv)->ThrowNew(jenv, excClass,
             "Failed to create rsaDec in ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4368,8 +3808,7 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
             "Failed to create rsaDec out ByteBuffer");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4382,8 +3821,7 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, inBB);
         (*jenv)->DeleteLocalRef(jenv, outBB);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -4414,8 +3852,7 @@ int  NativeRsaDecCb(WOLFSSL* ssl, unsigned char* in, unsigned int inSz,
     (*jenv)->DeleteLocalRef(jenv, keyDerBB);
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -4497,15 +3934,10 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return 0;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return 0;
     }
@@ -4515,8 +3947,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
     if ((*jenv)->ExceptionOccurred(jenv)) {
         (*jenv)->ExceptionDescribe(jenv);
         (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4526,8 +3957,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativePskClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4537,8 +3967,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession class reference in "
                 "NativePskClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4553,8 +3982,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLContext field ID in "
                 "NativePSKClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4570,8 +3998,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get getAssociatedContextPtr() method ID in "
                 "NativePSKClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4582,8 +4009,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get WolfSSLContext object in NativePskClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4594,8 +4020,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
                 "Can't get native WolfSSLContext class reference in "
                 "NativePskClientCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4614,8 +4039,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
                 "Can't get native internPskClientCb field ID in "
                 "NativePSKClientCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4650,8 +4074,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Error getting internalPskClientCallback method from JNI");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4665,8 +4088,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Error creating String for PSK client hint");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4681,8 +4103,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
                 "Error finding StringBuffer class for PSK client identity");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, hintString);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4699,8 +4120,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
                 "in NativePskClientCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, hintString);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4715,8 +4135,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
                 "Can't get StringBuffer object in NativePskClientCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, hintString);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4728,8 +4147,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, hintString);
         (*jenv)->DeleteLocalRef(jenv, strBufObj);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4746,8 +4164,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, hintString);
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
     } else {
@@ -4762,8 +4179,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, hintString);
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
     }
@@ -4779,8 +4195,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, hintString);
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
 
@@ -4798,8 +4213,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, hintString);
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
 
@@ -4813,8 +4227,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, hintString);
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
 
@@ -4828,8 +4241,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
             (*jenv)->DeleteLocalRef(jenv, strBufObj);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
             (*jenv)->DeleteLocalRef(jenv, bufString);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
         strcpy(identity, tmpString);
@@ -4842,8 +4254,7 @@ unsigned int NativePskClientCb(WOLFSSL* ssl, const char* hint, char* identity,
     (*jenv)->DeleteLocalRef(jenv, hintString);
     (*jenv)->DeleteLocalRef(jenv, strBufObj);
     (*jenv)->DeleteLocalRef(jenv, keyArray);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -4918,15 +4329,10 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return 0;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return 0;
     }
@@ -4936,8 +4342,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
     if ((*jenv)->ExceptionOccurred(jenv)) {
         (*jenv)->ExceptionDescribe(jenv);
         (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4947,8 +4352,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativePskServerCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4958,8 +4362,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession class reference in "
                 "NativePskServerCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4974,8 +4377,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLContext field ID in "
                 "NativePSKClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -4991,8 +4393,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get getAssociatedContextPtr() method ID in "
                 "NativePSKClientCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5003,8 +4404,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
     if (!ctxRef) {
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get WolfSSLContext object in NativePskServerCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5015,8 +4415,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
                 "Can't get native WolfSSLContext class reference in "
                 "NativePskServerCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5035,8 +4434,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
                 "Can't get native internPskServerCb field ID in "
                 "NativePskServerCb");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5070,8 +4468,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Error getting internalPskServerCallback method from JNI");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5085,8 +4482,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
         (*jenv)->ThrowNew(jenv, excClass,
                 "Error creating String for PSK client identity");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5097,8 +4493,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
                 "Error creating jbyteArray for PSK server key");
         (*jenv)->DeleteLocalRef(jenv, ctxRef);
         (*jenv)->DeleteLocalRef(jenv, identityString);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
@@ -5113,8 +4508,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, identityString);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
     } else {
@@ -5127,8 +4521,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, identityString);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
     }
@@ -5143,8 +4536,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
             (*jenv)->DeleteLocalRef(jenv, ctxRef);
             (*jenv)->DeleteLocalRef(jenv, identityString);
             (*jenv)->DeleteLocalRef(jenv, keyArray);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return 0;
         }
     }
@@ -5153,8 +4545,7 @@ unsigned int NativePskServerCb(WOLFSSL* ssl, const char* identity,
     (*jenv)->DeleteLocalRef(jenv, ctxRef);
     (*jenv)->DeleteLocalRef(jenv, identityString);
     (*jenv)->DeleteLocalRef(jenv, keyArray);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -119,6 +119,14 @@ JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLContext_setCacheSize
 JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLContext_getCacheSize
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setTimeout
+ * Signature: (JJ)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTimeout
+  (JNIEnv *, jobject, jlong, jlong);
+
 /*
  * Class:     com_wolfssl_WolfSSLContext
  * Method:    setCipherList
@@ -199,6 +207,38 @@ JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLContext_setIOSend
 JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLContext_setGenCookie
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setTicketEncCb
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTicketEncCb
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setTicketHint
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setTicketHint
+  (JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setMaxEarlyData
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setMaxEarlyData
+  (JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setSessionCacheCb
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setSessionCacheCb
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     com_wolfssl_WolfSSLContext
  * Method:    enableCRL
@@ -223,6 +263,14 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_disableCRL
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_loadCRL
   (JNIEnv *, jobject, jlong, jstring, jint, jint);
 
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    loadCRLBuffer
+ * Signature: (J[BJI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_loadCRLBuffer
+  (JNIEnv *, jobject, jlong, jbyteArray, jlong, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSLContext
  * Method:    setCRLCb
@@ -255,6 +303,22 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_disableOCSP
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setOCSPOverrideUrl
   (JNIEnv *, jobject, jlong, jstring);
 
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    setOCSPIOCb
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_setOCSPIOCb
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLContext
+ * Method:    enableOCSPStapling
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLContext_enableOCSPStapling
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     com_wolfssl_WolfSSLContext
  * Method:    setMacEncryptCb
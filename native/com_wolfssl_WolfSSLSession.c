@@ -21,8 +21,12 @@
 
 #include <stdio.h>
 #include <stdint.h>
+#include <limits.h>
 
 #include <arpa/inet.h>
+#include <errno.h>
+#include <poll.h>
+#include <time.h>
 #include <wolfssl/options.h>
 #include <wolfssl/ssl.h>
 #include <wolfssl/error-ssl.h>
@@ -33,6 +37,8 @@
 /* custom I/O native fn prototypes */
 int  NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
 int  NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
+int  NativeMemIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
+int  NativeMemIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx);
 static jobject g_verifySSLCbIfaceObj;
 #ifdef HAVE_CRL
 /* global object refs for CRL callback */
@@ -47,6 +53,7 @@ int NativeSSLVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
 {
     JNIEnv*   jenv;
     jint      vmret  = 0;
+    int       needsDetach = 0;
     jint      retval = -1;
     jclass    excClass;
     jmethodID verifyMethod;
@@ -60,11 +67,7 @@ int NativeSSLVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
     /* get JNIEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return -101;    /* failed to attach JNIEnv to thread */
         }
@@ -72,43 +75,15 @@ int NativeSSLVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
         return -102;        /* unable to get JNIEnv from JavaVM */
     }
 
-    /* find exception class */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLException");
-    if( (*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        return -103;
-    }
+    /* cached exception class */
+    excClass = g_sslExcClass;
 
     /* check if our stored object reference is valid */
     refcheck = (*jenv)->GetObjectRefType(jenv, g_verifySSLCbIfaceObj);
     if (refcheck == 2) {
 
-        /* lookup WolfSSLVerifyCallback class from global object ref */
-        jclass verifyClass = (*jenv)->GetObjectClass(jenv, g_verifySSLCbIfaceObj);
-        if (!verifyClass) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Can't get native WolfSSLVerifyCallback class reference");
-            return -104;
-        }
-
-        verifyMethod = (*jenv)->GetMethodID(jenv, verifyClass,
-                                            "verifyCallback", "(IJ)I");
-        if (verifyMethod == 0) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting verifyCallback method from JNI");
-            return -105;
-        }
+        /* interface method ID cached in JNI_OnLoad */
+        verifyMethod = g_verifyCbMethodId;
 
         retval = (*jenv)->CallIntMethod(jenv, g_verifySSLCbIfaceObj,
                 verifyMethod, preverify_ok, (jlong)(uintptr_t)store);
@@ -128,6 +103,7 @@ int NativeSSLVerifyCallback(int preverify_ok, WOLFSSL_X509_STORE_CTX* store)
 
         (*jenv)->ThrowNew(jenv, excClass,
                 "Object reference invalid in NativeSSLVerifyCallback");
+        ReleaseJNIEnv(jenv, needsDetach);
         return -1;
     }
 
@@ -269,7 +245,7 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_setFd(JNIEnv* jenv,
 
     fd = (*jenv)->GetIntField(jenv, fdesc, fid);
 
-    /* set socket to non-blocking so we can use select() to detect
+    /* set socket to non-blocking so we can use poll() to detect
      * WANT_READ / WANT_WRITE */
     fcntl(fd, F_SETFL, fcntl(fd, F_GETFL, 0) | O_NONBLOCK);
 
@@ -447,7 +423,11 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_getFd
     return wolfSSL_get_fd((WOLFSSL*)(uintptr_t)ssl);
 }
 
-/* enum values used in socketSelect() */
+/* returned by read/write/connect/accept when the socket did not become
+ * ready before the timeout expired, matches WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT */
+#define WOLFJNI_IO_EVENT_TIMEOUT -11
+
+/* enum values returned by socketSelect() */
 enum {
     WOLFJNI_SELECT_FAIL,
     WOLFJNI_TIMEOUT,
@@ -456,48 +436,70 @@ enum {
     WOLFJNI_ERROR_READY
 };
 
-/* perform a select() call on underlying socket to wait for socket to be ready
- * to read/write, or timeout. Note that we explicitly set the underlying
- * socket descriptor to non-blocking so we can select() on it.
+/* milliseconds from a monotonic clock, used to track poll() timeouts */
+static long long monotonicMs(void)
+{
+    struct timespec ts;
+
+    if (clock_gettime(CLOCK_MONOTONIC, &ts) != 0) {
+        return 0;
+    }
+
+    return ((long long)ts.tv_sec * 1000) + (ts.tv_nsec / 1000000);
+}
+
+/* wait on underlying socket with poll() until it is ready to read/write, or
+ * timeout. Note that we explicitly set the underlying socket descriptor to
+ * non-blocking so we can poll() on it. poll() is used instead of select()
+ * since fd_set cannot hold descriptors at or above FD_SETSIZE.
  *
- * The Java socket timeout value representing no timeout is NULL, not 0 like
- * C. We adjust for this when handling timeout_sec here. */
-static int socketSelect(int sockfd, int timeout_sec, int rx)
-{
-    fd_set fds, errfds;
-    fd_set* recvfds = NULL;
-    fd_set* sendfds = NULL;
-    int nfds = sockfd + 1;
-    struct timeval timeout = {(timeout_sec > 0) ? timeout_sec : 0, 0};
+ * The Java socket timeout value representing no timeout is 0, so
+ * timeout_ms <= 0 waits forever. Timeouts are in milliseconds so
+ * sub-second SO_TIMEOUT values are honored. If poll() is interrupted by a
+ * signal it is restarted with the time remaining. */
+static int socketSelect(int sockfd, int timeout_ms, int rx)
+{
+    struct pollfd fds;
     int result;
+    int remaining = (timeout_ms > 0) ? timeout_ms : -1;
+    long long deadline = 0;
 
-    FD_ZERO(&fds);
-    FD_SET(sockfd, &fds);
-    FD_ZERO(&errfds);
-    FD_SET(sockfd, &errfds);
+    if (sockfd < 0) {
+        return WOLFJNI_SELECT_FAIL;
+    }
 
-    if (rx) {
-        recvfds = &fds;
-    } else {
-        sendfds = &fds;
+    fds.fd = sockfd;
+    fds.events = rx ? POLLIN : POLLOUT;
+
+    if (remaining > 0) {
+        deadline = monotonicMs() + remaining;
     }
 
-    if (timeout_sec == 0) {
-        result = select(nfds, recvfds, sendfds, &errfds, NULL);
-    } else {
-        result = select(nfds, recvfds, sendfds, &errfds, &timeout);
+    for (;;) {
+        fds.revents = 0;
+        result = poll(&fds, 1, remaining);
+        if (result >= 0 || errno != EINTR) {
+            break;
+        }
+
+        if (remaining > 0) {
+            remaining = (int)(deadline - monotonicMs());
+            if (remaining <= 0) {
+                return WOLFJNI_TIMEOUT;
+            }
+        }
     }
 
     if (result == 0) {
         return WOLFJNI_TIMEOUT;
     } else if (result > 0) {
-        if (FD_ISSET(sockfd, &fds)) {
+        if (fds.revents & fds.events) {
             if (rx) {
                 return WOLFJNI_RECV_READY;
             } else {
                 return WOLFJNI_SEND_READY;
             }
-        } else if (FD_ISSET(sockfd, &errfds)) {
+        } else if (fds.revents & (POLLERR | POLLHUP | POLLNVAL)) {
             return WOLFJNI_ERROR_READY;
         }
     }
@@ -505,12 +507,32 @@ static int socketSelect(int sockfd, int timeout_sec, int rx)
     return WOLFJNI_SELECT_FAIL;
 }
 
+/* time left in ms before deadline, for passing to socketSelect(). Returns
+ * 0 (wait forever) if timeout_ms is not positive, never returns less than 1
+ * otherwise so an expired deadline still reports a timeout. */
+static int timeoutRemaining(int timeout_ms, long long deadline)
+{
+    long long left;
+
+    if (timeout_ms <= 0) {
+        return 0;
+    }
+
+    left = deadline - monotonicMs();
+    if (left < 1) {
+        return 1;
+    }
+
+    return (int)left;
+}
+
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_connect
-  (JNIEnv* jenv, jobject jcl, jlong sslPtr)
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jint timeout)
 {
     int ret = 0, err = 0, sockfd = 0;
     WOLFSSL* ssl = NULL;
     wolfSSL_Mutex* jniSessLock = NULL;
+    long long deadline = 0;
 
     (void)jcl;
 
@@ -532,6 +554,10 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_connect
         return SSL_FAILURE;
     }
 
+    if (timeout > 0) {
+        deadline = monotonicMs() + timeout;
+    }
+
     do {
         /* get I/O lock */
         if (wc_LockMutex(jniSessLock) != 0) {
@@ -554,16 +580,21 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_connect
             sockfd = wolfSSL_get_fd(ssl);
             if (sockfd == -1) {
                 /* For I/O that does not use sockets, sockfd may be -1,
-                 * skip try to call select() */
+                 * skip try to call poll() */
                 break;
             }
 
-            ret = socketSelect(sockfd, 0, 1);
+            ret = socketSelect(sockfd, timeoutRemaining(timeout, deadline),
+                               (err == SSL_ERROR_WANT_READ));
             if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
                 /* I/O ready, continue handshake and try again */
                 continue;
+            } else if (ret == WOLFJNI_TIMEOUT) {
+                ret = WOLFJNI_IO_EVENT_TIMEOUT;
+                break;
             } else {
-                /* error or timeout */
+                /* error during poll */
+                ret = SSL_FATAL_ERROR;
                 break;
             }
         }
@@ -580,162 +611,329 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_connect
     return ret;
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write(JNIEnv* jenv,
-    jobject jcl, jlong sslPtr, jbyteArray raw, jint length)
+/* Write length bytes from data to the SSL connection, holding the per-session
+ * I/O lock around each wolfSSL_write() attempt. If the underlying socket is
+ * not ready, poll() on it and try again. timeout (ms) bounds the total time
+ * spent waiting, 0 waits forever. Returns the wolfSSL_write() return
+ * value, or WOLFJNI_IO_EVENT_TIMEOUT if the timeout expired.
+ *
+ * The lock is never held while waiting in poll(), so a thread blocked here
+ * does not stop another thread from reading on the same session. */
+static int SSLWriteNonblockingWithPoll(WOLFSSL* ssl, byte* data, int length,
+                                       int timeout)
 {
-    byte* data;
     int ret = SSL_FAILURE, err, sockfd;
-    WOLFSSL* ssl = NULL;
     wolfSSL_Mutex* jniSessLock = NULL;
+    long long deadline = 0;
 
-    (void)jcl;
+    /* get session mutex from SSL app data */
+    jniSessLock = (wolfSSL_Mutex*)wolfSSL_get_app_data(ssl);
+    if (jniSessLock == NULL) {
+        return SSL_FAILURE;
+    }
 
-    if (jenv == NULL || sslPtr <= 0 || raw == NULL) {
-        return BAD_FUNC_ARG;
+    if (timeout > 0) {
+        deadline = monotonicMs() + timeout;
     }
-    ssl = (WOLFSSL*)(uintptr_t)sslPtr;
 
-    if (length >= 0) {
-        data = (byte*)(*jenv)->GetByteArrayElements(jenv, raw, NULL);
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-            return SSL_FAILURE;
+    do {
+
+        /* lock mutex around session I/O before write attempt */
+        if (wc_LockMutex(jniSessLock) != 0) {
+            ret = WOLFSSL_FAILURE;
+            break;
         }
 
-        /* get session mutex from SSL app data */
-        jniSessLock = (wolfSSL_Mutex*)wolfSSL_get_app_data(ssl);
-        if (jniSessLock == NULL) {
-            return SSL_FAILURE;
+        ret = wolfSSL_write(ssl, data, length);
+        err = wolfSSL_get_error(ssl, ret);
+
+        /* unlock mutex around session I/O after write attempt */
+        if (wc_UnLockMutex(jniSessLock) != 0) {
+            ret = WOLFSSL_FAILURE;
+            break;
         }
 
-        do {
+        if (err == SSL_ERROR_WANT_READ || err == SSL_ERROR_WANT_WRITE) {
+
+            sockfd = wolfSSL_get_fd(ssl);
+            if (sockfd == -1) {
+                /* For I/O that does not use sockets, sockfd may be -1,
+                 * skip try to call poll() */
+                break;
+            }
 
-            /* lock mutex around session I/O before write attempt */
-            if (wc_LockMutex(jniSessLock) != 0) {
+            ret = socketSelect(sockfd, timeoutRemaining(timeout, deadline),
+                               (err == SSL_ERROR_WANT_READ));
+            if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
+                /* loop around and try wolfSSL_write() again */
+                continue;
+            } else if (ret == WOLFJNI_TIMEOUT) {
+                ret = WOLFJNI_IO_EVENT_TIMEOUT;
+                break;
+            } else {
+                /* error or timeout occurred during poll */
                 ret = WOLFSSL_FAILURE;
                 break;
             }
+        }
 
-            ret = wolfSSL_write(ssl, data, length);
-            err = wolfSSL_get_error(ssl, ret);
+    } while (err == SSL_ERROR_WANT_WRITE || err == SSL_ERROR_WANT_READ);
 
-            /* unlock mutex around session I/O after write attempt */
-            if (wc_UnLockMutex(jniSessLock) != 0) {
-                ret = WOLFSSL_FAILURE;
+    return ret;
+}
+
+/* Read up to sz bytes from the SSL connection into out, holding the
+ * per-session I/O lock around each wolfSSL_read() attempt. If the underlying
+ * socket is not ready, poll() on it and try again. timeout (ms) bounds the
+ * total time spent waiting, 0 waits forever. Returns the wolfSSL_read()
+ * return value, or WOLFJNI_IO_EVENT_TIMEOUT if the timeout expired.
+ *
+ * The lock is never held while waiting in poll(), so a thread blocked here
+ * waiting for peer data does not stop another thread from writing on the
+ * same session. */
+static int SSLReadNonblockingWithPoll(WOLFSSL* ssl, byte* out, int sz,
+                                      int timeout)
+{
+    int size = 0, ret, err, sockfd;
+    wolfSSL_Mutex* jniSessLock = NULL;
+    long long deadline = 0;
+
+    /* get session mutex from SSL app data */
+    jniSessLock = (wolfSSL_Mutex*)wolfSSL_get_app_data(ssl);
+    if (jniSessLock == NULL) {
+        return WOLFSSL_FAILURE;
+    }
+
+    if (timeout > 0) {
+        deadline = monotonicMs() + timeout;
+    }
+
+    do {
+        /* lock mutex around session I/O before read attempt */
+        if (wc_LockMutex(jniSessLock) != 0) {
+            size = WOLFSSL_FAILURE;
+            break;
+        }
+
+        size = wolfSSL_read(ssl, out, sz);
+        err = wolfSSL_get_error(ssl, size);
+
+        /* unlock mutex around session I/O after read attempt */
+        if (wc_UnLockMutex(jniSessLock) != 0) {
+            size = WOLFSSL_FAILURE;
+            break;
+        }
+
+        if (size < 0 && ((err == SSL_ERROR_WANT_READ) || \
+                         (err == SSL_ERROR_WANT_WRITE))) {
+
+            sockfd = wolfSSL_get_fd(ssl);
+            if (sockfd == -1) {
+                /* For I/O that does not use sockets, sockfd may be -1,
+                 * skip try to call poll() */
                 break;
             }
 
-            if (err == SSL_ERROR_WANT_READ || err == SSL_ERROR_WANT_WRITE) {
-
-                sockfd = wolfSSL_get_fd(ssl);
-                if (sockfd == -1) {
-                    /* For I/O that does not use sockets, sockfd may be -1,
-                     * skip try to call select() */
-                    break;
-                }
-
-                ret = socketSelect(sockfd, 0, 0);
-                if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
-                    /* loop around and try wolfSSL_write() again */
-                    continue;
-                } else {
-                    /* error or timeout occurred during select */
-                    ret = WOLFSSL_FAILURE;
-                    break;
-                }
+            ret = socketSelect(sockfd, timeoutRemaining(timeout, deadline),
+                               (err == SSL_ERROR_WANT_READ));
+            if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
+                /* loop around and try wolfSSL_read() again */
+                continue;
+            } else if (ret == WOLFJNI_TIMEOUT) {
+                size = WOLFJNI_IO_EVENT_TIMEOUT;
+                break;
+            } else {
+                /* error or timeout occurred during poll */
+                break;
             }
+        }
+
+    } while (err == SSL_ERROR_WANT_WRITE || err == SSL_ERROR_WANT_READ);
+
+    return size;
+}
 
-        } while (err == SSL_ERROR_WANT_WRITE || err == SSL_ERROR_WANT_READ);
+/* Write length bytes starting at offset in Java array raw to the SSL
+ * connection. Only the requested region is copied out of the array, so the
+ * cost does not depend on the size of the whole array, and the array is
+ * never pinned while waiting on the socket. */
+static int SSLWriteArrayRegion(JNIEnv* jenv, jlong sslPtr, jbyteArray raw,
+                               jint offset, jint length, jint timeout)
+{
+    byte* data;
+    int ret = SSL_FAILURE;
+    WOLFSSL* ssl = NULL;
 
-        (*jenv)->ReleaseByteArrayElements(jenv, raw, (jbyte*)data, JNI_ABORT);
+    if (jenv == NULL || sslPtr <= 0 || raw == NULL || offset < 0 ||
+        length < 0 || offset > (*jenv)->GetArrayLength(jenv, raw) - length) {
+        return BAD_FUNC_ARG;
+    }
+    ssl = (WOLFSSL*)(uintptr_t)sslPtr;
 
-        return ret;
+    /* copy only the requested region out of the Java array */
+    data = (byte*)XMALLOC(length + 1, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (data == NULL) {
+        return SSL_FAILURE;
+    }
 
-    } else {
+    (*jenv)->GetByteArrayRegion(jenv, raw, offset, length, (jbyte*)data);
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        (*jenv)->ExceptionDescribe(jenv);
+        (*jenv)->ExceptionClear(jenv);
+        XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        return SSL_FAILURE;
+    }
+
+    ret = SSLWriteNonblockingWithPoll(ssl, data, length, timeout);
+
+    XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+
+    return ret;
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__J_3BI
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint length)
+{
+    (void)jcl;
+
+    if (length < 0) {
         return SSL_FAILURE;
     }
+
+    return SSLWriteArrayRegion(jenv, sslPtr, raw, 0, length, 0);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__J_3BIII
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint offset,
+   jint length, jint timeout)
+{
+    (void)jcl;
+
+    return SSLWriteArrayRegion(jenv, sslPtr, raw, offset, length, timeout);
 }
 
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read(JNIEnv* jenv,
-    jobject jcl, jlong sslPtr, jbyteArray raw, jint length)
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__JLjava_nio_ByteBuffer_2III
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jobject buf, jint position,
+   jint length, jint timeout)
 {
     byte* data;
-    int size = 0, ret, err, sockfd;
+    jlong capacity;
     WOLFSSL* ssl = NULL;
-    wolfSSL_Mutex* jniSessLock = NULL;
 
     (void)jcl;
 
-    if (jenv == NULL || sslPtr <= 0 || raw == NULL) {
+    if (jenv == NULL || sslPtr <= 0 || buf == NULL || position < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
+    }
+    ssl = (WOLFSSL*)(uintptr_t)sslPtr;
+
+    /* direct buffer memory is handed to wolfSSL without a copy */
+    data = (byte*)(*jenv)->GetDirectBufferAddress(jenv, buf);
+    capacity = (*jenv)->GetDirectBufferCapacity(jenv, buf);
+    if (data == NULL || capacity < 0 ||
+        (jlong)position + (jlong)length > capacity) {
+        return BAD_FUNC_ARG;
+    }
+
+    return SSLWriteNonblockingWithPoll(ssl, data + position, length,
+                                       timeout);
+}
+
+/* Read up to length bytes from the SSL connection into Java array raw,
+ * starting at offset. Only the bytes actually read are copied back into the
+ * array, and the array is never pinned while waiting on the socket. */
+static int SSLReadArrayRegion(JNIEnv* jenv, jlong sslPtr, jbyteArray raw,
+                              jint offset, jint length, jint timeout)
+{
+    byte* data;
+    int size = 0;
+    WOLFSSL* ssl = NULL;
+
+    if (jenv == NULL || sslPtr <= 0 || raw == NULL || offset < 0 ||
+        length < 0 || offset > (*jenv)->GetArrayLength(jenv, raw) - length) {
         return BAD_FUNC_ARG;
     }
     ssl = (WOLFSSL*)(uintptr_t)sslPtr;
 
-    if (length >= 0) {
-        data = (byte*)(*jenv)->GetByteArrayElements(jenv, raw, NULL);
+    data = (byte*)XMALLOC(length + 1, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (data == NULL) {
+        return SSL_FAILURE;
+    }
+
+    size = SSLReadNonblockingWithPoll(ssl, data, length, timeout);
+
+    /* copy back only the bytes actually read */
+    if (size > 0) {
+        (*jenv)->SetByteArrayRegion(jenv, raw, offset, size, (jbyte*)data);
         if ((*jenv)->ExceptionOccurred(jenv)) {
             (*jenv)->ExceptionDescribe(jenv);
             (*jenv)->ExceptionClear(jenv);
-            return SSL_FAILURE;
+            size = SSL_FAILURE;
         }
+    }
 
-        /* get session mutex from SSL app data */
-        jniSessLock = (wolfSSL_Mutex*)wolfSSL_get_app_data(ssl);
-        if (jniSessLock == NULL) {
-            return WOLFSSL_FAILURE;
-        }
+    XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
 
-        do {
-            /* lock mutex around session I/O before read attempt */
-            if (wc_LockMutex(jniSessLock) != 0) {
-                size = WOLFSSL_FAILURE;
-                break;
-            }
+    return size;
+}
 
-            size = wolfSSL_read(ssl, data, length);
-            err = wolfSSL_get_error(ssl, size);
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__J_3BI
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint length)
+{
+    (void)jcl;
 
-            /* unlock mutex around session I/O after read attempt */
-            if (wc_UnLockMutex(jniSessLock) != 0) {
-                size = WOLFSSL_FAILURE;
-                break;
-            }
+    if (length < 0) {
+        return 0;
+    }
 
-            if (size < 0 && ((err == SSL_ERROR_WANT_READ) || \
-                             (err == SSL_ERROR_WANT_WRITE))) {
-
-                sockfd = wolfSSL_get_fd(ssl);
-                if (sockfd == -1) {
-                    /* For I/O that does not use sockets, sockfd may be -1,
-                     * skip try to call select() */
-                    break;
-                }
-
-                ret = socketSelect(sockfd, 0, 1);
-                if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
-                    /* loop around and try wolfSSL_read() again */
-                    continue;
-                } else {
-                    /* error or timeout occurred during select */
-                    break;
-                }
-            }
+    return SSLReadArrayRegion(jenv, sslPtr, raw, 0, length, 0);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__J_3BIII
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint offset,
+   jint length, jint timeout)
+{
+    (void)jcl;
+
+    return SSLReadArrayRegion(jenv, sslPtr, raw, offset, length, timeout);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__JLjava_nio_ByteBuffer_2III
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jobject buf, jint position,
+   jint length, jint timeout)
+{
+    byte* data;
+    jlong capacity;
+    WOLFSSL* ssl = NULL;
 
-        } while (err == SSL_ERROR_WANT_WRITE || err == SSL_ERROR_WANT_READ);
+    (void)jcl;
 
-        (*jenv)->ReleaseByteArrayElements(jenv, raw, (jbyte*)data, JNI_COMMIT);
+    if (jenv == NULL || sslPtr <= 0 || buf == NULL || position < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
     }
+    ssl = (WOLFSSL*)(uintptr_t)sslPtr;
 
-    return size;
+    /* wolfSSL decrypts straight into direct buffer memory */
+    data = (byte*)(*jenv)->GetDirectBufferAddress(jenv, buf);
+    capacity = (*jenv)->GetDirectBufferCapacity(jenv, buf);
+    if (data == NULL || capacity < 0 ||
+        (jlong)position + (jlong)length > capacity) {
+        return BAD_FUNC_ARG;
+    }
+
+    return SSLReadNonblockingWithPoll(ssl, data + position, length,
+                                      timeout);
 }
 
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_accept
-  (JNIEnv* jenv, jobject jcl, jlong sslPtr)
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jint timeout)
 {
     int ret = 0, err, sockfd;
     WOLFSSL* ssl = NULL;
     wolfSSL_Mutex* jniSessLock = NULL;
+    long long deadline = 0;
 
     (void)jcl;
 
@@ -757,6 +955,10 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_accept
         return SSL_FAILURE;
     }
 
+    if (timeout > 0) {
+        deadline = monotonicMs() + timeout;
+    }
+
     do {
         /* get I/O lock */
         if (wc_LockMutex(jniSessLock) != 0) {
@@ -779,16 +981,21 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_accept
             sockfd = wolfSSL_get_fd(ssl);
             if (sockfd == -1) {
                 /* For I/O that does not use sockets, sockfd may be -1,
-                 * skip try to call select() */
+                 * skip try to call poll() */
                 break;
             }
 
-            ret = socketSelect(sockfd, 0, 1);
+            ret = socketSelect(sockfd, timeoutRemaining(timeout, deadline),
+                               (err == SSL_ERROR_WANT_READ));
             if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
                 /* I/O ready, continue handshake and try again */
                 continue;
+            } else if (ret == WOLFJNI_TIMEOUT) {
+                ret = WOLFJNI_IO_EVENT_TIMEOUT;
+                break;
             } else {
-                /* error or timeout */
+                /* error during poll */
+                ret = SSL_FATAL_ERROR;
                 break;
             }
         }
@@ -907,11 +1114,11 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_shutdownSSL
             sockfd = wolfSSL_get_fd(ssl);
             if (sockfd == -1) {
                 /* For I/O that does not use sockets, sockfd may be -1,
-                 * skip try to call select() */
+                 * skip try to call poll() */
                 break;
             }
 
-            ret = socketSelect(sockfd, 0, 1);
+            ret = socketSelect(sockfd, 0, (err == SSL_ERROR_WANT_READ));
             if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
                 /* I/O ready, continue handshake and try again */
                 continue;
@@ -1373,6 +1580,70 @@ JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLSession_getPeerCertificate
 #endif
 }
 
+JNIEXPORT jobjectArray JNICALL Java_com_wolfssl_WolfSSLSession_getPeerCertChain
+  (JNIEnv* jenv, jobject jcl, jlong ssl)
+{
+#ifdef SESSION_CERTS
+    WOLFSSL_X509_CHAIN* chain;
+    jclass       byteArrCls;
+    jobjectArray ret;
+    jbyteArray   der;
+    int          count, sz, i;
+    (void)jcl;
+
+    if (ssl == 0) {
+        return NULL;
+    }
+
+    chain = wolfSSL_get_peer_chain((WOLFSSL*)(uintptr_t)ssl);
+    if (chain == NULL) {
+        return NULL;
+    }
+
+    count = wolfSSL_get_chain_count(chain);
+    if (count <= 0) {
+        return NULL;
+    }
+
+    byteArrCls = (*jenv)->FindClass(jenv, "[B");
+    if (byteArrCls == NULL) {
+        return NULL;
+    }
+
+    ret = (*jenv)->NewObjectArray(jenv, count, byteArrCls, NULL);
+    (*jenv)->DeleteLocalRef(jenv, byteArrCls);
+    if (ret == NULL) {
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        sz = wolfSSL_get_chain_length(chain, i);
+        der = (*jenv)->NewByteArray(jenv, sz);
+        if (der == NULL) {
+            (*jenv)->DeleteLocalRef(jenv, ret);
+            return NULL;
+        }
+        (*jenv)->SetByteArrayRegion(jenv, der, 0, sz,
+                (jbyte*)wolfSSL_get_chain_cert(chain, i));
+        (*jenv)->SetObjectArrayElement(jenv, ret, i, der);
+        (*jenv)->DeleteLocalRef(jenv, der);
+        if ((*jenv)->ExceptionOccurred(jenv)) {
+            (*jenv)->ExceptionDescribe(jenv);
+            (*jenv)->ExceptionClear(jenv);
+            (*jenv)->DeleteLocalRef(jenv, ret);
+            return NULL;
+        }
+    }
+
+    return ret;
+#else
+    (void)jenv;
+    (void)jcl;
+    (void)ssl;
+    return NULL;
+#endif
+}
+
 JNIEXPORT jstring JNICALL Java_com_wolfssl_WolfSSLSession_getPeerX509Issuer
   (JNIEnv* jenv, jobject jcl, jlong ssl, jlong x509)
 {
@@ -1972,6 +2243,7 @@ void NativeMissingCRLCallback(const char* url)
 {
     JNIEnv*   jenv;
     jint      vmret  = 0;
+    int       needsDetach = 0;
     jclass    excClass;
     jmethodID crlMethod;
     jobjectRefType refcheck;
@@ -1979,11 +2251,7 @@ void NativeMissingCRLCallback(const char* url)
     /* get JNIEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             printf("Failed to attach JNIEnv to thread\n");
         }
@@ -1991,44 +2259,21 @@ void NativeMissingCRLCallback(const char* url)
         printf("Unable to get JNIEnv from JavaVM\n");
     }
 
-    /* find exception class */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        return;
-    }
+    /* cached exception class */
+    excClass = g_sslExcClass;
 
     /* check if our stored object reference is valid */
     refcheck = (*jenv)->GetObjectRefType(jenv, g_crlCbIfaceObj);
     if (refcheck == 2) {
 
-        /* lookup WolfSSLMissingCRLCallback class from global object ref */
-        jclass crlClass = (*jenv)->GetObjectClass(jenv, g_crlCbIfaceObj);
-        if (!crlClass) {
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Can't get native WolfSSLMissingCRLCallback class reference");
-            return;
-        }
-
-        crlMethod = (*jenv)->GetMethodID(jenv, crlClass,
-                                            "missingCRLCallback",
-                                            "(Ljava/lang/String;)V");
-        if (crlMethod == 0) {
-            if ((*jenv)->ExceptionOccurred(jenv)) {
-                (*jenv)->ExceptionDescribe(jenv);
-                (*jenv)->ExceptionClear(jenv);
-            }
-
-            (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting missingCRLCallback method from JNI");
-            return;
-        }
+        /* interface method ID cached in JNI_OnLoad */
+        crlMethod = g_crlCbMethodId;
 
         /* create jstring from char* */
         jstring missingUrl = (*jenv)->NewStringUTF(jenv, url);
 
         (*jenv)->CallVoidMethod(jenv, g_crlCbIfaceObj, crlMethod, missingUrl);
+        (*jenv)->DeleteLocalRef(jenv, missingUrl);
 
         if ((*jenv)->ExceptionOccurred(jenv)) {
             (*jenv)->ExceptionDescribe(jenv);
@@ -2044,6 +2289,7 @@ void NativeMissingCRLCallback(const char* url)
 
         (*jenv)->ThrowNew(jenv, excClass,
                 "Object reference invalid in NativeMissingCRLCallback");
+        ReleaseJNIEnv(jenv, needsDetach);
     }
 }
 
@@ -3347,6 +3593,46 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSNI
 
 }
 
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useOCSPStapling
+  (JNIEnv* jenv, jobject jcl, jlong ssl, jint type, jint options)
+{
+    (void)jenv;
+    (void)jcl;
+#if defined(HAVE_OCSP) && defined(HAVE_CERTIFICATE_STATUS_REQUEST)
+    if (ssl <= 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    return (jint)wolfSSL_UseOCSPStapling((WOLFSSL*)(uintptr_t)ssl,
+                                         (byte)type, (byte)options);
+#else
+    (void)ssl;
+    (void)type;
+    (void)options;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useOCSPStaplingV2
+  (JNIEnv* jenv, jobject jcl, jlong ssl, jint type, jint options)
+{
+    (void)jenv;
+    (void)jcl;
+#if defined(HAVE_OCSP) && defined(HAVE_CERTIFICATE_STATUS_REQUEST_V2)
+    if (ssl <= 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    return (jint)wolfSSL_UseOCSPStaplingV2((WOLFSSL*)(uintptr_t)ssl,
+                                           (byte)type, (byte)options);
+#else
+    (void)ssl;
+    (void)type;
+    (void)options;
+    return NOT_COMPILED_IN;
+#endif
+}
+
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSessionTicket
   (JNIEnv* jenv, jobject jcl, jlong ssl)
 {
@@ -3366,6 +3652,284 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSessionTicket
     return ret;
 }
 
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_hasSessionTicket
+  (JNIEnv* jenv, jobject jcl, jlong ssl)
+{
+    (void)jenv;
+    (void)jcl;
+#if defined(HAVE_SESSION_TICKET) && !defined(NO_WOLFSSL_CLIENT)
+    unsigned char* ticket;
+    unsigned int sz = 0;
+    int ret;
+
+    if (ssl <= 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    /* query ticket length only, no copy needed to check for a ticket */
+    ret = wolfSSL_get_SessionTicket((WOLFSSL*)(uintptr_t)ssl, NULL, &sz);
+    if (ret == LENGTH_ONLY_E) {
+        return (sz > 0) ? 1 : 0;
+    }
+
+    /* older wolfSSL without length query, copy into buffer large enough
+     * for any ticket length (16 bits). sz is set to 0 if no ticket. */
+    sz = 0xFFFF;
+    ticket = (unsigned char*)XMALLOC(sz, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (ticket == NULL) {
+        return MEMORY_E;
+    }
+    ret = wolfSSL_get_SessionTicket((WOLFSSL*)(uintptr_t)ssl, ticket, &sz);
+    XFREE(ticket, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+
+    if (ret != SSL_SUCCESS) {
+        return 0;
+    }
+
+    return (sz > 0) ? 1 : 0;
+#else
+    (void)ssl;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_setMaxEarlyData
+  (JNIEnv* jenv, jobject jcl, jlong ssl, jint sz)
+{
+    (void)jenv;
+    (void)jcl;
+#ifdef WOLFSSL_EARLY_DATA
+    if (ssl <= 0 || sz < 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    return wolfSSL_set_max_early_data((WOLFSSL*)(uintptr_t)ssl,
+                                      (unsigned int)sz);
+#else
+    (void)ssl;
+    (void)sz;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+#ifdef WOLFSSL_EARLY_DATA
+
+/* Write (write != 0) or read early data, holding the per-session I/O lock
+ * around each attempt and polling the socket when it is not ready, the same
+ * way as SSLWriteNonblockingWithPoll(). Returns the number of bytes written
+ * or read, WOLFJNI_IO_EVENT_TIMEOUT if the timeout expired, otherwise the
+ * wolfSSL return value. */
+static int SSLEarlyDataWithPoll(WOLFSSL* ssl, byte* data, int sz,
+                                int timeout, int write)
+{
+    int ret = SSL_FAILURE, err, sockfd, outSz = 0;
+    wolfSSL_Mutex* jniSessLock = NULL;
+    long long deadline = 0;
+
+    jniSessLock = (wolfSSL_Mutex*)wolfSSL_get_app_data(ssl);
+    if (jniSessLock == NULL) {
+        return SSL_FAILURE;
+    }
+
+    if (timeout > 0) {
+        deadline = monotonicMs() + timeout;
+    }
+
+    do {
+        if (wc_LockMutex(jniSessLock) != 0) {
+            ret = WOLFSSL_FAILURE;
+            break;
+        }
+
+        outSz = 0;
+        if (write) {
+            ret = wolfSSL_write_early_data(ssl, data, sz, &outSz);
+        }
+        else {
+            ret = wolfSSL_read_early_data(ssl, data, sz, &outSz);
+        }
+        err = wolfSSL_get_error(ssl, ret);
+
+        if (wc_UnLockMutex(jniSessLock) != 0) {
+            ret = WOLFSSL_FAILURE;
+            break;
+        }
+
+        if (ret >= 0) {
+            /* data written or read, or no (more) early data */
+            ret = outSz;
+            break;
+        }
+
+        if (err == SSL_ERROR_WANT_READ || err == SSL_ERROR_WANT_WRITE) {
+            sockfd = wolfSSL_get_fd(ssl);
+            if (sockfd == -1) {
+                break;
+            }
+
+            ret = socketSelect(sockfd, timeoutRemaining(timeout, deadline),
+                               (err == SSL_ERROR_WANT_READ));
+            if (ret == WOLFJNI_RECV_READY || ret == WOLFJNI_SEND_READY) {
+                continue;
+            } else if (ret == WOLFJNI_TIMEOUT) {
+                ret = WOLFJNI_IO_EVENT_TIMEOUT;
+                break;
+            } else {
+                ret = WOLFSSL_FAILURE;
+                break;
+            }
+        }
+
+    } while (err == SSL_ERROR_WANT_WRITE || err == SSL_ERROR_WANT_READ);
+
+    return ret;
+}
+
+#endif /* WOLFSSL_EARLY_DATA */
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_writeEarlyData
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint offset,
+   jint length, jint timeout)
+{
+    (void)jcl;
+#if defined(WOLFSSL_EARLY_DATA) && !defined(NO_WOLFSSL_CLIENT)
+    byte* data;
+    int ret;
+
+    if (jenv == NULL || sslPtr <= 0 || raw == NULL || offset < 0 ||
+        length < 0 || offset > (*jenv)->GetArrayLength(jenv, raw) - length) {
+        return BAD_FUNC_ARG;
+    }
+
+    data = (byte*)XMALLOC(length + 1, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (data == NULL) {
+        return SSL_FAILURE;
+    }
+
+    (*jenv)->GetByteArrayRegion(jenv, raw, offset, length, (jbyte*)data);
+    if ((*jenv)->ExceptionOccurred(jenv)) {
+        (*jenv)->ExceptionDescribe(jenv);
+        (*jenv)->ExceptionClear(jenv);
+        XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+        return SSL_FAILURE;
+    }
+
+    ret = SSLEarlyDataWithPoll((WOLFSSL*)(uintptr_t)sslPtr, data, length,
+                               timeout, 1);
+
+    XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+
+    return ret;
+#else
+    (void)jenv;
+    (void)sslPtr;
+    (void)raw;
+    (void)offset;
+    (void)length;
+    (void)timeout;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_readEarlyData
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jbyteArray raw, jint offset,
+   jint sz, jint timeout)
+{
+    (void)jcl;
+#if defined(WOLFSSL_EARLY_DATA) && !defined(NO_WOLFSSL_SERVER)
+    byte* data;
+    int size;
+
+    if (jenv == NULL || sslPtr <= 0 || raw == NULL || offset < 0 ||
+        sz < 0 || offset > (*jenv)->GetArrayLength(jenv, raw) - sz) {
+        return BAD_FUNC_ARG;
+    }
+
+    data = (byte*)XMALLOC(sz + 1, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (data == NULL) {
+        return SSL_FAILURE;
+    }
+
+    size = SSLEarlyDataWithPoll((WOLFSSL*)(uintptr_t)sslPtr, data, sz,
+                                timeout, 0);
+
+    /* copy back only the bytes actually read */
+    if (size > 0) {
+        (*jenv)->SetByteArrayRegion(jenv, raw, offset, size, (jbyte*)data);
+        if ((*jenv)->ExceptionOccurred(jenv)) {
+            (*jenv)->ExceptionDescribe(jenv);
+            (*jenv)->ExceptionClear(jenv);
+            size = SSL_FAILURE;
+        }
+    }
+
+    XFREE(data, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+
+    return size;
+#else
+    (void)jenv;
+    (void)sslPtr;
+    (void)raw;
+    (void)offset;
+    (void)sz;
+    (void)timeout;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_getEarlyDataStatus
+  (JNIEnv* jenv, jobject jcl, jlong ssl)
+{
+    (void)jenv;
+    (void)jcl;
+#if defined(WOLFSSL_EARLY_DATA) && defined(LIBWOLFSSL_VERSION_HEX) && \
+    LIBWOLFSSL_VERSION_HEX >= 0x05002000
+    if (ssl <= 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    return wolfSSL_get_early_data_status((WOLFSSL*)(uintptr_t)ssl);
+#else
+    (void)ssl;
+    return NOT_COMPILED_IN;
+#endif
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_setServerID
+  (JNIEnv* jenv, jobject jcl, jlong ssl, jbyteArray id, jint newSession)
+{
+    int ret = SSL_FAILURE;
+    (void)jcl;
+#ifndef NO_CLIENT_CACHE
+    byte* idBuf = NULL;
+    int idSz = 0;
+
+    if (jenv == NULL || ssl <= 0 || id == NULL) {
+        return BAD_FUNC_ARG;
+    }
+
+    idBuf = (byte*)(*jenv)->GetByteArrayElements(jenv, id, NULL);
+    if (idBuf == NULL) {
+        return MEMORY_E;
+    }
+    idSz = (*jenv)->GetArrayLength(jenv, id);
+
+    if (idSz > 0) {
+        ret = wolfSSL_SetServerID((WOLFSSL*)(uintptr_t)ssl, idBuf, idSz,
+                                  (int)newSession);
+    }
+
+    (*jenv)->ReleaseByteArrayElements(jenv, id, (jbyte*)idBuf, JNI_ABORT);
+#else
+    (void)jenv;
+    (void)ssl;
+    (void)id;
+    (void)newSession;
+    ret = NOT_COMPILED_IN;
+#endif
+    return ret;
+}
+
 /* return 1 if last alert received was a close_notify alert, otherwise 0 */
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_gotCloseNotify
   (JNIEnv* jenv, jobject jcl, jlong ssl)
@@ -3500,7 +4064,6 @@ int NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sslClass;              /* WolfSSLSession class */
     jmethodID  recvCbMethodId;        /* internalIORecvCallback ID */
     jbyteArray inData;
 
@@ -3512,28 +4075,16 @@ int NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)(uintptr_t)ssl);
@@ -3541,45 +4092,20 @@ int NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeSSLIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
-    /* lookup WolfSSLSession class from object */
-    sslClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sslClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference in "
-            "NativeSSLIORecvCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
     /* call internal I/O recv callback */
-    recvCbMethodId = (*jenv)->GetMethodID(jenv, sslClass,
-            "internalIOSSLRecvCallback",
-            "(Lcom/wolfssl/WolfSSLSession;[BI)I");
-    if (!recvCbMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Error getting internalIORecvCallback method from JNI");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    recvCbMethodId = g_sessIORecvMethodId;
 
-    /* create jbyteArray to hold received data */
-    inData = (*jenv)->NewByteArray(jenv, sz);
+    /* get reusable per-session jbyteArray to hold received data */
+    inData = GetSessionScratchArray(jenv, (jobject)(*g_cachedSSLObj),
+            g_sessIORecvBufFid, sz);
     if (!inData) {
         (*jenv)->ThrowNew(jenv, excClass,
             "Error getting internalIORecvCallback method from JNI");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
@@ -3592,8 +4118,14 @@ int NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ExceptionDescribe(jenv);
         (*jenv)->ExceptionClear(jenv);
         (*jenv)->DeleteLocalRef(jenv, inData);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    /* scratch array may be larger than buf, don't copy past sz */
+    if (retval > sz) {
+        (*jenv)->DeleteLocalRef(jenv, inData);
+        ReleaseJNIEnv(jenv, needsDetach);
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
@@ -3605,16 +4137,14 @@ int NativeSSLIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionDescribe(jenv);
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, inData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
     }
 
     /* delete local refs, detach JNIEnv from thread */
     (*jenv)->DeleteLocalRef(jenv, inData);
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
@@ -3652,7 +4182,6 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     int        needsDetach = 0;       /* Should we explicitly detach? */
 
     static jobject* g_cachedSSLObj;   /* WolfSSLSession cached object */
-    jclass     sslClass;              /* WolfSSLSession class */
     jmethodID  sendCbMethodId;        /* internalIOSendCallback ID */
     jbyteArray outData;               /* jbyteArray for data to send */
 
@@ -3664,28 +4193,16 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     /* get JavaEnv from JavaVM */
     vmret = (int)((*g_vm)->GetEnv(g_vm, (void**) &jenv, JNI_VERSION_1_6));
     if (vmret == JNI_EDETACHED) {
-#ifdef __ANDROID__
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, &jenv, NULL);
-#else
-        vmret = (*g_vm)->AttachCurrentThread(g_vm, (void**) &jenv, NULL);
-#endif
+        vmret = AttachJNIEnv(&jenv, &needsDetach);
         if (vmret) {
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
-        needsDetach = 1;
     } else if (vmret != JNI_OK) {
         return WOLFSSL_CBIO_ERR_GENERAL;
     }
 
-    /* find exception class in case we need it */
-    excClass = (*jenv)->FindClass(jenv, "com/wolfssl/WolfSSLJNIException");
-    if ((*jenv)->ExceptionOccurred(jenv)) {
-        (*jenv)->ExceptionDescribe(jenv);
-        (*jenv)->ExceptionClear(jenv);
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    /* cached exception class in case we need it */
+    excClass = g_jniExcClass;
 
     /* get stored WolfSSLSession jobject */
     g_cachedSSLObj = (jobject*) wolfSSL_get_jobject((WOLFSSL*)(uintptr_t)ssl);
@@ -3693,46 +4210,22 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
         (*jenv)->ThrowNew(jenv, excClass,
                 "Can't get native WolfSSLSession object reference in "
                 "NativeSSLIOSendCb");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
+        ReleaseJNIEnv(jenv, needsDetach);
         return 0;
     }
 
-    /* lookup WolfSSLSession class from object */
-    sslClass = (*jenv)->GetObjectClass(jenv, (jobject)(*g_cachedSSLObj));
-    if (!sslClass) {
-        (*jenv)->ThrowNew(jenv, excClass,
-            "Can't get native WolfSSLSession class reference");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
-
     /* call internal I/O send callback */
-    sendCbMethodId = (*jenv)->GetMethodID(jenv, sslClass,
-            "internalIOSSLSendCallback",
-            "(Lcom/wolfssl/WolfSSLSession;[BI)I");
-    if (!sendCbMethodId) {
-        if ((*jenv)->ExceptionOccurred(jenv)) {
-            (*jenv)->ExceptionDescribe(jenv);
-            (*jenv)->ExceptionClear(jenv);
-        }
-        (*jenv)->ThrowNew(jenv, excClass,
-                "Error getting internalIOSendCallback method from JNI");
-        if (needsDetach)
-            (*g_vm)->DetachCurrentThread(g_vm);
-        return WOLFSSL_CBIO_ERR_GENERAL;
-    }
+    sendCbMethodId = g_sessIOSendMethodId;
 
     if (sz >= 0)
     {
-        /* create jbyteArray to hold received data */
-        outData = (*jenv)->NewByteArray(jenv, sz);
+        /* get reusable per-session jbyteArray to hold data to send */
+        outData = GetSessionScratchArray(jenv, (jobject)(*g_cachedSSLObj),
+                g_sessIOSendBufFid, sz);
         if (!outData) {
             (*jenv)->ThrowNew(jenv, excClass,
                     "Error getting internalIOSendCallback method from JNI");
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -3741,8 +4234,7 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionDescribe(jenv);
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, outData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -3755,8 +4247,7 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
             (*jenv)->ExceptionDescribe(jenv);
             (*jenv)->ExceptionClear(jenv);
             (*jenv)->DeleteLocalRef(jenv, outData);
-            if (needsDetach)
-                (*g_vm)->DetachCurrentThread(g_vm);
+            ReleaseJNIEnv(jenv, needsDetach);
             return WOLFSSL_CBIO_ERR_GENERAL;
         }
 
@@ -3765,10 +4256,373 @@ int NativeSSLIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
     }
 
     /* detach JNIEnv from thread */
-    if (needsDetach)
-        (*g_vm)->DetachCurrentThread(g_vm);
+    ReleaseJNIEnv(jenv, needsDetach);
 
     return retval;
 }
 
+/* Native memory I/O, used by WolfSSLEngine to feed and drain TLS records
+ * without a JNI upcall per record. Incoming records are appended to rxBuf
+ * by the Java layer and consumed by wolfSSL from rxIdx. Outgoing records
+ * are appended to txBuf by wolfSSL and removed by the Java layer. Buffers
+ * grow as needed and are kept for reuse. Callers serialize access. */
+typedef struct SSLMemIO {
+    byte* rxBuf;
+    int   rxCap;
+    int   rxIdx;   /* next byte to be read by wolfSSL */
+    int   rxSz;    /* total bytes in rxBuf */
+    byte* txBuf;
+    int   txCap;
+    int   txSz;    /* bytes waiting to be sent */
+} SSLMemIO;
+
+/* make sure buf can hold need bytes, keeping first used bytes. Capacity
+ * doubles, but is limited to need if doubling would overflow an int.
+ * return 0 on success, -1 on bad argument or memory error */
+static int MemIOGrow(byte** buf, int* cap, int used, int need)
+{
+    int newCap;
+    byte* tmp;
+
+    if (need < 0) {
+        return -1;
+    }
+    if (need <= *cap) {
+        return 0;
+    }
+
+    newCap = (*cap > 0) ? *cap : need;
+    while (newCap < need) {
+        if (newCap > INT_MAX / 2) {
+            newCap = need;
+            break;
+        }
+        newCap *= 2;
+    }
+
+    tmp = (byte*)XMALLOC(newCap, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    if (tmp == NULL) {
+        return -1;
+    }
+    if (*buf != NULL) {
+        if (used > 0) {
+            XMEMCPY(tmp, *buf, used);
+        }
+        XFREE(*buf, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    }
+    *buf = tmp;
+    *cap = newCap;
 
+    return 0;
+}
+
+int NativeMemIORecvCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
+{
+    SSLMemIO* memio = (SSLMemIO*)ctx;
+    int avail;
+
+    if (!ssl || !buf || !memio) {
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    avail = memio->rxSz - memio->rxIdx;
+    if (avail <= 0) {
+        return WOLFSSL_CBIO_ERR_WANT_READ;
+    }
+    if (sz > avail) {
+        sz = avail;
+    }
+
+    XMEMCPY(buf, memio->rxBuf + memio->rxIdx, sz);
+    memio->rxIdx += sz;
+    if (memio->rxIdx == memio->rxSz) {
+        memio->rxIdx = 0;
+        memio->rxSz = 0;
+    }
+
+    return sz;
+}
+
+int NativeMemIOSendCb(WOLFSSL *ssl, char *buf, int sz, void *ctx)
+{
+    SSLMemIO* memio = (SSLMemIO*)ctx;
+
+    if (!ssl || !buf || !memio || sz < 0) {
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    /* txSz + sz would overflow */
+    if (sz > INT_MAX - memio->txSz) {
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    if (MemIOGrow(&memio->txBuf, &memio->txCap, memio->txSz,
+                  memio->txSz + sz) != 0) {
+        return WOLFSSL_CBIO_ERR_GENERAL;
+    }
+
+    XMEMCPY(memio->txBuf + memio->txSz, buf, sz);
+    memio->txSz += sz;
+
+    return sz;
+}
+
+/* make room for sz more bytes at rxBuf + rxSz in memio receive buffer.
+ * Does not add the bytes, caller copies them and increases rxSz.
+ * return 0 on success, SSL_FAILURE on overflow or memory error */
+static int MemIOReserveInput(SSLMemIO* memio, int sz)
+{
+    int pending;
+
+    /* pending + sz would overflow */
+    pending = memio->rxSz - memio->rxIdx;
+    if (sz > INT_MAX - pending) {
+        return SSL_FAILURE;
+    }
+
+    /* move unread bytes to front before growing */
+    if (memio->rxIdx > 0 && sz > memio->rxCap - memio->rxSz) {
+        XMEMMOVE(memio->rxBuf, memio->rxBuf + memio->rxIdx, pending);
+        memio->rxIdx = 0;
+        memio->rxSz = pending;
+    }
+
+    if (MemIOGrow(&memio->rxBuf, &memio->rxCap, memio->rxSz,
+                  memio->rxSz + sz) != 0) {
+        return SSL_FAILURE;
+    }
+
+    return 0;
+}
+
+/* add sz bytes from in to memio receive buffer, returns sz on success */
+static int MemIOAddInput(SSLMemIO* memio, const byte* in, int sz)
+{
+    if (MemIOReserveInput(memio, sz) != 0) {
+        return SSL_FAILURE;
+    }
+
+    XMEMCPY(memio->rxBuf + memio->rxSz, in, sz);
+    memio->rxSz += sz;
+
+    return sz;
+}
+
+/* move up to sz bytes from memio send buffer to out, returns bytes moved */
+static int MemIOGetOutput(SSLMemIO* memio, byte* out, int sz)
+{
+    if (sz > memio->txSz) {
+        sz = memio->txSz;
+    }
+    if (sz <= 0) {
+        return 0;
+    }
+
+    XMEMCPY(out, memio->txBuf, sz);
+    memio->txSz -= sz;
+    if (memio->txSz > 0) {
+        XMEMMOVE(memio->txBuf, memio->txBuf + sz, memio->txSz);
+    }
+
+    return sz;
+}
+
+JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLSession_useMemoryIO
+  (JNIEnv* jenv, jobject jcl, jlong sslPtr, jint initialSz)
+{
+    SSLMemIO* memio;
+    WOLFSSL* ssl = (WOLFSSL*)(uintptr_t)sslPtr;
+    (void)jenv;
+    (void)jcl;
+
+    if (ssl == NULL || initialSz < 0) {
+        return 0;
+    }
+
+    memio = (SSLMemIO*)XMALLOC(sizeof(SSLMemIO), NULL,
+                               DYNAMIC_TYPE_TMP_BUFFER);
+    if (memio == NULL) {
+        return 0;
+    }
+    XMEMSET(memio, 0, sizeof(SSLMemIO));
+
+    if (initialSz > 0) {
+        if (MemIOGrow(&memio->rxBuf, &memio->rxCap, 0, initialSz) != 0 ||
+            MemIOGrow(&memio->txBuf, &memio->txCap, 0, initialSz) != 0) {
+            if (memio->rxBuf != NULL) {
+                XFREE(memio->rxBuf, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+            }
+            XFREE(memio, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+            return 0;
+        }
+    }
+
+    wolfSSL_SSLSetIORecv(ssl, NativeMemIORecvCb);
+    wolfSSL_SSLSetIOSend(ssl, NativeMemIOSendCb);
+    wolfSSL_SetIOReadCtx(ssl, memio);
+    wolfSSL_SetIOWriteCtx(ssl, memio);
+
+    return (jlong)(uintptr_t)memio;
+}
+
+JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLSession_freeMemoryIO
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr)
+{
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jenv;
+    (void)jcl;
+
+    if (memio == NULL) {
+        return;
+    }
+
+    if (memio->rxBuf != NULL) {
+        XFREE(memio->rxBuf, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    }
+    if (memio->txBuf != NULL) {
+        XFREE(memio->txBuf, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+    }
+    XFREE(memio, NULL, DYNAMIC_TYPE_TMP_BUFFER);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOAddInput__J_3BII
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr, jbyteArray in, jint offset,
+   jint length)
+{
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jcl;
+
+    if (jenv == NULL || memio == NULL || in == NULL || offset < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
+    }
+    if (offset > (*jenv)->GetArrayLength(jenv, in) - length) {
+        return BAD_FUNC_ARG;
+    }
+    if (length == 0) {
+        return 0;
+    }
+
+    /* grow first, then copy straight into receive buffer, no native
+     * allocation while holding a pinned or critical array */
+    if (MemIOReserveInput(memio, length) != 0) {
+        return SSL_FAILURE;
+    }
+
+    (*jenv)->GetByteArrayRegion(jenv, in, offset, length,
+                                (jbyte*)(memio->rxBuf + memio->rxSz));
+    if ((*jenv)->ExceptionCheck(jenv)) {
+        (*jenv)->ExceptionClear(jenv);
+        return SSL_FAILURE;
+    }
+    memio->rxSz += length;
+
+    return length;
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOAddInput__JLjava_nio_ByteBuffer_2II
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr, jobject buf, jint position,
+   jint length)
+{
+    byte* data;
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jcl;
+
+    if (jenv == NULL || memio == NULL || buf == NULL || position < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    data = (byte*)(*jenv)->GetDirectBufferAddress(jenv, buf);
+    if (data == NULL ||
+        position > (*jenv)->GetDirectBufferCapacity(jenv, buf) - length) {
+        return BAD_FUNC_ARG;
+    }
+    if (length == 0) {
+        return 0;
+    }
+
+    return MemIOAddInput(memio, data + position, length);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOGetOutput__J_3BII
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr, jbyteArray out, jint offset,
+   jint length)
+{
+    int ret;
+    byte* data;
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jcl;
+
+    if (jenv == NULL || memio == NULL || out == NULL || offset < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
+    }
+    if (offset > (*jenv)->GetArrayLength(jenv, out) - length) {
+        return BAD_FUNC_ARG;
+    }
+    if (length == 0 || memio->txSz == 0) {
+        return 0;
+    }
+
+    data = (byte*)(*jenv)->GetPrimitiveArrayCritical(jenv, out, NULL);
+    if (data == NULL) {
+        return SSL_FAILURE;
+    }
+
+    ret = MemIOGetOutput(memio, data + offset, length);
+
+    (*jenv)->ReleasePrimitiveArrayCritical(jenv, out, data, 0);
+
+    return ret;
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOGetOutput__JLjava_nio_ByteBuffer_2II
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr, jobject buf, jint position,
+   jint length)
+{
+    byte* data;
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jcl;
+
+    if (jenv == NULL || memio == NULL || buf == NULL || position < 0 ||
+        length < 0) {
+        return BAD_FUNC_ARG;
+    }
+
+    data = (byte*)(*jenv)->GetDirectBufferAddress(jenv, buf);
+    if (data == NULL ||
+        position > (*jenv)->GetDirectBufferCapacity(jenv, buf) - length) {
+        return BAD_FUNC_ARG;
+    }
+
+    return MemIOGetOutput(memio, data + position, length);
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOPendingOutput
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr)
+{
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jenv;
+    (void)jcl;
+
+    if (memio == NULL) {
+        return 0;
+    }
+
+    return memio->txSz;
+}
+
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOPendingInput
+  (JNIEnv* jenv, jobject jcl, jlong memioPtr)
+{
+    SSLMemIO* memio = (SSLMemIO*)(uintptr_t)memioPtr;
+    (void)jenv;
+    (void)jcl;
+
+    if (memio == NULL) {
+        return 0;
+    }
+
+    return memio->rxSz - memio->rxIdx;
+}
@@ -82,34 +82,66 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_getFd
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    connect
- * Signature: (J)I
+ * Signature: (JI)I
  */
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_connect
-  (JNIEnv *, jobject, jlong);
+  (JNIEnv *, jobject, jlong, jint);
 
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    write
  * Signature: (J[BI)I
  */
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__J_3BI
   (JNIEnv *, jobject, jlong, jbyteArray, jint);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    write
+ * Signature: (J[BIII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__J_3BIII
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    write
+ * Signature: (JLjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_write__JLjava_nio_ByteBuffer_2III
+  (JNIEnv *, jobject, jlong, jobject, jint, jint, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    read
  * Signature: (J[BI)I
  */
-JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__J_3BI
   (JNIEnv *, jobject, jlong, jbyteArray, jint);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    read
+ * Signature: (J[BIII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__J_3BIII
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    read
+ * Signature: (JLjava/nio/ByteBuffer;III)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_read__JLjava_nio_ByteBuffer_2III
+  (JNIEnv *, jobject, jlong, jobject, jint, jint, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    accept
- * Signature: (J)I
+ * Signature: (JI)I
  */
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_accept
-  (JNIEnv *, jobject, jlong);
+  (JNIEnv *, jobject, jlong, jint);
 
 /*
  * Class:     com_wolfssl_WolfSSLSession
@@ -255,6 +287,14 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_sessionReused
 JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLSession_getPeerCertificate
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    getPeerCertChain
+ * Signature: (J)[[B
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_wolfssl_WolfSSLSession_getPeerCertChain
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    getPeerX509Issuer
@@ -679,6 +719,70 @@ JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLSession_setSSLIORecv
 JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLSession_setSSLIOSend
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    useMemoryIO
+ * Signature: (JI)J
+ */
+JNIEXPORT jlong JNICALL Java_com_wolfssl_WolfSSLSession_useMemoryIO
+  (JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    freeMemoryIO
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLSession_freeMemoryIO
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOAddInput
+ * Signature: (J[BII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOAddInput__J_3BII
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOAddInput
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOAddInput__JLjava_nio_ByteBuffer_2II
+  (JNIEnv *, jobject, jlong, jobject, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOGetOutput
+ * Signature: (J[BII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOGetOutput__J_3BII
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOGetOutput
+ * Signature: (JLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOGetOutput__JLjava_nio_ByteBuffer_2II
+  (JNIEnv *, jobject, jlong, jobject, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOPendingOutput
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOPendingOutput
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    memoryIOPendingInput
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_memoryIOPendingInput
+  (JNIEnv *, jobject, jlong);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    useSNI
@@ -687,6 +791,22 @@ JNIEXPORT void JNICALL Java_com_wolfssl_WolfSSLSession_setSSLIOSend
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSNI
   (JNIEnv *, jobject, jlong, jbyte, jbyteArray);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    useOCSPStapling
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useOCSPStapling
+  (JNIEnv *, jobject, jlong, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    useOCSPStaplingV2
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useOCSPStaplingV2
+  (JNIEnv *, jobject, jlong, jint, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    useSessionTicket
@@ -695,6 +815,54 @@ JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSNI
 JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_useSessionTicket
   (JNIEnv *, jobject, jlong);
 
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    hasSessionTicket
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_hasSessionTicket
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    setMaxEarlyData
+ * Signature: (JI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_setMaxEarlyData
+  (JNIEnv *, jobject, jlong, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    writeEarlyData
+ * Signature: (J[BIII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_writeEarlyData
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    readEarlyData
+ * Signature: (J[BIII)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_readEarlyData
+  (JNIEnv *, jobject, jlong, jbyteArray, jint, jint, jint);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    getEarlyDataStatus
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_getEarlyDataStatus
+  (JNIEnv *, jobject, jlong);
+
+/*
+ * Class:     com_wolfssl_WolfSSLSession
+ * Method:    setServerID
+ * Signature: (J[BI)I
+ */
+JNIEXPORT jint JNICALL Java_com_wolfssl_WolfSSLSession_setServerID
+  (JNIEnv *, jobject, jlong, jbyteArray, jint);
+
 /*
  * Class:     com_wolfssl_WolfSSLSession
  * Method:    gotCloseNotify
@@ -27,6 +27,60 @@
 /* global JavaVM reference for JNIEnv lookup */
 extern JavaVM*  g_vm;
 
+/* class, method and field IDs resolved once in JNI_OnLoad and used by the
+ * native callbacks, to avoid per-call FindClass/GetMethodID lookups */
+extern jclass    g_jniExcClass;            /* WolfSSLJNIException */
+extern jclass    g_sslExcClass;            /* WolfSSLException */
+extern jmethodID g_sessGetCtxMethodId;     /* getAssociatedContextPtr() */
+extern jmethodID g_sessIORecvMethodId;     /* internalIOSSLRecvCallback */
+extern jmethodID g_sessIOSendMethodId;     /* internalIOSSLSendCallback */
+extern jfieldID  g_sessIOBufReuseFid;      /* WolfSSLSession.ioBufferReuse */
+extern jfieldID  g_sessIORecvBufFid;       /* WolfSSLSession.ioRecvBuf */
+extern jfieldID  g_sessIOSendBufFid;       /* WolfSSLSession.ioSendBuf */
+extern jmethodID g_ctxIORecvMethodId;      /* internalIORecvCallback */
+extern jmethodID g_ctxIOSendMethodId;      /* internalIOSendCallback */
+extern jmethodID g_ctxGenCookieMethodId;   /* internalGenCookieCallback */
+extern jmethodID g_ctxTicketEncMethodId;   /* internalSessionTicketCb */
+extern jmethodID g_ctxSessionNewMethodId;  /* internalSessionNewCallback */
+extern jmethodID g_ctxSessionGetMethodId;  /* internalSessionGetCallback */
+extern jmethodID g_ctxMacEncryptMethodId;  /* internalMacEncryptCallback */
+extern jmethodID g_ctxDecryptVerifyMethodId; /* internalDecryptVerifyCallback */
+extern jmethodID g_ctxEccSignMethodId;     /* internalEccSignCallback */
+extern jmethodID g_ctxEccVerifyMethodId;   /* internalEccVerifyCallback */
+extern jmethodID g_ctxEccSharedSecretMethodId; /* internalEccSharedSecretCb */
+extern jmethodID g_ctxRsaSignMethodId;     /* internalRsaSignCallback */
+extern jmethodID g_ctxRsaVerifyMethodId;   /* internalRsaVerifyCallback */
+extern jmethodID g_ctxRsaEncMethodId;      /* internalRsaEncCallback */
+extern jmethodID g_ctxRsaDecMethodId;      /* internalRsaDecCallback */
+extern jclass    g_ctxClass;               /* WolfSSLContext */
+extern jmethodID g_ctxOCSPIOMethodId;      /* internalOCSPIOCallback */
+extern jmethodID g_verifyCbMethodId;       /* WolfSSLVerifyCallback */
+extern jmethodID g_crlCbMethodId;          /* WolfSSLMissingCRLCallback */
+
+/* returns byte array for I/O callback data of sz bytes. If reuse was enabled
+ * with WolfSSLSession.setIOBufferReuse(), returns per-session scratch array
+ * of at least sz bytes, stored in WolfSSLSession field fid so it can be
+ * reused by later callbacks */
+jbyteArray GetSessionScratchArray(JNIEnv* jenv, jobject sessObj,
+                                  jfieldID fid, int sz);
+
+/* needsDetach values set by AttachJNIEnv(), 0 means a Java thread */
+#define JNIENV_DETACH    1   /* caller must detach when done */
+#define JNIENV_ATTACHED  2   /* native thread kept attached until it exits */
+
+/* attaches calling native thread to the JVM. Threads stay attached and are
+ * detached by a thread-local destructor when they exit, so callbacks invoked
+ * repeatedly from the same native thread only pay for attach once.
+ * needsDetach (if not NULL) is set to JNIENV_ATTACHED in that case, or to
+ * JNIENV_DETACH when the destructor could not be registered and the caller
+ * must detach itself. returns JNI_OK on success */
+jint AttachJNIEnv(JNIEnv** jenv, int* needsDetach);
+
+/* called by callbacks before returning to native code. On threads attached
+ * by AttachJNIEnv() there is no Java caller to receive a pending exception,
+ * so it is described and cleared, then the thread is detached if needed */
+void ReleaseJNIEnv(JNIEnv* jenv, int needsDetach);
+
 /* struct to hold I/O class, object refs */
 typedef struct {
     int active;
@@ -22,6 +22,7 @@
 package com.wolfssl;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.net.Socket;
 
 /**
@@ -118,11 +119,26 @@ public class WolfSSL {
     public final static int SSL_ERROR_SSL              = 85;
     public final static int SSL_ERROR_SOCKET_PEER_CLOSED = -397;
 
+    /**
+     * Returned by WolfSSLSession read(), write(), connect() and accept()
+     * variants that take a timeout, when the underlying socket did not
+     * become ready before the timeout expired. This is a wolfSSL JNI
+     * status, not a native wolfSSL error code.
+     */
+    public final static int WOLFJNI_IO_EVENT_TIMEOUT = -11;
+
     /* extra definitions from ssl.h */
     public final static int WOLFSSL_CRL_CHECKALL      = 1;
     public final static int WOLFSSL_OCSP_URL_OVERRIDE = 1;
     public final static int WOLFSSL_OCSP_NO_NONCE     = 2;
 
+    /* certificate status request (OCSP stapling) types and options */
+    public final static int WOLFSSL_CSR_OCSP             = 1;
+    public final static int WOLFSSL_CSR_OCSP_USE_NONCE   = 0x01;
+    public final static int WOLFSSL_CSR2_OCSP            = 1;
+    public final static int WOLFSSL_CSR2_OCSP_MULTI      = 2;
+    public final static int WOLFSSL_CSR2_OCSP_USE_NONCE  = 0x01;
+
     /* I/O callback default errors, pulled from wolfssl/ssl.h IOerrors */
     public final static int WOLFSSL_CBIO_ERR_GENERAL    = -1;
     public final static int WOLFSSL_CBIO_ERR_WANT_READ  = -2;
@@ -214,6 +230,40 @@ public class WolfSSL {
     /** No password provided by user */
     public final static int NO_PASSWORD     = -176;
 
+    /* ------------------ session ticket callback ------------------------ */
+
+    /** Session ticket callback: fatal error, abort handshake */
+    public final static int WOLFSSL_TICKET_RET_FATAL  = -1;
+
+    /** Session ticket callback: success */
+    public final static int WOLFSSL_TICKET_RET_OK     = 0;
+
+    /** Session ticket callback: ticket not accepted, do full handshake */
+    public final static int WOLFSSL_TICKET_RET_REJECT = 1;
+
+    /** Session ticket callback: ticket accepted, send a new ticket */
+    public final static int WOLFSSL_TICKET_RET_CREATE = 2;
+
+    /** Size of session ticket key name, in bytes */
+    public final static int WOLFSSL_TICKET_NAME_SZ = 16;
+
+    /** Size of session ticket IV, in bytes */
+    public final static int WOLFSSL_TICKET_IV_SZ   = 16;
+
+    /** Size of session ticket MAC, in bytes */
+    public final static int WOLFSSL_TICKET_MAC_SZ  = 32;
+
+    /* ------------------ TLS 1.3 early data (0-RTT) --------------------- */
+
+    /** Early data status: no early data was sent */
+    public final static int WOLFSSL_EARLY_DATA_NOT_SENT = 0;
+
+    /** Early data status: early data was sent but rejected by server */
+    public final static int WOLFSSL_EARLY_DATA_REJECTED = 1;
+
+    /** Early data status: early data was accepted by server */
+    public final static int WOLFSSL_EARLY_DATA_ACCEPTED = 2;
+
     /* hmac codes, from wolfssl/wolfcrypt/hmac.h */
     public final static int MD5   = 0;
     public final static int SHA   = 1;
@@ -789,6 +839,88 @@ public class WolfSSL {
      */
     public static native int getSessionCacheMemsize();
 
+    private static native int memsaveSessionCacheBuffer(ByteBuffer mem,
+        int position, int sz);
+    private static native int memrestoreSessionCacheBuffer(ByteBuffer mem,
+        int position, int sz);
+
+    /**
+     * Persists session cache to a direct ByteBuffer.
+     * The session cache is written by native wolfSSL straight into the
+     * buffer starting at its current position, without an intermediate
+     * copy. If <b>mem</b> is a MappedByteBuffer, the cache is written
+     * directly to the mapped file. On success the buffer position is
+     * advanced by <code>getSessionCacheMemsize()</code> bytes.
+     *
+     * @param mem   direct buffer to store session cache in
+     * @return      <b><code>SSL_SUCCESS</code></b> on success,
+     *              <b><code>BUFFER_E</code></b> if fewer than
+     *              <code>getSessionCacheMemsize()</code> bytes remain in
+     *              <b>mem</b>, <b><code>BAD_FUNC_ARG</code></b> if
+     *              <b>mem</b> is null or not a direct buffer,
+     *              <b><code>NOT_COMPILED_IN</code></b> if native wolfSSL
+     *              was not compiled with PERSIST_SESSION_CACHE, otherwise
+     *              negative.
+     * @see         #memrestoreSessionCache(ByteBuffer)
+     * @see         #memsaveSessionCache(byte[], int)
+     */
+    public static int memsaveSessionCache(ByteBuffer mem) {
+        int ret;
+        int sz = getSessionCacheMemsize();
+
+        if (mem == null || !mem.isDirect()) {
+            return BAD_FUNC_ARG;
+        }
+        if (sz < 0) {
+            return sz;
+        }
+        if (mem.remaining() < sz) {
+            return BUFFER_E;
+        }
+
+        ret = memsaveSessionCacheBuffer(mem, mem.position(), sz);
+        if (ret == SSL_SUCCESS) {
+            mem.position(mem.position() + sz);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Restores the persistent session cache from a direct ByteBuffer.
+     * The cache is read from the remaining bytes of <b>mem</b>, which
+     * may be a MappedByteBuffer holding a file written with
+     * <code>memsaveSessionCache(ByteBuffer)</code>. On success the buffer
+     * position is advanced to its limit.
+     *
+     * @param mem   direct buffer holding the session cache to restore
+     * @return      <b><code>SSL_SUCCESS</code></b> on success,
+     *              <b><code>CACHE_MATCH_ERROR</code></b> if the saved cache
+     *              does not match how the current library is configured,
+     *              <b><code>BAD_FUNC_ARG</code></b> if <b>mem</b> is null,
+     *              empty or not a direct buffer,
+     *              <b><code>NOT_COMPILED_IN</code></b> if native wolfSSL
+     *              was not compiled with PERSIST_SESSION_CACHE, otherwise
+     *              negative.
+     * @see         #memsaveSessionCache(ByteBuffer)
+     * @see         #memrestoreSessionCache(byte[], int)
+     */
+    public static int memrestoreSessionCache(ByteBuffer mem) {
+        int ret;
+
+        if (mem == null || !mem.isDirect() || mem.remaining() <= 0) {
+            return BAD_FUNC_ARG;
+        }
+
+        ret = memrestoreSessionCacheBuffer(mem, mem.position(),
+            mem.remaining());
+        if (ret == SSL_SUCCESS) {
+            mem.position(mem.limit());
+        }
+
+        return ret;
+    }
+
     /**
      * Strips off PKCS#8 header from byte array.
      * This function starts reading the input array for a PKCS#8 header,
@@ -873,6 +1005,14 @@ public class WolfSSL {
      */
     public static native int isEnabledOCSP();
 
+    /**
+     * Checks if OCSP stapling (certificate status request extension)
+     * support is enabled in wolfSSL native library.
+     *
+     * @return 1 if enabled, 0 if not compiled in
+     */
+    public static native int isEnabledOCSPStapling();
+
     /**
      * Checks if PSK support is enabled in wolfSSL native library.
      *
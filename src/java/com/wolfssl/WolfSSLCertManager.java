@@ -48,6 +48,10 @@ public class WolfSSLCertManager {
                                               int format);
     static native int CertManagerVerifyBuffer(long cm, byte[] in, long sz,
                                               int format);
+    static native int CertManagerEnableCRL(long cm, int options);
+    static native int CertManagerDisableCRL(long cm);
+    static native int CertManagerLoadCRLBuffer(long cm, byte[] in, long sz,
+                                               int type);
 
     public WolfSSLCertManager() throws WolfSSLException {
         cmPtr = CertManagerNew();
@@ -107,8 +111,8 @@ public class WolfSSLCertManager {
                 }
 
                 if (cert != null && cert.getBasicConstraints() >= 0) {
-                    ret = CertManagerLoadCABuffer(cert.getEncoded(),
-                            cert.getEncoded().length,
+                    byte[] der = cert.getEncoded();
+                    ret = CertManagerLoadCABuffer(der, der.length,
                             WolfSSL.SSL_FILETYPE_ASN1);
 
                     if (ret == WolfSSL.SSL_SUCCESS) {
@@ -134,6 +138,54 @@ public class WolfSSLCertManager {
         return CertManagerVerifyBuffer(this.cmPtr, in, sz, format);
     }
 
+    /**
+     * Turns on CRL checking for certificates verified by this CertManager.
+     *
+     * @param options 0 to check the peer certificate only, or
+     *        WolfSSL.WOLFSSL_CRL_CHECKALL to check each certificate
+     *        in the chain
+     * @return WolfSSL.SSL_SUCCESS on success, NOT_COMPILED_IN if native
+     *         wolfSSL was compiled without CRL support, or negative
+     *         error code
+     */
+    public int CertManagerEnableCRL(int options) {
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return CertManagerEnableCRL(this.cmPtr, options);
+    }
+
+    /**
+     * Turns off CRL checking for this CertManager.
+     *
+     * @return WolfSSL.SSL_SUCCESS on success, NOT_COMPILED_IN if native
+     *         wolfSSL was compiled without CRL support
+     */
+    public int CertManagerDisableCRL() {
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return CertManagerDisableCRL(this.cmPtr);
+    }
+
+    /**
+     * Loads a CRL from a buffer into this CertManager. CRL checking must be
+     * turned on with CertManagerEnableCRL().
+     *
+     * @param in buffer containing the CRL
+     * @param sz size of the CRL buffer
+     * @param type WolfSSL.SSL_FILETYPE_PEM or WolfSSL.SSL_FILETYPE_ASN1
+     * @return WolfSSL.SSL_SUCCESS on success, NOT_COMPILED_IN if native
+     *         wolfSSL was compiled without CRL support, or negative
+     *         error code
+     */
+    public int CertManagerLoadCRLBuffer(byte[] in, long sz, int type) {
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return CertManagerLoadCRLBuffer(this.cmPtr, in, sz, type);
+    }
+
     /**
      * Frees CertManager object
      *
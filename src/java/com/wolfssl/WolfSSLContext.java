@@ -21,9 +21,11 @@
 
 package com.wolfssl;
 
+import java.lang.ref.WeakReference;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.nio.ByteBuffer;
 
 import com.wolfssl.wolfcrypt.EccKey;
@@ -51,6 +53,26 @@ public class WolfSSLContext {
     /* user-registered DTLS cookie generation callback */
     private WolfSSLGenCookieCallback internCookieCb = null;
 
+    /* user-registered session ticket encryption callback and context */
+    private WolfSSLSessionTicketCallback internTicketEncCb = null;
+    private Object ticketEncCtx = null;
+
+    /* user-registered OCSP I/O callback */
+    private WolfSSLOCSPIOCallback internOCSPIOCb = null;
+
+    /* true between successful enableOCSP() and disableOCSP() calls */
+    private volatile boolean ocspEnabled = false;
+
+    /* contexts with an OCSP I/O callback, by native WOLFSSL_CTX pointer.
+     * Native wolfSSL does not pass the WOLFSSL to OCSP I/O callbacks, so
+     * the context is found from the pointer given as callback context */
+    private static final ConcurrentHashMap<Long, WeakReference<WolfSSLContext>>
+        ocspIOContexts =
+            new ConcurrentHashMap<Long, WeakReference<WolfSSLContext>>();
+
+    /* user-registered external session cache callback */
+    private WolfSSLSessionCacheCallback internSessionCacheCb = null;
+
     /* user-registered MAC/encrypt and decrypt/verify callbacks */
     private WolfSSLMacEncryptCallback internMacEncryptCb = null;
     private WolfSSLDecryptVerifyCallback internDecryptVerifyCb = null;
@@ -166,6 +188,60 @@ public class WolfSSLContext {
         return ret;
     }
 
+    private int internalSessionTicketCallback(WolfSSLSession ssl,
+            byte[] keyName, byte[] iv, byte[] mac, int enc, byte[] ticket,
+            int inLen, int[] outLen)
+    {
+        WolfSSLSessionTicketCallback cb = internTicketEncCb;
+
+        if (cb == null) {
+            return WolfSSL.WOLFSSL_TICKET_RET_FATAL;
+        }
+
+        /* call user-registered session ticket method */
+        return cb.sessionTicketCallback(ssl, keyName, iv, mac, enc, ticket,
+                inLen, outLen, ticketEncCtx);
+    }
+
+    private static byte[] internalOCSPIOCallback(long ctxPtr, String url,
+            byte[] request)
+    {
+        WeakReference<WolfSSLContext> ref = ocspIOContexts.get(ctxPtr);
+        WolfSSLContext ctx = (ref == null) ? null : ref.get();
+        WolfSSLOCSPIOCallback cb = (ctx == null) ? null : ctx.internOCSPIOCb;
+
+        if (cb == null) {
+            return null;
+        }
+
+        /* call user-registered OCSP I/O method */
+        return cb.ocspIOCallback(url, request);
+    }
+
+    private int internalSessionNewCallback(WolfSSLSession ssl, byte[] id,
+            byte[] session)
+    {
+        WolfSSLSessionCacheCallback cb = internSessionCacheCb;
+
+        if (cb != null) {
+            cb.newSession(ssl, id, session);
+        }
+
+        /* session is not retained by callback */
+        return 0;
+    }
+
+    private byte[] internalSessionGetCallback(WolfSSLSession ssl, byte[] id)
+    {
+        WolfSSLSessionCacheCallback cb = internSessionCacheCb;
+
+        if (cb == null) {
+            return null;
+        }
+
+        return cb.getSession(ssl, id);
+    }
+
     private int internalMacEncryptCallback(WolfSSLSession ssl,
             ByteBuffer macOut, byte[] macIn, long macInSz, int macContent,
             int macVerify, ByteBuffer encOut, ByteBuffer encIn, long encSz)
@@ -329,6 +405,7 @@ public class WolfSSLContext {
     private native int getCertCacheMemsize(long ctx);
     private native long setCacheSize(long ctx, long sz);
     private native long getCacheSize(long ctx);
+    private native int setTimeout(long ctx, long to);
     private native int setCipherList(long ctx, String list);
     private native int loadVerifyBuffer(long ctx, byte[] in, long sz,
             int format);
@@ -343,13 +420,20 @@ public class WolfSSLContext {
     private native void setIORecv(long ctx);
     private native void setIOSend(long ctx);
     private native void setGenCookie(long ctx);
+    private native int setTicketEncCb(long ctx);
+    private native int setTicketHint(long ctx, int hint);
+    private native int setMaxEarlyData(long ctx, int sz);
+    private native int setSessionCacheCb(long ctx);
     private native int enableCRL(long ctx, int options);
     private native int disableCRL(long ctx);
     private native int loadCRL(long ctx, String path, int type, int monitor);
+    private native int loadCRLBuffer(long ctx, byte[] in, long sz, int type);
     private native int setCRLCb(long ctx, WolfSSLMissingCRLCallback cb);
     private native int enableOCSP(long ctx, long options);
     private native int disableOCSP(long ctx);
     private native int setOCSPOverrideUrl(long ctx, String url);
+    private native int setOCSPIOCb(long ctx);
+    private native int enableOCSPStapling(long ctx);
     private native void setMacEncryptCb(long ctx);
     private native void setDecryptVerifyCb(long ctx);
     private native void setEccSignCb(long ctx);
@@ -606,6 +690,7 @@ public class WolfSSLContext {
             throw new IllegalStateException("Object has been freed");
 
         /* free native resources */
+        ocspIOContexts.remove(this.sslCtxPtr);
         freeContext(this.sslCtxPtr);
 
         /* free Java resources */
@@ -736,6 +821,25 @@ public class WolfSSLContext {
         return getCacheSize(getContextPtr());
     }
 
+    /**
+     * Sets the timeout, in seconds, of sessions created from this context.
+     * Sessions older than the timeout can no longer be resumed, on both
+     * the client and server side. Only sessions created after this call
+     * use the new value.
+     *
+     * @param to session timeout in seconds
+     * @return <b><code>SSL_SUCCESS</code></b> on success,
+     *         <b><code>BAD_FUNC_ARG</code></b> if the timeout is negative
+     *         or too large.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     */
+    public int setTimeout(long to) throws IllegalStateException {
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return setTimeout(getContextPtr(), to);
+    }
+
     /**
      * Sets the cipher suite list for a given SSL context.
      * This cipher suite list becomes the default list for any new SSL
@@ -1094,6 +1198,121 @@ public class WolfSSLContext {
         setGenCookie(getContextPtr());
     }
 
+    /**
+     * Registers a server side session ticket encryption callback.
+     * Once registered, a server using this context sends session tickets
+     * to clients that support them, and accepts tickets returned by
+     * clients in later handshakes, encrypting and decrypting them with
+     * the callback. Servers sharing the same ticket keys can resume each
+     * other's sessions without a shared session cache.
+     *
+     * @param callback  method to be registered as the session ticket
+     *                  callback for the wolfSSL context. The signature
+     *                  of this function must follow that as shown in
+     *                  WolfSSLSessionTicketCallback#sessionTicketCallback(
+     *                  WolfSSLSession, byte[], byte[], byte[], int, byte[],
+     *                  int, int[], Object).
+     * @return          WolfSSL.SSL_SUCCESS on success,
+     *                  WolfSSL.NOT_COMPILED_IN if native wolfSSL was not
+     *                  compiled with session ticket support, otherwise
+     *                  negative.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #setTicketEncCtx(Object)
+     * @see    #setTicketHint(int)
+     */
+    public int setTicketEncCb(WolfSSLSessionTicketCallback callback)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        internTicketEncCb = callback;
+
+        /* register internal callback with native library */
+        return setTicketEncCb(getContextPtr());
+    }
+
+    /**
+     * Sets the context object passed to the session ticket callback.
+     *
+     * @param ctx object passed to the callback registered with
+     *            setTicketEncCb()
+     * @throws IllegalStateException WolfSSLContext has been freed
+     */
+    public void setTicketEncCtx(Object ctx) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        this.ticketEncCtx = ctx;
+    }
+
+    /**
+     * Sets the session ticket lifetime hint sent to clients.
+     *
+     * @param hint ticket lifetime hint in seconds
+     * @return     WolfSSL.SSL_SUCCESS on success,
+     *             WolfSSL.NOT_COMPILED_IN if native wolfSSL was not
+     *             compiled with session ticket support, otherwise negative.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     */
+    public int setTicketHint(int hint) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return setTicketHint(getContextPtr(), hint);
+    }
+
+    /**
+     * Sets the maximum amount of TLS 1.3 early data (0-RTT) a server using
+     * this context accepts, and which is advertised in session tickets
+     * issued to clients. A value of 0 disables early data.
+     * <p>
+     * Early data is not protected against replay by the protocol, so
+     * servers should only accept it for requests that are safe to repeat.
+     *
+     * @param sz maximum early data size in bytes, 0 to disable
+     * @return   WolfSSL.SSL_SUCCESS on success,
+     *           WolfSSL.NOT_COMPILED_IN if native wolfSSL was not compiled
+     *           with early data support, otherwise negative.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     */
+    public int setMaxEarlyData(int sz) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return setMaxEarlyData(getContextPtr(), sz);
+    }
+
+    /**
+     * Registers an external session cache callback.
+     * <p>
+     * Once registered, each new session established by a server using
+     * this context is serialized and passed to the callback, and sessions
+     * a client asks to resume that are not in the internal session cache
+     * are looked up with the callback. Processes sharing the same external
+     * cache can resume each other's sessions.
+     *
+     * @param callback  object implementing WolfSSLSessionCacheCallback
+     * @return          WolfSSL.SSL_SUCCESS on success,
+     *                  WolfSSL.NOT_COMPILED_IN if native wolfSSL was not
+     *                  compiled with HAVE_EXT_CACHE, otherwise negative.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     */
+    public int setSessionCacheCb(WolfSSLSessionCacheCallback callback)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        internSessionCacheCb = callback;
+
+        /* register internal callbacks with native library */
+        return setSessionCacheCb(getContextPtr());
+    }
+
     /**
      * Turns on Certificate Revocation List (CRL) checking when
      * verifying certificates for the specified Context.
@@ -1198,6 +1417,38 @@ public class WolfSSLContext {
         return loadCRL(getContextPtr(), path, type, monitor);
     }
 
+    /**
+     * Loads a CRL from a buffer into wolfSSL, using the specified Context.
+     *
+     * This behaves like loadCRL() for a single file, but reads the CRL from
+     * memory instead of the file system. A CRL for the same issuer that is
+     * already loaded is kept alongside or replaced, depending on the native
+     * wolfSSL version. CRL checking must be turned on with enableCRL().
+     *
+     * @param in       buffer containing the CRL
+     * @param sz       size of the CRL buffer, <b>in</b>
+     * @param type     type of CRL, either <b>SSL_FILETYPE_PEM</b> or
+     *                 <b>SSL_FILETYPE_ASN1</b>
+     * @return         <b><code>SSL_SUCCESS</code></b> upon success,
+     *                 <b><code>BAD_FUNC_ARG</code></b> if invalid input
+     *                 arguments are provided, <b><code>MEMORY_E</code></b>
+     *                 if an out of memory condition occurs, a negative
+     *                 ASN error if the CRL cannot be parsed, or
+     *                 <b><code>NOT_COMPILED_IN</code></b> if native wolfSSL
+     *                 was compiled without CRL support.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #enableCRL(int)
+     * @see    #loadCRL(String, int, int)
+     */
+    public int loadCRLBuffer(byte[] in, long sz, int type)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return loadCRLBuffer(getContextPtr(), in, sz, type);
+    }
+
     /**
      * Registers CRL callback to be called when CRL lookup fails, using
      * specified Context.
@@ -1249,10 +1500,17 @@ public class WolfSSLContext {
     public int enableOCSP(long options)
         throws IllegalStateException {
 
+        int ret;
+
         if (this.active == false)
             throw new IllegalStateException("Object has been freed");
 
-        return enableOCSP(getContextPtr(), options);
+        ret = enableOCSP(getContextPtr(), options);
+        if (ret == WolfSSL.SSL_SUCCESS) {
+            this.ocspEnabled = true;
+        }
+
+        return ret;
     }
 
     /**
@@ -1265,10 +1523,30 @@ public class WolfSSLContext {
      */
     public int disableOCSP() throws IllegalStateException {
 
+        int ret;
+
         if (this.active == false)
             throw new IllegalStateException("Object has been freed");
 
-        return disableOCSP(getContextPtr());
+        ret = disableOCSP(getContextPtr());
+        if (ret == WolfSSL.SSL_SUCCESS) {
+            this.ocspEnabled = false;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Check if OCSP lookups of peer certificates are enabled for this
+     * context.
+     *
+     * @return true if OCSP has been enabled with enableOCSP() and not
+     *         disabled since
+     * @see    #enableOCSP(long)
+     * @see    #disableOCSP()
+     */
+    public boolean isOCSPEnabled() {
+        return this.ocspEnabled;
     }
 
     /**
@@ -1297,6 +1575,67 @@ public class WolfSSLContext {
         return setOCSPOverrideUrl(getContextPtr(), url);
     }
 
+    /**
+     * Registers an OCSP I/O callback for this context.
+     * Native wolfSSL calls it with each OCSP request instead of sending
+     * the request itself, both for OCSP lookups of peer certificates and
+     * for fetching the response a server staples to its handshakes.
+     *
+     * @param callback object implementing WolfSSLOCSPIOCallback
+     * @return    <b><code>SSL_SUCCESS</code></b> upon success,
+     *            <b><code>BAD_FUNC_ARG</code></b> if context is null,
+     *            <b><code>NOT_COMPILED_IN</code></b> when this function has
+     *            been called, but OCSP support was not enabled when
+     *            wolfSSL was compiled.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #enableOCSP(long)
+     * @see    #enableOCSPStapling()
+     */
+    public int setOCSPIOCb(WolfSSLOCSPIOCallback callback)
+        throws IllegalStateException {
+
+        int ret;
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        internOCSPIOCb = callback;
+        ret = setOCSPIOCb(getContextPtr());
+        if (ret == WolfSSL.SSL_SUCCESS) {
+            ocspIOContexts.put(getContextPtr(),
+                new WeakReference<WolfSSLContext>(this));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Enable OCSP stapling for this context.
+     * Servers staple an OCSP response for their certificate to handshakes
+     * of clients requesting one. Clients can request stapled responses
+     * per session with WolfSSLSession.useOCSPStapling() and
+     * WolfSSLSession.useOCSPStaplingV2(), and verify received responses
+     * against the trusted CAs of this context.
+     *
+     * @return    <b><code>SSL_SUCCESS</code></b> upon success,
+     *            <b><code>BAD_FUNC_ARG</code></b> if context is null,
+     *            <b><code>MEMORY_E</code></b> upon memory error,
+     *            <b><code>NOT_COMPILED_IN</code></b> when this function has
+     *            been called, but native wolfSSL was compiled without
+     *            certificate status request support.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #setOCSPIOCb(WolfSSLOCSPIOCallback)
+     * @see    WolfSSLSession#useOCSPStapling(int, int)
+     * @see    WolfSSLSession#useOCSPStaplingV2(int, int)
+     */
+    public int enableOCSPStapling() throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return enableOCSPStapling(getContextPtr());
+    }
+
     /**
      * Allows caller to set the Atomic User Record Processing Mac/Encrypt
      * Callback.
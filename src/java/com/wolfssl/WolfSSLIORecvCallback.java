@@ -45,7 +45,10 @@ public interface WolfSSLIORecvCallback {
      *              initiated.
      * @param buf   buffer in which the application should place data which
      *              has been received from the peer.
-     * @param sz    size of buffer, <b>buf</b>
+     * @param sz    size of buffer, <b>buf</b>. If buffer reuse has been
+     *              enabled with WolfSSLSession#setIOBufferReuse(boolean),
+     *              <b>buf</b> may be longer than <b>sz</b> and only the
+     *              first <b>sz</b> bytes should be written.
      * @param ctx   I/O context to be used.
      * @return      the number of bytes read, or an error. For possible error
      *              codes, see the default EmbedRecv() function in
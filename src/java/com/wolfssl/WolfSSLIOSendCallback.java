@@ -45,7 +45,11 @@ public interface WolfSSLIOSendCallback {
      * @param ssl   the current SSL session object from which the callback was
      *              initiated.
      * @param buf   buffer containing data to be sent to the peer.
-     * @param sz    size of data in buffer "<b>buf</b>"
+     * @param sz    size of data in buffer "<b>buf</b>". If buffer reuse
+     *              has been enabled with
+     *              WolfSSLSession#setIOBufferReuse(boolean), <b>buf</b>
+     *              may be longer than <b>sz</b> and only the first
+     *              <b>sz</b> bytes are valid.
      * @param ctx   I/O context to be used.
      * @return      the number of bytes sent, or an error. For possible error
      *              codes, see the default EmbedSend() function in
@@ -0,0 +1,53 @@
+/* WolfSSLOCSPIOCallback.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl;
+
+/**
+ * wolfSSL OCSP I/O Callback Interface.
+ * This interface specifies how applications should implement the callback
+ * native wolfSSL uses to send an OCSP request and receive the response,
+ * instead of its built-in HTTP client. For servers doing OCSP stapling,
+ * this is how the response stapled to a handshake is obtained.
+ * <p>
+ * After implementing this interface, it should be passed as a parameter
+ * to the {@link WolfSSLContext#setOCSPIOCb(WolfSSLOCSPIOCallback)
+ * WolfSSLContext.setOCSPIOCb()} method to be registered with the native
+ * wolfSSL library.
+ *
+ * @author  wolfSSL
+ */
+public interface WolfSSLOCSPIOCallback {
+
+    /**
+     * OCSP I/O callback method.
+     * Called by native wolfSSL, possibly during a handshake, with a DER
+     * encoded OCSPRequest. The callback should return quickly, so
+     * responses are best fetched ahead of time and served from a cache.
+     *
+     * @param url     OCSP responder URL wolfSSL would send the request to,
+     *                either from the certificate or the override URL
+     * @param request DER encoded OCSPRequest
+     * @return        DER encoded OCSPResponse, or null if no response is
+     *                available
+     */
+    public byte[] ocspIOCallback(String url, byte[] request);
+}
@@ -24,6 +24,8 @@ package com.wolfssl;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 
 import com.wolfssl.WolfSSLException;
 import com.wolfssl.WolfSSLJNIException;
@@ -65,6 +67,16 @@ public class WolfSSLSession {
     private WolfSSLIORecvCallback internRecvSSLCb;
     private WolfSSLIOSendCallback internSendSSLCb;
 
+    /* scratch arrays reused by native I/O callbacks to pass data to and
+     * from Java if ioBufferReuse is set, allocated and grown by native
+     * code. May be longer than the size passed to the callback. */
+    private boolean ioBufferReuse = false;
+    private byte[] ioRecvBuf = null;
+    private byte[] ioSendBuf = null;
+
+    /* native memory I/O buffers, set by useMemoryIO(), 0 if not used */
+    private long memIOPtr = 0;
+
     /* is this context active, or has it been freed? */
     private boolean active = false;
 
@@ -185,10 +197,18 @@ public class WolfSSLSession {
     private native void setUsingNonblock(long ssl, int nonblock);
     private native int getUsingNonblock(long ssl);
     private native int getFd(long ssl);
-    private native int connect(long ssl);
+    private native int connect(long ssl, int timeout);
     private native int write(long ssl, byte[] data, int length);
+    private native int write(long ssl, byte[] data, int offset, int length,
+            int timeout);
+    private native int write(long ssl, ByteBuffer data, int position,
+            int length, int timeout);
     private native int read(long ssl, byte[] data, int sz);
-    private native int accept(long ssl);
+    private native int read(long ssl, byte[] data, int offset, int sz,
+            int timeout);
+    private native int read(long ssl, ByteBuffer data, int position, int sz,
+            int timeout);
+    private native int accept(long ssl, int timeout);
     private native void freeSSL(long ssl);
     private native int shutdownSSL(long ssl);
     private native int getError(long ssl, int ret);
@@ -207,6 +227,7 @@ public class WolfSSLSession {
     private native InetSocketAddress dtlsGetPeer(long ssl);
     private native int sessionReused(long ssl);
     private native long getPeerCertificate(long ssl);
+    private native byte[][] getPeerCertChain(long ssl);
     private native String getPeerX509Issuer(long ssl, long x509);
     private native String getPeerX509Subject(long ssl, long x509);
     private native String getPeerX509AltName(long ssl, long x509);
@@ -264,8 +285,30 @@ public class WolfSSLSession {
     private native int getShutdown(long ssl);
     private native void setSSLIORecv(long ssl);
     private native void setSSLIOSend(long ssl);
+    private native long useMemoryIO(long ssl, int initialSz);
+    private native void freeMemoryIO(long memio);
+    private native int memoryIOAddInput(long memio, byte[] in, int offset,
+            int length);
+    private native int memoryIOAddInput(long memio, ByteBuffer in,
+            int position, int length);
+    private native int memoryIOGetOutput(long memio, byte[] out, int offset,
+            int length);
+    private native int memoryIOGetOutput(long memio, ByteBuffer out,
+            int position, int length);
+    private native int memoryIOPendingOutput(long memio);
+    private native int memoryIOPendingInput(long memio);
     private native int useSNI(long ssl, byte type, byte[] data);
+    private native int useOCSPStapling(long ssl, int type, int options);
+    private native int useOCSPStaplingV2(long ssl, int type, int options);
     private native int useSessionTicket(long ssl);
+    private native int hasSessionTicket(long ssl);
+    private native int setMaxEarlyData(long ssl, int sz);
+    private native int writeEarlyData(long ssl, byte[] data, int offset,
+            int length, int timeout);
+    private native int readEarlyData(long ssl, byte[] data, int offset,
+            int sz, int timeout);
+    private native int getEarlyDataStatus(long ssl);
+    private native int setServerID(long ssl, byte[] id, int newSession);
     private native int gotCloseNotify(long ssl);
     private native int sslSetAlpnProtos(long ssl, byte[] alpnProtos);
     private native byte[] sslGet0AlpnSelected(long ssl);
@@ -513,7 +556,32 @@ public class WolfSSLSession {
         if (this.active == false)
             throw new IllegalStateException("Object has been freed");
 
-        return connect(getSessionPtr());
+        return connect(getSessionPtr(), 0);
+    }
+
+    /**
+     * Initializes an SSL/TLS handshake with a server, waiting at most
+     * <b>timeout</b> milliseconds for the underlying socket.
+     * Behaves the same as <code>connect()</code>, except that when the
+     * socket does not become ready to read or write within the timeout,
+     * <code>WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT</code> is returned. The
+     * handshake may be continued by calling <code>connect()</code> again.
+     *
+     * @param timeout maximum time to wait, in milliseconds. 0 waits
+     *                forever, matching <code>Socket.setSoTimeout()</code>
+     * @return <code>SSL_SUCCESS</code> if successful,
+     *         <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on timeout, otherwise
+     *         <code>SSL_FATAL_ERROR</code> if an error occurred. To get
+     *         a more detailed error code, call <code>getError()</code>.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #connect()
+     */
+    public int connect(int timeout) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return connect(getSessionPtr(), timeout);
     }
 
     /**
@@ -533,9 +601,15 @@ public class WolfSSLSession {
      * If the underlying I/O is blocking, <code>write()</code> will only
      * return once the buffer <b>data</b> of size <b>length</b> has been
      * completely written or an error occurred.
+     * <p>
+     * Only the first <b>length</b> bytes of <b>data</b> are copied to
+     * native memory, so writing a few bytes from a large array does not
+     * copy the whole array. For zero-copy writes use a direct ByteBuffer
+     * with {@link #write(ByteBuffer, int)}.
      *
      * @param data   data buffer which will be sent to peer
-     * @param length size, in bytes, of data to send to the peer
+     * @param length size, in bytes, of data to send to the peer. Must not
+     *               be larger than <code>data.length</code>.
      * @return       the number of bytes written upon success. <code>0
      *               </code>will be returned upon failure. <code>
      *               SSL_FATAL_ERROR</code>upon failure when either an
@@ -555,6 +629,58 @@ public class WolfSSLSession {
         return write(getSessionPtr(), data, length);
     }
 
+    /**
+     * Write bytes from a region of a byte array to the SSL connection.
+     * Behaves the same as <code>write(byte[], int)</code>, except that
+     * data is taken starting at <b>offset</b> in the array. Only the
+     * requested region is copied, no temporary Java array is allocated.
+     *
+     * @param data   data buffer which will be sent to peer
+     * @param offset offset into <b>data</b> of first byte to send
+     * @param length size, in bytes, of data to send to the peer
+     * @return       the number of bytes written upon success,
+     *               <code>BAD_FUNC_ARG</code> if <b>offset</b> and
+     *               <b>length</b> do not describe a region inside
+     *               <b>data</b>, otherwise see {@link #write(byte[], int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #write(byte[], int)
+     */
+    public int write(byte[] data, int offset, int length)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return write(getSessionPtr(), data, offset, length, 0);
+    }
+
+    /**
+     * Write bytes from a region of a byte array to the SSL connection,
+     * waiting at most <b>timeout</b> milliseconds for the underlying socket.
+     * Behaves the same as <code>write(byte[], int, int)</code>, except that
+     * when the socket does not become ready within the timeout,
+     * <code>WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT</code> is returned.
+     *
+     * @param data    data buffer which will be sent to peer
+     * @param offset  offset into <b>data</b> of first byte to send
+     * @param length  size, in bytes, of data to send to the peer
+     * @param timeout maximum time to wait, in milliseconds. 0 waits
+     *                forever, matching <code>Socket.setSoTimeout()</code>
+     * @return        the number of bytes written upon success,
+     *                <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on timeout,
+     *                otherwise see {@link #write(byte[], int, int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #write(byte[], int, int)
+     */
+    public int write(byte[] data, int offset, int length, int timeout)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return write(getSessionPtr(), data, offset, length, timeout);
+    }
+
     /**
      * Reads bytes from the SSL session and returns the read bytes as a byte
      * array.
@@ -572,10 +698,15 @@ public class WolfSSLSession {
      * There may be additional not-yet-decrypted data waiting in the internal
      * wolfSSL receive buffer which will be retrieved and decrypted with the
      * next call to <code>read()</code>.
+     * <p>
+     * Only the bytes actually read are copied back into <b>data</b>, the
+     * rest of the array is left untouched. For zero-copy reads use a direct
+     * ByteBuffer with {@link #read(ByteBuffer, int)}.
      *
      * @param data  buffer where the data read from the SSL connection
      *              will be placed.
-     * @param sz    number of bytes to read into <b><code>data</code></b>
+     * @param sz    number of bytes to read into <b><code>data</code></b>.
+     *              Must not be larger than <code>data.length</code>.
      * @return      the number of bytes read upon success. <code>SSL_FAILURE
      *              </code> will be returned upon failure which may be caused
      *              by either a clean (close notify alert) shutdown or just
@@ -597,6 +728,221 @@ public class WolfSSLSession {
         return read(getSessionPtr(), data, sz);
     }
 
+    /**
+     * Reads bytes from the SSL session into a region of a byte array.
+     * Behaves the same as <code>read(byte[], int)</code>, except that
+     * data is placed starting at <b>offset</b> in the array. Only the
+     * bytes read are copied, no temporary Java array is allocated.
+     *
+     * @param data   buffer where the data read from the SSL connection
+     *               will be placed.
+     * @param offset offset into <b>data</b> where the first byte read
+     *               is placed
+     * @param sz     maximum number of bytes to read
+     * @return       the number of bytes read upon success,
+     *               <code>BAD_FUNC_ARG</code> if <b>offset</b> and
+     *               <b>sz</b> do not describe a region inside <b>data</b>,
+     *               otherwise see {@link #read(byte[], int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #read(byte[], int)
+     */
+    public int read(byte[] data, int offset, int sz)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return read(getSessionPtr(), data, offset, sz, 0);
+    }
+
+    /**
+     * Reads bytes from the SSL session into a region of a byte array,
+     * waiting at most <b>timeout</b> milliseconds for the underlying socket.
+     * Behaves the same as <code>read(byte[], int, int)</code>, except that
+     * when no data arrives within the timeout,
+     * <code>WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT</code> is returned. The
+     * connection is still usable and <code>read()</code> may be called
+     * again.
+     *
+     * @param data    buffer where the data read from the SSL connection
+     *                will be placed.
+     * @param offset  offset into <b>data</b> where the first byte read
+     *                is placed
+     * @param sz      maximum number of bytes to read
+     * @param timeout maximum time to wait, in milliseconds. 0 waits
+     *                forever, matching <code>Socket.setSoTimeout()</code>
+     * @return        the number of bytes read upon success,
+     *                <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on timeout,
+     *                otherwise see {@link #read(byte[], int, int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #read(byte[], int, int)
+     */
+    public int read(byte[] data, int offset, int sz, int timeout)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return read(getSessionPtr(), data, offset, sz, timeout);
+    }
+
+    /**
+     * Write bytes from a ByteBuffer to the SSL connection.
+     * Up to <b>length</b> bytes are written starting at the current
+     * position of <b>data</b>. Direct buffers are handed to native wolfSSL
+     * without an intermediate copy. Heap buffers are copied out of their
+     * backing array by the native layer, without allocating a Java array.
+     * <p>
+     * Upon success the position of <b>data</b> is advanced by the number of
+     * bytes written, otherwise it is left unchanged. Blocking and
+     * non-blocking behavior matches that of <code>write(byte[], int)</code>.
+     *
+     * @param data   buffer holding data which will be sent to peer
+     * @param length size, in bytes, of data to send to the peer. Must not
+     *               be larger than <code>data.remaining()</code>.
+     * @return       the number of bytes written upon success. <code>0
+     *               </code>will be returned upon failure. <code>
+     *               SSL_FATAL_ERROR</code>upon failure when either an
+     *               error occurred or, when using non-blocking sockets,
+     *               the <b>SSL_ERROR_WANT_READ</b> or
+     *               <b>SSL_ERROR_WANT_WRITE</b> error was received and the
+     *               application needs to call <code>write()</code> again.
+     *               <code>BAD_FUNC_ARC</code> when bad arguments are used.
+     *               Use <code>getError</code> to get a specific error code.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @throws IllegalArgumentException if length is negative or larger
+     *         than the bytes remaining in data
+     * @see    #write(byte[], int)
+     */
+    public int write(ByteBuffer data, int length)
+        throws IllegalStateException, IllegalArgumentException {
+
+        int ret;
+        int pos;
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        if (length < 0 || length > data.remaining()) {
+            throw new IllegalArgumentException(
+                "length is negative or larger than data.remaining()");
+        }
+
+        pos = data.position();
+        if (data.isDirect()) {
+            ret = write(getSessionPtr(), data, pos, length, 0);
+
+        } else if (data.hasArray()) {
+            ret = write(getSessionPtr(), data.array(),
+                        data.arrayOffset() + pos, length, 0);
+
+        } else {
+            /* read-only heap buffer, backing array is not accessible */
+            byte[] tmp = new byte[length];
+            data.duplicate().get(tmp);
+            ret = write(getSessionPtr(), tmp, 0, length, 0);
+        }
+
+        if (ret > 0) {
+            data.position(pos + ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Write all remaining bytes of a ByteBuffer to the SSL connection.
+     *
+     * @param data buffer holding data which will be sent to peer
+     * @return     see {@link #write(ByteBuffer, int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #write(ByteBuffer, int)
+     */
+    public int write(ByteBuffer data) throws IllegalStateException {
+
+        return write(data, data.remaining());
+    }
+
+    /**
+     * Reads bytes from the SSL session into a ByteBuffer.
+     * Up to <b>sz</b> bytes are placed into <b>data</b> starting at its
+     * current position. Direct buffers are decrypted into by native wolfSSL
+     * without an intermediate copy. Heap buffers have only the bytes read
+     * copied into their backing array, without allocating a Java array.
+     * <p>
+     * Upon success the position of <b>data</b> is advanced by the number of
+     * bytes read, otherwise it is left unchanged. Blocking and
+     * non-blocking behavior matches that of <code>read(byte[], int)</code>.
+     *
+     * @param data  buffer where the data read from the SSL connection
+     *              will be placed.
+     * @param sz    number of bytes to read into <b><code>data</code></b>.
+     *              Must not be larger than <code>data.remaining()</code>.
+     * @return      the number of bytes read upon success. <code>SSL_FAILURE
+     *              </code> will be returned upon failure which may be caused
+     *              by either a clean (close notify alert) shutdown or just
+     *              that the peer closed the connection. <code>
+     *              SSL_FATAL_ERROR</code> upon failure when either an error
+     *              occurred or, when using non-blocking sockets, the
+     *              <b>SSL_ERROR_WANT_READ</b> or <b>SSL_ERROR_WANT_WRITE</b>
+     *              error was received and the application needs to call
+     *              <code>read()</code> again. Use <code>getError</code> to
+     *              get a specific error code.
+     *              <code>BAD_FUNC_ARC</code> when bad arguments are used.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @throws IllegalArgumentException if sz is negative or larger
+     *         than the space remaining in data
+     * @throws ReadOnlyBufferException if data is read-only
+     * @see    #read(byte[], int)
+     */
+    public int read(ByteBuffer data, int sz)
+        throws IllegalStateException, IllegalArgumentException {
+
+        int ret;
+        int pos;
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        if (data.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        if (sz < 0 || sz > data.remaining()) {
+            throw new IllegalArgumentException(
+                "sz is negative or larger than data.remaining()");
+        }
+
+        pos = data.position();
+        if (data.isDirect()) {
+            ret = read(getSessionPtr(), data, pos, sz, 0);
+        } else {
+            ret = read(getSessionPtr(), data.array(),
+                       data.arrayOffset() + pos, sz, 0);
+        }
+
+        if (ret > 0) {
+            data.position(pos + ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Reads bytes from the SSL session into the remaining space of a
+     * ByteBuffer.
+     *
+     * @param data buffer where the data read from the SSL connection
+     *             will be placed.
+     * @return     see {@link #read(ByteBuffer, int)}
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #read(ByteBuffer, int)
+     */
+    public int read(ByteBuffer data) throws IllegalStateException {
+
+        return read(data, data.remaining());
+    }
+
     /**
      * Waits for an SSL client to initiate the SSL/TLS handshake.
      * This method is called on the server side. When it is called, the
@@ -628,7 +974,31 @@ public class WolfSSLSession {
         if (this.active == false)
             throw new IllegalStateException("Object has been freed");
 
-        return accept(getSessionPtr());
+        return accept(getSessionPtr(), 0);
+    }
+
+    /**
+     * Waits for an SSL client to initiate the SSL/TLS handshake, waiting at
+     * most <b>timeout</b> milliseconds for the underlying socket.
+     * Behaves the same as <code>accept()</code>, except that when the
+     * socket does not become ready to read or write within the timeout,
+     * <code>WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT</code> is returned.
+     *
+     * @param timeout maximum time to wait, in milliseconds. 0 waits
+     *                forever, matching <code>Socket.setSoTimeout()</code>
+     * @return <code>SSL_SUCCESS</code> on success,
+     *         <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on timeout,
+     *         <code>SSL_FATAL_ERROR</code> if an error occurred. To get a
+     *         more detailed error code, call <code>getError()</code>.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    #accept()
+     */
+    public int accept(int timeout) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return accept(getSessionPtr(), timeout);
     }
 
     /**
@@ -647,6 +1017,10 @@ public class WolfSSLSession {
 
         /* free native resources */
         freeSSL(getSessionPtr());
+        if (this.memIOPtr != 0) {
+            freeMemoryIO(this.memIOPtr);
+            this.memIOPtr = 0;
+        }
 
         /* free Java resources */
         this.active = false;
@@ -1080,6 +1454,24 @@ public class WolfSSLSession {
         return getPeerCertificate(getSessionPtr());
     }
 
+    /**
+     * Gets the certificate chain sent by the peer, as DER encoded
+     * certificates in the order received, starting with the peer's own
+     * certificate.
+     *
+     * @return array of DER encoded certificates, or null if not available
+     *         or native wolfSSL was not compiled with SESSION_CERTS.
+     * @throws IllegalStateException WolfSSLContext has been freed
+     * @see    WolfSSLSession#getPeerCertificate()
+     */
+    public byte[][] getPeerCertChain() throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return getPeerCertChain(getSessionPtr());
+    }
+
     /**
      * Gets the peer X509 certificate's issuer information.
      *
@@ -2467,6 +2859,248 @@ public class WolfSSLSession {
         setSSLIOSend(getSessionPtr());
     }
 
+    /**
+     * Sets whether I/O callbacks of this session are passed reused arrays.
+     * By default, each call to a WolfSSLIORecvCallback or
+     * WolfSSLIOSendCallback is passed a new array of exactly the size
+     * given to the callback. When reuse is enabled, one array per
+     * direction is kept by this session and passed to every call instead,
+     * avoiding an allocation per call. It may then be longer than the
+     * size given, so callbacks must only use the first <b>sz</b> bytes
+     * and not rely on <code>buf.length</code>, for example by calling
+     * <code>in.read(buf, 0, sz)</code> instead of <code>in.read(buf)</code>.
+     *
+     * @param reuse true to pass reused arrays to I/O callbacks, false to
+     *              pass new arrays of exact size (default)
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public synchronized void setIOBufferReuse(boolean reuse)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        this.ioBufferReuse = reuse;
+        if (!reuse) {
+            this.ioRecvBuf = null;
+            this.ioSendBuf = null;
+        }
+    }
+
+    /**
+     * Switches this session to native memory I/O.
+     * Instead of calling registered Java I/O callbacks or reading and
+     * writing a socket, native wolfSSL reads incoming TLS records from, and
+     * writes outgoing TLS records to, native buffers owned by this session.
+     * The application moves network data in and out with
+     * {@link #memoryIOAddInput(ByteBuffer)} and
+     * {@link #memoryIOGetOutput(ByteBuffer)}, so no JNI upcall happens per
+     * record. When no input is available, wolfSSL operations return with
+     * <b>SSL_ERROR_WANT_READ</b>.
+     * <p>
+     * This replaces any I/O callbacks previously set with
+     * <code>setIORecv()</code> or <code>setIOSend()</code>. Buffers are
+     * grown as needed, reused for the lifetime of the session, and
+     * released by <code>freeSSL()</code>. Calls on one session must be
+     * serialized by the caller.
+     *
+     * @param initialSz initial size, in bytes, of each native buffer
+     * @return <code>SSL_SUCCESS</code> on success, <code>SSL_FAILURE</code>
+     *         if native buffers could not be allocated.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     * @see    #memoryIOAddInput(ByteBuffer)
+     * @see    #memoryIOGetOutput(ByteBuffer)
+     */
+    public synchronized int useMemoryIO(int initialSz)
+        throws IllegalStateException {
+
+        long ptr;
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        if (this.memIOPtr != 0) {
+            return WolfSSL.SSL_SUCCESS;
+        }
+
+        ptr = useMemoryIO(getSessionPtr(), initialSz);
+        if (ptr == 0) {
+            return WolfSSL.SSL_FAILURE;
+        }
+        this.memIOPtr = ptr;
+
+        return WolfSSL.SSL_SUCCESS;
+    }
+
+    /**
+     * Checks if this session is using native memory I/O.
+     *
+     * @return true if <code>useMemoryIO()</code> has been called
+     */
+    public boolean usingMemoryIO() {
+        return (this.memIOPtr != 0);
+    }
+
+    private void checkMemoryIO() throws IllegalStateException {
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        if (this.memIOPtr == 0)
+            throw new IllegalStateException("Native memory I/O not enabled");
+    }
+
+    /**
+     * Queues received network data for wolfSSL to read, when using native
+     * memory I/O. All remaining bytes of <b>in</b> are consumed.
+     *
+     * @param in buffer holding encrypted data received from the peer
+     * @return number of bytes queued, or a negative value on error
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     * @see    #useMemoryIO(int)
+     */
+    public int memoryIOAddInput(ByteBuffer in) throws IllegalStateException {
+
+        int ret;
+        int pos;
+        int len;
+
+        checkMemoryIO();
+
+        pos = in.position();
+        len = in.remaining();
+
+        if (in.isDirect()) {
+            ret = memoryIOAddInput(this.memIOPtr, in, pos, len);
+
+        } else if (in.hasArray()) {
+            ret = memoryIOAddInput(this.memIOPtr, in.array(),
+                                   in.arrayOffset() + pos, len);
+        } else {
+            /* read-only heap buffer, backing array is not accessible */
+            byte[] tmp = new byte[len];
+            in.duplicate().get(tmp);
+            ret = memoryIOAddInput(this.memIOPtr, tmp, 0, len);
+        }
+
+        if (ret > 0) {
+            in.position(pos + ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Queues received network data for wolfSSL to read, when using native
+     * memory I/O.
+     *
+     * @param in     array holding encrypted data received from the peer
+     * @param offset offset into <b>in</b> of first byte to queue
+     * @param length number of bytes to queue
+     * @return number of bytes queued, or a negative value on error
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     * @see    #useMemoryIO(int)
+     */
+    public int memoryIOAddInput(byte[] in, int offset, int length)
+        throws IllegalStateException {
+
+        checkMemoryIO();
+
+        return memoryIOAddInput(this.memIOPtr, in, offset, length);
+    }
+
+    /**
+     * Moves encrypted data produced by wolfSSL into <b>out</b>, when using
+     * native memory I/O. As many pending bytes as fit in the remaining
+     * space of <b>out</b> are moved, any others stay queued.
+     *
+     * @param out buffer to place data to be sent to the peer
+     * @return number of bytes placed in <b>out</b>, or a negative value
+     *         on error
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     * @throws ReadOnlyBufferException if out is read-only
+     * @see    #useMemoryIO(int)
+     */
+    public int memoryIOGetOutput(ByteBuffer out)
+        throws IllegalStateException {
+
+        int ret;
+        int pos;
+
+        checkMemoryIO();
+
+        if (out.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        pos = out.position();
+        if (out.isDirect()) {
+            ret = memoryIOGetOutput(this.memIOPtr, out, pos,
+                                    out.remaining());
+        } else {
+            ret = memoryIOGetOutput(this.memIOPtr, out.array(),
+                                    out.arrayOffset() + pos, out.remaining());
+        }
+
+        if (ret > 0) {
+            out.position(pos + ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Moves encrypted data produced by wolfSSL into <b>out</b>, when using
+     * native memory I/O.
+     *
+     * @param out    array to place data to be sent to the peer
+     * @param offset offset into <b>out</b> to start placing data
+     * @param length maximum number of bytes to place in <b>out</b>
+     * @return number of bytes placed in <b>out</b>, or a negative value
+     *         on error
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     * @see    #useMemoryIO(int)
+     */
+    public int memoryIOGetOutput(byte[] out, int offset, int length)
+        throws IllegalStateException {
+
+        checkMemoryIO();
+
+        return memoryIOGetOutput(this.memIOPtr, out, offset, length);
+    }
+
+    /**
+     * Returns number of encrypted bytes produced by wolfSSL that have not
+     * yet been removed with <code>memoryIOGetOutput()</code>.
+     *
+     * @return number of pending output bytes
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     */
+    public int memoryIOPendingOutput() throws IllegalStateException {
+
+        checkMemoryIO();
+
+        return memoryIOPendingOutput(this.memIOPtr);
+    }
+
+    /**
+     * Returns number of queued input bytes not yet read by wolfSSL.
+     *
+     * @return number of pending input bytes
+     * @throws IllegalStateException WolfSSLSession has been freed or
+     *         native memory I/O is not enabled
+     */
+    public int memoryIOPendingInput() throws IllegalStateException {
+
+        checkMemoryIO();
+
+        return memoryIOPendingInput(this.memIOPtr);
+    }
+
     public int useSNI(byte type, byte[] data) throws IllegalStateException {
 
         int ret;
@@ -2479,6 +3113,53 @@ public class WolfSSLSession {
         return ret;
     }
 
+    /**
+     * Request a stapled OCSP response from the server with the
+     * status_request extension (RFC 6066). The received response is
+     * verified against the trusted CAs of the context, which must have
+     * OCSP stapling enabled with WolfSSLContext.enableOCSPStapling().
+     *
+     * @param type    status type, WolfSSL.WOLFSSL_CSR_OCSP
+     * @param options 0 or WolfSSL.WOLFSSL_CSR_OCSP_USE_NONCE to send a
+     *                nonce in the request
+     * @return WolfSSL.SSL_SUCCESS on success, NOT_COMPILED_IN if native
+     *         wolfSSL was compiled without HAVE_CERTIFICATE_STATUS_REQUEST,
+     *         otherwise negative.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int useOCSPStapling(int type, int options)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return useOCSPStapling(getSessionPtr(), type, options);
+    }
+
+    /**
+     * Request stapled OCSP responses from the server with the
+     * status_request_v2 extension (RFC 6961), which in TLS 1.2 can carry
+     * a response for each certificate of the chain. The context must have
+     * OCSP stapling enabled with WolfSSLContext.enableOCSPStapling().
+     *
+     * @param type    status type, WolfSSL.WOLFSSL_CSR2_OCSP or
+     *                WolfSSL.WOLFSSL_CSR2_OCSP_MULTI
+     * @param options 0 or WolfSSL.WOLFSSL_CSR2_OCSP_USE_NONCE to send a
+     *                nonce in the request
+     * @return WolfSSL.SSL_SUCCESS on success, NOT_COMPILED_IN if native
+     *         wolfSSL was compiled without
+     *         HAVE_CERTIFICATE_STATUS_REQUEST_V2, otherwise negative.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int useOCSPStaplingV2(int type, int options)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return useOCSPStaplingV2(getSessionPtr(), type, options);
+    }
+
     /**
      * Enable session tickets for this session.
      *
@@ -2493,6 +3174,158 @@ public class WolfSSLSession {
         return useSessionTicket(getSessionPtr());
     }
 
+    /**
+     * Checks if the client side session holds a session ticket received
+     * from the server. After a resumed handshake, this tells if the
+     * session was resumed with a ticket rather than a session ID.
+     *
+     * @return 1 if the session has a ticket, 0 if not,
+     *         WolfSSL.NOT_COMPILED_IN if native wolfSSL was not compiled
+     *         with session ticket support, otherwise negative.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int hasSessionTicket() throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return hasSessionTicket(getSessionPtr());
+    }
+
+    /**
+     * Sets the maximum amount of TLS 1.3 early data (0-RTT) this server
+     * session accepts, overriding the value set on the WolfSSLContext.
+     * A value of 0 disables early data.
+     *
+     * @param sz maximum early data size in bytes, 0 to disable
+     * @return   WolfSSL.SSL_SUCCESS on success,
+     *           WolfSSL.NOT_COMPILED_IN if native wolfSSL was not compiled
+     *           with early data support, otherwise negative.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int setMaxEarlyData(int sz) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return setMaxEarlyData(getSessionPtr(), sz);
+    }
+
+    /**
+     * Sends TLS 1.3 early data (0-RTT) from a client.
+     * <p>
+     * Must be called before the handshake has completed, on a session
+     * that is resuming a TLS 1.3 session whose ticket allows early data.
+     * The ClientHello is sent first if it has not been already, followed
+     * by the data. The handshake is then finished with
+     * <code>connect()</code>, after which {@link #getEarlyDataStatus()}
+     * tells if the server accepted the data. If it did not, the data must
+     * be sent again with <code>write()</code>.
+     * <p>
+     * Early data can be replayed by an attacker, so only requests that
+     * are safe to repeat should be sent this way.
+     *
+     * @param data    buffer holding early data to send
+     * @param offset  offset into <b>data</b> of first byte to send
+     * @param length  number of bytes to send
+     * @param timeout maximum time to wait for the socket, in milliseconds,
+     *                0 to wait forever
+     * @return        number of bytes sent on success,
+     *                <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on timeout,
+     *                <code>BAD_FUNC_ARG</code> if <b>offset</b> and
+     *                <b>length</b> do not describe a region inside
+     *                <b>data</b>, WolfSSL.NOT_COMPILED_IN if native wolfSSL
+     *                was not compiled with early data support, otherwise
+     *                negative. Call {@link #getError(int)} for details.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int writeEarlyData(byte[] data, int offset, int length,
+        int timeout) throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return writeEarlyData(getSessionPtr(), data, offset, length, timeout);
+    }
+
+    /**
+     * Reads TLS 1.3 early data (0-RTT) on a server.
+     * <p>
+     * Must be called before the handshake has completed. The first call
+     * processes the ClientHello. Each call returns early data sent by the
+     * client, until 0 is returned once the client has finished sending
+     * early data or did not send any. The handshake is then finished with
+     * <code>accept()</code>.
+     *
+     * @param data    buffer where early data is placed
+     * @param offset  offset into <b>data</b> of first byte to fill
+     * @param sz      maximum number of bytes to read
+     * @param timeout maximum time to wait for the socket, in milliseconds,
+     *                0 to wait forever
+     * @return        number of bytes read, 0 if no more early data is
+     *                available, <code>WOLFJNI_IO_EVENT_TIMEOUT</code> on
+     *                timeout, WolfSSL.NOT_COMPILED_IN if native wolfSSL was
+     *                not compiled with early data support, otherwise
+     *                negative. Call {@link #getError(int)} for details.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int readEarlyData(byte[] data, int offset, int sz, int timeout)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return readEarlyData(getSessionPtr(), data, offset, sz, timeout);
+    }
+
+    /**
+     * Returns whether early data sent on this client session was accepted
+     * by the server. Only meaningful once the handshake has completed.
+     *
+     * @return WolfSSL.WOLFSSL_EARLY_DATA_ACCEPTED,
+     *         WolfSSL.WOLFSSL_EARLY_DATA_REJECTED,
+     *         WolfSSL.WOLFSSL_EARLY_DATA_NOT_SENT, or
+     *         WolfSSL.NOT_COMPILED_IN if native wolfSSL does not support
+     *         early data or is too old to report its status.
+     * @throws IllegalStateException WolfSSLSession has been freed
+     */
+    public int getEarlyDataStatus() throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return getEarlyDataStatus(getSessionPtr());
+    }
+
+    /**
+     * Associates a server ID with this client session, and resumes the
+     * session stored under the same ID in the native client session cache,
+     * if one is found.
+     * <p>
+     * Once the handshake completes, the session is stored in the native
+     * client cache under this ID, so it can be found again by later
+     * connections, or after the session cache has been restored with
+     * <code>WolfSSL.memrestoreSessionCache()</code>. IDs longer than the
+     * native limit are hashed by wolfSSL.
+     *
+     * @param id server ID, for example derived from peer host and port
+     * @param newSession if 1, do not resume a cached session but still
+     *        store the new session under this ID
+     * @return WolfSSL.SSL_SUCCESS on success, WolfSSL.NOT_COMPILED_IN if
+     *         native wolfSSL was compiled with NO_CLIENT_CACHE, otherwise
+     *         negative
+     * @throws IllegalStateException WolfSSLSession has been freed
+     * @see    WolfSSL#memsaveSessionCache(byte[], int)
+     */
+    public int setServerID(byte[] id, int newSession)
+        throws IllegalStateException {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object has been freed");
+
+        return setServerID(getSessionPtr(), id, newSession);
+    }
+
     /**
      * Set ALPN extension protocol for this session.
      * Calls native SSL_set_alpn_protos() at native level. Format starts with
@@ -0,0 +1,62 @@
+/* WolfSSLSessionCacheCallback.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl;
+
+/**
+ * wolfSSL External Session Cache Callback Interface.
+ * This interface specifies how applications should implement an external
+ * server side session cache, to be used by wolfSSL alongside its internal
+ * session cache.
+ * <p>
+ * After implementing this interface, it should be passed as a parameter
+ * to the {@link WolfSSLContext#setSessionCacheCb(WolfSSLSessionCacheCallback)
+ * WolfSSLContext.setSessionCacheCb()} method to be registered with the
+ * native wolfSSL library. Sessions are passed in serialized form, so they
+ * can be shared with other processes.
+ *
+ * @author  wolfSSL
+ */
+public interface WolfSSLSessionCacheCallback {
+
+    /**
+     * Called when a new session has been established and added to the
+     * internal session cache.
+     *
+     * @param ssl     the current SSL session object from which the
+     *                callback was initiated.
+     * @param id      session ID
+     * @param session serialized session
+     */
+    public void newSession(WolfSSLSession ssl, byte[] id, byte[] session);
+
+    /**
+     * Called by a server when a session ID sent by a client is not found
+     * in the internal session cache.
+     *
+     * @param ssl     the current SSL session object from which the
+     *                callback was initiated.
+     * @param id      session ID sent by the client
+     * @return        serialized session previously passed to
+     *                newSession() for the same ID, or null if not found
+     */
+    public byte[] getSession(WolfSSLSession ssl, byte[] id);
+}
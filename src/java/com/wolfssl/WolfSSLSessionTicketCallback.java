@@ -0,0 +1,77 @@
+/* WolfSSLSessionTicketCallback.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl;
+
+/**
+ * wolfSSL Session Ticket Encryption Callback Interface.
+ * This interface specifies how applications should implement the server
+ * side session ticket encryption callback class to be used by wolfSSL.
+ * <p>
+ * After implementing this interface, it should be passed as a parameter
+ * to the {@link WolfSSLContext#setTicketEncCb(WolfSSLSessionTicketCallback)
+ * WolfSSLContext.setTicketEncCb()} method to be registered with the native
+ * wolfSSL library.
+ *
+ * @author  wolfSSL
+ */
+public interface WolfSSLSessionTicketCallback {
+
+    /**
+     * Session ticket encryption callback method.
+     * Called by a server when creating a session ticket (<b>enc</b> is 1)
+     * and when receiving one from a client (<b>enc</b> is 0).
+     * <p>
+     * When encrypting, <b>ticket</b> holds <b>inLen</b> bytes of ticket
+     * plaintext. The callback encrypts them in place, sets
+     * <b>outLen[0]</b> to the encrypted length, which must not exceed
+     * <b>ticket.length</b>, and fills in <b>keyName</b>, <b>iv</b> and
+     * <b>mac</b>, which are sent to the client along with the ticket.
+     * <p>
+     * When decrypting, <b>keyName</b>, <b>iv</b> and <b>mac</b> hold the
+     * values received from the client and <b>ticket</b> holds
+     * <b>inLen</b> bytes of ciphertext. The callback verifies the MAC,
+     * decrypts in place and sets <b>outLen[0]</b> to the plaintext
+     * length.
+     *
+     * @param ssl     the current SSL session object from which the
+     *                callback was initiated.
+     * @param keyName key name, WolfSSL.WOLFSSL_TICKET_NAME_SZ bytes
+     * @param iv      IV, WolfSSL.WOLFSSL_TICKET_IV_SZ bytes
+     * @param mac     MAC, WolfSSL.WOLFSSL_TICKET_MAC_SZ bytes
+     * @param enc     1 to encrypt, 0 to decrypt
+     * @param ticket  ticket data, encrypted or decrypted in place
+     * @param inLen   number of input bytes in <b>ticket</b>
+     * @param outLen  array of size 1 to place output length in
+     * @param ctx     ticket encryption context, set with
+     *                WolfSSLContext#setTicketEncCtx(Object)
+     * @return        WolfSSL.WOLFSSL_TICKET_RET_OK on success,
+     *                WolfSSL.WOLFSSL_TICKET_RET_CREATE if a decrypted
+     *                ticket is accepted but a new one should be issued,
+     *                WolfSSL.WOLFSSL_TICKET_RET_REJECT if a ticket is not
+     *                accepted and a full handshake should be done, or
+     *                WolfSSL.WOLFSSL_TICKET_RET_FATAL to abort the
+     *                handshake.
+     */
+    public int sessionTicketCallback(WolfSSLSession ssl, byte[] keyName,
+            byte[] iv, byte[] mac, int enc, byte[] ticket, int inLen,
+            int[] outLen, Object ctx);
+}
@@ -38,6 +38,20 @@ public class WolfSSLX509StoreCtx {
         this.ctxPtr = ctxPtr;
     }
 
+    /**
+     * Get DER encoded certificates in WOLFSSL_X509_STORE_CTX, without
+     * parsing them.
+     *
+     * @return array of DER encoded certificates, or null if none
+     */
+    public byte[][] getDerCerts() {
+
+        if (this.active == false)
+            throw new IllegalStateException("Object is not active");
+
+        return X509_STORE_CTX_getDerCerts(this.ctxPtr);
+    }
+
     /**
      * Get certificates in WOLFSSL_X509_STORE_CTX as an array of
      * WolfSSLCertificate objects.
@@ -37,8 +37,8 @@ import java.security.KeyStoreException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Helper class used to store common settings, objects, etc.
@@ -60,7 +60,22 @@ public class WolfSSLAuthStore {
     private X509TrustManager tm = null;
     private SecureRandom sr = null;
     private String alias = null;
-    private SessionStore<Integer, WolfSSLImplementSSLSession> store;
+    private WolfSSLSessionCache<WolfSSLSessionKey> store;
+    private WolfSSLSessionCache<ByteBuffer> serverStore;
+    private WolfSSLSessionContext clientContext;
+    private WolfSSLSessionContext serverContext;
+    private final WolfSSLStats stats = new WolfSSLStats(WolfSSLStats.GLOBAL);
+
+    /* peer chains accepted by TrustManager, null if disabled */
+    private final WolfSSLVerifiedChainCache chainCache =
+        WolfSSLVerifiedChainCache.create(stats);
+
+    /* native WOLFSSL_CTX session timeouts are applied to, may be null */
+    private com.wolfssl.WolfSSLContext nativeCtx = null;
+
+    /* native timeout used when session timeout is 0 (no limit), kept well
+     * below 2^32 since wolfSSL adds it to the session creation time */
+    private static final long MAX_NATIVE_TIMEOUT = 0x3FFFFFFFL;
 
     /**
      * @param keyman key manager to use
@@ -86,8 +101,38 @@ public class WolfSSLAuthStore {
         initSecureRandom(random);
 
         this.currentVersion = version;
-        store = new SessionStore<Integer, WolfSSLImplementSSLSession>(10);
-        //@TODO set max size correctly
+        store = new WolfSSLSessionCache<WolfSSLSessionKey>(
+            getDefaultCacheSize(), WolfSSLSessionCache.DEFAULT_TIMEOUT);
+        serverStore = new WolfSSLSessionCache<ByteBuffer>(
+            getDefaultCacheSize(), WolfSSLSessionCache.DEFAULT_TIMEOUT);
+        store.setStats(stats);
+        serverStore.setStats(stats);
+        clientContext = new WolfSSLSessionContext(this, store, false);
+        serverContext = new WolfSSLSessionContext(this, serverStore, true);
+    }
+
+    /**
+     * Get default client session cache size. Uses the
+     * "javax.net.ssl.sessionCacheSize" System property if set to a valid
+     * value, same as SunJSSE, otherwise WolfSSLSessionCache.DEFAULT_CAPACITY.
+     */
+    private int getDefaultCacheSize() {
+        String sz = System.getProperty("javax.net.ssl.sessionCacheSize");
+
+        if (sz != null) {
+            try {
+                int ret = Integer.parseInt(sz.trim());
+                if (ret >= 0) {
+                    return ret;
+                }
+            } catch (NumberFormatException e) {
+                /* fall through to default */
+            }
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "ignoring invalid javax.net.ssl.sessionCacheSize: " + sz);
+        }
+
+        return WolfSSLSessionCache.DEFAULT_CAPACITY;
     }
 
     /**
@@ -233,13 +278,16 @@ public class WolfSSLAuthStore {
      * @param port port number connecting to
      * @param host host connecting to
      * @param clientMode if is client side then true
+     * @param protocols protocol versions enabled for this connection
+     * @param cipherSuites cipher suites enabled for this connection
      * @return a new or reused SSLSession on success, null on failure
      */
     protected WolfSSLImplementSSLSession getSession(WolfSSLSession ssl,
-        int port, String host, boolean clientMode) {
+        int port, String host, boolean clientMode, String[] protocols,
+        String[] cipherSuites) {
 
         WolfSSLImplementSSLSession ses;
-        String toHash;
+        WolfSSLSessionKey key;
 
         if (ssl == null) {
             return null;
@@ -247,20 +295,32 @@ public class WolfSSLAuthStore {
 
         /* server mode, or client mode with no host */
         if (clientMode == false || host == null) {
-            return this.getSession(ssl);
+            return this.getSession(ssl, clientMode);
         }
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                 "attempting to look up session (" +
                 "host: " + host + ", port: " + port + ")");
 
         /* check if is in table */
-        toHash = host.concat(Integer.toString(port));
-        ses = store.get(toHash.hashCode());
+        key = new WolfSSLSessionKey(host, port, protocols, cipherSuites);
+        if (WolfSSLSessionPersister.isEnabled()) {
+            /* store in native client cache under ID that is stable across
+             * restarts, resumes session from restored cache if found */
+            int ret = ssl.setServerID(key.getServerId(), 0);
+            if (ret != WolfSSL.SSL_SUCCESS) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "failed to set native server ID, ret = " + ret);
+            }
+        }
+        ses = store.get(key);
+        stats.cacheLookup(ses != null);
         if (ses == null) {
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                     "session not found in cache table, creating new");
             /* not found in stored sessions create a new one */
             ses = new WolfSSLImplementSSLSession(ssl, port, host, this);
+            ses.setSessionContext(clientContext);
+            ses.setCacheKey(key);
         }
         else {
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
@@ -272,12 +332,44 @@ public class WolfSSLAuthStore {
 
     /** Returns a new session, does not check/save for resumption
      * @param ssl WOLFSSL class to reference with new session
+     * @param clientMode if is client side then true
      * @return a new SSLSession on success
      */
-    protected WolfSSLImplementSSLSession getSession(WolfSSLSession ssl) {
+    protected WolfSSLImplementSSLSession getSession(WolfSSLSession ssl,
+        boolean clientMode) {
+        WolfSSLImplementSSLSession ses;
+
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                 "creating new session");
-        return new WolfSSLImplementSSLSession(ssl, this);
+        ses = new WolfSSLImplementSSLSession(ssl, this);
+        ses.setSessionContext(clientMode ? clientContext : serverContext);
+
+        return ses;
+    }
+
+    /**
+     * Create a new client session to replace a cached session that was
+     * offered for resumption, but not resumed by the peer. The full
+     * handshake made instead established a new session, the cached one is
+     * left as is since other connections may still be using it.
+     *
+     * @param old cached session that was offered
+     * @param ssl WOLFSSL class to set in new session
+     * @return new session stored under same key as old one once added
+     */
+    protected WolfSSLImplementSSLSession renewSession(
+        WolfSSLImplementSSLSession old, WolfSSLSession ssl) {
+
+        WolfSSLImplementSSLSession ses;
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "cached session not resumed, creating new");
+        ses = new WolfSSLImplementSSLSession(ssl, old.getPeerPort(),
+            old.getPeerHost(), this);
+        ses.setSessionContext(clientContext);
+        ses.setCacheKey(old.getCacheKey());
+
+        return ses;
     }
 
     /**
@@ -286,15 +378,12 @@ public class WolfSSLAuthStore {
      * @return SSL_SUCCESS on success
      */
     protected int addSession(WolfSSLImplementSSLSession session) {
-        String toHash;
+        WolfSSLSessionKey key = session.getCacheKey();
 
-        if (session.getPeerHost() != null) {
+        if (key != null) {
             /* register into session table for resumption */
             session.fromTable = true;
-            toHash = session.getPeerHost().concat(Integer.toString(
-                     session.getPeerPort()));
-            store.put(toHash.hashCode(), session);
-
+            store.put(key, session);
 
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                     "stored session in cache table (host: " +
@@ -305,23 +394,114 @@ public class WolfSSLAuthStore {
         return WolfSSL.SSL_SUCCESS;
     }
 
-    private class SessionStore<K, V> extends LinkedHashMap<K, V> {
-        /**
-         * user defined ID
-         */
-        private static final long serialVersionUID = 1L;
-        private final int maxSz;
-
-        /**
-         * @param in max size of hash map before oldest entry is overwritten
-         */
-        protected SessionStore(int in) {
-            maxSz = in;
+    /**
+     * Add a client session read from a persisted session cache, unless a
+     * session is already stored under the same key.
+     *
+     * @param key key the session was stored under
+     * @param id session ID
+     * @param created session creation time, milliseconds since epoch
+     */
+    protected void restoreClientSession(WolfSSLSessionKey key, byte[] id,
+        long created) {
+        WolfSSLImplementSSLSession ses;
+
+        if (store.get(key) != null) {
+            return;
+        }
+
+        ses = new WolfSSLImplementSSLSession(this, key.getPort(),
+            key.getHost(), id, created);
+        ses.setSessionContext(clientContext);
+        ses.setCacheKey(key);
+        ses.fromTable = true;
+        store.put(key, ses);
+    }
+
+    /**
+     * @return snapshot of client sessions stored for resumption
+     */
+    protected List<WolfSSLImplementSSLSession> getClientSessions() {
+        return store.values();
+    }
+
+    /**
+     * Add a server side session once its handshake has completed, so it
+     * can be found through the server SSLSessionContext. Resumption on the
+     * server is handled by the native wolfSSL session cache.
+     *
+     * @param session the session to add
+     */
+    protected void addServerSession(WolfSSLImplementSSLSession session) {
+        byte[] id = session.getId();
+
+        if (id.length > 0) {
+            serverStore.put(ByteBuffer.wrap(id), session);
         }
+    }
 
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> oldest) {
-            return size() > maxSz;
+    /**
+     * @return handshake and session cache counters of this SSLContext
+     */
+    protected WolfSSLStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * @return cache of peer chains accepted by the TrustManager of this
+     *         SSLContext, or null if disabled
+     */
+    protected WolfSSLVerifiedChainCache getVerifiedChainCache() {
+        return this.chainCache;
+    }
+
+    /**
+     * @param clientMode true for the client context, false for server
+     * @return client or server SSLSessionContext of this SSLContext
+     */
+    protected WolfSSLSessionContext getSessionContext(boolean clientMode) {
+        return clientMode ? clientContext : serverContext;
+    }
+
+    /**
+     * Set the native WOLFSSL_CTX that session timeouts are applied to.
+     * Called once the native context has been created.
+     *
+     * @param ctx native wolfSSL context of this SSLContext
+     */
+    protected void setNativeContext(com.wolfssl.WolfSSLContext ctx) {
+        this.nativeCtx = ctx;
+        updateNativeSessionTimeout();
+    }
+
+    /**
+     * Apply the client and server session timeouts to the native
+     * WOLFSSL_CTX. Both sides share one native context, so the longer of
+     * the two is used, and the Java caches enforce the shorter one.
+     */
+    protected void updateNativeSessionTimeout() {
+        long cli = clientContext.getSessionTimeout();
+        long srv = serverContext.getSessionTimeout();
+        long to;
+        com.wolfssl.WolfSSLContext ctx = this.nativeCtx;
+
+        if (ctx == null) {
+            return;
+        }
+
+        if (cli == 0 || srv == 0) {
+            to = MAX_NATIVE_TIMEOUT;
+        } else {
+            to = Math.min(Math.max(cli, srv), MAX_NATIVE_TIMEOUT);
+        }
+
+        try {
+            if (ctx.setTimeout(to) == WolfSSL.BAD_FUNC_ARG) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "failed to set native session timeout: " + to);
+            }
+        } catch (IllegalStateException e) {
+            /* native context already freed */
         }
     }
 }
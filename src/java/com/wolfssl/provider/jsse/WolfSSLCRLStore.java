@@ -0,0 +1,422 @@
+/* WolfSSLCRLStore.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import com.wolfssl.WolfSSL;
+import com.wolfssl.WolfSSLCertManager;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Certificate Revocation Lists loaded from a directory and checked by
+ * native wolfSSL during certificate verification.
+ *
+ * This is disabled unless the following Security property is set:
+ *
+ * <pre>
+ * wolfjsse.crl.dir              directory holding PEM or DER CRL files
+ * wolfjsse.crl.refreshInterval  seconds between checks of the directory
+ *                               for changes, default 300, 0 loads only once
+ * </pre>
+ *
+ * The directory is read when the first SSLContext or TrustManager using it
+ * is created, and afterwards on a background thread. Files are only read
+ * again when a file was added, removed or modified. All CRLs are held in
+ * memory and loaded into native wolfSSL, so handshakes do no file I/O for
+ * revocation checking. If the directory is deleted, background refresh
+ * for it stops and the CRLs already read stay in use. A later SSLContext
+ * or TrustManager configured with the same directory reads it again.
+ *
+ * Each refresh replaces the set of CRLs as a whole. WolfSSLTrustX509
+ * builds a new native CertManager with the new set and swaps it in.
+ * Native WOLFSSL_CTX objects of registered SSLContexts get new or changed
+ * CRLs added, which native wolfSSL does under its CRL lock, so running
+ * handshakes are not stalled. CRLs removed from the directory stay loaded
+ * in existing SSLContexts until they are replaced by a CRL from the same
+ * issuer. Verified chain caches are cleared on every change.
+ *
+ * CRLs are verified against the trusted CAs when loaded, so they must be
+ * issued by a trusted CA. Once enabled, every certificate of a peer chain
+ * below the trusted CA needs a CRL from its issuer, otherwise
+ * verification fails as with native wolfSSL CRL checking.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLCRLStore {
+
+    /** Security property holding CRL directory */
+    static final String DIR_PROPERTY = "wolfjsse.crl.dir";
+
+    /** Security property holding refresh interval in seconds */
+    static final String INTERVAL_PROPERTY = "wolfjsse.crl.refreshInterval";
+
+    static final int DEFAULT_INTERVAL = 300;
+
+    private static final byte[] PEM_HEADER =
+        "-----BEGIN X509 CRL-----".getBytes(StandardCharsets.US_ASCII);
+
+    /* one store per directory, shared by all SSLContexts and
+     * TrustManagers using it */
+    private static final Map<Path, WolfSSLCRLStore> stores =
+        new HashMap<Path, WolfSSLCRLStore>();
+    private static ScheduledExecutorService timer = null;
+
+    private final Path dir;
+
+    /* background refresh task, protected by class lock */
+    private ScheduledFuture<?> task = null;
+
+    /* CRLs currently in use, replaced as a whole on refresh */
+    private volatile Snapshot current = new Snapshot(
+        Collections.<byte[]>emptyList(), Collections.<Integer>emptyList());
+
+    /* file names, sizes and modification times of last refresh,
+     * protected by this */
+    private String fingerprint = null;
+
+    /* native contexts CRLs are loaded into, protected by this */
+    private final List<WeakReference<com.wolfssl.WolfSSLContext>> contexts =
+        new ArrayList<WeakReference<com.wolfssl.WolfSSLContext>>();
+
+    /**
+     * Immutable set of CRLs read from the directory at one time
+     */
+    static final class Snapshot {
+        final List<byte[]> crls;
+        final List<Integer> types;
+
+        Snapshot(List<byte[]> crls, List<Integer> types) {
+            this.crls = crls;
+            this.types = types;
+        }
+
+        /**
+         * @return number of CRLs in this snapshot
+         */
+        int size() {
+            return crls.size();
+        }
+    }
+
+    private WolfSSLCRLStore(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Get the store for the directory configured by the wolfjsse.crl.dir
+     * Security property. The first call for a directory reads it and
+     * schedules background refresh.
+     *
+     * @return CRL store, or null if no directory is configured
+     */
+    static synchronized WolfSSLCRLStore getInstance() {
+        String path = Security.getProperty(DIR_PROPERTY);
+        WolfSSLCRLStore store;
+        Path dir;
+
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+
+        dir = Paths.get(path.trim()).toAbsolutePath().normalize();
+        store = stores.get(dir);
+        if (store != null) {
+            return store;
+        }
+
+        store = new WolfSSLCRLStore(dir);
+        store.refresh();
+        stores.put(dir, store);
+
+        long interval = getInterval();
+        WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+            "loaded " + store.current.size() + " CRLs from " + dir +
+            ", refresh interval " + interval + " sec");
+
+        if (interval > 0) {
+            final WolfSSLCRLStore s = store;
+
+            if (timer == null) {
+                timer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "wolfJSSE CRL refresh");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            }
+            store.task = timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    if (!Files.isDirectory(s.dir)) {
+                        stop(s);
+                        return;
+                    }
+                    s.refresh();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+
+        return store;
+    }
+
+    /* stop background refresh of a store whose directory was deleted,
+     * and forget it so the directory is read again if used later */
+    private static synchronized void stop(WolfSSLCRLStore store) {
+        if (stores.get(store.dir) == store) {
+            stores.remove(store.dir);
+        }
+        if (store.task != null) {
+            store.task.cancel(false);
+            store.task = null;
+        }
+
+        WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+            "CRL directory " + store.dir + " no longer exists, stopped " +
+            "refreshing it, keeping " + store.current.size() + " CRLs");
+    }
+
+    private static long getInterval() {
+        String val = Security.getProperty(INTERVAL_PROPERTY);
+
+        if (val == null || val.trim().isEmpty()) {
+            return DEFAULT_INTERVAL;
+        }
+        try {
+            long ret = Long.parseLong(val.trim());
+            return (ret >= 0) ? ret : DEFAULT_INTERVAL;
+        } catch (NumberFormatException e) {
+            WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+                "invalid " + INTERVAL_PROPERTY + ", using default: " + val);
+            return DEFAULT_INTERVAL;
+        }
+    }
+
+    /**
+     * @return CRLs currently in use. A new object is returned after each
+     *         change, so callers can compare references to detect changes.
+     */
+    Snapshot getSnapshot() {
+        return this.current;
+    }
+
+    /**
+     * Turn on CRL checking for a native CertManager and load CRLs into it.
+     * Trusted CAs must be loaded first.
+     *
+     * @param cm native CertManager
+     * @param snap CRLs to load
+     * @return number of CRLs loaded
+     */
+    static int load(WolfSSLCertManager cm, Snapshot snap) {
+        int ret = cm.CertManagerEnableCRL(WolfSSL.WOLFSSL_CRL_CHECKALL);
+        int count = 0;
+
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+                "unable to enable CRL checking in CertManager, ret = " + ret);
+            return 0;
+        }
+
+        for (int i = 0; i < snap.size(); i++) {
+            byte[] crl = snap.crls.get(i);
+            ret = cm.CertManagerLoadCRLBuffer(crl, crl.length,
+                    snap.types.get(i));
+            if (ret == WolfSSL.SSL_SUCCESS) {
+                count++;
+            } else {
+                WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+                    "failed to load CRL into CertManager, ret = " + ret);
+            }
+        }
+
+        return count;
+    }
+
+    /* load CRLs into native context, skipping those in skip */
+    private static int load(com.wolfssl.WolfSSLContext ctx, Snapshot snap,
+        Set<ByteBuffer> skip) {
+
+        int count = 0;
+
+        for (int i = 0; i < snap.size(); i++) {
+            byte[] crl = snap.crls.get(i);
+            if (skip != null && skip.contains(ByteBuffer.wrap(crl))) {
+                continue;
+            }
+            int ret = ctx.loadCRLBuffer(crl, crl.length, snap.types.get(i));
+            if (ret == WolfSSL.SSL_SUCCESS) {
+                count++;
+            } else {
+                WolfSSLDebug.log(WolfSSLCRLStore.class, WolfSSLDebug.INFO,
+                    "failed to load CRL into WOLFSSL_CTX, ret = " + ret);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Turn on CRL checking for a native context and load current CRLs into
+     * it. Later changes are loaded into the context until it is garbage
+     * collected. Trusted CAs must be loaded first.
+     *
+     * @param ctx native WolfSSLContext of an SSLContext
+     */
+    synchronized void register(com.wolfssl.WolfSSLContext ctx) {
+        int ret = ctx.enableCRL(WolfSSL.WOLFSSL_CRL_CHECKALL);
+
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "CRL directory configured, but unable to enable CRL " +
+                "checking in native wolfSSL, ret = " + ret);
+            return;
+        }
+
+        int count = load(ctx, this.current, null);
+        contexts.add(new WeakReference<com.wolfssl.WolfSSLContext>(ctx));
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "enabled CRL checking in WOLFSSL_CTX, loaded " + count + " of " +
+            this.current.size() + " CRLs");
+    }
+
+    /* PEM if file holds a PEM CRL header, otherwise DER */
+    private static int getType(byte[] data) {
+        outer:
+        for (int i = 0; i + PEM_HEADER.length <= data.length; i++) {
+            for (int j = 0; j < PEM_HEADER.length; j++) {
+                if (data[i + j] != PEM_HEADER[j]) {
+                    continue outer;
+                }
+            }
+            return WolfSSL.SSL_FILETYPE_PEM;
+        }
+        return WolfSSL.SSL_FILETYPE_ASN1;
+    }
+
+    /**
+     * Read the directory again if any file in it changed, then swap in the
+     * new CRLs. On error the current CRLs are kept.
+     */
+    synchronized void refresh() {
+        List<Path> files = new ArrayList<Path>();
+        StringBuilder sb = new StringBuilder();
+        List<byte[]> crls = new ArrayList<byte[]>();
+        List<Integer> types = new ArrayList<Integer>();
+        Snapshot old = this.current;
+        Snapshot snap;
+        boolean first;
+        String fp;
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p) && !Files.isHidden(p)) {
+                    files.add(p);
+                }
+            }
+            Collections.sort(files);
+
+            for (Path p : files) {
+                sb.append(p.getFileName()).append(':')
+                  .append(Files.size(p)).append(':')
+                  .append(Files.getLastModifiedTime(p).toMillis())
+                  .append('/');
+            }
+            fp = sb.toString();
+            if (fp.equals(this.fingerprint)) {
+                return;
+            }
+
+            for (Path p : files) {
+                byte[] data = Files.readAllBytes(p);
+                crls.add(data);
+                types.add(getType(data));
+            }
+
+        } catch (IOException | SecurityException e) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "failed to read CRL directory " + dir + ", keeping " +
+                old.size() + " loaded CRLs: " + e.getMessage());
+            return;
+        }
+
+        snap = new Snapshot(Collections.unmodifiableList(crls),
+            Collections.unmodifiableList(types));
+        this.current = snap;
+        first = (this.fingerprint == null);
+        this.fingerprint = fp;
+
+        /* add new or changed CRLs to registered native contexts */
+        if (!contexts.isEmpty()) {
+            Set<ByteBuffer> unchanged = new HashSet<ByteBuffer>();
+            for (byte[] crl : old.crls) {
+                unchanged.add(ByteBuffer.wrap(crl));
+            }
+
+            Iterator<WeakReference<com.wolfssl.WolfSSLContext>> it =
+                contexts.iterator();
+            while (it.hasNext()) {
+                com.wolfssl.WolfSSLContext ctx = it.next().get();
+                if (ctx == null) {
+                    it.remove();
+                    continue;
+                }
+                try {
+                    load(ctx, snap, unchanged);
+                } catch (IllegalStateException e) {
+                    /* context has been freed */
+                    it.remove();
+                }
+            }
+        }
+
+        /* chains verified against old CRLs must be checked again */
+        if (!first) {
+            WolfSSLVerifiedChainCache.invalidateAll();
+        }
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "read " + snap.size() + " CRLs from " + dir);
+    }
+}
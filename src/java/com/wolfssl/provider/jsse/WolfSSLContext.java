@@ -119,6 +119,25 @@ public class WolfSSLContext extends SSLContextSpi {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                 "created new native WOLFSSL_CTX");
 
+        /* apply session context timeouts to native session cache */
+        authStore.setNativeContext(ctx);
+
+        /* restore persisted sessions, if enabled */
+        WolfSSLSessionPersister.register(authStore);
+
+        /* issue server session tickets, unless disabled */
+        if (!"false".equalsIgnoreCase(System.getProperty(
+                "jdk.tls.server.enableSessionTicketExtension"))) {
+            setServerSessionTickets();
+        }
+
+        /* expose statistics of this SSLContext through JMX */
+        authStore.getStats().register(authStore,
+            this.currentVersion.toString());
+
+        /* share server sessions with other processes, if configured */
+        WolfSSLSharedSessionCache.register(ctx, authStore);
+
         try {
             LoadTrustedRootCerts();
             LoadClientKeyAndCertChain();
@@ -127,6 +146,16 @@ public class WolfSSLContext extends SSLContextSpi {
             throw new IllegalArgumentException(e);
         }
 
+        /* check peer certs against CRLs of configured directory, loaded
+         * after the CAs they are verified with */
+        WolfSSLCRLStore crlStore = WolfSSLCRLStore.getInstance();
+        if (crlStore != null) {
+            crlStore.register(ctx);
+        }
+
+        /* staple and request OCSP responses, if enabled */
+        setOCSPStapling();
+
         /* auto-populate enabled ciphersuites with supported ones */
         if(ctxAttr.list != null) {
             params.setCipherSuites(ctxAttr.list);
@@ -138,6 +167,62 @@ public class WolfSSLContext extends SSLContextSpi {
         params.setProtocols(this.getProtocolsMask(ctxAttr.noOptions));
     }
 
+    /* Register ticket key callback so server sessions are resumed from
+     * session tickets, with keys shared by all SSLContexts in this JVM and
+     * by other servers configured with the same ticket secret */
+    private void setServerSessionTickets() {
+        WolfSSLTicketKeyManager mgr = WolfSSLTicketKeyManager.getDefault();
+        int ret = ctx.setTicketEncCb(mgr);
+
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "server session tickets not available, ret = " + ret);
+            return;
+        }
+
+        /* count accepted tickets per SSLContext */
+        ctx.setTicketEncCtx(authStore.getStats());
+
+        /* TLS 1.3 limits ticket lifetime to 7 days */
+        ret = ctx.setTicketHint((int)Math.min(mgr.getTicketLifetime(),
+                604800));
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "enabled server session tickets, lifetime hint ret = " + ret);
+
+        /* accept TLS 1.3 early data on resumption, if enabled. Replayed
+         * tickets are rejected by the ticket key manager */
+        if (mgr.getMaxEarlyData() > 0) {
+            ret = ctx.setMaxEarlyData(mgr.getMaxEarlyData());
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "enabled early data, max size: " + mgr.getMaxEarlyData() +
+                ", replay window: " + mgr.getReplayWindow() +
+                " sec, ret = " + ret);
+        }
+    }
+
+    /* Staple OCSP responses for the certificate of this context to server
+     * handshakes, and have native wolfSSL verify responses stapled by
+     * servers, as enabled by the jdk.tls.server.enableStatusRequestExtension
+     * and jdk.tls.client.enableStatusRequestExtension System properties */
+    private void setOCSPStapling() {
+        X509KeyManager km = authStore.getX509KeyManager();
+        X509TrustManager tm = authStore.getX509TrustManager();
+        String alias = authStore.getCertAlias();
+
+        if (WolfSSLOCSPStapler.isServerEnabled() && km != null &&
+                tm != null && alias != null) {
+            WolfSSLOCSPStapler.register(ctx, km.getCertificateChain(alias),
+                tm.getAcceptedIssuers(), authStore.getStats());
+        }
+
+        if (WolfSSLOCSPStapler.isClientEnabled()) {
+            int ret = ctx.enableOCSPStapling();
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "enabled verification of stapled OCSP responses, ret = " +
+                ret);
+        }
+    }
+
     private void LoadTrustedRootCerts() {
 
         int ret = 0;
@@ -214,14 +299,9 @@ public class WolfSSLContext extends SSLContextSpi {
          * fail for EC keys. This has been fixed in later JDK versions,
          * but skip adding EC here if we're running on those versions . */
         ArrayList<String> keyAlgos = new ArrayList<String>();
-<<<<<<< HEAD
-        if (WolfSSL.EccEnabled() && 
-            (!javaVersion.equals("1.7.0_201") && !javaVersion.equals("1.7.0_171"))) {
-=======
         if (WolfSSL.EccEnabled() &&
             (!javaVersion.equals("1.7.0_201") &&
              !javaVersion.equals("1.7.0_171"))) {
->>>>>>> 175f4b5a7434d506fdfbbaa314806fe5ad3e40a5
             keyAlgos.add("EC");
         }
         if (WolfSSL.RsaEnabled()) {
@@ -425,11 +505,9 @@ public class WolfSSLContext extends SSLContextSpi {
     }
 
     /**
-     * Returns the SSLServerSessionContext associated with this SSLContext.
-     *
-     * Not currently supported by wolfJSSE.
+     * Returns the server SSLSessionContext associated with this SSLContext.
      *
-     * @throws UnsupportedOperationException operation not yet supported
+     * @throws IllegalStateException if SSLContext has not been initialized
      */
     @Override
     protected SSLSessionContext engineGetServerSessionContext() {
@@ -437,15 +515,18 @@ public class WolfSSLContext extends SSLContextSpi {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered engineGetServerSessionContext()");
 
-        throw new UnsupportedOperationException("Not supported by wolfJSSE");
+        if (this.authStore == null) {
+            throw new IllegalStateException("SSLContext must be initialized " +
+                "before use, please call init()");
+        }
+
+        return this.authStore.getSessionContext(false);
     }
 
     /**
-     * Returns the SSLClientSessionContext associated with this SSLContext.
-     *
-     * Not currently supported by wolfJSSE.
+     * Returns the client SSLSessionContext associated with this SSLContext.
      *
-     * @throws UnsupportedOperationException operation not yet supported
+     * @throws IllegalStateException if SSLContext has not been initialized
      */
     @Override
     protected SSLSessionContext engineGetClientSessionContext() {
@@ -453,7 +534,12 @@ public class WolfSSLContext extends SSLContextSpi {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered engineGetClientSessionContext()");
 
-        throw new UnsupportedOperationException("Not supported by wolfJSSE");
+        if (this.authStore == null) {
+            throw new IllegalStateException("SSLContext must be initialized " +
+                "before use, please call init()");
+        }
+
+        return this.authStore.getSessionContext(true);
     }
 
     /**
@@ -461,15 +547,11 @@ public class WolfSSLContext extends SSLContextSpi {
      */
     @Override
     protected SSLParameters engineGetDefaultSSLParameters() {
-<<<<<<< HEAD
-        return WolfSSLEngineHelper.decoupleParams(this.params);
-=======
 
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered engineGetDefaultSSLParameters()");
 
         return WolfSSLParametersHelper.decoupleParams(this.params);
->>>>>>> 175f4b5a7434d506fdfbbaa314806fe5ad3e40a5
     }
 
     /**
@@ -478,15 +560,11 @@ public class WolfSSLContext extends SSLContextSpi {
      */
     @Override
     protected SSLParameters engineGetSupportedSSLParameters() {
-<<<<<<< HEAD
-        return WolfSSLEngineHelper.decoupleParams(this.params);
-=======
 
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered engineGetSupportedSSLParameters()");
 
         return WolfSSLParametersHelper.decoupleParams(this.params);
->>>>>>> 175f4b5a7434d506fdfbbaa314806fe5ad3e40a5
     }
 
     /* used internally by SSLSocketFactory() */
@@ -495,12 +573,6 @@ public class WolfSSLContext extends SSLContextSpi {
     }
 
     /* used internally by SSLSocketFactory() */
-<<<<<<< HEAD
-    protected SSLParameters getInternalSSLParams() {
-        return this.params;
-    }
-
-=======
     protected WolfSSLParameters getInternalSSLParams() {
         return this.params;
     }
@@ -526,7 +598,6 @@ public class WolfSSLContext extends SSLContextSpi {
         return WolfSSL.getProtocolsMask(noOpt);
     }
 
->>>>>>> 175f4b5a7434d506fdfbbaa314806fe5ad3e40a5
     public static final class TLSV1_Context extends WolfSSLContext {
         public TLSV1_Context() {
             super(TLS_VERSION.TLSv1);
@@ -50,9 +50,13 @@ public class WolfSSLEngine extends SSLEngine {
     private com.wolfssl.WolfSSLContext ctx;
     private WolfSSLAuthStore authStore;
     private WolfSSLParameters params;
-    private byte[] toSend; /* encrypted packet to send */
-    private byte[] toRead; /* encrypted packet coming in */
-    private int toReadSz = 0;
+    /* encrypted packet to send */
+    private final WolfSSLRingBuffer toSend = new WolfSSLRingBuffer();
+    /* encrypted packet coming in */
+    private final WolfSSLRingBuffer toRead = new WolfSSLRingBuffer();
+    /* caller's network buffer during wrap(), records are written directly
+     * into it when they fit, otherwise they are queued in toSend */
+    private ByteBuffer netData = null;
     private HandshakeStatus hs = SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
     private boolean needInit = true;
 
@@ -65,6 +69,16 @@ public class WolfSSLEngine extends SSLEngine {
     static private SendCB sendCb = null;
     static private RecvCB recvCb = null;
 
+    /* used to drive wolfSSL state when the application gave no data */
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    /* true if records are exchanged with wolfSSL through native memory
+     * buffers instead of the Java I/O callbacks, see initSSL() */
+    private boolean nativeIO = false;
+
+    /* early data to send with the ClientHello, see setEarlyData() */
+    private byte[] earlyData = null;
+
     /**
      *  Create a new engine with no hints for session reuse
      *
@@ -129,6 +143,22 @@ public class WolfSSLEngine extends SSLEngine {
         }
         ssl.setIORecv(recvCb);
         ssl.setIOSend(sendCb);
+
+        /* callbacks only use first sz bytes, reuse arrays */
+        ssl.setIOBufferReuse(true);
+    }
+
+    /* check if native memory I/O has been enabled with the
+     * "wolfjsse.engine.nativeIO" System property */
+    private static boolean useNativeIO() {
+
+        String enabled = System.getProperty("wolfjsse.engine.nativeIO");
+
+        if ((enabled != null) && (enabled.equalsIgnoreCase("true"))) {
+            return true;
+        }
+
+        return false;
     }
 
     private void initSSL() throws WolfSSLException, WolfSSLJNIException {
@@ -143,34 +173,128 @@ public class WolfSSLEngine extends SSLEngine {
         if (ssl == null) {
             throw new WolfSSLException("Issue creating WOLFSSL structure");
         }
+
+        if (useNativeIO()) {
+            /* records are passed through native buffers, no upcalls */
+            if (ssl.useMemoryIO(WolfSSLRingBuffer.DEFAULT_CAPACITY) !=
+                    WolfSSL.SSL_SUCCESS) {
+                throw new WolfSSLException(
+                    "Failed to enable native memory I/O");
+            }
+            this.nativeIO = true;
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "using native memory I/O for SSLEngine");
+            return;
+        }
+
         setCallbacks();
         ssl.setIOReadCtx(this);
         ssl.setIOWriteCtx(this);
     }
 
     /**
-     * returns 0 if no data was waiting and size of copied on success
-     * negative values are returned in error cases
+     * returns number of encrypted bytes waiting to be sent
      */
-    private int CopyOutPacket(ByteBuffer out, Status status) {
-        int max = 0;
+    private int pendingOut() {
+        if (this.nativeIO) {
+            return ssl.memoryIOPendingOutput();
+        }
+        return this.toSend.length();
+    }
 
-        if (this.toSend != null) {
-            max = out.remaining();
+    /**
+     * returns 0 if no data was waiting and size of copied on success,
+     * -1 is returned if out is not large enough to hold waiting data.
+     * With native I/O the pending data is treated as a byte stream and as
+     * much as fits is copied.
+     */
+    private int CopyOutPacket(ByteBuffer out) {
+        int sz = pendingOut();
 
-            if (this.toSend.length > max) {
-                /* output not large enough to read packet */
-                status = Status.BUFFER_OVERFLOW;
+        if (this.nativeIO) {
+            if (sz > 0 && !out.hasRemaining()) {
                 return -1;
             }
-            else {
-                /* read all from toSend */
-                out.put(this.toSend);
-                max = this.toSend.length;
-                this.toSend = null;
+            return (sz > 0) ? ssl.memoryIOGetOutput(out) : 0;
+        }
+
+        if (sz > out.remaining()) {
+            /* output not large enough to read packet */
+            return -1;
+        }
+
+        /* read all from toSend */
+        return this.toSend.get(out);
+    }
+
+    /**
+     * Writes application data from each input buffer through wolfSSL.
+     * Records produced go straight to netData when possible. Returns total
+     * number of bytes consumed, or the wolfSSL return value of the first
+     * write if nothing was consumed.
+     */
+    private int WriteInput(ByteBuffer[] in, int ofst, int len) {
+        int i, ret = 0, total = 0;
+        boolean hasData = false;
+
+        for (i = ofst; i < ofst + len; i++) {
+            if (in[i] == null || !in[i].hasRemaining()) {
+                continue;
+            }
+            hasData = true;
+
+            ret = this.ssl.write(in[i]);
+            if (ret <= 0) {
+                break;
+            }
+            total += ret;
+            if (in[i].hasRemaining()) {
+                /* partial write, leave rest for next wrap() call */
+                break;
             }
         }
-        return max;
+
+        if (!hasData) {
+            /* nothing to send, still call write to progress handshake */
+            return this.ssl.write(EMPTY_BYTES, 0);
+        }
+
+        return (total > 0) ? total : ret;
+    }
+
+    /**
+     * Reads decrypted data from wolfSSL directly into the output buffers,
+     * moving to the next buffer only once the current one is full. Returns
+     * total number of bytes produced, or the wolfSSL return value of the
+     * first read if nothing was produced.
+     */
+    private int ReadOutput(ByteBuffer[] out, int ofst, int len) {
+        int i, ret = 0, total = 0;
+        boolean hasRoom = false;
+
+        for (i = ofst; i < ofst + len; i++) {
+            if (!out[i].hasRemaining()) {
+                continue;
+            }
+            hasRoom = true;
+
+            ret = this.ssl.read(out[i]);
+            if (ret <= 0) {
+                break;
+            }
+            total += ret;
+            if (out[i].hasRemaining()) {
+                /* no more decrypted data available right now */
+                break;
+            }
+        }
+
+        if (!hasRoom) {
+            /* no room for output, still call read to progress handshake */
+            return this.ssl.read(EMPTY_BYTES, 0);
+        }
+
+        return (total > 0) ? total : ret;
     }
 
     /**
@@ -217,10 +341,7 @@ public class WolfSSLEngine extends SSLEngine {
     @Override
     public synchronized SSLEngineResult wrap(ByteBuffer[] in, int ofst, int len,
             ByteBuffer out) throws SSLException {
-        int i, max = 0, ret = 0, idx = 0, pro = 0;
-        ByteBuffer tmp;
-        byte[] msg;
-        int pos[] = new int[len];
+        int ret = 0, cns = 0, pro = 0, startPos;
 
         if (needInit) {
             EngineHelper.initHandshake();
@@ -230,71 +351,87 @@ public class WolfSSLEngine extends SSLEngine {
 
         /* for sslengineresults return */
         Status status = SSLEngineResult.Status.OK;
-        if (ofst + len > in.length || out == null) {
+        if (in == null || ofst < 0 || len < 0 || ofst + len > in.length ||
+                out == null) {
             throw new SSLException("bad arguments");
         }
+        startPos = out.position();
 
-        /* check if left over data to be wrapped
-         * (pro can be negative on error) */
-        pro = CopyOutPacket(out, status);
+        /* check if left over data to be wrapped */
+        pro = CopyOutPacket(out);
 
-        /* check if closing down connection */
-        if (pro >=0 && !outBoundOpen) {
+        if (pro < 0) {
+            /* left over data does not fit, caller needs larger buffer */
+            status = SSLEngineResult.Status.BUFFER_OVERFLOW;
+        }
+        else if (!outBoundOpen) {
+            /* check if closing down connection */
             status = SSLEngineResult.Status.CLOSED;
-            ClosingConnection();
-            pro += CopyOutPacket(out, status);
+            this.netData = out;
+            try {
+                ClosingConnection();
+            } finally {
+                this.netData = null;
+            }
+            if (pendingOut() > 0 && out.hasRemaining()) {
+                CopyOutPacket(out);
+            }
         }
         else if (pro == 0) {
-                /* get buffer size */
-                for (i = ofst; i < ofst + len; i++) {
-                    max += in[i].remaining();
+            int early = 0;
+
+            /* records produced are put directly into out when possible */
+            this.netData = out;
+            try {
+                if (this.earlyData != null) {
+                    byte[] data = this.earlyData;
+                    this.earlyData = null;
+                    early = EngineHelper.writeEarlyData(data, 0,
+                        data.length, 0);
                 }
-                tmp = ByteBuffer.allocate(max);
+                ret = (early > 0) ? early : WriteInput(in, ofst, len);
+            } finally {
+                this.netData = null;
+            }
 
-                for (i = ofst; i < len; i++) {
-                    pos[idx++] = in[i].position();
-                    tmp.put(in[i]);
-                }
+            if (ret <= 0) {
+                int err = ssl.getError(ret);
 
-                msg = new byte[max];
-                tmp.rewind();
-                tmp.get(msg);
-                ret = this.ssl.write(msg, max);
-                if (ret <= 0) {
-                    int err = ssl.getError(ret);
-
-                    switch (err) {
-                        case WolfSSL.SSL_ERROR_WANT_READ:
-                            hs = SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
-                            break;
-                        case WolfSSL.SSL_ERROR_WANT_WRITE:
-                            hs = SSLEngineResult.HandshakeStatus.NEED_WRAP;
-                            break;
-                        default:
-                            throw new SSLException("wolfSSL error case " + ret);
-                    }
+                switch (err) {
+                    case WolfSSL.SSL_ERROR_WANT_READ:
+                        hs = SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
+                        break;
+                    case WolfSSL.SSL_ERROR_WANT_WRITE:
+                        hs = SSLEngineResult.HandshakeStatus.NEED_WRAP;
+                        break;
+                    default:
+                        throw new SSLException("wolfSSL error case " + ret);
                 }
+            }
+            else if (early > 0) {
+                /* ClientHello and early data produced, none of the
+                 * caller's input was consumed */
+                hs = SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
+            }
+            else {
+                /* input buffer positions were advanced by the write */
+                cns = ret;
+            }
 
-                /* if the handshake is not done then reset input
-                 * buffer postions */
-                if (!ssl.handshakeDone()) {
-                    idx = 0;
-                    for (i = ofst; i < ofst + len; i++) {
-                        in[i].position(pos[idx++]);
-                    }
-                }
-                else {
-                    hs = SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
-                }
+            if (ssl.handshakeDone()) {
+                EngineHelper.sessionEstablished();
+                hs = SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+            }
 
-                pro = CopyOutPacket(out, status);
+            /* queued records if out filled up part way through, with
+             * native I/O all records produced are still pending here */
+            if (pendingOut() > 0 && out.hasRemaining()) {
+                CopyOutPacket(out);
+            }
         }
 
-        /* consumed no bytes */
-        if (ret < 0) {
-            ret = 0;
-        }
-        return new SSLEngineResult(status, hs, ret, pro);
+        pro = out.position() - startPos;
+        return new SSLEngineResult(status, hs, cns, pro);
     }
 
     @Override
@@ -306,8 +443,7 @@ public class WolfSSLEngine extends SSLEngine {
     @Override
     public synchronized SSLEngineResult unwrap(ByteBuffer in, ByteBuffer[] out,
             int ofst, int length) throws SSLException {
-        int i, ret = 0, sz = 0, idx = 0, max = 0, pos, cns = 0, pro = 0;
-        byte[] tmp;
+        int i, ret = 0, cns = 0, pro = 0;
         Status status;
 
         if (needInit) {
@@ -319,7 +455,8 @@ public class WolfSSLEngine extends SSLEngine {
         /* for sslengineresults return */
         status = SSLEngineResult.Status.OK;
 
-        if (in == null || out == null || ofst + length > out.length) {
+        if (in == null || out == null || ofst < 0 || length < 0 ||
+                ofst + length > out.length) {
             throw new IllegalArgumentException();
         }
 
@@ -328,27 +465,23 @@ public class WolfSSLEngine extends SSLEngine {
                 throw new IllegalArgumentException(
                         "null or readonly out buffer found");
             }
-            max += out[i + ofst].remaining();
         }
 
-        sz = cns = in.remaining();
-        pos = in.position();
-        if (sz > 0) {
+        cns = in.remaining();
+        if (cns > 0) {
             /* add new encrypted input to the read buffer for
              * wolfSSL_read call */
-            tmp = new byte[sz];
-            in.get(tmp);
-            addToRead(tmp);
+            addToRead(in);
         }
 
-        tmp = new byte[max];
         if (!outBoundOpen) {
             if (ClosingConnection() == WolfSSL.SSL_SUCCESS) {
                 status = SSLEngineResult.Status.CLOSED;
             }
         }
         else {
-            ret = this.ssl.read(tmp, max);
+            /* plaintext is placed directly into the out buffers */
+            ret = ReadOutput(out, ofst, length);
             if (ret <= 0) {
                 int err = ssl.getError(ret);
 
@@ -367,7 +500,7 @@ public class WolfSSLEngine extends SSLEngine {
                             this.outBoundOpen = false;
                             ClosingConnection();
                             status = SSLEngineResult.Status.CLOSED;
-                            if (toSend != null && toSend.length > 0) {
+                            if (pendingOut() > 0) {
                                 hs = SSLEngineResult.HandshakeStatus.NEED_WRAP;
                             }
                         }
@@ -377,21 +510,13 @@ public class WolfSSLEngine extends SSLEngine {
                         throw new SSLException("wolfSSL error case " + err);
                 }
             }
-        }
-
-        for (i = 0; i < ret;) {
-            if (idx >= length) { /* no more output buffers left */
-                break;
+            else {
+                pro = ret;
             }
-            sz = out[idx + ofst].remaining();
-            sz = (sz > ret)? ret : sz;
-            out[idx + ofst].put(tmp, i, sz);
-            i   += sz;
-            pro += sz;
-            idx++;
         }
 
         if (ssl.handshakeDone()) {
+            EngineHelper.sessionEstablished();
             hs = SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
         }
         return new SSLEngineResult(status, hs, cns, pro);
@@ -475,6 +600,41 @@ public class WolfSSLEngine extends SSLEngine {
         EngineHelper.doHandshake(1);
     }
 
+    /**
+     * Sets data to send as TLS 1.3 early data (0-RTT) with the
+     * ClientHello, client side only. Must be called before the first
+     * wrap().
+     * <p>
+     * Early data is only sent when resuming a TLS 1.3 session. It can be
+     * replayed by an attacker, so only requests that are safe to repeat
+     * should be sent this way. Once the handshake has completed, check
+     * {@link #isEarlyDataAccepted()}, and if it returns false, send the
+     * data again with wrap().
+     *
+     * @param data early data to send, or null to send none
+     * @throws IllegalStateException if the handshake has already started
+     */
+    public synchronized void setEarlyData(byte[] data)
+        throws IllegalStateException {
+
+        if (!needInit) {
+            throw new IllegalStateException("Handshake has already started");
+        }
+        this.earlyData = (data == null) ? null : data.clone();
+    }
+
+    /**
+     * Checks if early data set with {@link #setEarlyData(byte[])} was
+     * accepted by the server. Only meaningful once the handshake has
+     * completed.
+     *
+     * @return true if early data was accepted, false if none was sent or
+     *         the server rejected it
+     */
+    public synchronized boolean isEarlyDataAccepted() {
+        return EngineHelper.isEarlyDataAccepted();
+    }
+
     @Override
     public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
         return hs;
@@ -531,48 +691,33 @@ public class WolfSSLEngine extends SSLEngine {
         }
     }
 
-    /* encrypted packet ready to be sent out. Copies buffer to end of to send
+    /* encrypted packet ready to be sent out. Written directly into the
+     * caller's buffer when possible, otherwise copied to end of to send
      * queue */
     protected int setOut(byte[] in, int sz) {
-        int totalSz = sz, idx = 0;
-        byte[] tmp;
 
-        if (this.toSend != null) {
-            totalSz += this.toSend.length;
+        if (this.toSend.isEmpty() && this.netData != null &&
+                this.netData.remaining() >= sz) {
+            this.netData.put(in, 0, sz);
+            return sz;
         }
-        tmp = new byte[totalSz];
-        if (this.toSend != null) {
-            System.arraycopy(this.toSend, 0, tmp, idx, this.toSend.length);
-            idx += this.toSend.length;
-        }
-        System.arraycopy(in, 0, tmp, idx, in.length);
-        this.toSend = tmp;
+
+        this.toSend.put(in, 0, sz);
         return sz;
     }
 
 
     /* reads from buffer toRead */
     protected int setIn(byte[] toRead, int sz) {
-        int max = (sz < toReadSz)? sz : toReadSz;
+        int max;
 
-        if (this.toRead == null || this.toReadSz == 0) {
+        if (this.toRead.isEmpty()) {
             /* nothing to be read */
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                     "No buffer to read returning want read");
             return WolfSSL.WOLFSSL_CBIO_ERR_WANT_READ;
         }
-        System.arraycopy(this.toRead, 0, toRead, 0, max);
-
-        if (max < this.toReadSz) {
-            int left = this.toReadSz - max;
-            System.arraycopy(this.toRead, max, this.toRead, 0, left);
-            this.toReadSz = left;
-        }
-        else {
-            /* read all from buffer */
-            this.toRead = null;
-            this.toReadSz = 0;
-        }
+        max = this.toRead.get(toRead, 0, sz);
 
         if (WolfSSLDebug.DEBUG) {
             System.out.println("CB Read ["+max+"] :");
@@ -585,17 +730,15 @@ public class WolfSSLEngine extends SSLEngine {
         return max;
     }
 
-    /* adds buffer to the internal buffer to be unwrapped */
-    private void addToRead(byte[] in) {
-        byte[] combined;
-
-        combined = new byte[in.length + toReadSz];
-        if (toRead != null && toReadSz > 0) {
-            System.arraycopy(toRead, 0, combined, 0, toReadSz);
+    /* adds remaining bytes of in to the internal buffer to be unwrapped */
+    private void addToRead(ByteBuffer in) throws SSLException {
+        if (this.nativeIO) {
+            if (ssl.memoryIOAddInput(in) < 0) {
+                throw new SSLException("Failed to queue native input");
+            }
+            return;
         }
-        System.arraycopy(in, 0, combined, toReadSz, in.length);
-        toRead = combined;
-        toReadSz += in.length;
+        toRead.put(in);
     }
 
     private class SendCB implements WolfSSLIOSendCallback {
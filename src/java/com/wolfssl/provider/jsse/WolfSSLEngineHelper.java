@@ -23,18 +23,19 @@ package com.wolfssl.provider.jsse;
 import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLVerifyCallback;
 import com.wolfssl.WolfSSLException;
+import com.wolfssl.WolfSSLJNIException;
 import com.wolfssl.WolfSSLSession;
-import com.wolfssl.WolfSSLCertificate;
 import com.wolfssl.WolfSSLX509StoreCtx;
 import java.util.Arrays;
 import java.util.List;
+import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.cert.CertificateException;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.X509TrustManager;
 import javax.net.ssl.SSLHandshakeException;
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
 
 /**
  * This is a helper function to account for similar methods between SSLSocket
@@ -56,6 +57,10 @@ public class WolfSSLEngineHelper {
     private boolean clientMode;
     private boolean sessionCreation = true;
     private boolean modeSet = false;
+    private boolean sessionRegistered = false;
+    private boolean sessionFromCache = false; /* cached session offered */
+    private long handshakeStart = 0;     /* System.nanoTime() */
+    private boolean earlyDataSent = false;
 
     /**
      * Always creates a new session
@@ -73,7 +78,6 @@ public class WolfSSLEngineHelper {
         this.ssl = ssl;
         this.params = params;
         this.authStore = store;
-        this.session = new WolfSSLImplementSSLSession(store);
 
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "created new WolfSSLEngineHelper()");
@@ -100,7 +104,6 @@ public class WolfSSLEngineHelper {
         this.port = port;
         this.hostname = hostname;
         this.authStore = store;
-        this.session = new WolfSSLImplementSSLSession(store);
 
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "created new WolfSSLEngineHelper(port: " + port +
@@ -117,8 +120,15 @@ public class WolfSSLEngineHelper {
         return ssl;
     }
 
+    /* Returns session of this connection. Before the handshake has
+     * started, returns a session with no cipher suite or protocol, created
+     * on first call so connections that never ask for it do not allocate
+     * one. */
     protected WolfSSLImplementSSLSession getSession() {
-        return session;
+        if (this.session == null) {
+            this.session = new WolfSSLImplementSSLSession(this.authStore);
+        }
+        return this.session;
     }
 
     /* gets all supported cipher suites */
@@ -442,6 +452,22 @@ public class WolfSSLEngineHelper {
         }
     }
 
+    /* Request a stapled OCSP response from the server, if enabled with the
+     * jdk.tls.client.enableStatusRequestExtension System property. No nonce
+     * is sent, since servers staple cached responses. Native wolfSSL
+     * verifies received responses against the trusted CAs. */
+    private void setLocalStatusRequest() {
+        if (this.clientMode && WolfSSLOCSPStapler.isClientEnabled()) {
+            int ret = this.ssl.useOCSPStapling(WolfSSL.WOLFSSL_CSR_OCSP, 0);
+            int ret2 = this.ssl.useOCSPStaplingV2(
+                WolfSSL.WOLFSSL_CSR2_OCSP_MULTI, 0);
+
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "requesting stapled OCSP response, ret = " + ret +
+                ", v2 ret = " + ret2);
+        }
+    }
+
     /* Set the ALPN to be used for this session */
     private void setLocalAlpnProtocols() {
         byte[] alpnProtos = this.params.getAlpnProtos();
@@ -462,6 +488,7 @@ public class WolfSSLEngineHelper {
         this.setLocalAuth();
         this.setLocalServerNames();
         this.setLocalSessionTicket();
+        this.setLocalStatusRequest();
         this.setLocalAlpnProtocols();
     }
 
@@ -473,9 +500,14 @@ public class WolfSSLEngineHelper {
             throw new SSLException("setUseClientMode has not been called");
         }
 
+        this.handshakeStart = System.nanoTime();
+
         /* create non null session */
         this.session = this.authStore.getSession(ssl, this.port, this.hostname,
-            this.clientMode);
+            this.clientMode, this.params.getProtocols(),
+            this.params.getCipherSuites());
+        this.sessionFromCache = (this.session != null &&
+            this.session.fromTable);
 
         if (this.session != null && this.sessionCreation == false &&
                 !this.session.fromTable) {
@@ -504,6 +536,16 @@ public class WolfSSLEngineHelper {
      * isSSLEngine param specifies if this is being called by an SSLEngine
      * or not. Should not loop on WANT_READ/WRITE for SSLEngine */
     protected int doHandshake(int isSSLEngine) throws SSLException {
+        return doHandshake(isSSLEngine, 0);
+    }
+
+    /* start or continue handshake, waiting at most timeout ms for the
+     * underlying socket (0 waits forever). Returns WolfSSL.SSL_SUCCESS,
+     * WolfSSL.SSL_FAILURE, or WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT if the
+     * timeout expired, in which case the handshake can be continued by
+     * calling this method again. */
+    protected int doHandshake(int isSSLEngine, int timeout)
+        throws SSLException {
         if (!modeSet) {
             throw new SSLException("setUseClientMode has not been called");
         }
@@ -530,7 +572,7 @@ public class WolfSSLEngineHelper {
 
                 return WolfSSL.SSL_HANDSHAKE_FAILURE;
             }
-            this.session = this.authStore.getSession(ssl);
+            this.session = this.authStore.getSession(ssl, this.clientMode);
         }
 
         int ret, err;
@@ -542,12 +584,15 @@ public class WolfSSLEngineHelper {
             if (this.clientMode) {
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                         "calling native wolfSSL_connect()");
-                ret = this.ssl.connect();
+                ret = this.ssl.connect(timeout);
 
             } else {
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                             "calling native wolfSSL_accept()");
-                ret = this.ssl.accept();
+                ret = this.ssl.accept(timeout);
+            }
+            if (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+                break;
             }
             err = ssl.getError(ret);
 
@@ -558,15 +603,215 @@ public class WolfSSLEngineHelper {
         return ret;
     }
 
+    /* Send early data before the handshake completes, client side only.
+     * Early data is only sent when resuming a TLS 1.3 session, returns 0
+     * without sending anything otherwise, or if native wolfSSL does not
+     * support early data. Returns number of bytes sent, or
+     * WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT if timeout (ms) expired.
+     * initHandshake() must have been called first. */
+    protected int writeEarlyData(byte[] b, int off, int len, int timeout)
+        throws SSLException {
+
+        if (!this.clientMode) {
+            throw new SSLException("early data can only be sent by clients");
+        }
+        if (this.session == null || !this.session.fromTable ||
+            !"TLSv1.3".equals(this.session.getProtocol())) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "not resuming a TLS 1.3 session, early data not sent");
+            return 0;
+        }
+
+        int ret = this.ssl.writeEarlyData(b, off, len, timeout);
+        if (ret == WolfSSL.NOT_COMPILED_IN) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "native wolfSSL compiled without early data support");
+            return 0;
+        }
+        if (ret < 0 && ret != WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+            int err = this.ssl.getError(ret);
+            throw new SSLException("Error sending early data: " +
+                WolfSSL.getErrorString(err) + " (error code: " + err + ")");
+        }
+        if (ret > 0) {
+            this.earlyDataSent = true;
+        }
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "sent early data, ret = " + ret);
+
+        return ret;
+    }
+
+    /* Read early data sent by the client before the handshake completes,
+     * server side only. Returns number of bytes read, 0 once there is no
+     * more early data or if native wolfSSL does not support early data,
+     * or WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT if timeout (ms) expired.
+     * initHandshake() must have been called first. */
+    protected int readEarlyData(byte[] b, int off, int len, int timeout)
+        throws SSLException {
+
+        if (this.clientMode) {
+            throw new SSLException("early data can only be read by servers");
+        }
+
+        int ret = this.ssl.readEarlyData(b, off, len, timeout);
+        if (ret == WolfSSL.NOT_COMPILED_IN) {
+            return 0;
+        }
+        if (ret < 0 && ret != WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+            int err = this.ssl.getError(ret);
+            throw new SSLException("Error reading early data: " +
+                WolfSSL.getErrorString(err) + " (error code: " + err + ")");
+        }
+
+        return ret;
+    }
+
+    /* Returns true if early data sent with writeEarlyData() was accepted
+     * by the server. Only meaningful once the handshake has completed.
+     * If native wolfSSL can not report the status, early data is treated
+     * as rejected, so callers send it again. */
+    protected boolean isEarlyDataAccepted() {
+        if (!this.earlyDataSent) {
+            return false;
+        }
+        return (this.ssl.getEarlyDataStatus() ==
+                WolfSSL.WOLFSSL_EARLY_DATA_ACCEPTED);
+    }
+
+    /**
+     * Called once the handshake has completed. Records handshake
+     * statistics, captures the peer certificate chain while the WOLFSSL is
+     * still available, and adds server side sessions to the server
+     * SSLSessionContext, client side sessions were already added when the
+     * handshake started. If a cached client session was offered but not
+     * resumed, this connection gets a new session in its place. Safe to
+     * call more than once.
+     */
+    protected void sessionEstablished() {
+        boolean resumed = false;
+
+        if (this.sessionRegistered) {
+            return;
+        }
+        this.sessionRegistered = true;
+
+        try {
+            resumed = (this.ssl.sessionReused() == 1);
+        } catch (IllegalStateException | WolfSSLJNIException e) {
+            /* native session freed, count as full handshake */
+        }
+
+        recordHandshake(resumed);
+
+        if (this.session == null) {
+            return;
+        }
+
+        if (this.clientMode && this.sessionFromCache && !resumed) {
+            this.session = this.authStore.renewSession(this.session,
+                this.ssl);
+            if (this.sessionCreation) {
+                this.authStore.addSession(this.session);
+            }
+        }
+        this.session.capturePeerCertificates();
+
+        if (!this.clientMode && this.session.isValid()) {
+            this.authStore.addServerSession(this.session);
+        }
+    }
+
+    /* update SSLContext statistics for completed handshake */
+    private void recordHandshake(boolean resumed) {
+        boolean ticket = false;
+
+        try {
+            /* servers count tickets as they are accepted, TLS 1.3 always
+             * resumes from tickets */
+            if (resumed && this.clientMode) {
+                ticket = "TLSv1.3".equals(this.ssl.getVersion()) ||
+                         (this.ssl.hasSessionTicket() == 1);
+            }
+        } catch (IllegalStateException | WolfSSLJNIException e) {
+            /* native session freed, not counted as ticket resumption */
+        }
+
+        this.authStore.getStats().handshakeCompleted(resumed, ticket,
+            System.nanoTime() - this.handshakeStart);
+    }
+
     /**
      * Saves session on connection close for resumption
      */
     protected void saveSession() {
-        if (this.session.isValid()) {
+        if (this.session != null && this.session.isValid()) {
             this.session.setResume();
         }
     }
 
+    /* CertificateFactory objects are not thread safe, keep one per thread */
+    private static final ThreadLocal<CertificateFactory> certFactory =
+        new ThreadLocal<CertificateFactory>();
+
+    /* Convert DER certificates to X509Certificate[], parsing each one
+     * once with a CertificateFactory */
+    static X509Certificate[] toX509Certificates(byte[][] der)
+        throws CertificateException {
+
+        CertificateFactory cf = certFactory.get();
+        X509Certificate[] out = new X509Certificate[der.length];
+
+        if (cf == null) {
+            cf = CertificateFactory.getInstance("X.509");
+            certFactory.set(cf);
+        }
+
+        for (int i = 0; i < der.length; i++) {
+            out[i] = (X509Certificate)cf.generateCertificate(
+                new ByteArrayInputStream(der[i]));
+        }
+
+        return out;
+    }
+
+    /* authType for X509TrustManager.checkClientTrusted(), public key
+     * algorithm of the client certificate, same as SunJSSE */
+    static String getClientAuthType(X509Certificate leaf) {
+        String alg = leaf.getPublicKey().getAlgorithm();
+
+        switch (alg) {
+            case "RSA":
+            case "DSA":
+            case "EC":
+            case "RSASSA-PSS":
+                return alg;
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    /* authType for X509TrustManager.checkServerTrusted(), same as SunJSSE:
+     * key exchange of the negotiated cipher suite, for example "ECDHE_RSA"
+     * from TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256. TLS 1.3 cipher suites do
+     * not name the key exchange, "UNKNOWN" is used for those. */
+    static String getServerAuthType(String protocol, String suite) {
+        int end;
+
+        if ("TLSv1.3".equals(protocol) || suite == null ||
+            !(suite.startsWith("TLS_") || suite.startsWith("SSL_"))) {
+            return "UNKNOWN";
+        }
+
+        end = suite.indexOf("_WITH_");
+        if (end <= 4) {
+            return "UNKNOWN";
+        }
+
+        return suite.substring(4, end);
+    }
+
     /* Internal verify callback. This is used when a user registers a
      * TrustManager which is NOT com.wolfssl.provider.jsse.WolfSSLTrustManager
      * and is used to call TrustManager checkClientTrusted() or
@@ -576,9 +821,12 @@ public class WolfSSLEngineHelper {
         public int verifyCallback(int preverify_ok, long x509StorePtr) {
 
             X509TrustManager tm = authStore.getX509TrustManager();
-            WolfSSLCertificate[] certs = null;
+            WolfSSLVerifiedChainCache cache = authStore.getVerifiedChainCache();
             X509Certificate[] x509certs = null;
             String authType = null;
+            byte[][] derCerts = null;
+            byte[] cacheKey = null;
+            long cacheGen = 0;
 
             if (preverify_ok == 1) {
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
@@ -589,42 +837,52 @@ public class WolfSSLEngineHelper {
             }
 
             try {
-                /* get WolfSSLCertificate[] from x509StorePtr */
+                /* get DER certs from x509StorePtr */
                 WolfSSLX509StoreCtx store =
                     new WolfSSLX509StoreCtx(x509StorePtr);
-                certs = store.getCerts();
+                derCerts = store.getDerCerts();
 
             } catch (WolfSSLException e) {
                 /* failed to get certs from native, give app null array */
-                certs = null;
+                derCerts = null;
             }
 
-            if (certs != null && certs.length > 0) {
+            /* server authType comes from the negotiated cipher suite,
+             * client authType from the client certificate key */
+            if (clientMode) {
                 try {
-                    /* Convert WolfSSLCertificate[] to X509Certificate[] */
-                    x509certs = new X509Certificate[certs.length];
-                    for (int i = 0; i < certs.length; i++) {
-                        x509certs[i] = certs[i].getX509Certificate();
-                    }
-                } catch (CertificateException | IOException ce) {
+                    authType = getServerAuthType(ssl.getVersion(),
+                        ssl.cipherGetName());
+                } catch (IllegalStateException | WolfSSLJNIException e) {
+                    authType = "UNKNOWN";
+                }
+            }
+
+            /* chain accepted before, skip conversion and TrustManager */
+            if (cache != null && derCerts != null && derCerts.length > 0) {
+                cacheKey = WolfSSLVerifiedChainCache.key(derCerts,
+                    clientMode, authType);
+                if (cache.contains(cacheKey)) {
+                    WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                        "peer chain found in verified chain cache");
+                    return 1;
+                }
+                cacheGen = WolfSSLVerifiedChainCache.currentGeneration();
+            }
+
+            if (derCerts != null && derCerts.length > 0) {
+                try {
+                    x509certs = toX509Certificates(derCerts);
+                } catch (CertificateException ce) {
                     /* failed to get cert array, give app null array */
                     x509certs = null;
                 }
 
-                /* get authType, use first cert */
-                String sigType = certs[0].getSignatureType();
-                if (sigType.contains("RSA")) {
-                    authType = "RSA";
-                } else if (sigType.contains("ECDSA")) {
-                    authType = "ECDSA";
-                } else if (sigType.contains("DSA")) {
-                    authType = "DSA";
-                } else if (sigType.contains("ED25519")) {
-                    authType = "ED25519";
+                if (!clientMode && x509certs != null) {
+                    authType = getClientAuthType(x509certs[0]);
                 }
             }
 
-
             try {
                 /* poll TrustManager for cert verification, should throw
                  * CertificateException if verification fails */
@@ -638,6 +896,14 @@ public class WolfSSLEngineHelper {
                 return 0;
             }
 
+            if (cacheKey != null && x509certs != null) {
+                long notAfter = Long.MAX_VALUE;
+                for (X509Certificate c : x509certs) {
+                    notAfter = Math.min(notAfter, c.getNotAfter().getTime());
+                }
+                cache.put(cacheKey, notAfter, cacheGen);
+            }
+
             /* continue handshake, verification succeeded */
             return 1;
         }
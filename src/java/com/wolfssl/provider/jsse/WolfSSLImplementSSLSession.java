@@ -20,14 +20,11 @@
  */
 package com.wolfssl.provider.jsse;
 
-import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLException;
 import com.wolfssl.WolfSSLJNIException;
 import com.wolfssl.WolfSSLSession;
 import java.security.Principal;
 import java.security.cert.Certificate;
-import java.util.Date;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,17 +46,23 @@ public class WolfSSLImplementSSLSession implements SSLSession {
     private WolfSSLSession ssl;
     private final WolfSSLAuthStore authStore;
     private boolean valid;
-    private final HashMap<String, Object> binding;
+    private HashMap<String, Object> binding = null; /* created on first use */
     private final int port;
     private final String host;
-    Date creation;
-    Date accessed; /* when new connection was made using session */
+    private final long creation;   /* milliseconds since epoch */
+    private volatile long accessed; /* when new connection was made using
+                                     * session, milliseconds since epoch */
 
     /**
      * has this session been registered
      */
     protected boolean fromTable = false;
     private long sesPtr = 0;
+    private byte[] sessionId = null; /* captured once handshake is done */
+    private WolfSSLSessionContext context = null;
+    private WolfSSLSessionKey cacheKey = null;
+    private WolfSSLX509[] peerCerts = null;
+    private X509Certificate[] peerCertChain = null;
     private String nullCipher = "SSL_NULL_WITH_NULL_NULL";
     private String nullProtocol = "NONE";
 
@@ -71,10 +74,9 @@ public class WolfSSLImplementSSLSession implements SSLSession {
         this.host = host;
         this.authStore = params;
         this.valid = true; /* flag if joining or resuming session is allowed */
-        binding = new HashMap<String, Object>();
 
-        creation = new Date();
-        accessed = new Date();
+        creation = System.currentTimeMillis();
+        accessed = creation;
     }
 
     public WolfSSLImplementSSLSession (WolfSSLSession in,
@@ -84,10 +86,33 @@ public class WolfSSLImplementSSLSession implements SSLSession {
         this.host = null;
         this.authStore = params;
         this.valid = true; /* flag if joining or resuming session is allowed */
-        binding = new HashMap<String, Object>();
 
-        creation = new Date();
-        accessed = new Date();
+        creation = System.currentTimeMillis();
+        accessed = creation;
+    }
+
+    /**
+     * Create session restored from a persisted session cache. The session
+     * is resumed by native wolfSSL from its restored session cache, so no
+     * WOLFSSL or WOLFSSL_SESSION is attached until resume() is called.
+     *
+     * @param params WolfSSLAuthStore this session belongs to
+     * @param port peer port
+     * @param host peer host
+     * @param id session ID
+     * @param created session creation time, milliseconds since epoch
+     */
+    WolfSSLImplementSSLSession(WolfSSLAuthStore params, int port, String host,
+        byte[] id, long created) {
+        this.ssl = null;
+        this.port = port;
+        this.host = host;
+        this.authStore = params;
+        this.valid = true;
+        this.sessionId = id.clone();
+
+        creation = created;
+        accessed = System.currentTimeMillis();
     }
 
     public WolfSSLImplementSSLSession (WolfSSLAuthStore params) {
@@ -95,29 +120,67 @@ public class WolfSSLImplementSSLSession implements SSLSession {
         this.host = null;
         this.authStore = params;
         this.valid = true; /* flag if joining or resuming session is allowed */
-        binding = new HashMap<String, Object>();
 
-        creation = new Date();
-        accessed = new Date();
+        creation = System.currentTimeMillis();
+        accessed = creation;
     }
 
-    public byte[] getId() {
-        if (ssl == null) {
+    public synchronized byte[] getId() {
+        if (this.sessionId == null && this.ssl != null) {
+            try {
+                /* remember ID once known, the WOLFSSL may be freed before
+                 * this session leaves the session cache */
+                if (this.ssl.handshakeDone()) {
+                    byte[] id = this.ssl.getSessionID();
+                    if (id != null && id.length > 0) {
+                        this.sessionId = id;
+                    }
+                } else {
+                    return this.ssl.getSessionID();
+                }
+            } catch (IllegalStateException e) {
+                /* WOLFSSL already freed */
+            }
+        }
+
+        if (this.sessionId == null) {
             return new byte[0];
         }
-        return this.ssl.getSessionID();
+        return this.sessionId.clone();
+    }
+
+    /**
+     * @param ctx client or server session context this session belongs to
+     */
+    protected void setSessionContext(WolfSSLSessionContext ctx) {
+        this.context = ctx;
+    }
+
+    /**
+     * @param key key this session is stored under for resumption
+     */
+    protected void setCacheKey(WolfSSLSessionKey key) {
+        this.cacheKey = key;
+    }
+
+    /**
+     * @return key this session is stored under for resumption, or null
+     *         if this session can not be resumed by host and port
+     */
+    protected WolfSSLSessionKey getCacheKey() {
+        return this.cacheKey;
     }
 
     public SSLSessionContext getSessionContext() {
-        return new WolfSSLSessionContext(this, this.ssl);
+        return this.context;
     }
 
     public long getCreationTime() {
-        return creation.getTime();
+        return creation;
     }
 
     public long getLastAccessedTime() {
-        return accessed.getTime();
+        return accessed;
     }
 
     public void invalidate() {
@@ -128,6 +191,8 @@ public class WolfSSLImplementSSLSession implements SSLSession {
         return this.valid;
     }
 
+    /* Binding map is updated with session lock held, listeners are notified
+     * after it is released so they can use the session from any thread. */
     public void putValue(String name, Object obj) {
         Object old;
 
@@ -135,23 +200,26 @@ public class WolfSSLImplementSSLSession implements SSLSession {
             throw new IllegalArgumentException();
         }
 
-        /* check if Object should be notified */
+        synchronized (this) {
+            if (binding == null) {
+                binding = new HashMap<String, Object>();
+            }
+            old = binding.put(name, obj);
+        }
+
+        /* check if Objects should be notified */
         if (obj instanceof SSLSessionBindingListener) {
             ((SSLSessionBindingListener) obj).valueBound(
                     new SSLSessionBindingEvent(this, name));
         }
-
-        old = binding.put(name, obj);
-        if (old != null) {
-            if (old instanceof SSLSessionBindingListener) {
-                ((SSLSessionBindingListener) old).valueUnbound(
-                        new SSLSessionBindingEvent(this, name));
-            }
+        if (old instanceof SSLSessionBindingListener) {
+            ((SSLSessionBindingListener) old).valueUnbound(
+                    new SSLSessionBindingEvent(this, name));
         }
     }
 
-    public Object getValue(String name) {
-        return binding.get(name);
+    public synchronized Object getValue(String name) {
+        return (binding == null) ? null : binding.get(name);
     }
 
     public void removeValue(String name) {
@@ -161,51 +229,85 @@ public class WolfSSLImplementSSLSession implements SSLSession {
             throw new IllegalArgumentException();
         }
 
-        obj = binding.get(name);
-        if (obj != null) {
-            /* check if Object should be notified */
-            if (obj instanceof SSLSessionBindingListener) {
-                ((SSLSessionBindingListener) obj).valueUnbound(
-                        new SSLSessionBindingEvent(this, name));
-            }
-            binding.remove(name);
+        synchronized (this) {
+            obj = (binding == null) ? null : binding.remove(name);
+        }
+
+        /* check if Object should be notified */
+        if (obj instanceof SSLSessionBindingListener) {
+            ((SSLSessionBindingListener) obj).valueUnbound(
+                    new SSLSessionBindingEvent(this, name));
         }
     }
 
-    public String[] getValueNames() {
-         return binding.keySet().toArray(new String[binding.keySet().size()]);
+    public synchronized String[] getValueNames() {
+        if (binding == null) {
+            return new String[0];
+        }
+        return binding.keySet().toArray(new String[binding.size()]);
     }
 
-    public Certificate[] getPeerCertificates()
-            throws SSLPeerUnverifiedException {
-        long x509;
-        WolfSSLX509 cert;
+    /**
+     * Read peer certificate chain, leaf first, from native wolfSSL. Called
+     * once the handshake of the connection that established this session
+     * has completed, while its WOLFSSL is still available. Certificates
+     * are built from DER copies so they stay usable after the WOLFSSL is
+     * freed. A chain already read is kept, resumed connections share the
+     * peer chain of the session they resume.
+     */
+    protected synchronized void capturePeerCertificates() {
 
-        if (ssl == null) {
-            throw new SSLPeerUnverifiedException("handshake not complete");
+        if (this.peerCerts != null || this.ssl == null) {
+            return;
         }
 
         try {
-            x509 = this.ssl.getPeerCertificate();
-        } catch (IllegalStateException | WolfSSLJNIException ex) {
-            Logger.getLogger(
-                    WolfSSLImplementSSLSession.class.getName()).log(
-                        Level.SEVERE, null, ex);
-            return null;
-        }
+            WolfSSLX509[] certs;
+            byte[][] chain = this.ssl.getPeerCertChain();
+
+            if (chain != null && chain.length > 0) {
+                certs = new WolfSSLX509[chain.length];
+                for (int i = 0; i < chain.length; i++) {
+                    certs[i] = new WolfSSLX509(chain[i]);
+                }
+            } else {
+                /* native chain not available, only leaf */
+                long x509 = this.ssl.getPeerCertificate();
+                if (x509 == 0) {
+                    WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                        "no peer certificate");
+                    return;
+                }
+                certs = new WolfSSLX509[] {
+                    new WolfSSLX509(new WolfSSLX509(x509).getEncoded())
+                };
+            }
+
+            this.peerCerts = certs;
 
-        /* if no peer cert, throw SSLPeerUnverifiedException */
-        if (x509 == 0) {
-            throw new SSLPeerUnverifiedException("No peer certificate");
+        } catch (IllegalStateException | WolfSSLJNIException |
+                 WolfSSLException |
+                 java.security.cert.CertificateEncodingException ex) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "error reading peer certificates: " + ex.getMessage());
         }
+    }
 
-        try {
-            cert = new WolfSSLX509(x509);
-        } catch (WolfSSLException ex) {
-            throw new SSLPeerUnverifiedException("Error creating certificate");
+    /* Peer certificate chain captured at handshake completion */
+    private synchronized WolfSSLX509[] loadPeerCertificates()
+        throws SSLPeerUnverifiedException {
+
+        if (this.peerCerts == null) {
+            throw new SSLPeerUnverifiedException("peer not authenticated");
         }
+        return this.peerCerts;
+    }
 
-        return new Certificate[] { cert };
+    public Certificate[] getPeerCertificates()
+            throws SSLPeerUnverifiedException {
+
+        /* copy, so callers can not modify cached chain */
+        return loadPeerCertificates().clone();
     }
 
     @Override
@@ -215,42 +317,33 @@ public class WolfSSLImplementSSLSession implements SSLSession {
     }
 
     @Override
-    public X509Certificate[] getPeerCertificateChain()
+    public synchronized X509Certificate[] getPeerCertificateChain()
         throws SSLPeerUnverifiedException {
-        WolfSSLX509X x509;
 
-        if (ssl == null) {
-            throw new SSLPeerUnverifiedException("handshake not done");
+        if (this.peerCertChain == null) {
+            WolfSSLX509[] certs = loadPeerCertificates();
+            X509Certificate[] chain = new X509Certificate[certs.length];
+
+            try {
+                for (int i = 0; i < certs.length; i++) {
+                    chain[i] = new WolfSSLX509X(certs[i].getEncoded());
+                }
+            } catch (WolfSSLException |
+                     java.security.cert.CertificateEncodingException ex) {
+                SSLPeerUnverifiedException e = new SSLPeerUnverifiedException(
+                    "Error converting peer certificates");
+                e.initCause(ex);
+                throw e;
+            }
+            this.peerCertChain = chain;
         }
 
-        try {
-            x509 = new WolfSSLX509X(this.ssl.getPeerCertificate());
-            return new X509Certificate[]{ (X509Certificate)x509 };
-        } catch (IllegalStateException | WolfSSLJNIException |
-                WolfSSLException ex) {
-            Logger.getLogger(
-                    WolfSSLImplementSSLSession.class.getName()).log(
-                        Level.SEVERE, null, ex);
-        }
-        return null;
+        return this.peerCertChain.clone();
     }
 
     @Override
     public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
-        if (ssl == null) {
-            throw new SSLPeerUnverifiedException("handshake not done");
-        }
-
-        try {
-            WolfSSLX509 x509 = new WolfSSLX509(this.ssl.getPeerCertificate());
-            return x509.getSubjectDN();
-        } catch (IllegalStateException | WolfSSLJNIException |
-                WolfSSLException ex) {
-            Logger.getLogger(
-                    WolfSSLImplementSSLSession.class.getName()).log(
-                        Level.SEVERE, null, ex);
-        }
-        return null;
+        return loadPeerCertificates()[0].getSubjectDN();
     }
 
     @Override
@@ -336,8 +429,18 @@ public class WolfSSLImplementSSLSession implements SSLSession {
      * @param in WOLFSSL session to set resume in
      */
     protected void resume(WolfSSLSession in) {
-        ssl = in;
-        ssl.setSession(this.sesPtr);
+        synchronized (this) {
+            /* ID may change on resumption, read it again from new WOLFSSL */
+            this.sessionId = null;
+            ssl = in;
+        }
+        this.accessed = System.currentTimeMillis();
+
+        /* restored sessions have no WOLFSSL_SESSION, they are resumed
+         * through the server ID set on the WOLFSSL instead */
+        if (this.sesPtr != 0) {
+            in.setSession(this.sesPtr);
+        }
     }
 
 
@@ -347,65 +450,8 @@ public class WolfSSLImplementSSLSession implements SSLSession {
     protected void setResume() {
         if (ssl != null) {
             this.sesPtr = ssl.getSession();
+            /* capture ID while WOLFSSL is still available */
+            getId();
         }
     }
-
-
-    private class WolfSSLSessionContext implements SSLSessionContext {
-        private WolfSSLImplementSSLSession session;
-        private WolfSSLSession sslCtx;
-
-        public WolfSSLSessionContext(WolfSSLImplementSSLSession in,
-                WolfSSLSession ssl) {
-            this.session = in;
-            this.sslCtx = ssl;
-        }
-
-        /* rework as session cache */
-        @Override
-        public SSLSession getSession(byte[] arg0) {
-            return session;
-        }
-
-        @Override
-        public Enumeration<byte[]> getIds() {
-            throw new UnsupportedOperationException("Not supported yet.");
-        }
-
-        @Override
-        public void setSessionTimeout(int in) throws IllegalArgumentException {
-
-            long ret = this.sslCtx.setSessTimeout(in);
-            if (ret == WolfSSL.JNI_SESSION_UNAVAILABLE) {
-                /* not able to get underlying session, print debug log,
-                 * but not an error itself. */
-                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
-                    "Unable to set session timeout, not able to " +
-                    "get WOLFSSL_SESSION");
-
-            } else if (ret != WolfSSL.SSL_SUCCESS) {
-                throw new IllegalArgumentException(
-                    "Unable to set session timeout, ret = " + ret);
-            }
-        }
-
-        @Override
-        public int getSessionTimeout() {
-            return (int)this.sslCtx.getSessTimeout();
-        }
-
-        /* set during compile time with wolfSSL */
-        @Override
-        public void setSessionCacheSize(int in)
-            throws IllegalArgumentException {
-            throw new UnsupportedOperationException("Not supported. Cache size "
-                    + "is set at compile time with wolfSSL");
-        }
-
-        @Override
-        public int getSessionCacheSize() {
-            return (int)this.sslCtx.getCacheSize();
-        }
-
-    }
 }
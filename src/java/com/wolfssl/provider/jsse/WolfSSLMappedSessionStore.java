@@ -0,0 +1,320 @@
+/* WolfSSLMappedSessionStore.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * WolfSSLSessionStore backed by a memory mapped file, shared by all
+ * processes on a host that open the same file.
+ *
+ * The file is a fixed size hash table of slots, each holding one session.
+ * A session is stored in the slot selected by its session ID, replacing
+ * whatever session was there before, so the store never grows and needs
+ * no cleanup. Each slot is protected by a file lock on its region, held
+ * only while the slot is read or written.
+ *
+ * The first process to open the file sets the number and size of slots.
+ * Processes opening an existing file use the geometry found in it. A
+ * non-empty file without a valid header is refused rather than rebuilt,
+ * since other processes may have it mapped. Sessions larger than a slot
+ * are not stored. Only one instance per file should be opened in a JVM.
+ *
+ * Stored sessions include their master secrets. A new file is created
+ * readable and writable by the owner only, and should be kept in a
+ * directory only the server processes sharing it can access.
+ *
+ * @author wolfSSL
+ */
+public final class WolfSSLMappedSessionStore
+    implements WolfSSLSessionStore, Closeable {
+
+    /** Default number of slots */
+    public static final int DEFAULT_SLOTS = 8192;
+
+    /** Default slot size in bytes */
+    public static final int DEFAULT_SLOT_SIZE = 4096;
+
+    private static final int MAGIC = 0x574a5353; /* "WJSS" */
+    private static final int VERSION = 1;
+    private static final int HEADER_SZ = 64;
+
+    /* slot layout: expiration time, ID length, ID, data length, data */
+    private static final int MAX_ID_SZ = 32;
+    private static final int OFF_EXPIRES = 0;
+    private static final int OFF_ID_LEN = 8;
+    private static final int OFF_ID = 12;
+    private static final int OFF_DATA_LEN = OFF_ID + MAX_ID_SZ;
+    private static final int OFF_DATA = OFF_DATA_LEN + 4;
+
+    private static final int STRIPES = 64;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slots;
+    private final int slotSize;
+
+    /* orders access to a slot within this JVM, file locks only exclude
+     * other processes */
+    private final Object[] stripes = new Object[STRIPES];
+
+    /**
+     * Open or create a mapped session store
+     *
+     * @param path file to map, created if it does not exist
+     * @param slots number of slots used when creating the file
+     * @param slotSize slot size in bytes used when creating the file
+     * @throws IOException if the file can not be opened or mapped
+     * @throws IllegalArgumentException if slots or slotSize are invalid
+     */
+    public WolfSSLMappedSessionStore(String path, int slots, int slotSize)
+        throws IOException {
+
+        if (!validGeometry(slots, slotSize)) {
+            throw new IllegalArgumentException("invalid slot count or size");
+        }
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+
+        try {
+            WolfSSLSessionPersister.createPrivateFile(Paths.get(path));
+        } catch (FileAlreadyExistsException e) {
+            /* opened by another process or earlier run */
+        }
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+
+        try {
+            int[] geometry = init(slots, slotSize);
+            this.slots = geometry[0];
+            this.slotSize = geometry[1];
+            this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SZ + (long)this.slots * this.slotSize);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "opened session store " + path + ", slots: " + this.slots +
+            ", slot size: " + this.slotSize);
+    }
+
+    /* true if a store of this geometry can be mapped and addressed
+     * with int offsets */
+    private static boolean validGeometry(int slots, int slotSize) {
+        return slots > 0 && slotSize > OFF_DATA &&
+            ((long)slots * slotSize) <= (Integer.MAX_VALUE - HEADER_SZ);
+    }
+
+    /* write header to new file, or read geometry of existing one.
+     * Returns { slots, slotSize } */
+    private int[] init(int slots, int slotSize) throws IOException {
+        ByteBuffer hdr = ByteBuffer.allocate(16);
+
+        FileLock lock = channel.lock(0, HEADER_SZ, false);
+        try {
+            long size = channel.size();
+
+            if (size > 0) {
+                channel.read(hdr, 0);
+                hdr.flip();
+                int magic = (hdr.remaining() >= 4) ? hdr.getInt() : 0;
+                int version = (hdr.remaining() >= 4) ? hdr.getInt() : 0;
+                int s = (hdr.remaining() >= 4) ? hdr.getInt() : 0;
+                int sz = (hdr.remaining() >= 4) ? hdr.getInt() : 0;
+
+                if (magic == MAGIC && version == VERSION &&
+                    validGeometry(s, sz) &&
+                    size >= HEADER_SZ + (long)s * sz) {
+                    return new int[] { s, sz };
+                }
+
+                /* a zero header is left by a creator that did not finish,
+                 * nobody maps a file before its header is written. Other
+                 * files may be mapped by other processes, and truncating
+                 * or rewriting them would fault those processes. */
+                if (magic != 0 || version != 0 || s != 0 || sz != 0) {
+                    throw new IOException("unrecognized session store " +
+                        "file, not overwriting it");
+                }
+            }
+
+            /* new file, only ever grown, then header written last */
+            long total = HEADER_SZ + (long)slots * slotSize;
+            if (size < total) {
+                file.setLength(total);
+            }
+            hdr.clear();
+            hdr.putInt(MAGIC).putInt(VERSION).putInt(slots).putInt(slotSize);
+            hdr.flip();
+            channel.write(hdr, 0);
+
+            return new int[] { slots, slotSize };
+
+        } finally {
+            lock.release();
+        }
+    }
+
+    private int slotFor(byte[] id) {
+        return (Arrays.hashCode(id) & 0x7fffffff) % slots;
+    }
+
+    @Override
+    public byte[] get(byte[] id) {
+        if (id == null || id.length == 0 || id.length > MAX_ID_SZ) {
+            return null;
+        }
+
+        int slot = slotFor(id);
+        int off = HEADER_SZ + slot * slotSize;
+
+        synchronized (stripes[slot % STRIPES]) {
+            FileLock lock = null;
+            try {
+                lock = channel.lock(off, slotSize, true);
+
+                long expires = map.getLong(off + OFF_EXPIRES);
+                if (expires == 0 || expires < System.currentTimeMillis()) {
+                    return null;
+                }
+
+                int idLen = map.getInt(off + OFF_ID_LEN);
+                if (idLen != id.length) {
+                    return null;
+                }
+                byte[] stored = new byte[idLen];
+                ByteBuffer dup = map.duplicate();
+                dup.position(off + OFF_ID);
+                dup.get(stored);
+                if (!Arrays.equals(stored, id)) {
+                    return null;
+                }
+
+                int len = map.getInt(off + OFF_DATA_LEN);
+                if (len <= 0 || len > slotSize - OFF_DATA) {
+                    return null;
+                }
+                byte[] data = new byte[len];
+                dup.position(off + OFF_DATA);
+                dup.get(data);
+
+                return data;
+
+            } catch (IOException | OverlappingFileLockException e) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "session store read failed: " + e);
+                return null;
+
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    @Override
+    public void put(byte[] id, byte[] session, int timeout) {
+        if (id == null || id.length == 0 || id.length > MAX_ID_SZ ||
+            session == null || session.length > slotSize - OFF_DATA) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "session not stored, does not fit in slot");
+            return;
+        }
+
+        int slot = slotFor(id);
+        int off = HEADER_SZ + slot * slotSize;
+        long expires = (timeout > 0) ?
+            System.currentTimeMillis() + timeout * 1000L : Long.MAX_VALUE;
+
+        synchronized (stripes[slot % STRIPES]) {
+            FileLock lock = null;
+            try {
+                lock = channel.lock(off, slotSize, false);
+
+                ByteBuffer dup = map.duplicate();
+                map.putLong(off + OFF_EXPIRES, 0);
+                map.putInt(off + OFF_ID_LEN, id.length);
+                dup.position(off + OFF_ID);
+                dup.put(id);
+                map.putInt(off + OFF_DATA_LEN, session.length);
+                dup.position(off + OFF_DATA);
+                dup.put(session);
+                map.putLong(off + OFF_EXPIRES, expires);
+
+            } catch (IOException | OverlappingFileLockException e) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "session store write failed: " + e);
+
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    private void release(FileLock lock) {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                /* channel closed, lock already released */
+            }
+        }
+    }
+
+    /**
+     * @return number of slots in the store
+     */
+    public int getSlotCount() {
+        return this.slots;
+    }
+
+    /**
+     * @return slot size in bytes
+     */
+    public int getSlotSize() {
+        return this.slotSize;
+    }
+
+    /**
+     * Close the store file. Sessions already written stay in the file.
+     *
+     * @throws IOException if closing the file fails
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,762 @@
+/* WolfSSLOCSPStapler.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import com.wolfssl.WolfSSL;
+import com.wolfssl.WolfSSLOCSPIOCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OCSP responses for the certificate of a server SSLContext, fetched in
+ * the background and stapled to handshakes by native wolfSSL.
+ *
+ * Stapling is configured with the System properties used by SunJSSE:
+ *
+ * <pre>
+ * jdk.tls.server.enableStatusRequestExtension  staple OCSP responses to
+ *                                    server handshakes, default false
+ * jdk.tls.client.enableStatusRequestExtension  request stapled responses
+ *                                    as client and verify them, default
+ *                                    false
+ * jdk.tls.stapling.responderURI      responder used for certificates
+ *                                    without an OCSP URL in their AIA
+ *                                    extension
+ * jdk.tls.stapling.responderOverride if true, responderURI is used for
+ *                                    all certificates, default false
+ * jdk.tls.stapling.responseTimeout   milliseconds to wait for the
+ *                                    responder, default 5000
+ * jdk.tls.stapling.cacheLifetime     maximum seconds a response is
+ *                                    stapled, default 3600
+ * </pre>
+ *
+ * A response is fetched when the SSLContext is created, and fetched again
+ * halfway through its remaining lifetime, which ends at its nextUpdate
+ * time and at most cacheLifetime seconds after it was fetched. Native
+ * wolfSSL asks for the response through a WolfSSLOCSPIOCallback during the
+ * handshake, which returns the cached response and never blocks on the
+ * responder. Handshakes made before the first response arrives, or after
+ * it expired, are not stapled. If a fetch fails the previous response is
+ * kept until it expires and the fetch is retried after a minute.
+ *
+ * If OCSP lookups were already enabled on the native context, its OCSP
+ * options are left as they are and only certificates with an AIA OCSP URL
+ * are stapled. Otherwise OCSP is enabled briefly to set the responder as
+ * override URL, and disabled again.
+ *
+ * Native wolfSSL verifies the response before stapling it, and clients
+ * verify stapled responses against their trusted CAs. The issuer of the
+ * server certificate must therefore be one of the trusted CAs of the
+ * server SSLContext, otherwise stapling is not enabled.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLOCSPStapler implements WolfSSLOCSPIOCallback {
+
+    static final String SERVER_PROPERTY =
+        "jdk.tls.server.enableStatusRequestExtension";
+    static final String CLIENT_PROPERTY =
+        "jdk.tls.client.enableStatusRequestExtension";
+    static final String RESPONDER_PROPERTY = "jdk.tls.stapling.responderURI";
+    static final String OVERRIDE_PROPERTY =
+        "jdk.tls.stapling.responderOverride";
+    static final String TIMEOUT_PROPERTY = "jdk.tls.stapling.responseTimeout";
+    static final String LIFETIME_PROPERTY = "jdk.tls.stapling.cacheLifetime";
+
+    static final int DEFAULT_TIMEOUT = 5000;        /* milliseconds */
+    static final long DEFAULT_LIFETIME = 3600;      /* seconds */
+
+    /* seconds to wait before retrying a failed fetch, and minimum time
+     * between fetches */
+    private static final long RETRY_DELAY = 60;
+    private static final long MIN_REFRESH = 10;
+
+    /* largest OCSP response read from a responder */
+    private static final int MAX_RESPONSE_SZ = 64 * 1024;
+
+    /* id-sha1 */
+    private static final byte[] SHA1_OID = {
+        0x2B, 0x0E, 0x03, 0x02, 0x1A
+    };
+    /* id-pkix-ocsp, also the AIA access method */
+    private static final byte[] OCSP_OID = {
+        0x2B, 0x06, 0x01, 0x05, 0x05, 0x07, 0x30, 0x01
+    };
+    /* id-pkix-ocsp-basic */
+    private static final byte[] OCSP_BASIC_OID = {
+        0x2B, 0x06, 0x01, 0x05, 0x05, 0x07, 0x30, 0x01, 0x01
+    };
+    private static final String AIA_OID = "1.3.6.1.5.5.7.1.1";
+
+    private static ScheduledExecutorService timer = null;
+
+    private final URL url;
+    private final String subject;
+    private final int timeout;
+    private final long lifetime;
+
+    /* counters updated when a response is stapled */
+    private final WolfSSLStats stats;
+
+    /* DER OCSPRequest sent to the responder */
+    private final byte[] request;
+
+    /* CertID of the server certificate, see certIdKey() */
+    private final ByteBuffer certId;
+
+    /* current response and time in ms it is stapled until, replaced
+     * together by the timer thread */
+    private volatile Response current = null;
+
+    private static final class Response {
+        final byte[] der;
+        final long expiry;
+
+        Response(byte[] der, long expiry) {
+            this.der = der;
+            this.expiry = expiry;
+        }
+    }
+
+    private WolfSSLOCSPStapler(URL url, X509Certificate cert,
+        X509Certificate issuer, WolfSSLStats stats) throws IOException {
+
+        this.url = url;
+        this.stats = stats;
+        this.subject = cert.getSubjectX500Principal().getName();
+        this.timeout = (int)getLongProperty(TIMEOUT_PROPERTY,
+            DEFAULT_TIMEOUT);
+        this.lifetime = getLongProperty(LIFETIME_PROPERTY,
+            DEFAULT_LIFETIME) * 1000;
+
+        byte[] id = certId(cert, issuer);
+        this.certId = certIdKey(new DerReader(id).enter(0x30));
+        this.request = der(0x30, der(0x30, der(0x30, der(0x30, id))));
+    }
+
+    /**
+     * @return true if servers staple OCSP responses
+     */
+    static boolean isServerEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(SERVER_PROPERTY));
+    }
+
+    /**
+     * @return true if clients request stapled OCSP responses
+     */
+    static boolean isClientEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(CLIENT_PROPERTY));
+    }
+
+    private static long getLongProperty(String name, long def) {
+        String val = System.getProperty(name);
+
+        if (val == null) {
+            return def;
+        }
+        try {
+            long ret = Long.parseLong(val.trim());
+            return (ret > 0) ? ret : def;
+        } catch (NumberFormatException e) {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "invalid " + name + ", using default: " + val);
+            return def;
+        }
+    }
+
+    /**
+     * Enable OCSP stapling on a server context
+     *
+     * @param ctx native context the certificate chain was loaded into
+     * @param chain certificate chain of the server, leaf first
+     * @param trusted CAs loaded into ctx
+     * @param stats counters of the SSLContext
+     * @return stapler registered with ctx, or null if stapling could not
+     *         be enabled for this certificate
+     */
+    static WolfSSLOCSPStapler register(com.wolfssl.WolfSSLContext ctx,
+        X509Certificate[] chain, X509Certificate[] trusted,
+        WolfSSLStats stats) {
+
+        final WolfSSLOCSPStapler stapler;
+        int ret;
+
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+
+        X509Certificate issuer = findIssuer(chain, trusted);
+        if (issuer == null) {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "OCSP stapling disabled, issuer of server certificate is " +
+                "not a trusted CA");
+            return null;
+        }
+
+        try {
+            URL url = getResponderURL(chain[0]);
+            if (url == null) {
+                WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                    "OCSP stapling disabled, no responder for server " +
+                    "certificate");
+                return null;
+            }
+            stapler = new WolfSSLOCSPStapler(url, chain[0], issuer, stats);
+
+        } catch (IOException e) {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "OCSP stapling disabled: " + e.getMessage());
+            return null;
+        }
+
+        ret = ctx.enableOCSPStapling();
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "OCSP stapling not available, ret = " + ret);
+            return null;
+        }
+
+        /* native wolfSSL only calls the I/O callback for a certificate
+         * with an AIA OCSP URL, unless the override URL is in use. Set it
+         * with OCSP enabled, then disable OCSP again so peer certificates
+         * are not looked up, the override flag stays in effect for
+         * stapling. OCSP options set by the application are not
+         * replaced. */
+        if (!ctx.isOCSPEnabled()) {
+            ctx.enableOCSP(WolfSSL.WOLFSSL_OCSP_URL_OVERRIDE |
+                           WolfSSL.WOLFSSL_OCSP_NO_NONCE);
+            ctx.setOCSPOverrideUrl(stapler.url.toString());
+            ctx.disableOCSP();
+        } else {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "OCSP already enabled on context, keeping its options, " +
+                "only certificates with an AIA OCSP URL are stapled");
+        }
+
+        ret = ctx.setOCSPIOCb(stapler);
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                "OCSP stapling not available, I/O callback ret = " + ret);
+            return null;
+        }
+
+        WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+            "OCSP stapling enabled for " + stapler.subject + ", responder: " +
+            stapler.url);
+
+        schedule(stapler, 0);
+
+        return stapler;
+    }
+
+    /* Scheduled tasks only hold a weak reference, the stapler is held by
+     * the native context it is registered with. Fetching stops once the
+     * SSLContext is collected. */
+    private static synchronized void schedule(WolfSSLOCSPStapler stapler,
+        long delaySec) {
+
+        final WeakReference<WolfSSLOCSPStapler> ref =
+            new WeakReference<WolfSSLOCSPStapler>(stapler);
+
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "wolfJSSE OCSP stapling");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        timer.schedule(new Runnable() {
+            public void run() {
+                WolfSSLOCSPStapler s = ref.get();
+                if (s != null) {
+                    schedule(s, s.refresh());
+                }
+            }
+        }, delaySec, TimeUnit.SECONDS);
+    }
+
+    /* Trusted CA that issued the leaf certificate, or null if none. The
+     * CertID and response signature only depend on the issuer name and
+     * key, so a re-issued CA certificate in the chain also matches. */
+    private static X509Certificate findIssuer(X509Certificate[] chain,
+        X509Certificate[] trusted) {
+
+        if (trusted == null) {
+            return null;
+        }
+
+        for (X509Certificate ca : trusted) {
+            if (!ca.getSubjectX500Principal().equals(
+                    chain[0].getIssuerX500Principal())) {
+                continue;
+            }
+            if (chain.length < 2 ||
+                    chain[1].getPublicKey().equals(ca.getPublicKey())) {
+                return ca;
+            }
+        }
+
+        return null;
+    }
+
+    private static URL getResponderURL(X509Certificate cert)
+        throws IOException {
+
+        String uri = System.getProperty(RESPONDER_PROPERTY);
+
+        if (uri == null || !"true".equalsIgnoreCase(
+                System.getProperty(OVERRIDE_PROPERTY))) {
+            String aia = getAIAOCSPUrl(cert);
+            if (aia != null) {
+                uri = aia;
+            }
+        }
+
+        if (uri == null || uri.isEmpty()) {
+            return null;
+        }
+
+        URL url = new URL(uri);
+        if (!url.getProtocol().equals("http")) {
+            throw new IOException("unsupported OCSP responder: " + uri);
+        }
+
+        return url;
+    }
+
+    /* OCSP access location of Authority Information Access extension */
+    private static String getAIAOCSPUrl(X509Certificate cert)
+        throws IOException {
+
+        byte[] ext = cert.getExtensionValue(AIA_OID);
+
+        if (ext == null) {
+            return null;
+        }
+
+        DerReader aia = new DerReader(
+            new DerReader(ext).read(0x04)).enter(0x30);
+        while (aia.hasMore()) {
+            DerReader ad = aia.enter(0x30);
+            byte[] method = ad.read(0x06);
+            /* uniformResourceIdentifier [6] */
+            if (Arrays.equals(method, OCSP_OID) && ad.hasMore() &&
+                    ad.peek() == 0x86) {
+                return new String(ad.read(0x86), StandardCharsets.US_ASCII);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Fetch a new response from the responder
+     *
+     * @return seconds until next fetch
+     */
+    long refresh() {
+        long now = System.currentTimeMillis();
+        Response old = this.current;
+
+        try {
+            byte[] resp = fetch();
+            long nextUpdate = parseResponse(resp, this.certId);
+            long expiry = now + this.lifetime;
+
+            if (nextUpdate > 0) {
+                expiry = Math.min(expiry, nextUpdate);
+            }
+            if (expiry <= now) {
+                throw new IOException("response expired");
+            }
+            this.current = new Response(resp, expiry);
+
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "fetched OCSP response for " + this.subject + ", stapled " +
+                "for " + ((expiry - now) / 1000) + " sec");
+
+            return Math.max(MIN_REFRESH, (expiry - now) / 2000);
+
+        } catch (IOException e) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "failed to fetch OCSP response for " + this.subject + ": " +
+                e.getMessage());
+
+            if (old != null && old.expiry <= now) {
+                this.current = null;
+            }
+            return RETRY_DELAY;
+        }
+    }
+
+    private byte[] fetch() throws IOException {
+        HttpURLConnection con = (HttpURLConnection)this.url.openConnection();
+
+        try {
+            con.setConnectTimeout(this.timeout);
+            con.setReadTimeout(this.timeout);
+            con.setUseCaches(false);
+            con.setDoOutput(true);
+            con.setRequestMethod("POST");
+            con.setRequestProperty("Content-Type",
+                "application/ocsp-request");
+            con.setRequestProperty("Accept", "application/ocsp-response");
+            con.setFixedLengthStreamingMode(this.request.length);
+
+            OutputStream out = con.getOutputStream();
+            try {
+                out.write(this.request);
+            } finally {
+                out.close();
+            }
+
+            if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP status " + con.getResponseCode());
+            }
+
+            ByteArrayOutputStream resp = new ByteArrayOutputStream();
+            InputStream in = con.getInputStream();
+            try {
+                byte[] buf = new byte[4096];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    resp.write(buf, 0, n);
+                    if (resp.size() > MAX_RESPONSE_SZ) {
+                        throw new IOException("response too large");
+                    }
+                }
+            } finally {
+                in.close();
+            }
+
+            return resp.toByteArray();
+
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Called by native wolfSSL during a handshake for the response to
+     * staple.
+     *
+     * @param url OCSP responder URL, unused
+     * @param req DER OCSPRequest made by native wolfSSL
+     * @return cached DER OCSPResponse, or null if none is available
+     */
+    @Override
+    public byte[] ocspIOCallback(String url, byte[] req) {
+        Response resp = this.current;
+
+        if (resp == null || System.currentTimeMillis() >= resp.expiry) {
+            return null;
+        }
+
+        try {
+            /* OCSPRequest, TBSRequest */
+            DerReader r = new DerReader(req).enter(0x30).enter(0x30);
+            if (r.peek() == 0xA0) {
+                r.skip();   /* version */
+            }
+            if (r.peek() == 0xA1) {
+                r.skip();   /* requestorName */
+            }
+            /* requestList, Request, CertID */
+            ByteBuffer id = certIdKey(r.enter(0x30).enter(0x30).enter(0x30));
+            if (!id.equals(this.certId)) {
+                return null;
+            }
+
+        } catch (IOException e) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "invalid OCSP request from native wolfSSL: " +
+                e.getMessage());
+            return null;
+        }
+
+        if (this.stats != null) {
+            this.stats.ocspResponseStapled();
+        }
+
+        return resp.der;
+    }
+
+    /* DER CertID of a certificate, hashed with SHA-1 like native wolfSSL */
+    private static byte[] certId(X509Certificate cert,
+        X509Certificate issuer) throws IOException {
+
+        MessageDigest md;
+
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        /* subjectPublicKey BIT STRING of issuer, without unused bits */
+        DerReader spki = new DerReader(
+            issuer.getPublicKey().getEncoded()).enter(0x30);
+        spki.skip();
+        byte[] key = spki.read(0x03);
+
+        byte[] nameHash = md.digest(
+            issuer.getSubjectX500Principal().getEncoded());
+        md.update(key, 1, key.length - 1);
+        byte[] keyHash = md.digest();
+
+        return der(0x30,
+            der(0x30, der(0x06, SHA1_OID), new byte[] { 0x05, 0x00 }),
+            der(0x04, nameHash),
+            der(0x04, keyHash),
+            der(0x02, cert.getSerialNumber().toByteArray()));
+    }
+
+    /* CertID re-encoded without hash algorithm parameters, so IDs from
+     * different encoders compare equal */
+    private static ByteBuffer certIdKey(DerReader id) throws IOException {
+        byte[] alg = id.enter(0x30).read(0x06);
+        byte[] nameHash = id.read(0x04);
+        byte[] keyHash = id.read(0x04);
+        byte[] serial = id.read(0x02);
+
+        return ByteBuffer.wrap(der(0x30, der(0x06, alg), der(0x04, nameHash),
+            der(0x04, keyHash), der(0x02, serial)));
+    }
+
+    /**
+     * Check a DER OCSPResponse is successful and has a status for the
+     * certificate.
+     *
+     * @return nextUpdate time of the certificate status in ms, or 0 if
+     *         the responder gave none
+     * @throws IOException if the response can not be stapled
+     */
+    static long parseResponse(byte[] resp, ByteBuffer certId)
+        throws IOException {
+
+        DerReader r = new DerReader(resp).enter(0x30);
+
+        byte[] status = r.read(0x0A);
+        if (status.length != 1 || status[0] != 0) {
+            throw new IOException("responder error, status " +
+                (status.length > 0 ? status[0] : -1));
+        }
+
+        /* responseBytes [0] */
+        DerReader rb = r.enter(0xA0).enter(0x30);
+        if (!Arrays.equals(rb.read(0x06), OCSP_BASIC_OID)) {
+            throw new IOException("not a basic OCSP response");
+        }
+
+        /* BasicOCSPResponse, ResponseData */
+        DerReader data = new DerReader(rb.read(0x04)).enter(0x30)
+            .enter(0x30);
+        if (data.peek() == 0xA0) {
+            data.skip();    /* version */
+        }
+        data.skip();        /* responderID */
+        data.read(0x18);    /* producedAt */
+
+        DerReader responses = data.enter(0x30);
+        while (responses.hasMore()) {
+            DerReader single = responses.enter(0x30);
+            ByteBuffer id = certIdKey(single.enter(0x30));
+            int certStatus = single.peek();
+            single.skip();
+            single.read(0x18);      /* thisUpdate */
+
+            long nextUpdate = 0;
+            if (single.hasMore() && single.peek() == 0xA0) {
+                nextUpdate = parseTime(new DerReader(single.read(0xA0))
+                    .read(0x18));
+            }
+
+            if (!id.equals(certId)) {
+                continue;
+            }
+            /* good [0], revoked [1] or unknown [2] */
+            if (certStatus == 0x82) {
+                throw new IOException("certificate status unknown");
+            }
+            if (certStatus == 0xA1) {
+                WolfSSLDebug.log(WolfSSLOCSPStapler.class, WolfSSLDebug.INFO,
+                    "OCSP responder reports certificate revoked");
+            }
+            return nextUpdate;
+        }
+
+        throw new IOException("no status for certificate in response");
+    }
+
+    /* GeneralizedTime YYYYMMDDHHMMSS[.f]Z to ms */
+    private static long parseTime(byte[] t) throws IOException {
+        String s = new String(t, StandardCharsets.US_ASCII);
+
+        if (s.length() < 15 || !s.endsWith("Z")) {
+            throw new IOException("invalid GeneralizedTime: " + s);
+        }
+        try {
+            Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            c.clear();
+            c.set(Integer.parseInt(s.substring(0, 4)),
+                Integer.parseInt(s.substring(4, 6)) - 1,
+                Integer.parseInt(s.substring(6, 8)),
+                Integer.parseInt(s.substring(8, 10)),
+                Integer.parseInt(s.substring(10, 12)),
+                Integer.parseInt(s.substring(12, 14)));
+            return c.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid GeneralizedTime: " + s);
+        }
+    }
+
+    /* DER encode tag and length followed by contents */
+    private static byte[] der(int tag, byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int len = 0;
+
+        for (byte[] p : parts) {
+            len += p.length;
+        }
+
+        out.write(tag);
+        if (len < 0x80) {
+            out.write(len);
+        } else if (len < 0x100) {
+            out.write(0x81);
+            out.write(len);
+        } else if (len < 0x10000) {
+            out.write(0x82);
+            out.write(len >>> 8);
+            out.write(len);
+        } else {
+            out.write(0x83);
+            out.write(len >>> 16);
+            out.write(len >>> 8);
+            out.write(len);
+        }
+        for (byte[] p : parts) {
+            out.write(p, 0, p.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Minimal reader of DER elements in a byte range
+     */
+    private static final class DerReader {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+
+        DerReader(byte[] buf) {
+            this(buf, 0, buf.length);
+        }
+
+        private DerReader(byte[] buf, int off, int end) {
+            this.buf = buf;
+            this.pos = off;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return pos < end;
+        }
+
+        /* @return tag of next element, or -1 at end */
+        int peek() {
+            return (pos < end) ? (buf[pos] & 0xff) : -1;
+        }
+
+        /* @return {content offset, content length} of next element,
+         * which must have the given tag unless tag is -1 */
+        private int[] next(int tag) throws IOException {
+            if (pos + 2 > end) {
+                throw new IOException("truncated DER");
+            }
+            if (tag != -1 && (buf[pos] & 0xff) != tag) {
+                throw new IOException("unexpected DER tag " +
+                    (buf[pos] & 0xff) + ", expected " + tag);
+            }
+
+            int off = pos + 2;
+            int len = buf[pos + 1] & 0xff;
+            if (len > 0x80) {
+                int n = len & 0x7f;
+                if (n > 3 || off + n > end) {
+                    throw new IOException("invalid DER length");
+                }
+                len = 0;
+                for (int i = 0; i < n; i++) {
+                    len = (len << 8) | (buf[off++] & 0xff);
+                }
+            } else if (len == 0x80) {
+                throw new IOException("indefinite DER length");
+            }
+            if (off + len > end) {
+                throw new IOException("truncated DER");
+            }
+
+            pos = off + len;
+            return new int[] { off, len };
+        }
+
+        /* @return reader over contents of next element */
+        DerReader enter(int tag) throws IOException {
+            int[] e = next(tag);
+            return new DerReader(buf, e[0], e[0] + e[1]);
+        }
+
+        /* @return copy of contents of next element */
+        byte[] read(int tag) throws IOException {
+            int[] e = next(tag);
+            return Arrays.copyOfRange(buf, e[0], e[0] + e[1]);
+        }
+
+        void skip() throws IOException {
+            next(-1);
+        }
+    }
+}
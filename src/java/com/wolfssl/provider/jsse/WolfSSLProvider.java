@@ -48,8 +48,6 @@ public final class WolfSSLProvider extends Provider {
                 "Failed to initialize native wolfSSL library");
         }
 
-<<<<<<< HEAD
-=======
         /* enable native wolfSSL debug logging, native wolfSSL must be
          * compiled with --enable-debug */
         String wolfsslDebug = System.getProperty("wolfssl.debug");
@@ -57,7 +55,6 @@ public final class WolfSSLProvider extends Provider {
             WolfSSL.debuggingON();
         }
 
->>>>>>> 175f4b5a7434d506fdfbbaa314806fe5ad3e40a5
         /* Key Factory */
         put("KeyManagerFactory.X509",
                 "com.wolfssl.provider.jsse.WolfSSLKeyManager");
@@ -0,0 +1,225 @@
+/* WolfSSLRingBuffer.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Circular byte queue used by WolfSSLEngine to hold encrypted records
+ * waiting to be read by wolfSSL or sent to the peer.
+ *
+ * The backing array is allocated on first use, sized to hold one maximum
+ * size TLS record plus overhead, and reused afterwards. It is only grown
+ * when more data is queued than currently fits (for example a large
+ * handshake flight), and is never shrunk, so steady state traffic does
+ * no allocation. This class is not thread safe, callers synchronize.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLRingBuffer {
+
+    /* max TLS ciphertext (2^14 + 2048) plus record header */
+    static final int DEFAULT_CAPACITY = 16384 + 2048 + 5;
+
+    private final int initialCapacity;
+    private byte[] buf = null;
+    private int head = 0;   /* index of first queued byte */
+    private int count = 0;  /* number of queued bytes */
+
+    /**
+     * Create new ring buffer using DEFAULT_CAPACITY
+     */
+    WolfSSLRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create new ring buffer
+     *
+     * @param capacity initial size of backing array, in bytes
+     */
+    WolfSSLRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.initialCapacity = capacity;
+    }
+
+    /**
+     * @return number of bytes currently queued
+     */
+    int length() {
+        return count;
+    }
+
+    /**
+     * @return true if no bytes are queued
+     */
+    boolean isEmpty() {
+        return (count == 0);
+    }
+
+    /**
+     * Discard all queued bytes, keeping the backing array
+     */
+    void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    /* make sure at least extra more bytes can be queued */
+    private void ensureRoom(int extra) {
+        int needed = count + extra;
+        int newSz;
+        byte[] tmp;
+
+        if (buf == null) {
+            buf = new byte[Math.max(initialCapacity, needed)];
+            head = 0;
+            return;
+        }
+
+        if (needed <= buf.length) {
+            return;
+        }
+
+        newSz = buf.length;
+        while (newSz < needed) {
+            newSz *= 2;
+        }
+
+        /* linearize into new array */
+        tmp = new byte[newSz];
+        copyOut(tmp, 0, count);
+        buf = tmp;
+        head = 0;
+    }
+
+    /* copy len queued bytes from head into dst without consuming them */
+    private void copyOut(byte[] dst, int off, int len) {
+        int first = Math.min(len, buf.length - head);
+
+        System.arraycopy(buf, head, dst, off, first);
+        if (first < len) {
+            System.arraycopy(buf, 0, dst, off + first, len - first);
+        }
+    }
+
+    /* advance head by len bytes */
+    private void consume(int len) {
+        count -= len;
+        if (count == 0) {
+            head = 0;
+        } else {
+            head = (head + len) % buf.length;
+        }
+    }
+
+    /**
+     * Append bytes to the end of the queue
+     *
+     * @param src array holding bytes to add
+     * @param off offset into src
+     * @param len number of bytes to add
+     */
+    void put(byte[] src, int off, int len) {
+        int tail, first;
+
+        if (len <= 0) {
+            return;
+        }
+        ensureRoom(len);
+
+        tail = (head + count) % buf.length;
+        first = Math.min(len, buf.length - tail);
+        System.arraycopy(src, off, buf, tail, first);
+        if (first < len) {
+            System.arraycopy(src, off + first, buf, 0, len - first);
+        }
+        count += len;
+    }
+
+    /**
+     * Append all remaining bytes of src to the end of the queue, src
+     * position is advanced to its limit
+     *
+     * @param src buffer holding bytes to add
+     */
+    void put(ByteBuffer src) {
+        int len = src.remaining();
+        int tail, first;
+
+        if (len <= 0) {
+            return;
+        }
+        ensureRoom(len);
+
+        tail = (head + count) % buf.length;
+        first = Math.min(len, buf.length - tail);
+        src.get(buf, tail, first);
+        if (first < len) {
+            src.get(buf, 0, len - first);
+        }
+        count += len;
+    }
+
+    /**
+     * Remove up to len bytes from the front of the queue
+     *
+     * @param dst array to place bytes into
+     * @param off offset into dst
+     * @param len maximum number of bytes to remove
+     * @return number of bytes placed in dst
+     */
+    int get(byte[] dst, int off, int len) {
+        int sz = Math.min(len, count);
+
+        if (sz <= 0) {
+            return 0;
+        }
+        copyOut(dst, off, sz);
+        consume(sz);
+        return sz;
+    }
+
+    /**
+     * Remove as many bytes as fit in dst from the front of the queue
+     *
+     * @param dst buffer to place bytes into, position is advanced
+     * @return number of bytes placed in dst
+     */
+    int get(ByteBuffer dst) {
+        int sz = Math.min(dst.remaining(), count);
+        int first;
+
+        if (sz <= 0) {
+            return 0;
+        }
+        first = Math.min(sz, buf.length - head);
+        dst.put(buf, head, first);
+        if (first < sz) {
+            dst.put(buf, 0, sz - first);
+        }
+        consume(sz);
+        return sz;
+    }
+}
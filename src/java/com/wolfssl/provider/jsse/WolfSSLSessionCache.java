@@ -0,0 +1,365 @@
+/* WolfSSLSessionCache.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe, size and time bounded cache of SSLSession objects used for
+ * session resumption.
+ *
+ * Entries are spread over a fixed number of segments, each an access
+ * ordered LinkedHashMap protected by its own lock, so threads looking up
+ * sessions for different peers rarely contend. At most one segment lock is
+ * held at a time.
+ *
+ * When the cache holds more than its capacity, the least recently used
+ * entry of a segment is evicted, giving approximate LRU order across the
+ * whole cache. Entries older than the session timeout, measured from
+ * session creation time, or that have been invalidated, are dropped when
+ * looked up. A capacity or timeout of 0 means no limit, matching
+ * SSLSessionContext.
+ *
+ * @param <K> cache key type
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLSessionCache<K> {
+
+    /* default number of cached sessions, same as SunJSSE */
+    static final int DEFAULT_CAPACITY = 20480;
+
+    /* default session timeout in seconds (24 hours), same as SunJSSE */
+    static final int DEFAULT_TIMEOUT = 86400;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K>[] segments;
+    private final AtomicInteger count = new AtomicInteger(0);
+    private volatile int capacity;
+    private volatile int timeout;
+    private volatile WolfSSLStats stats = null;
+
+    private static final class Segment<K>
+        extends LinkedHashMap<K, WolfSSLImplementSSLSession> {
+
+        private static final long serialVersionUID = 1L;
+
+        Segment() {
+            super(16, 0.75f, true);
+        }
+
+        /* least recently used key, or null if empty */
+        K eldestKey() {
+            Iterator<K> it = keySet().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+
+    /**
+     * Create new session cache
+     *
+     * @param capacity maximum number of sessions to hold, 0 for no limit
+     * @param timeout session lifetime in seconds, 0 for no limit
+     * @throws IllegalArgumentException if capacity or timeout is negative
+     */
+    @SuppressWarnings("unchecked")
+    WolfSSLSessionCache(int capacity, int timeout) {
+        if (capacity < 0 || timeout < 0) {
+            throw new IllegalArgumentException(
+                "capacity and timeout must not be negative");
+        }
+        this.capacity = capacity;
+        this.timeout = timeout;
+
+        this.segments = (Segment<K>[])new Segment<?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment<K>();
+        }
+    }
+
+    private int segmentIndex(Object key) {
+        int h = key.hashCode();
+
+        /* spread high bits, segment count is a power of two */
+        h ^= (h >>> 16);
+        return h & (SEGMENTS - 1);
+    }
+
+    private boolean isExpired(WolfSSLImplementSSLSession ses, long now) {
+        int t = this.timeout;
+
+        if (!ses.isValid()) {
+            return true;
+        }
+        return (t > 0 && (now - ses.getCreationTime()) >= (t * 1000L));
+    }
+
+    /**
+     * Look up a session
+     *
+     * @param key key session was stored under
+     * @return cached session, or null if not found, expired or invalidated.
+     *         Expired and invalidated sessions are removed.
+     */
+    WolfSSLImplementSSLSession get(K key) {
+        WolfSSLImplementSSLSession ses;
+        Segment<K> seg = segments[segmentIndex(key)];
+
+        synchronized (seg) {
+            ses = seg.get(key);
+            if (ses != null && isExpired(ses, System.currentTimeMillis())) {
+                seg.remove(key);
+                count.decrementAndGet();
+                ses = null;
+            }
+        }
+
+        return ses;
+    }
+
+    /**
+     * Store a session, replacing any session stored under the same key and
+     * evicting least recently used sessions if over capacity.
+     *
+     * @param key key to store session under
+     * @param ses session to store
+     */
+    void put(K key, WolfSSLImplementSSLSession ses) {
+        int idx = segmentIndex(key);
+        Segment<K> seg = segments[idx];
+
+        synchronized (seg) {
+            if (seg.put(key, ses) == null) {
+                count.incrementAndGet();
+            }
+        }
+
+        /* prefer evicting from other segments so the new entry stays */
+        trim((idx + 1) & (SEGMENTS - 1));
+    }
+
+    /**
+     * Remove a session
+     *
+     * @param key key session was stored under
+     * @return session removed, or null if none was stored
+     */
+    WolfSSLImplementSSLSession remove(K key) {
+        WolfSSLImplementSSLSession ses;
+        Segment<K> seg = segments[segmentIndex(key)];
+
+        synchronized (seg) {
+            ses = seg.remove(key);
+            if (ses != null) {
+                count.decrementAndGet();
+            }
+        }
+
+        return ses;
+    }
+
+    /* evict entries, visiting segments from start, until within capacity */
+    private void trim(int start) {
+        int i = start;
+        int empty = 0;
+
+        while (capacity > 0 && count.get() > capacity && empty < SEGMENTS) {
+            Segment<K> seg = segments[i];
+
+            synchronized (seg) {
+                K eldest = seg.eldestKey();
+                if (eldest != null) {
+                    seg.remove(eldest);
+                    count.decrementAndGet();
+                    if (stats != null) {
+                        stats.cacheEviction();
+                    }
+                    empty = 0;
+                } else {
+                    empty++;
+                }
+            }
+            i = (i + 1) & (SEGMENTS - 1);
+        }
+    }
+
+    /**
+     * Drop all sessions that have expired or been invalidated
+     */
+    void purgeExpired() {
+        long now = System.currentTimeMillis();
+
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                Iterator<WolfSSLImplementSSLSession> it =
+                    seg.values().iterator();
+                while (it.hasNext()) {
+                    if (isExpired(it.next(), now)) {
+                        it.remove();
+                        count.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all sessions
+     */
+    void clear() {
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                count.addAndGet(-seg.size());
+                seg.clear();
+            }
+        }
+    }
+
+    /**
+     * Find a cached session by its session ID. This visits every entry and
+     * is meant for SSLSessionContext.getSession(byte[]), not for lookups
+     * made on each connection.
+     *
+     * @param id session ID to look for
+     * @return matching session that has not expired, or null
+     */
+    WolfSSLImplementSSLSession findById(byte[] id) {
+        long now = System.currentTimeMillis();
+
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                for (WolfSSLImplementSSLSession ses : seg.values()) {
+                    if (!isExpired(ses, now) &&
+                        Arrays.equals(id, ses.getId())) {
+                        return ses;
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return IDs of cached sessions that have not expired and have a
+     *         non-empty session ID
+     */
+    List<byte[]> getIds() {
+        long now = System.currentTimeMillis();
+        List<byte[]> ids = new ArrayList<byte[]>();
+
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                for (WolfSSLImplementSSLSession ses : seg.values()) {
+                    byte[] id = ses.getId();
+                    if (!isExpired(ses, now) && id.length > 0) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * @return snapshot of sessions currently cached, including any that
+     *         have expired but not yet been removed
+     */
+    List<WolfSSLImplementSSLSession> values() {
+        List<WolfSSLImplementSSLSession> out =
+            new ArrayList<WolfSSLImplementSSLSession>(count.get());
+
+        for (Segment<K> seg : segments) {
+            synchronized (seg) {
+                out.addAll(seg.values());
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * @return number of sessions currently cached
+     */
+    int size() {
+        return count.get();
+    }
+
+    /**
+     * Set counters updated when sessions are evicted
+     *
+     * @param stats counters to update, or null
+     */
+    void setStats(WolfSSLStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Set maximum number of cached sessions, evicting least recently used
+     * sessions if currently over the new capacity.
+     *
+     * @param capacity new capacity, 0 for no limit
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    void setCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        trim(0);
+    }
+
+    /**
+     * @return maximum number of cached sessions, 0 means no limit
+     */
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Set session lifetime. Applies to sessions already cached as well.
+     *
+     * @param timeout lifetime in seconds, 0 for no limit
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    void setTimeout(int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        this.timeout = timeout;
+        purgeExpired();
+    }
+
+    /**
+     * @return session lifetime in seconds, 0 means no limit
+     */
+    int getTimeout() {
+        return this.timeout;
+    }
+}
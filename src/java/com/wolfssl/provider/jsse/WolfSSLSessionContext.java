@@ -0,0 +1,155 @@
+/* WolfSSLSessionContext.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * wolfSSL implementation of SSLSessionContext
+ *
+ * Each WolfSSLAuthStore (one per SSLContext) holds a client and a server
+ * session context, each backed by its own WolfSSLSessionCache. Client
+ * sessions are stored when a handshake starts so they can be resumed by
+ * later connections to the same peer. Server sessions are stored when a
+ * handshake completes; resumption itself is done by the native wolfSSL
+ * session cache, so the server cache size here limits what is visible
+ * through this API, not the native cache size set when wolfSSL is
+ * compiled.
+ *
+ * The session timeout applies to both the Java cache and the native
+ * WOLFSSL_CTX, so sessions are not offered for resumption by either one
+ * once they expire.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLSessionContext implements SSLSessionContext {
+
+    private final WolfSSLAuthStore authStore;
+    private final WolfSSLSessionCache<?> cache;
+    private final boolean server;
+
+    /**
+     * Create new session context
+     *
+     * @param authStore WolfSSLAuthStore owning this context
+     * @param cache session cache backing this context
+     * @param server true for server side context, false for client side
+     */
+    WolfSSLSessionContext(WolfSSLAuthStore authStore,
+        WolfSSLSessionCache<?> cache, boolean server) {
+        this.authStore = authStore;
+        this.cache = cache;
+        this.server = server;
+    }
+
+    /**
+     * Returns the session with the given session ID.
+     *
+     * @param sessionId ID of session to find
+     * @return matching session, or null if not found or expired
+     * @throws NullPointerException if sessionId is null
+     */
+    @Override
+    public SSLSession getSession(byte[] sessionId) {
+        if (sessionId == null) {
+            throw new NullPointerException("sessionId is null");
+        }
+
+        return cache.findById(sessionId);
+    }
+
+    /**
+     * Returns the IDs of all sessions in this context which have not
+     * expired.
+     *
+     * @return enumeration of session IDs
+     */
+    @Override
+    public Enumeration<byte[]> getIds() {
+        return Collections.enumeration(cache.getIds());
+    }
+
+    /**
+     * Sets the session timeout. Sessions in this context older than the
+     * timeout, measured from session creation, are no longer resumed.
+     *
+     * @param seconds timeout in seconds, 0 for no limit
+     * @throws IllegalArgumentException if seconds is negative
+     */
+    @Override
+    public void setSessionTimeout(int seconds)
+        throws IllegalArgumentException {
+
+        if (seconds < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "setting " + (server ? "server" : "client") +
+            " session timeout: " + seconds);
+
+        cache.setTimeout(seconds);
+        authStore.updateNativeSessionTimeout();
+    }
+
+    /**
+     * @return session timeout in seconds, 0 means no limit
+     */
+    @Override
+    public int getSessionTimeout() {
+        return cache.getTimeout();
+    }
+
+    /**
+     * Sets the maximum number of sessions kept in this context. If more
+     * sessions are currently stored, least recently used ones are removed.
+     *
+     * @param size maximum number of sessions, 0 for no limit
+     * @throws IllegalArgumentException if size is negative
+     */
+    @Override
+    public void setSessionCacheSize(int size)
+        throws IllegalArgumentException {
+
+        if (size < 0) {
+            throw new IllegalArgumentException(
+                "cache size must not be negative");
+        }
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "setting " + (server ? "server" : "client") +
+            " session cache size: " + size);
+
+        cache.setCapacity(size);
+    }
+
+    /**
+     * @return maximum number of sessions kept, 0 means no limit
+     */
+    @Override
+    public int getSessionCacheSize() {
+        return cache.getCapacity();
+    }
+}
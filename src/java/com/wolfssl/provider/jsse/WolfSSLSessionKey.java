@@ -0,0 +1,210 @@
+/* WolfSSLSessionKey.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Key used to look up client sessions for resumption.
+ *
+ * A cached session is only offered to a new connection to the same host
+ * and port that enables the same protocol versions and cipher suites, so
+ * a connection with stricter settings does not resume a session
+ * negotiated under looser ones. Two keys are equal only if all of these
+ * match; the hash code is used to spread keys across cache segments, not
+ * to decide equality.
+ *
+ * Instances are immutable, the arrays passed in must not be modified by
+ * the caller afterwards.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLSessionKey {
+
+    private final String host;
+    private final int port;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final int hash;
+    private byte[] serverId = null;
+
+    /**
+     * Create new session key
+     *
+     * @param host peer host name or address, not null
+     * @param port peer port
+     * @param protocols enabled protocol versions, may be null
+     * @param cipherSuites enabled cipher suites, may be null
+     * @throws NullPointerException if host is null
+     */
+    WolfSSLSessionKey(String host, int port, String[] protocols,
+        String[] cipherSuites) {
+
+        if (host == null) {
+            throw new NullPointerException("host is null");
+        }
+        this.host = host;
+        this.port = port;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+
+        int h = host.hashCode();
+        h = 31 * h + port;
+        h = 31 * h + Arrays.hashCode(protocols);
+        h = 31 * h + Arrays.hashCode(cipherSuites);
+        this.hash = h;
+    }
+
+    /**
+     * @return peer host of this key
+     */
+    String getHost() {
+        return this.host;
+    }
+
+    /**
+     * @return peer port of this key
+     */
+    int getPort() {
+        return this.port;
+    }
+
+    private static void writeArray(DataOutputStream out, String[] arr)
+        throws IOException {
+
+        if (arr == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(arr.length);
+        for (String s : arr) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String[] readArray(DataInputStream in)
+        throws IOException {
+
+        int len = in.readInt();
+        String[] arr;
+
+        if (len == -1) {
+            return null;
+        }
+        if (len < 0 || len > 4096) {
+            throw new IOException("invalid array length: " + len);
+        }
+        arr = new String[len];
+        for (int i = 0; i < len; i++) {
+            arr[i] = in.readUTF();
+        }
+        return arr;
+    }
+
+    /**
+     * Write this key to a stream, in the form read by read()
+     *
+     * @param out stream to write to
+     * @throws IOException on write error
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(this.host);
+        out.writeInt(this.port);
+        writeArray(out, this.protocols);
+        writeArray(out, this.cipherSuites);
+    }
+
+    /**
+     * Read a key written by write()
+     *
+     * @param in stream to read from
+     * @return key read
+     * @throws IOException on read error or malformed input
+     */
+    static WolfSSLSessionKey read(DataInputStream in) throws IOException {
+        String h = in.readUTF();
+        int p = in.readInt();
+        String[] prot = readArray(in);
+        String[] suites = readArray(in);
+
+        return new WolfSSLSessionKey(h, p, prot, suites);
+    }
+
+    /**
+     * Returns a stable ID for this key, used as the server ID under which
+     * native wolfSSL stores client sessions. Equal keys have equal IDs, in
+     * this and later JVMs, so sessions found in a restored native session
+     * cache can be matched back to the connection.
+     *
+     * @return SHA-256 digest of the key fields
+     */
+    synchronized byte[] getServerId() {
+        if (this.serverId == null) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try {
+                write(new DataOutputStream(bos));
+                this.serverId =
+                    MessageDigest.getInstance("SHA-256").digest(
+                        bos.toByteArray());
+            } catch (IOException | NoSuchAlgorithmException e) {
+                /* not expected for in-memory stream and SHA-256 */
+                throw new IllegalStateException(e);
+            }
+        }
+        return this.serverId.clone();
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        WolfSSLSessionKey k;
+
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof WolfSSLSessionKey)) {
+            return false;
+        }
+        k = (WolfSSLSessionKey)obj;
+
+        return this.hash == k.hash &&
+               this.port == k.port &&
+               this.host.equals(k.host) &&
+               Arrays.equals(this.protocols, k.protocols) &&
+               Arrays.equals(this.cipherSuites, k.cipherSuites);
+    }
+
+    @Override
+    public String toString() {
+        return "host: " + this.host + ", port: " + this.port;
+    }
+}
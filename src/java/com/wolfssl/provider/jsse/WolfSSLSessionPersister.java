@@ -0,0 +1,503 @@
+/* WolfSSLSessionPersister.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import com.wolfssl.WolfSSL;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the session resumption state of wolfJSSE to a file and restores it
+ * when the JVM is restarted, so clients and servers can resume sessions
+ * made before the restart instead of doing a full handshake.
+ *
+ * This is disabled unless the following Security property is set:
+ *
+ * <pre>
+ * wolfjsse.sessionCache.persistFile      path of snapshot file
+ * wolfjsse.sessionCache.persistInterval  seconds between snapshots,
+ *                                        default 300, 0 saves only at exit
+ * </pre>
+ *
+ * A snapshot holds the native wolfSSL session cache, saved with
+ * wolfSSL_memsave_session_cache(), followed by the client sessions held by
+ * each WolfSSLAuthStore. The native cache is saved into a direct buffer and
+ * read through a memory mapped file, so it is not copied through the Java
+ * heap. Snapshots are written to a temporary file which then replaces the
+ * previous one.
+ *
+ * The native session cache includes the master secrets of cached
+ * sessions, so anyone able to read the snapshot file can decrypt traffic
+ * of those sessions. Snapshot files are created readable and writable by
+ * the owner only where the file system supports POSIX permissions, and
+ * should otherwise be placed in a directory only the JVM user can read.
+ * Since a snapshot is trusted to hold sessions of this JVM user, it is
+ * only restored if the file is owned by that user and is not group or
+ * world writable.
+ *
+ * The snapshot is restored when the first SSLContext is initialized, and
+ * its client sessions are added to every SSLContext initialized after that.
+ * Native wolfSSL must be compiled with PERSIST_SESSION_CACHE, otherwise
+ * this does nothing. Client sessions are stored in the native client
+ * cache under an ID derived from their WolfSSLSessionKey, and are resumed
+ * by setting that ID on new connections.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLSessionPersister {
+
+    /** Security property holding snapshot file path */
+    static final String FILE_PROPERTY = "wolfjsse.sessionCache.persistFile";
+
+    /** Security property holding snapshot interval in seconds */
+    static final String INTERVAL_PROPERTY =
+        "wolfjsse.sessionCache.persistInterval";
+
+    static final int DEFAULT_INTERVAL = 300;
+
+    /* snapshot file header: magic "WJSC", format version */
+    private static final int MAGIC = 0x574A5343;
+    private static final int VERSION = 1;
+    private static final int HEADER_SZ = 16;
+
+    /* upper bound on client entries read from a snapshot */
+    private static final int MAX_ENTRIES = 1 << 20;
+
+    /* owner read and write only, for files holding key material */
+    private static final Set<PosixFilePermission> OWNER_ONLY =
+        PosixFilePermissions.fromString("rw-------");
+
+    /* serializes saves, taken before the class lock */
+    private static final Object saveLock = new Object();
+
+    private static boolean initialized = false;
+    private static volatile Path file = null;
+    private static ScheduledExecutorService timer = null;
+
+    /* client sessions read from snapshot, added to new SSLContexts */
+    private static final List<Entry> restored = new ArrayList<Entry>();
+
+    /* auth stores whose client sessions are saved */
+    private static final List<WeakReference<WolfSSLAuthStore>> stores =
+        new ArrayList<WeakReference<WolfSSLAuthStore>>();
+
+    /* client session as stored in snapshot */
+    private static final class Entry {
+        final WolfSSLSessionKey key;
+        final byte[] id;
+        final long created;
+
+        Entry(WolfSSLSessionKey key, byte[] id, long created) {
+            this.key = key;
+            this.id = id;
+            this.created = created;
+        }
+    }
+
+    private WolfSSLSessionPersister() {
+    }
+
+    /**
+     * @return true if session persistence has been enabled
+     */
+    static boolean isEnabled() {
+        return (file != null);
+    }
+
+    /**
+     * Register a newly initialized SSLContext. The first call reads the
+     * Security properties, restores the snapshot and starts periodic
+     * saving. Restored client sessions are added to the auth store.
+     *
+     * @param store auth store of the SSLContext
+     */
+    static synchronized void register(WolfSSLAuthStore store) {
+
+        if (!initialized) {
+            initialized = true;
+            init();
+        }
+
+        if (file == null) {
+            return;
+        }
+
+        for (Entry e : restored) {
+            store.restoreClientSession(e.key, e.id, e.created);
+        }
+        stores.add(new WeakReference<WolfSSLAuthStore>(store));
+    }
+
+    private static void init() {
+        String path = Security.getProperty(FILE_PROPERTY);
+        String intv = Security.getProperty(INTERVAL_PROPERTY);
+        int interval = DEFAULT_INTERVAL;
+
+        if (path == null || path.trim().isEmpty()) {
+            return;
+        }
+
+        if (WolfSSL.getSessionCacheMemsize() < 0) {
+            WolfSSLDebug.log(WolfSSLSessionPersister.class, WolfSSLDebug.INFO,
+                "session cache persistence requested, but native wolfSSL " +
+                "not compiled with PERSIST_SESSION_CACHE");
+            return;
+        }
+
+        if (intv != null) {
+            try {
+                interval = Integer.parseInt(intv.trim());
+            } catch (NumberFormatException e) {
+                WolfSSLDebug.log(WolfSSLSessionPersister.class,
+                    WolfSSLDebug.INFO, "invalid " + INTERVAL_PROPERTY +
+                    ", using default: " + intv);
+            }
+            if (interval < 0) {
+                interval = DEFAULT_INTERVAL;
+            }
+        }
+
+        file = Paths.get(path.trim());
+        WolfSSLDebug.log(WolfSSLSessionPersister.class, WolfSSLDebug.INFO,
+            "persisting session cache to " + file + ", interval " +
+            interval + " sec");
+
+        restore();
+
+        if (interval > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "wolfJSSE session persist");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    save();
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+
+        Runtime.getRuntime().addShutdownHook(
+            new Thread("wolfJSSE session persist exit") {
+                public void run() {
+                    save();
+                }
+            });
+    }
+
+    /* collect client sessions of live auth stores */
+    private static byte[] encodeClientSessions() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        List<WolfSSLImplementSSLSession> sessions =
+            new ArrayList<WolfSSLImplementSSLSession>();
+        long now = System.currentTimeMillis();
+        int written = 0;
+
+        synchronized (WolfSSLSessionPersister.class) {
+            Iterator<WeakReference<WolfSSLAuthStore>> it = stores.iterator();
+            while (it.hasNext()) {
+                WolfSSLAuthStore s = it.next().get();
+                if (s == null) {
+                    it.remove();
+                } else {
+                    sessions.addAll(s.getClientSessions());
+                }
+            }
+        }
+
+        /* count placeholder, patched below */
+        out.writeInt(0);
+        for (WolfSSLImplementSSLSession ses : sessions) {
+            WolfSSLSessionKey key = ses.getCacheKey();
+            byte[] id = ses.getId();
+            int timeout = ses.getSessionContext() == null ? 0 :
+                ses.getSessionContext().getSessionTimeout();
+
+            if (key == null || id.length == 0 || !ses.isValid() ||
+                (timeout > 0 &&
+                 now - ses.getCreationTime() >= timeout * 1000L)) {
+                continue;
+            }
+            key.write(out);
+            out.writeShort(id.length);
+            out.write(id);
+            out.writeLong(ses.getCreationTime());
+            written++;
+        }
+        out.flush();
+
+        byte[] enc = bos.toByteArray();
+        ByteBuffer.wrap(enc).putInt(0, written);
+        return enc;
+    }
+
+    /**
+     * Create a new empty file readable and writable by the owner only, for
+     * files holding session secrets. Where POSIX permissions are not
+     * supported, permissions are restricted after the file is created.
+     *
+     * @param path file to create, must not exist
+     * @throws IOException if the file can not be created
+     */
+    static void createPrivateFile(Path path) throws IOException {
+        try {
+            Files.createFile(path,
+                PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            File f = path.toFile();
+            f.setReadable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(false, false);
+            f.setWritable(true, true);
+        }
+    }
+
+    /**
+     * Write a snapshot of the native session cache and client sessions to
+     * the configured file. Errors are logged and otherwise ignored.
+     *
+     * The snapshot is taken in memory first, so the class lock taken by
+     * register() is not held while writing the file.
+     */
+    static void save() {
+        Path out = file;
+        Path tmp;
+        ByteBuffer cache;
+        byte[] clients;
+        int ret;
+
+        if (out == null) {
+            return;
+        }
+        tmp = out.resolveSibling(out.getFileName() + ".tmp");
+
+        synchronized (saveLock) {
+            try {
+                /* native wolfSSL copies the cache under its own lock */
+                cache = ByteBuffer.allocateDirect(
+                    Math.max(WolfSSL.getSessionCacheMemsize(), 0));
+                ret = WolfSSL.memsaveSessionCache(cache);
+                if (ret != WolfSSL.SSL_SUCCESS) {
+                    throw new IOException(
+                        "memsaveSessionCache failed, ret = " + ret);
+                }
+                cache.clear();
+                clients = encodeClientSessions();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SZ);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(cache.remaining());
+                header.putInt(clients.length);
+                header.flip();
+
+                Files.deleteIfExists(tmp);
+                createPrivateFile(tmp);
+                try (FileChannel ch = FileChannel.open(tmp,
+                        StandardOpenOption.WRITE)) {
+                    ByteBuffer[] parts = { header, cache,
+                        ByteBuffer.wrap(clients) };
+                    while (parts[2].hasRemaining()) {
+                        ch.write(parts);
+                    }
+                    ch.force(true);
+                }
+
+                Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+                WolfSSLDebug.log(WolfSSLSessionPersister.class,
+                    WolfSSLDebug.INFO, "saved session cache snapshot to " +
+                    out);
+
+            } catch (IOException | RuntimeException e) {
+                WolfSSLDebug.log(WolfSSLSessionPersister.class,
+                    WolfSSLDebug.INFO,
+                    "failed to save session cache snapshot: " + e);
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignore) {
+                    /* nothing more to do */
+                }
+            }
+        }
+    }
+
+    /**
+     * Check that a snapshot file can be trusted before restoring it. The
+     * file must be a regular file, not a symbolic link, owned by the user
+     * running this JVM, and not writable by group or others. Where POSIX
+     * file attributes are not supported only the owner is checked.
+     *
+     * @param path snapshot file to check
+     * @throws IOException if the file fails any check or its attributes
+     *         can not be read
+     */
+    static void checkSnapshotFile(Path path) throws IOException {
+        UserPrincipal user = path.getFileSystem()
+            .getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        UserPrincipal owner;
+
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("not a regular file");
+        }
+
+        try {
+            PosixFileAttributes attrs = Files.readAttributes(path,
+                PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            Set<PosixFilePermission> perms = attrs.permissions();
+
+            if (perms.contains(PosixFilePermission.GROUP_WRITE) ||
+                perms.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException("file is group or world writable");
+            }
+            owner = attrs.owner();
+
+        } catch (UnsupportedOperationException e) {
+            owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        if (!owner.equals(user)) {
+            throw new IOException("file is owned by " + owner.getName() +
+                ", not by " + user.getName());
+        }
+    }
+
+    /* restore native cache and read client sessions from snapshot file */
+    private static void restore() {
+        Path in = file;
+        int nativeSz, clientSz, ret;
+
+        if (!Files.exists(in, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try {
+            checkSnapshotFile(in);
+        } catch (IOException | RuntimeException e) {
+            WolfSSLDebug.log(WolfSSLSessionPersister.class, WolfSSLDebug.INFO,
+                "refusing to restore session cache snapshot " + in + ": " + e);
+            return;
+        }
+
+        try (FileChannel ch = FileChannel.open(in, StandardOpenOption.READ,
+                LinkOption.NOFOLLOW_LINKS)) {
+            long size = ch.size();
+            if (size < HEADER_SZ || size > Integer.MAX_VALUE) {
+                throw new IOException("invalid snapshot size: " + size);
+            }
+
+            MappedByteBuffer map =
+                ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw new IOException("unrecognized snapshot format");
+            }
+            nativeSz = map.getInt();
+            clientSz = map.getInt();
+            if (nativeSz < 0 || clientSz < 0 ||
+                (long)HEADER_SZ + nativeSz + clientSz != size) {
+                throw new IOException("snapshot length mismatch");
+            }
+
+            if (nativeSz > 0) {
+                ByteBuffer cache = map.slice();
+                cache.limit(nativeSz);
+                ret = WolfSSL.memrestoreSessionCache(cache);
+                if (ret != WolfSSL.SSL_SUCCESS) {
+                    /* cache written by differently configured wolfSSL,
+                     * client sessions would not resume either */
+                    throw new IOException(
+                        "memrestoreSessionCache failed, ret = " + ret);
+                }
+                map.position(HEADER_SZ + nativeSz);
+            }
+
+            byte[] clients = new byte[clientSz];
+            map.get(clients);
+            decodeClientSessions(clients);
+
+            WolfSSLDebug.log(WolfSSLSessionPersister.class, WolfSSLDebug.INFO,
+                "restored session cache snapshot from " + in + ", " +
+                restored.size() + " client sessions");
+
+        } catch (IOException | RuntimeException e) {
+            restored.clear();
+            WolfSSLDebug.log(WolfSSLSessionPersister.class, WolfSSLDebug.INFO,
+                "ignoring session cache snapshot " + in + ": " + e);
+        }
+    }
+
+    private static void decodeClientSessions(byte[] enc) throws IOException {
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(enc));
+        int count = in.readInt();
+
+        if (count < 0 || count > MAX_ENTRIES) {
+            throw new IOException("invalid client session count: " + count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            WolfSSLSessionKey key = WolfSSLSessionKey.read(in);
+            int idLen = in.readUnsignedShort();
+            byte[] id = new byte[idLen];
+            in.readFully(id);
+            long created = in.readLong();
+
+            if (idLen > 0) {
+                restored.add(new Entry(key, id, created));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* WolfSSLSessionStore.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+/**
+ * Service provider interface for a server session store shared between
+ * processes.
+ *
+ * When configured, each session established by a wolfJSSE server is
+ * serialized and stored, and a client resuming a session not found in
+ * the in-process session cache is looked up here. Server processes
+ * sharing a store, such as workers accepting on the same port, can then
+ * resume each other's sessions.
+ *
+ * A store is selected with one of these Security properties:
+ *
+ * <pre>
+ * wolfjsse.sessionStore.class  class implementing this interface, with a
+ *                              public no-argument constructor
+ * wolfjsse.sessionStore.file   path of file used by
+ *                              WolfSSLMappedSessionStore
+ * </pre>
+ *
+ * Implementations must be thread safe. Native wolfSSL must be compiled
+ * with HAVE_EXT_CACHE.
+ *
+ * @author wolfSSL
+ */
+public interface WolfSSLSessionStore {
+
+    /**
+     * Store a session. Implementations may drop sessions, for example when
+     * full, as clients not able to resume fall back to a full handshake.
+     *
+     * @param id session ID
+     * @param session serialized WOLFSSL_SESSION
+     * @param timeout session lifetime in seconds, 0 for no limit
+     */
+    public void put(byte[] id, byte[] session, int timeout);
+
+    /**
+     * Look up a session
+     *
+     * @param id session ID
+     * @return serialized session stored under id, or null if not found or
+     *         expired
+     */
+    public byte[] get(byte[] id);
+}
@@ -0,0 +1,155 @@
+/* WolfSSLSharedSessionCache.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import com.wolfssl.WolfSSL;
+import com.wolfssl.WolfSSLSession;
+import com.wolfssl.WolfSSLSessionCacheCallback;
+import java.io.IOException;
+import java.security.Security;
+
+/**
+ * Connects the native wolfSSL external session cache of a server
+ * SSLContext to the configured WolfSSLSessionStore.
+ *
+ * The store is created from Security properties when the first SSLContext
+ * is initialized, and shared by all SSLContexts in the JVM. See
+ * WolfSSLSessionStore for the properties used. When a mapped file store
+ * is used, these also apply:
+ *
+ * <pre>
+ * wolfjsse.sessionStore.slots     number of slots, default 8192
+ * wolfjsse.sessionStore.slotSize  slot size in bytes, default 4096
+ * </pre>
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLSharedSessionCache implements WolfSSLSessionCacheCallback {
+
+    static final String CLASS_PROPERTY = "wolfjsse.sessionStore.class";
+    static final String FILE_PROPERTY = "wolfjsse.sessionStore.file";
+    static final String SLOTS_PROPERTY = "wolfjsse.sessionStore.slots";
+    static final String SLOT_SIZE_PROPERTY = "wolfjsse.sessionStore.slotSize";
+
+    private static WolfSSLSessionStore store = null;
+    private static boolean storeLoaded = false;
+
+    private final WolfSSLSessionStore sessionStore;
+    private final WolfSSLAuthStore authStore;
+
+    private WolfSSLSharedSessionCache(WolfSSLSessionStore sessionStore,
+        WolfSSLAuthStore authStore) {
+        this.sessionStore = sessionStore;
+        this.authStore = authStore;
+    }
+
+    /**
+     * Register shared session store with native context, if one is
+     * configured
+     *
+     * @param ctx native context of SSLContext being initialized
+     * @param authStore WolfSSLAuthStore of SSLContext being initialized
+     */
+    static void register(com.wolfssl.WolfSSLContext ctx,
+        WolfSSLAuthStore authStore) {
+
+        WolfSSLSessionStore s = getStore();
+        if (s == null) {
+            return;
+        }
+
+        int ret = ctx.setSessionCacheCb(
+            new WolfSSLSharedSessionCache(s, authStore));
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            WolfSSLDebug.log(WolfSSLSharedSessionCache.class,
+                WolfSSLDebug.INFO, "shared session store not available, " +
+                "ret = " + ret);
+        }
+    }
+
+    private static int getIntProperty(String name, int def) {
+        String val = Security.getProperty(name);
+
+        if (val == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException e) {
+            WolfSSLDebug.log(WolfSSLSharedSessionCache.class,
+                WolfSSLDebug.INFO, "invalid " + name + ", using default: " +
+                val);
+            return def;
+        }
+    }
+
+    /* create store from Security properties on first call, null if none
+     * is configured or it can not be created */
+    private static synchronized WolfSSLSessionStore getStore() {
+        if (storeLoaded) {
+            return store;
+        }
+        storeLoaded = true;
+
+        String cls = Security.getProperty(CLASS_PROPERTY);
+        String file = Security.getProperty(FILE_PROPERTY);
+
+        try {
+            if (cls != null && !cls.trim().isEmpty()) {
+                store = (WolfSSLSessionStore)Class.forName(cls.trim())
+                    .getDeclaredConstructor().newInstance();
+            }
+            else if (file != null && !file.trim().isEmpty()) {
+                store = new WolfSSLMappedSessionStore(file.trim(),
+                    getIntProperty(SLOTS_PROPERTY,
+                        WolfSSLMappedSessionStore.DEFAULT_SLOTS),
+                    getIntProperty(SLOT_SIZE_PROPERTY,
+                        WolfSSLMappedSessionStore.DEFAULT_SLOT_SIZE));
+            }
+        } catch (ReflectiveOperationException | ClassCastException |
+                 IOException | IllegalArgumentException e) {
+            WolfSSLDebug.log(WolfSSLSharedSessionCache.class,
+                WolfSSLDebug.INFO, "unable to create session store: " + e);
+            store = null;
+        }
+
+        return store;
+    }
+
+    @Override
+    public void newSession(WolfSSLSession ssl, byte[] id, byte[] session) {
+        /* client sessions are cached per SSLContext */
+        if (ssl.getSide() != WolfSSL.WOLFSSL_SERVER_END) {
+            return;
+        }
+        sessionStore.put(id, session,
+            authStore.getSessionContext(false).getSessionTimeout());
+    }
+
+    @Override
+    public byte[] getSession(WolfSSLSession ssl, byte[] id) {
+        byte[] ses = sessionStore.get(id);
+
+        authStore.getStats().cacheLookup(ses != null);
+        return ses;
+    }
+}
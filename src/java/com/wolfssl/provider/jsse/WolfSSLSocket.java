@@ -30,11 +30,13 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
 
 import javax.net.ssl.HandshakeCompletedEvent;
 import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -51,6 +53,14 @@ import com.wolfssl.WolfSSLSession;
 /**
  * wolfSSL implementation of SSLSocket
  *
+ * This socket supports full-duplex use. One thread may block reading from
+ * the InputStream while another thread writes to the OutputStream of the
+ * same socket. Reads and writes are serialized with separate locks, and the
+ * native per-session lock is only held for the duration of each
+ * wolfSSL_read() or wolfSSL_write() call, not while waiting for the
+ * underlying socket to become ready. Multiple threads reading (or multiple
+ * threads writing) at the same time are still serialized.
+ *
  * @author wolfSSL
  */
 public class WolfSSLSocket extends SSLSocket {
@@ -77,15 +87,24 @@ public class WolfSSLSocket extends SSLSocket {
 
     protected volatile boolean handshakeInitCalled = false;
     protected volatile boolean handshakeComplete = false;
+    /* initHandshake() called by sendEarlyData() or readEarlyData(),
+     * protected by ioLock */
+    private boolean earlyDataInitCalled = false;
+    /* last handshake attempt hit SO_TIMEOUT, may be resumed */
+    protected volatile boolean handshakeTimedOut = false;
     protected volatile boolean connectionClosed = false;
 
     /* lock for handshakInitCalled and handshakeComplete */
     final private Object handshakeLock = new Object();
 
-    /* protect read/write/connect/accept from multiple threads simultaneously
-     * entering library */
+    /* protect connect/accept/shutdown from multiple threads simultaneously
+     * entering library. Application data read and write use the separate
+     * readLock and writeLock of the streams so they can run concurrently */
     final private Object ioLock = new Object();
 
+    /* lock for lazy creation of inStream and outStream */
+    final private Object streamLock = new Object();
+
     public WolfSSLSocket(com.wolfssl.WolfSSLContext context,
            WolfSSLAuthStore authStore, WolfSSLParameters params,
            boolean clientMode)
@@ -351,6 +370,7 @@ public class WolfSSLSocket extends SSLSocket {
             if (consumed != null) {
                 ConsumedRecvCallback recvCb = new ConsumedRecvCallback();
                 this.ssl.setIORecv(recvCb);
+                this.ssl.setIOBufferReuse(true);
                 ConsumedRecvCtx recvCtx = new ConsumedRecvCtx(s, consumed);
                 this.ssl.setIOReadCtx(recvCtx);
             }
@@ -623,7 +643,8 @@ public class WolfSSLSocket extends SSLSocket {
             "entered startHandshake()");
 
         synchronized (handshakeLock) {
-            if (handshakeInitCalled == true || handshakeComplete == true) {
+            if (handshakeComplete == true ||
+                (handshakeInitCalled == true && handshakeTimedOut == false)) {
                 /* handshake already started or finished */
                 return;
             }
@@ -633,17 +654,28 @@ public class WolfSSLSocket extends SSLSocket {
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                              "thread got ioLock (handshake)");
 
-            /* will throw SSLHandshakeException if session creation is
-               not allowed */
-            EngineHelper.initHandshake();
-            handshakeInitCalled = true;
+            if (handshakeInitCalled == false) {
+                /* will throw SSLHandshakeException if session creation is
+                   not allowed, already called if early data was used */
+                if (earlyDataInitCalled == false) {
+                    EngineHelper.initHandshake();
+                }
+                handshakeInitCalled = true;
+            }
 
-            ret = EngineHelper.doHandshake(0);
+            ret = EngineHelper.doHandshake(0, getSoTimeout());
 
             WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                              "thread exiting ioLock (handshake)");
         }
 
+        synchronized (handshakeLock) {
+            handshakeTimedOut = (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT);
+        }
+        if (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+            throw new SocketTimeoutException("Handshake timed out");
+        }
+
         if (ret != WolfSSL.SSL_SUCCESS) {
             int err = ssl.getError(ret);
             String errStr = WolfSSL.getErrorString(err);
@@ -656,6 +688,7 @@ public class WolfSSLSocket extends SSLSocket {
             /* mark handshake completed */
             handshakeComplete = true;
         }
+        EngineHelper.sessionEstablished();
 
         /* notify handshake completed listeners */
         if (ret == WolfSSL.SSL_SUCCESS && hsListeners != null) {
@@ -831,6 +864,135 @@ public class WolfSSLSocket extends SSLSocket {
         EngineHelper.setUseSessionTickets(useTickets);
     }
 
+    /**
+     * Sends data as TLS 1.3 early data (0-RTT), before the handshake has
+     * completed, client side only.
+     * <p>
+     * Early data is only sent when resuming a TLS 1.3 session, and avoids
+     * waiting one round trip for the handshake before the first request.
+     * Early data can be replayed by an attacker, so only requests that are
+     * safe to repeat should be sent this way. After the handshake has
+     * completed, {@link #isEarlyDataAccepted()} tells if the server
+     * accepted the data. If not, or if this method returned 0, the data
+     * must be sent again through the OutputStream.
+     *
+     * @param b buffer holding data to send
+     * @param off offset into b of first byte to send
+     * @param len number of bytes to send
+     * @return number of bytes sent as early data, 0 if none were sent
+     * @throws IOException if the handshake has already completed, this is
+     *         a server socket, or an error occurs sending the data
+     */
+    synchronized public int sendEarlyData(byte[] b, int off, int len)
+        throws IOException {
+
+        int ret;
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "entered sendEarlyData(len: " + len + ")");
+
+        if (b == null) {
+            throw new NullPointerException("Input array is null");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Bad offset or length");
+        }
+
+        synchronized (handshakeLock) {
+            if (handshakeComplete == true) {
+                throw new SSLException("Handshake has already completed");
+            }
+        }
+
+        synchronized (ioLock) {
+            if (earlyDataInitCalled == false) {
+                EngineHelper.initHandshake();
+                earlyDataInitCalled = true;
+            }
+
+            ret = EngineHelper.writeEarlyData(b, off, len, getSoTimeout());
+        }
+
+        if (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+            throw new SocketTimeoutException("Sending early data timed out");
+        }
+
+        return ret;
+    }
+
+    /**
+     * Checks if early data sent with {@link #sendEarlyData(byte[], int,
+     * int)} was accepted by the server. Starts the handshake if it has not
+     * completed yet.
+     *
+     * @return true if early data was accepted, false if none was sent or
+     *         the server rejected it
+     * @throws IOException if the handshake fails
+     */
+    public boolean isEarlyDataAccepted() throws IOException {
+
+        startHandshake();
+
+        synchronized (ioLock) {
+            return EngineHelper.isEarlyDataAccepted();
+        }
+    }
+
+    /**
+     * Reads TLS 1.3 early data (0-RTT) sent by the client, before the
+     * handshake has completed, server side only.
+     * <p>
+     * Call repeatedly until 0 is returned, then finish the handshake and
+     * read the remaining application data through the InputStream. Early
+     * data is only accepted if enabled with the
+     * <code>wolfjsse.earlyData.maxSize</code> Security property. It can
+     * be replayed by an attacker, so it should only be acted on for
+     * requests that are safe to repeat.
+     *
+     * @param b buffer to read early data into
+     * @param off offset into b of first byte to fill
+     * @param len maximum number of bytes to read
+     * @return number of bytes read, 0 if there is no more early data
+     * @throws IOException if the handshake has already completed, this is
+     *         a client socket, or an error occurs reading the data
+     */
+    synchronized public int readEarlyData(byte[] b, int off, int len)
+        throws IOException {
+
+        int ret;
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "entered readEarlyData(len: " + len + ")");
+
+        if (b == null) {
+            throw new NullPointerException("Input array is null");
+        }
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException("Bad offset or length");
+        }
+
+        synchronized (handshakeLock) {
+            if (handshakeComplete == true) {
+                return 0;
+            }
+        }
+
+        synchronized (ioLock) {
+            if (earlyDataInitCalled == false) {
+                EngineHelper.initHandshake();
+                earlyDataInitCalled = true;
+            }
+
+            ret = EngineHelper.readEarlyData(b, off, len, getSoTimeout());
+        }
+
+        if (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+            throw new SocketTimeoutException("Reading early data timed out");
+        }
+
+        return ret;
+    }
+
     /**
      * Return the InputStream associated with this SSLSocket.
      *
@@ -844,13 +1006,15 @@ public class WolfSSLSocket extends SSLSocket {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered getInputStream()");
 
-        if (inStream == null) {
-            inStream = new WolfSSLInputStream(ssl, this);
-            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
-                "created WolfSSLInputStream");
-        }
+        synchronized (streamLock) {
+            if (inStream == null) {
+                inStream = new WolfSSLInputStream(ssl, this);
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "created WolfSSLInputStream");
+            }
 
-        return inStream;
+            return inStream;
+        }
     }
 
     /**
@@ -866,13 +1030,15 @@ public class WolfSSLSocket extends SSLSocket {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered getOutputStream()");
 
-        if (outStream == null) {
-            outStream = new WolfSSLOutputStream(ssl, this);
-            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
-                "created WolfSSLOutputStream");
-        }
+        synchronized (streamLock) {
+            if (outStream == null) {
+                outStream = new WolfSSLOutputStream(ssl, this);
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "created WolfSSLOutputStream");
+            }
 
-        return outStream;
+            return outStream;
+        }
     }
 
     /**
@@ -890,6 +1056,46 @@ public class WolfSSLSocket extends SSLSocket {
         }
     }
 
+    /**
+     * Enables/disables SO_TIMEOUT with the specified timeout, in
+     * milliseconds.
+     *
+     * The timeout applies to reads and to the SSL/TLS handshake. When this
+     * socket is layered over an existing Socket, the timeout is set on the
+     * underlying Socket, since that is the connection native wolfSSL
+     * reads from.
+     *
+     * @param timeout timeout in milliseconds, 0 for an infinite timeout
+     *
+     * @throws SocketException if there is an error in the underlying
+     *         protocol
+     */
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException {
+        if (this.socket != null) {
+            this.socket.setSoTimeout(timeout);
+        } else {
+            super.setSoTimeout(timeout);
+        }
+    }
+
+    /**
+     * Returns the SO_TIMEOUT value of this socket, or of the underlying
+     * Socket if this socket is layered over an existing one.
+     *
+     * @return timeout in milliseconds, 0 means infinite timeout
+     *
+     * @throws SocketException if there is an error in the underlying
+     *         protocol
+     */
+    @Override
+    public int getSoTimeout() throws SocketException {
+        if (this.socket != null) {
+            return this.socket.getSoTimeout();
+        }
+        return super.getSoTimeout();
+    }
+
     /**
      * Closes this SSLSocket.
      *
@@ -1110,12 +1316,19 @@ public class WolfSSLSocket extends SSLSocket {
         }
     }
 
+    /**
+     * InputStream of a WolfSSLSocket. Reads hold only readLock, so they do
+     * not block writes made at the same time through WolfSSLOutputStream.
+     */
     static class WolfSSLInputStream extends InputStream {
 
         private WolfSSLSession ssl;
         private WolfSSLSocket  socket;
         final private Object readLock = new Object();
 
+        /* reused by read(), protected by readLock */
+        final private byte[] single = new byte[1];
+
         public WolfSSLInputStream(WolfSSLSession ssl, WolfSSLSocket socket) {
             this.ssl = ssl;
             this.socket = socket; /* parent socket */
@@ -1125,19 +1338,25 @@ public class WolfSSLSocket extends SSLSocket {
         public int read() throws IOException {
 
             int ret = 0;
-            byte[] data = new byte[1];
 
-            try {
-                ret = this.read(data, 0, 1);
+            synchronized (readLock) {
+                try {
+                    ret = this.read(single, 0, 1);
 
-            } catch (NullPointerException ne) {
-                throw new IOException(ne);
+                } catch (NullPointerException ne) {
+                    throw new IOException(ne);
 
-            } catch (IndexOutOfBoundsException ioe) {
-                throw new IndexOutOfBoundsException(ioe.toString());
-            }
+                } catch (IndexOutOfBoundsException ioe) {
+                    throw new IndexOutOfBoundsException(ioe.toString());
+                }
+
+                if (ret <= 0) {
+                    /* end of stream */
+                    return -1;
+                }
 
-            return (data[0] & 0xFF);
+                return (single[0] & 0xFF);
+            }
         }
 
         public int read(byte[] b) throws NullPointerException, IOException {
@@ -1149,7 +1368,6 @@ public class WolfSSLSocket extends SSLSocket {
             throws NullPointerException, IndexOutOfBoundsException, IOException {
 
             int ret = 0;
-            byte[] data = null;
 
             if (b == null) {
                 throw new NullPointerException("Input array is null");
@@ -1163,9 +1381,15 @@ public class WolfSSLSocket extends SSLSocket {
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                                  "thread got readLock");
 
-                /* do handshake if not completed yet, handles synchronization */
+                /* do handshake if not completed yet, handles synchronization.
+                 * If the other stream is already handshaking this waits for
+                 * it, then fails here if that attempt did not succeed */
                 if (socket.handshakeComplete == false) {
                     socket.startHandshake();
+                    if (socket.handshakeComplete == false) {
+                        throw new SSLHandshakeException(
+                            "Handshake did not complete");
+                    }
                 }
 
                 /* check if connection has already been closed/shutdown */
@@ -1183,17 +1407,14 @@ public class WolfSSLSocket extends SSLSocket {
                     throw new IndexOutOfBoundsException("Array index out of bounds");
                 }
 
-                if (off != 0) {
-                    /* create new tmp buffer to read data into */
-                    data = new byte[len];
-                } else {
-                    data = b;
-                }
-
                 try {
                     int err;
 
-                    ret = ssl.read(data, len);
+                    /* read directly into caller array at offset */
+                    ret = ssl.read(b, off, len, socket.getSoTimeout());
+                    if (ret == WolfSSL.WOLFJNI_IO_EVENT_TIMEOUT) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
                     err = ssl.getError(ret);
 
                     WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
@@ -1226,11 +1447,6 @@ public class WolfSSLSocket extends SSLSocket {
                     throw new IOException(e);
                 }
 
-                if (off != 0) {
-                    /* copy data into original array at offset */
-                    System.arraycopy(data, 0, b, off, ret);
-                }
-
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                                  "thread exiting readLock");
 
@@ -1240,22 +1456,29 @@ public class WolfSSLSocket extends SSLSocket {
         }
     } /* end WolfSSLInputStream inner class */
 
+    /**
+     * OutputStream of a WolfSSLSocket. Writes hold only writeLock, so they
+     * do not block reads made at the same time through WolfSSLInputStream.
+     */
     static class WolfSSLOutputStream extends OutputStream {
 
         private WolfSSLSession ssl;
         private WolfSSLSocket  socket;
         final private Object writeLock = new Object();
 
+        /* reused by write(int), protected by writeLock */
+        final private byte[] single = new byte[1];
+
         public WolfSSLOutputStream(WolfSSLSession ssl, WolfSSLSocket socket) {
             this.ssl = ssl;
             this.socket = socket; /* parent socket */
         }
 
         public void write(int b) throws IOException {
-            byte[] data = new byte[1];
-            data[0] = (byte)(b & 0xFF);
-
-            this.write(data, 0, 1);
+            synchronized (writeLock) {
+                single[0] = (byte)(b & 0xFF);
+                this.write(single, 0, 1);
+            }
         }
 
         public void write(byte[] b) throws IOException {
@@ -1265,7 +1488,6 @@ public class WolfSSLSocket extends SSLSocket {
         public void write(byte[] b, int off, int len) throws IOException {
 
             int ret;
-            byte[] data = null;
 
             if (b == null) {
                 throw new NullPointerException("Input array is null");
@@ -1279,9 +1501,15 @@ public class WolfSSLSocket extends SSLSocket {
                 WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
                                  "thread got writeLock");
 
-                /* do handshake if not completed yet, handles synchronization */
+                /* do handshake if not completed yet, handles synchronization.
+                 * If the other stream is already handshaking this waits for
+                 * it, then fails here if that attempt did not succeed */
                 if (socket.handshakeComplete == false) {
                     socket.startHandshake();
+                    if (socket.handshakeComplete == false) {
+                        throw new SSLHandshakeException(
+                            "Handshake did not complete");
+                    }
                 }
 
                 /* check if connection has already been closed/shutdown */
@@ -1291,21 +1519,15 @@ public class WolfSSLSocket extends SSLSocket {
                     }
                 }
 
-                if (off < 0 || len < 0 || (off + len) > b.length) {
+                if (off < 0 || len < 0 || len > (b.length - off)) {
                     throw new IndexOutOfBoundsException("Array index out of bounds");
                 }
 
-                if (off != 0) {
-                    data = new byte[len];
-                    System.arraycopy(b, off, data, 0, len);
-                } else {
-                    data = b;
-                }
-
                 try {
                     int err;
 
-                    ret = ssl.write(data, len);
+                    /* write directly from caller array at offset */
+                    ret = ssl.write(b, off, len);
                     err = ssl.getError(ret);
 
                     WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
@@ -59,16 +59,6 @@ public class WolfSSLSocketFactory extends SSLSocketFactory {
         this.params = jsseCtx.getInternalSSLParams();
     }
 
-    /* This constructor is used when the JSSE call
-     * SSLSocketFactory.getDefault() */
-    public WolfSSLSocketFactory() {
-        super();
-        com.wolfssl.provider.jsse.WolfSSLContext.DEFAULT_Context jsseCtx =
-            new com.wolfssl.provider.jsse.WolfSSLContext.DEFAULT_Context();
-        this.authStore = jsseCtx.getInternalAuthStore();
-        this.params = jsseCtx.getInternalSSLParams();
-    }
-
     public WolfSSLSocketFactory(com.wolfssl.WolfSSLContext ctx,
             WolfSSLAuthStore authStore, WolfSSLParameters params) {
 
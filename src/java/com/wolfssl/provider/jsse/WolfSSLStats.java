@@ -0,0 +1,361 @@
+/* WolfSSLStats.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Handshake and session cache counters, exposed through JMX.
+ *
+ * Each WolfSSLAuthStore (one per SSLContext) holds its own instance, which
+ * also updates the provider wide instance GLOBAL. Counters are updated
+ * with atomic operations only, so recording never blocks handshakes.
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLStats implements WolfSSLStatsMBean {
+
+    static final String DOMAIN = "com.wolfssl.provider.jsse";
+
+    /* handshake latency bucket upper bounds, milliseconds */
+    private static final long[] BUCKETS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, Long.MAX_VALUE
+    };
+
+    /** Counters covering all SSLContexts */
+    static final WolfSSLStats GLOBAL = new WolfSSLStats(null);
+
+    private static final AtomicInteger contextCount = new AtomicInteger(0);
+
+    /* GLOBAL registration attempted, done on first use so loading the
+     * provider does not start the platform MBean server */
+    private static final AtomicBoolean globalRegistered =
+        new AtomicBoolean(false);
+
+    /* per-SSLContext MBeans, unregistered once their owner is collected */
+    private static final List<Registration> registered =
+        new ArrayList<Registration>();
+
+    private static final class Registration {
+        final WeakReference<Object> owner;
+        final ObjectName name;
+
+        Registration(Object owner, ObjectName name) {
+            this.owner = new WeakReference<Object>(owner);
+            this.name = name;
+        }
+    }
+
+    private final WolfSSLStats parent;
+    private final AtomicLong fullHandshakes = new AtomicLong(0);
+    private final AtomicLong resumedHandshakes = new AtomicLong(0);
+    private final AtomicLong ticketResumptions = new AtomicLong(0);
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
+    private final AtomicLong cacheEvictions = new AtomicLong(0);
+    private final AtomicLong chainHits = new AtomicLong(0);
+    private final AtomicLong chainMisses = new AtomicLong(0);
+    private final AtomicLong ocspStapled = new AtomicLong(0);
+    private final AtomicLong latencyTotal = new AtomicLong(0); /* nanos */
+    private final AtomicLongArray latency =
+        new AtomicLongArray(BUCKETS.length);
+
+    /**
+     * Create new set of counters
+     *
+     * @param parent counters also updated on each update of this one, or
+     *        null
+     */
+    WolfSSLStats(WolfSSLStats parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Record a completed handshake
+     *
+     * @param resumed true if a session was resumed
+     * @param ticket true if resumed from a session ticket. Servers count
+     *        ticket resumptions in ticketAccepted() instead.
+     * @param nanos time from handshake start to completion
+     */
+    void handshakeCompleted(boolean resumed, boolean ticket, long nanos) {
+        long ms = nanos / 1000000;
+        int i = 0;
+
+        if (resumed) {
+            resumedHandshakes.incrementAndGet();
+            if (ticket) {
+                ticketResumptions.incrementAndGet();
+            }
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+
+        while (i < BUCKETS.length - 1 && ms >= BUCKETS[i]) {
+            i++;
+        }
+        latency.incrementAndGet(i);
+        latencyTotal.addAndGet(nanos);
+
+        if (parent != null) {
+            parent.handshakeCompleted(resumed, ticket, nanos);
+        }
+    }
+
+    /**
+     * Record a session ticket accepted by a server
+     */
+    void ticketAccepted() {
+        ticketResumptions.incrementAndGet();
+        if (parent != null) {
+            parent.ticketAccepted();
+        }
+    }
+
+    /**
+     * Record a session cache lookup
+     *
+     * @param hit true if a session was found
+     */
+    void cacheLookup(boolean hit) {
+        if (hit) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+        }
+        if (parent != null) {
+            parent.cacheLookup(hit);
+        }
+    }
+
+    /**
+     * Record a session evicted from a session cache
+     */
+    void cacheEviction() {
+        cacheEvictions.incrementAndGet();
+        if (parent != null) {
+            parent.cacheEviction();
+        }
+    }
+
+    /**
+     * Record a verified chain cache lookup
+     *
+     * @param hit true if the chain was found
+     */
+    void verifiedChainLookup(boolean hit) {
+        if (hit) {
+            chainHits.incrementAndGet();
+        } else {
+            chainMisses.incrementAndGet();
+        }
+        if (parent != null) {
+            parent.verifiedChainLookup(hit);
+        }
+    }
+
+    /**
+     * Record an OCSP response handed to native wolfSSL to staple to a
+     * server handshake
+     */
+    void ocspResponseStapled() {
+        ocspStapled.incrementAndGet();
+        if (parent != null) {
+            parent.ocspResponseStapled();
+        }
+    }
+
+    @Override
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    @Override
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    @Override
+    public long getTicketResumptions() {
+        return ticketResumptions.get();
+    }
+
+    @Override
+    public long getIdResumptions() {
+        return Math.max(0, resumedHandshakes.get() - ticketResumptions.get());
+    }
+
+    @Override
+    public double getResumptionRate() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+
+        return (total == 0) ? 0 : (double)resumed / total;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    @Override
+    public long getVerifiedChainCacheHits() {
+        return chainHits.get();
+    }
+
+    @Override
+    public long getVerifiedChainCacheMisses() {
+        return chainMisses.get();
+    }
+
+    @Override
+    public long[] getHandshakeLatencyBucketsMillis() {
+        return BUCKETS.clone();
+    }
+
+    @Override
+    public long[] getHandshakeLatencyHistogram() {
+        long[] out = new long[BUCKETS.length];
+
+        for (int i = 0; i < out.length; i++) {
+            out[i] = latency.get(i);
+        }
+        return out;
+    }
+
+    @Override
+    public double getHandshakeLatencyMeanMillis() {
+        long count = 0;
+
+        for (int i = 0; i < BUCKETS.length; i++) {
+            count += latency.get(i);
+        }
+        return (count == 0) ? 0 : latencyTotal.get() / 1000000.0 / count;
+    }
+
+    @Override
+    public long getOCSPResponsesStapled() {
+        return ocspStapled.get();
+    }
+
+    @Override
+    public void reset() {
+        fullHandshakes.set(0);
+        resumedHandshakes.set(0);
+        ticketResumptions.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        cacheEvictions.set(0);
+        chainHits.set(0);
+        chainMisses.set(0);
+        ocspStapled.set(0);
+        latencyTotal.set(0);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            latency.set(i, 0);
+        }
+    }
+
+    /**
+     * Register GLOBAL with the platform MBean server, once. Called on first
+     * SSLContext creation or first use of GLOBAL outside one. Failures, such
+     * as JMX not being available on the platform, are logged and ignored.
+     */
+    static void registerGlobal() {
+        if (!globalRegistered.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=Stats,name=all");
+
+            if (!mbs.isRegistered(name)) {
+                mbs.registerMBean(
+                    new StandardMBean(GLOBAL, WolfSSLStatsMBean.class), name);
+            }
+        } catch (JMException | SecurityException | LinkageError e) {
+            WolfSSLDebug.log(WolfSSLStats.class, WolfSSLDebug.INFO,
+                "unable to register stats MBean: " + e);
+        }
+    }
+
+    /**
+     * Register per-SSLContext counters with the platform MBean server, and
+     * unregister those of SSLContexts that have been garbage collected.
+     *
+     * @param owner object whose lifetime the registration follows
+     * @param protocol SSLContext protocol, used in the MBean name
+     */
+    void register(Object owner, String protocol) {
+        registerGlobal();
+
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN +
+                ":type=Stats,name=SSLContext-" +
+                contextCount.incrementAndGet() + ",protocol=" +
+                ObjectName.quote(protocol));
+
+            synchronized (registered) {
+                Iterator<Registration> it = registered.iterator();
+                while (it.hasNext()) {
+                    Registration r = it.next();
+                    if (r.owner.get() == null) {
+                        it.remove();
+                        if (mbs.isRegistered(r.name)) {
+                            mbs.unregisterMBean(r.name);
+                        }
+                    }
+                }
+
+                mbs.registerMBean(
+                    new StandardMBean(this, WolfSSLStatsMBean.class), name);
+                registered.add(new Registration(owner, name));
+            }
+        } catch (JMException | SecurityException | LinkageError e) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "unable to register stats MBean: " + e);
+        }
+    }
+}
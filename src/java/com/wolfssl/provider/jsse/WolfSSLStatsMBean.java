@@ -0,0 +1,127 @@
+/* WolfSSLStatsMBean.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+/**
+ * JMX management interface for wolfJSSE handshake and session cache
+ * statistics.
+ *
+ * One instance, named "com.wolfssl.provider.jsse:type=Stats,name=all",
+ * covers all SSLContexts. Each initialized SSLContext also registers its
+ * own instance, named "com.wolfssl.provider.jsse:type=Stats,name=
+ * SSLContext-N,protocol=P", which is unregistered some time after the
+ * SSLContext has been garbage collected.
+ *
+ * @author wolfSSL
+ */
+public interface WolfSSLStatsMBean {
+
+    /**
+     * @return number of completed handshakes that were not resumed
+     */
+    public long getFullHandshakes();
+
+    /**
+     * @return number of completed handshakes that resumed a session
+     */
+    public long getResumedHandshakes();
+
+    /**
+     * @return number of sessions resumed from a session ticket, counted
+     *         by a server when it accepts a ticket and by a client when a
+     *         resumed session holds one. TLS 1.3 resumption always uses
+     *         tickets.
+     */
+    public long getTicketResumptions();
+
+    /**
+     * @return number of resumed handshakes not counted as ticket
+     *         resumptions, resumed from a session ID
+     */
+    public long getIdResumptions();
+
+    /**
+     * @return resumed handshakes as a fraction of all completed
+     *         handshakes, 0 if none completed
+     */
+    public double getResumptionRate();
+
+    /**
+     * @return number of client session cache and shared session store
+     *         lookups that found a session
+     */
+    public long getCacheHits();
+
+    /**
+     * @return number of client session cache and shared session store
+     *         lookups that found no session
+     */
+    public long getCacheMisses();
+
+    /**
+     * @return number of sessions evicted from session caches to stay
+     *         within their size limit
+     */
+    public long getCacheEvictions();
+
+    /**
+     * @return number of peer certificate chains found in the verified
+     *         chain cache, skipping verification
+     */
+    public long getVerifiedChainCacheHits();
+
+    /**
+     * @return number of peer certificate chains not found in the verified
+     *         chain cache, while the cache is enabled
+     */
+    public long getVerifiedChainCacheMisses();
+
+    /**
+     * @return number of cached OCSP responses handed to native wolfSSL to
+     *         staple to server handshakes
+     */
+    public long getOCSPResponsesStapled();
+
+    /**
+     * @return upper bounds in milliseconds of the handshake latency
+     *         histogram buckets. The last bucket has no upper bound and is
+     *         reported as Long.MAX_VALUE.
+     */
+    public long[] getHandshakeLatencyBucketsMillis();
+
+    /**
+     * @return number of handshakes in each latency bucket, measured from
+     *         handshake start to completion
+     */
+    public long[] getHandshakeLatencyHistogram();
+
+    /**
+     * @return mean handshake latency in milliseconds, 0 if no handshake
+     *         completed
+     */
+    public double getHandshakeLatencyMeanMillis();
+
+    /**
+     * Reset all counters to zero
+     */
+    public void reset();
+}
@@ -0,0 +1,556 @@
+/* WolfSSLTicketKeyManager.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import com.wolfssl.WolfSSL;
+import com.wolfssl.WolfSSLJNIException;
+import com.wolfssl.WolfSSLSession;
+import com.wolfssl.WolfSSLSessionTicketCallback;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Encrypts and decrypts server side session tickets, with ticket keys that
+ * rotate periodically.
+ *
+ * Ticket keys are derived from a secret and the current key period, the
+ * time since epoch divided by the rotation interval. Servers configured
+ * with the same secret therefore use the same keys at the same time,
+ * without exchanging them, and can resume each other's sessions. When a
+ * key is rotated out, tickets encrypted with it are still accepted for the
+ * overlap window, and are replaced with a ticket under the current key.
+ * Tickets from the next period are also accepted, to allow for small
+ * clock differences between servers.
+ *
+ * Tickets are encrypted with AES-128-CTR and authenticated with
+ * HMAC-SHA256 over key name, IV and ciphertext.
+ *
+ * The instance used by wolfJSSE SSLContexts is configured with these
+ * Security properties:
+ *
+ * <pre>
+ * wolfjsse.sessionTicket.keyFile           file holding shared secret, at
+ *                                          least 32 bytes. If not set, a
+ *                                          random secret is used.
+ * wolfjsse.sessionTicket.rotationInterval  seconds each key is used to
+ *                                          encrypt tickets, default 3600
+ * wolfjsse.sessionTicket.keyOverlap        seconds a rotated key is still
+ *                                          accepted, default 86400
+ * </pre>
+ *
+ * TLS 1.3 early data (0-RTT) is accepted on resumptions from tickets
+ * issued by this manager only once enabled with setEarlyData(). Early
+ * data can be replayed by an attacker, so each TLS 1.3 ticket is then
+ * accepted at most once within the replay window. A ticket used again
+ * within the window is rejected, so the connection falls back to a full
+ * handshake, which refuses early data, and the client sends it again
+ * after the handshake. Native wolfSSL has already parsed the early data
+ * extension when the ticket is decrypted, so rejecting the ticket is the
+ * only way to refuse early data from here. TLS 1.2 tickets carry no early
+ * data and are not checked.
+ * Native wolfSSL rejects tickets whose age does not match the one claimed
+ * by the client, which bounds replays to a short time after the original
+ * connection, so the window needs to cover that time. The replay window
+ * only covers this JVM; servers sharing the ticket secret each keep their
+ * own. The default instance is configured with these Security
+ * properties:
+ *
+ * <pre>
+ * wolfjsse.earlyData.maxSize          maximum early data accepted, in
+ *                                     bytes, default 0 (disabled)
+ * wolfjsse.earlyData.replayWindow     seconds a used ticket is remembered,
+ *                                     default 10
+ * wolfjsse.earlyData.replayCacheSize  maximum tickets remembered, default
+ *                                     65536. TLS 1.3 tickets are rejected
+ *                                     while full.
+ * </pre>
+ *
+ * Server side tickets are disabled if the System property
+ * jdk.tls.server.enableSessionTicketExtension is "false".
+ *
+ * @author wolfSSL
+ */
+public final class WolfSSLTicketKeyManager
+    implements WolfSSLSessionTicketCallback {
+
+    static final String KEY_FILE_PROPERTY = "wolfjsse.sessionTicket.keyFile";
+    static final String ROTATION_PROPERTY =
+        "wolfjsse.sessionTicket.rotationInterval";
+    static final String OVERLAP_PROPERTY = "wolfjsse.sessionTicket.keyOverlap";
+
+    static final String EARLY_DATA_PROPERTY = "wolfjsse.earlyData.maxSize";
+    static final String REPLAY_WINDOW_PROPERTY =
+        "wolfjsse.earlyData.replayWindow";
+    static final String REPLAY_CACHE_PROPERTY =
+        "wolfjsse.earlyData.replayCacheSize";
+
+    static final long DEFAULT_ROTATION = 3600;
+    static final long DEFAULT_OVERLAP = 86400;
+    static final long DEFAULT_REPLAY_WINDOW = 10;
+    static final int DEFAULT_REPLAY_CACHE = 65536;
+
+    /** Minimum secret length, in bytes */
+    public static final int MIN_SECRET_SZ = 32;
+
+    private static final int AES_KEY_SZ = 16;
+    private static final byte[] NAME_LABEL = "wolfJSSE ticket name".getBytes();
+    private static final byte[] ENC_LABEL = "wolfJSSE ticket enc".getBytes();
+    private static final byte[] MAC_LABEL = "wolfJSSE ticket mac".getBytes();
+
+    private static WolfSSLTicketKeyManager defaultInstance = null;
+
+    private static final SecureRandom rand = new SecureRandom();
+    private static final ThreadLocal<Cipher> cipherCache =
+        new ThreadLocal<Cipher>();
+    private static final ThreadLocal<Mac> macCache = new ThreadLocal<Mac>();
+
+    private final byte[] secret;
+    private final long rotation;     /* milliseconds */
+    private final int overlapKeys;   /* previous periods still accepted */
+
+    /* derived keys by period, oldest first */
+    private final Map<Long, TicketKey> keys =
+        new LinkedHashMap<Long, TicketKey>();
+
+    /* early data settings, see setEarlyData() */
+    private volatile int maxEarlyData = 0;
+    private volatile long replayWindow = 0;   /* milliseconds */
+    private volatile int replayCacheSize = DEFAULT_REPLAY_CACHE;
+
+    /* MACs of tickets used within the replay window, mapped to the time
+     * they may be used again. Insertion order is expiry order. */
+    private final Map<ByteBuffer, Long> usedTickets =
+        new LinkedHashMap<ByteBuffer, Long>();
+
+    /* TLS 1.3 tickets rejected by the replay check */
+    private final AtomicLong earlyDataRefused = new AtomicLong(0);
+
+    private static final class TicketKey {
+        final long period;
+        final byte[] name;
+        final SecretKeySpec encKey;
+        final SecretKeySpec macKey;
+
+        TicketKey(long period, byte[] name, SecretKeySpec encKey,
+            SecretKeySpec macKey) {
+            this.period = period;
+            this.name = name;
+            this.encKey = encKey;
+            this.macKey = macKey;
+        }
+    }
+
+    /**
+     * Create new ticket key manager
+     *
+     * @param secret secret ticket keys are derived from, at least
+     *        MIN_SECRET_SZ bytes. Servers sharing tickets must use the
+     *        same secret, rotation interval and overlap.
+     * @param rotationSec seconds each key is used to encrypt tickets
+     * @param overlapSec seconds a key is still accepted after rotation
+     * @throws IllegalArgumentException if secret is too short, rotation is
+     *         not positive or overlap is negative
+     */
+    public WolfSSLTicketKeyManager(byte[] secret, long rotationSec,
+        long overlapSec) throws IllegalArgumentException {
+
+        if (secret == null || secret.length < MIN_SECRET_SZ) {
+            throw new IllegalArgumentException(
+                "secret must be at least " + MIN_SECRET_SZ + " bytes");
+        }
+        if (rotationSec <= 0 || overlapSec < 0) {
+            throw new IllegalArgumentException(
+                "rotation must be positive and overlap not negative");
+        }
+
+        this.secret = secret.clone();
+        this.rotation = rotationSec * 1000;
+        this.overlapKeys = (int)Math.min(1024,
+            (overlapSec + rotationSec - 1) / rotationSec);
+    }
+
+    /**
+     * Returns the ticket key manager used by wolfJSSE SSLContexts, created
+     * from Security properties on first use.
+     *
+     * @return default ticket key manager
+     */
+    public static synchronized WolfSSLTicketKeyManager getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = createDefault();
+        }
+        return defaultInstance;
+    }
+
+    private static long getLongProperty(String name, long def) {
+        String val = Security.getProperty(name);
+
+        if (val == null) {
+            return def;
+        }
+        try {
+            long ret = Long.parseLong(val.trim());
+            return (ret >= 0) ? ret : def;
+        } catch (NumberFormatException e) {
+            WolfSSLDebug.log(WolfSSLTicketKeyManager.class, WolfSSLDebug.INFO,
+                "invalid " + name + ", using default: " + val);
+            return def;
+        }
+    }
+
+    private static WolfSSLTicketKeyManager createDefault() {
+        String file = Security.getProperty(KEY_FILE_PROPERTY);
+        long rot = getLongProperty(ROTATION_PROPERTY, DEFAULT_ROTATION);
+        long overlap = getLongProperty(OVERLAP_PROPERTY, DEFAULT_OVERLAP);
+        byte[] sec = null;
+
+        if (rot == 0) {
+            rot = DEFAULT_ROTATION;
+        }
+
+        if (file != null && !file.trim().isEmpty()) {
+            try {
+                sec = Files.readAllBytes(Paths.get(file.trim()));
+                if (sec.length < MIN_SECRET_SZ) {
+                    WolfSSLDebug.log(WolfSSLTicketKeyManager.class,
+                        WolfSSLDebug.INFO, "ticket key file too short, " +
+                        "using random secret");
+                    sec = null;
+                }
+            } catch (IOException e) {
+                WolfSSLDebug.log(WolfSSLTicketKeyManager.class,
+                    WolfSSLDebug.INFO, "unable to read ticket key file, " +
+                    "using random secret: " + e);
+            }
+        }
+
+        if (sec == null) {
+            sec = new byte[MIN_SECRET_SZ];
+            rand.nextBytes(sec);
+        }
+
+        WolfSSLTicketKeyManager mgr =
+            new WolfSSLTicketKeyManager(sec, rot, overlap);
+
+        long early = getLongProperty(EARLY_DATA_PROPERTY, 0);
+        if (early > 0) {
+            mgr.setEarlyData((int)Math.min(early, Integer.MAX_VALUE),
+                getLongProperty(REPLAY_WINDOW_PROPERTY, DEFAULT_REPLAY_WINDOW),
+                (int)Math.min(getLongProperty(REPLAY_CACHE_PROPERTY,
+                    DEFAULT_REPLAY_CACHE), Integer.MAX_VALUE));
+        }
+
+        return mgr;
+    }
+
+    /**
+     * Enables TLS 1.3 early data on servers using this ticket key manager.
+     *
+     * @param maxSize maximum early data accepted, in bytes, 0 to disable
+     * @param replayWindowSec seconds a used ticket is remembered and
+     *        rejected if used again. Must be positive if maxSize is.
+     * @param cacheSize maximum number of tickets remembered. While full,
+     *        tickets not already remembered are rejected.
+     * @throws IllegalArgumentException if an argument is negative, or
+     *         early data is enabled without a replay window or cache
+     */
+    public void setEarlyData(int maxSize, long replayWindowSec,
+        int cacheSize) throws IllegalArgumentException {
+
+        if (maxSize < 0 || replayWindowSec < 0 || cacheSize < 0) {
+            throw new IllegalArgumentException(
+                "early data settings must not be negative");
+        }
+        if (maxSize > 0 && (replayWindowSec == 0 || cacheSize == 0)) {
+            throw new IllegalArgumentException(
+                "early data requires a replay window and cache");
+        }
+
+        synchronized (usedTickets) {
+            this.maxEarlyData = maxSize;
+            this.replayWindow = (maxSize > 0) ? replayWindowSec * 1000 : 0;
+            this.replayCacheSize = cacheSize;
+            if (maxSize == 0) {
+                usedTickets.clear();
+            }
+        }
+    }
+
+    /**
+     * @return maximum early data accepted, in bytes, 0 if disabled
+     */
+    public int getMaxEarlyData() {
+        return this.maxEarlyData;
+    }
+
+    /**
+     * @return seconds a used ticket is rejected if used again, 0 if early
+     *         data is disabled and tickets may be used any number of times
+     */
+    public long getReplayWindow() {
+        return this.replayWindow / 1000;
+    }
+
+    /* Record use of ticket with given MAC. Returns false if the ticket was
+     * already used within the replay window, or if it can not be recorded
+     * because the cache is full. */
+    private boolean markTicketUsed(byte[] mac) {
+        long now = System.currentTimeMillis();
+        ByteBuffer key = ByteBuffer.wrap(mac.clone());
+
+        synchronized (usedTickets) {
+            long window = this.replayWindow;
+            if (window == 0) {
+                return true;
+            }
+
+            Iterator<Long> it = usedTickets.values().iterator();
+            while (it.hasNext() && it.next() <= now) {
+                it.remove();
+            }
+
+            if (usedTickets.containsKey(key) ||
+                usedTickets.size() >= this.replayCacheSize) {
+                return false;
+            }
+            usedTickets.put(key, now + window);
+            return true;
+        }
+    }
+
+    /**
+     * @return number of TLS 1.3 tickets rejected, refusing their early
+     *         data, because the ticket was used before within the replay
+     *         window, or the replay cache was full
+     */
+    public long getEarlyDataRefused() {
+        return this.earlyDataRefused.get();
+    }
+
+    /* Called for a ticket with valid MAC. Native wolfSSL does not tell
+     * the ticket callback whether the ClientHello carries early data, so
+     * every TLS 1.3 ticket is recorded. Returns false if the ticket was
+     * used again within the window, or can not be recorded, and must be
+     * rejected. */
+    private boolean checkEarlyDataReplay(WolfSSLSession ssl, byte[] mac) {
+        if (this.replayWindow == 0) {
+            return true;
+        }
+
+        try {
+            if (ssl != null && !"TLSv1.3".equals(ssl.getVersion())) {
+                return true;
+            }
+        } catch (IllegalStateException | WolfSSLJNIException e) {
+            /* version unknown, check as TLS 1.3 */
+        }
+
+        if (!markTicketUsed(mac)) {
+            this.earlyDataRefused.incrementAndGet();
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "session ticket used within replay window or replay " +
+                "cache full, rejecting ticket");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return ticket lifetime in seconds, how long a ticket issued now is
+     *         accepted at least
+     */
+    public long getTicketLifetime() {
+        return (this.rotation / 1000) * (this.overlapKeys + 1);
+    }
+
+    private static Cipher getCipher() throws GeneralSecurityException {
+        Cipher c = cipherCache.get();
+        if (c == null) {
+            c = Cipher.getInstance("AES/CTR/NoPadding");
+            cipherCache.set(c);
+        }
+        return c;
+    }
+
+    private static Mac getMac() throws GeneralSecurityException {
+        Mac m = macCache.get();
+        if (m == null) {
+            m = Mac.getInstance("HmacSHA256");
+            macCache.set(m);
+        }
+        return m;
+    }
+
+    private byte[] derive(byte[] label, long period)
+        throws GeneralSecurityException {
+
+        Mac m = getMac();
+        byte[] p = new byte[8];
+
+        for (int i = 0; i < 8; i++) {
+            p[i] = (byte)(period >>> (56 - 8 * i));
+        }
+        m.init(new SecretKeySpec(this.secret, "HmacSHA256"));
+        m.update(label);
+        m.update(p);
+        return m.doFinal();
+    }
+
+    /* get key for period, deriving it on first use, and drop keys no
+     * longer accepted */
+    private synchronized TicketKey getKey(long period, long current)
+        throws GeneralSecurityException {
+
+        TicketKey k = keys.get(period);
+
+        if (k == null) {
+            byte[] name = Arrays.copyOf(derive(NAME_LABEL, period),
+                WolfSSL.WOLFSSL_TICKET_NAME_SZ);
+            byte[] enc = Arrays.copyOf(derive(ENC_LABEL, period), AES_KEY_SZ);
+            byte[] mac = derive(MAC_LABEL, period);
+
+            k = new TicketKey(period, name, new SecretKeySpec(enc, "AES"),
+                new SecretKeySpec(mac, "HmacSHA256"));
+            keys.put(period, k);
+
+            Iterator<Long> it = keys.keySet().iterator();
+            while (it.hasNext()) {
+                long p = it.next();
+                if (p < current - overlapKeys || p > current + 1) {
+                    it.remove();
+                }
+            }
+        }
+
+        return k;
+    }
+
+    /* find accepted key with matching name, or null */
+    private TicketKey findKey(byte[] name, long current)
+        throws GeneralSecurityException {
+
+        for (long p = current + 1; p >= current - overlapKeys; p--) {
+            TicketKey k = getKey(p, current);
+            if (MessageDigest.isEqual(k.name, name)) {
+                return k;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] computeMac(TicketKey k, byte[] iv, byte[] ticket,
+        int len) throws GeneralSecurityException {
+
+        Mac m = getMac();
+        m.init(k.macKey);
+        m.update(k.name);
+        m.update(iv);
+        m.update(ticket, 0, len);
+        return m.doFinal();
+    }
+
+    /**
+     * Session ticket callback, registered with native wolfSSL by
+     * wolfJSSE SSLContexts.
+     */
+    @Override
+    public int sessionTicketCallback(WolfSSLSession ssl, byte[] keyName,
+            byte[] iv, byte[] mac, int enc, byte[] ticket, int inLen,
+            int[] outLen, Object ctx) {
+
+        long current = System.currentTimeMillis() / this.rotation;
+        TicketKey k;
+        Cipher c;
+
+        if (inLen < 0 || inLen > ticket.length ||
+            keyName.length != WolfSSL.WOLFSSL_TICKET_NAME_SZ ||
+            iv.length != WolfSSL.WOLFSSL_TICKET_IV_SZ ||
+            mac.length != WolfSSL.WOLFSSL_TICKET_MAC_SZ) {
+            return WolfSSL.WOLFSSL_TICKET_RET_FATAL;
+        }
+
+        try {
+            c = getCipher();
+
+            if (enc == 1) {
+                k = getKey(current, current);
+                rand.nextBytes(iv);
+                c.init(Cipher.ENCRYPT_MODE, k.encKey, new IvParameterSpec(iv));
+                c.doFinal(ticket, 0, inLen, ticket, 0);
+                System.arraycopy(k.name, 0, keyName, 0, k.name.length);
+                System.arraycopy(computeMac(k, iv, ticket, inLen), 0,
+                    mac, 0, WolfSSL.WOLFSSL_TICKET_MAC_SZ);
+                outLen[0] = inLen;
+                return WolfSSL.WOLFSSL_TICKET_RET_OK;
+            }
+
+            k = findKey(keyName, current);
+            if (k == null) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "session ticket key not found, rejecting ticket");
+                return WolfSSL.WOLFSSL_TICKET_RET_REJECT;
+            }
+            if (!MessageDigest.isEqual(mac,
+                    computeMac(k, iv, ticket, inLen))) {
+                WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                    "session ticket MAC mismatch, rejecting ticket");
+                return WolfSSL.WOLFSSL_TICKET_RET_REJECT;
+            }
+            if (!checkEarlyDataReplay(ssl, mac)) {
+                return WolfSSL.WOLFSSL_TICKET_RET_REJECT;
+            }
+
+            c.init(Cipher.DECRYPT_MODE, k.encKey, new IvParameterSpec(iv));
+            c.doFinal(ticket, 0, inLen, ticket, 0);
+            outLen[0] = inLen;
+
+            if (ctx instanceof WolfSSLStats) {
+                ((WolfSSLStats)ctx).ticketAccepted();
+            }
+
+            /* ticket under older key, have a new one sent */
+            return (k.period == current) ? WolfSSL.WOLFSSL_TICKET_RET_OK :
+                                           WolfSSL.WOLFSSL_TICKET_RET_CREATE;
+
+        } catch (GeneralSecurityException e) {
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "session ticket callback error: " + e);
+            return WolfSSL.WOLFSSL_TICKET_RET_FATAL;
+        }
+    }
+}
@@ -22,32 +22,101 @@
 package com.wolfssl.provider.jsse;
 
 import com.wolfssl.WolfSSL;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.net.ssl.X509TrustManager;
 
 import com.wolfssl.WolfSSLCertManager;
 import com.wolfssl.WolfSSLException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
-import java.util.HashSet;
 import java.util.Set;
+import javax.security.auth.x500.X500Principal;
 
 /**
  * wolfSSL implementation of X509TrustManager
  *
+ * Certificates are verified by a native WolfSSLCertManager holding the
+ * trusted CAs of the KeyStore. It is built on first use and shared by all
+ * threads verifying with this TrustManager. The KeyStore is checked for
+ * changes at most once per second, and the native CA set is rebuilt if
+ * any trusted certificate was added, removed or replaced.
+ *
+ * Intermediate CA certificates are never added to the shared CA set, as
+ * that would make them trust anchors for any later chain. Chains with
+ * intermediates are verified with a separate native CertManager holding
+ * the trusted CAs, CRLs and that chain's intermediates, which are each
+ * verified before being loaded. Peers may send intermediates out of order
+ * or with unrelated extra certs, so the intermediate path is built by
+ * matching the issuer of each cert to the subject of another cert of the
+ * chain, starting from the leaf. These contexts are cached by intermediate
+ * path, so later chains through the same intermediates only verify the
+ * leaf certificate, at the cost of one copy of the trusted CAs per cached
+ * path. All contexts are dropped when the CA set is rebuilt, once a cached
+ * intermediate expires, or once more than MAX_CHAIN_CONTEXTS are cached.
+ *
+ * If a CRL directory is configured, see WolfSSLCRLStore, its CRLs are
+ * loaded into the native CertManager after the trusted CAs, and the
+ * CertManager is rebuilt when the CRLs change.
+ *
+ * If enabled, chains that verified successfully are remembered in a
+ * WolfSSLVerifiedChainCache and accepted again without verification. The
+ * cache is cleared when the native CA set is rebuilt for a KeyStore or CRL
+ * change.
+ *
  * @author wolfSSL
  */
 public class WolfSSLTrustX509 implements X509TrustManager {
     private KeyStore store = null;
 
+    /* how often KeyStore is checked for changes, milliseconds */
+    private static final long CHECK_INTERVAL = 1000;
+
+    /* intermediate paths cached before CA set is rebuilt */
+    private static final int MAX_CHAIN_CONTEXTS = 64;
+
+    /* held for reading while cm is used, for writing to replace it */
+    private final ReentrantReadWriteLock cmLock =
+        new ReentrantReadWriteLock();
+    private final Object rebuildLock = new Object();
+
+    /* native CA set and DER of certs loaded into it, replaced together
+     * under cmLock write lock */
+    private volatile WolfSSLCertManager cm = null;
+    private volatile Set<ByteBuffer> loaded = null;
+    private volatile List<byte[]> loadedDer = null;
+
+    /* trusted certs cm was built from, protected by rebuildLock */
+    private List<X509Certificate> anchors = null;
+    private volatile long nextCheck = 0;
+
+    /* CertManagers holding trusted certs and an intermediate path, keyed
+     * by hash of the path, and earliest notAfter of cached intermediates
+     * in ms. Cleared under cmLock write lock. */
+    private final ConcurrentHashMap<ByteBuffer, WolfSSLCertManager>
+        chainContexts = new ConcurrentHashMap<ByteBuffer, WolfSSLCertManager>();
+    private final AtomicLong intermediateExpiry =
+        new AtomicLong(Long.MAX_VALUE);
+
+    /* CRLs checked by cm, store is null if disabled */
+    private final WolfSSLCRLStore crlStore = WolfSSLCRLStore.getInstance();
+    private volatile WolfSSLCRLStore.Snapshot crls = null;
+
+    /* chains verified before, null if disabled */
+    private final WolfSSLVerifiedChainCache chainCache =
+        WolfSSLVerifiedChainCache.create(WolfSSLStats.GLOBAL);
+
     public WolfSSLTrustX509(KeyStore in) {
         this.store = in;
 
@@ -55,49 +124,365 @@ public class WolfSSLTrustX509 implements X509TrustManager {
             "created new WolfSSLTrustX509");
     }
 
+    /* CA certificates in KeyStore, in alias order */
+    private List<X509Certificate> getTrustAnchors() throws KeyStoreException {
+
+        List<X509Certificate> CAs = new ArrayList<X509Certificate>();
+        /* Store the alias of all CAs */
+        Enumeration<String> aliases = store.aliases();
+        while (aliases.hasMoreElements()) {
+            final String name = aliases.nextElement();
+            X509Certificate cert = null;
+
+            if (store.isKeyEntry(name)) {
+                Certificate[] chain = store.getCertificateChain(name);
+                if (chain != null)
+                    cert = (X509Certificate) chain[0];
+            } else {
+                cert = (X509Certificate) store.getCertificate(name);
+            }
+
+            if (cert != null && cert.getBasicConstraints() >= 0) {
+                CAs.add(cert);
+            }
+        }
+
+        return CAs;
+    }
+
+    /* KeyStore returns the same certificate objects until changed */
+    private static boolean sameCerts(List<X509Certificate> a,
+        List<X509Certificate> b) {
+
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* true if CRLs loaded into cm are still current */
+    private boolean crlsCurrent() {
+        return (crlStore == null || crlStore.getSnapshot() == this.crls);
+    }
+
     /**
-     * Verify cert chain using WolfSSLCertManager, throw CertificateException
-     * on error/failure. Do all loading and verification in one function to
-     * avoid holding native resources at the object/class level. */
-    private void certManagerVerify(X509Certificate[] certs, String type)
-        throws CertificateException {
+     * Make sure cm holds the current trusted certs and CRLs, building it on
+     * first use and rebuilding it if the KeyStore or CRLs changed or cached
+     * intermediate paths have to be dropped.
+     */
+    private void ensureCertManager() throws CertificateException {
+        long now = System.currentTimeMillis();
 
-        int ret = WolfSSL.SSL_FAILURE;
-        WolfSSLCertManager cm = null;
+        if (this.cm != null && now < this.nextCheck &&
+            now < intermediateExpiry.get() &&
+            chainContexts.size() <= MAX_CHAIN_CONTEXTS && crlsCurrent()) {
+            return;
+        }
 
-        if (certs == null || certs.length == 0 || type.length() == 0) {
-            throw new CertificateException();
+        synchronized (rebuildLock) {
+            List<X509Certificate> current;
+
+            if (this.cm != null && now < this.nextCheck &&
+                now < intermediateExpiry.get() &&
+                chainContexts.size() <= MAX_CHAIN_CONTEXTS && crlsCurrent()) {
+                return;
+            }
+
+            try {
+                current = getTrustAnchors();
+            } catch (KeyStoreException e) {
+                throw new CertificateException(
+                    "Failed to read trusted certs from KeyStore", e);
+            }
+
+            if (this.cm == null || !sameCerts(current, this.anchors) ||
+                now >= intermediateExpiry.get() ||
+                chainContexts.size() > MAX_CHAIN_CONTEXTS || !crlsCurrent()) {
+                rebuildCertManager(current);
+            }
+            this.nextCheck = now + CHECK_INTERVAL;
         }
+    }
+
+    /* Create native CertManager holding trusted certs and CRLs. DER of
+     * certs loaded is added to loadedOut if not null. */
+    private WolfSSLCertManager newCertManager(List<byte[]> CAs,
+        WolfSSLCRLStore.Snapshot snap, Set<ByteBuffer> loadedOut)
+        throws CertificateException {
+
+        WolfSSLCertManager newCm;
+        int count = 0;
 
-        /* create new WolfSSLCertManager */
         try {
-            cm = new WolfSSLCertManager();
+            newCm = new WolfSSLCertManager();
         } catch (WolfSSLException e) {
             throw new CertificateException(
                 "Failed to create native WolfSSLCertManager");
         }
 
-        /* load trusted certs from KeyStore */
-        try {
-            ret = cm.CertManagerLoadCAKeyStore(this.store);
-        } catch (WolfSSLException e) {
-            cm.free();
+        for (byte[] der : CAs) {
+            if (newCm.CertManagerLoadCABuffer(der, der.length,
+                    WolfSSL.SSL_FILETYPE_ASN1) == WolfSSL.SSL_SUCCESS) {
+                if (loadedOut != null) {
+                    loadedOut.add(ByteBuffer.wrap(der));
+                }
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            newCm.free();
             throw new CertificateException(
                 "Failed to load trusted certs into WolfSSLCertManager");
         }
 
-        /* verify chain */
+        /* CRLs are verified against the CAs, load them after */
+        if (snap != null) {
+            int crlCount = WolfSSLCRLStore.load(newCm, snap);
+            WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+                "loaded " + crlCount + " of " + snap.size() + " CRLs into " +
+                "native WolfSSLCertManager");
+        }
+
+        return newCm;
+    }
+
+    /* Build new native CA set from trusted certs and CRLs and swap it in,
+     * freeing the old one and cached intermediate paths once no thread is
+     * using them. Called with rebuildLock held. */
+    private void rebuildCertManager(List<X509Certificate> CAs)
+        throws CertificateException {
+
+        WolfSSLCertManager newCm;
+        WolfSSLCertManager oldCm;
+        WolfSSLCRLStore.Snapshot newCrls = null;
+        Set<ByteBuffer> newLoaded = new HashSet<ByteBuffer>();
+        List<byte[]> der = new ArrayList<byte[]>(CAs.size());
+
+        WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
+            "loading " + CAs.size() + " trusted certs into native " +
+            "WolfSSLCertManager");
+
+        try {
+            for (X509Certificate ca : CAs) {
+                der.add(ca.getEncoded());
+            }
+        } catch (CertificateEncodingException e) {
+            throw new CertificateException(
+                "Failed to load trusted certs into WolfSSLCertManager", e);
+        }
+
+        if (crlStore != null) {
+            newCrls = crlStore.getSnapshot();
+        }
+        newCm = newCertManager(der, newCrls, newLoaded);
+
+        /* trusted certs changed, drop chains verified with old ones */
+        if (this.cm != null) {
+            WolfSSLVerifiedChainCache.invalidateAll();
+        }
+
+        cmLock.writeLock().lock();
+        try {
+            oldCm = this.cm;
+            this.cm = newCm;
+            this.loaded = newLoaded;
+            this.loadedDer = der;
+            this.anchors = CAs;
+            this.crls = newCrls;
+            for (WolfSSLCertManager chainCm : chainContexts.values()) {
+                chainCm.free();
+            }
+            chainContexts.clear();
+            intermediateExpiry.set(Long.MAX_VALUE);
+            if (oldCm != null) {
+                oldCm.free();
+            }
+        } finally {
+            cmLock.writeLock().unlock();
+        }
+    }
+
+    /* Verify intermediate CA against CertManager, and add it so certs
+     * it issued can be verified */
+    private static void addIntermediate(WolfSSLCertManager chainCm,
+        X509Certificate cert, byte[] der) throws CertificateException {
+
+        int ret;
+
+        if (cert.getBasicConstraints() < 0) {
+            throw new CertificateException(
+                "Intermediate certificate is not a CA");
+        }
+
+        ret = chainCm.CertManagerVerifyBuffer(der, der.length,
+                WolfSSL.SSL_FILETYPE_ASN1);
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            throw new CertificateException(
+                "Failed to verify intermediate certificate, ret = " + ret);
+        }
+
+        ret = chainCm.CertManagerLoadCABuffer(der, der.length,
+                WolfSSL.SSL_FILETYPE_ASN1);
+        if (ret != WolfSSL.SSL_SUCCESS) {
+            throw new CertificateException(
+                "Failed to load intermediate certificate, ret = " + ret);
+        }
+    }
+
+    /* Indices of intermediates of chain, ordered from issuer of leaf
+     * towards a trusted cert. Each next cert is the one whose subject is
+     * the issuer of the current cert, wherever it is in the chain. Ends
+     * before the first trusted cert, at a self-signed cert, or once no
+     * issuer is found in the chain. Unused certs are ignored. */
+    static int[] intermediatePath(X509Certificate[] certs, byte[][] encoded,
+        Set<ByteBuffer> trusted) {
+
+        int[] path = new int[certs.length - 1];
+        boolean[] used = new boolean[certs.length];
+        int len = 0;
+        int cur = 0;
+
+        used[0] = true;
+        while (len < path.length) {
+            X500Principal issuer = certs[cur].getIssuerX500Principal();
+            int next = -1;
+
+            if (issuer.equals(certs[cur].getSubjectX500Principal())) {
+                break;
+            }
+            for (int i = 1; i < certs.length; i++) {
+                if (!used[i] &&
+                    issuer.equals(certs[i].getSubjectX500Principal())) {
+                    next = i;
+                    break;
+                }
+            }
+            if (next < 0 ||
+                trusted.contains(ByteBuffer.wrap(encoded[next]))) {
+                break;
+            }
+
+            used[next] = true;
+            path[len++] = next;
+            cur = next;
+        }
+
+        return Arrays.copyOf(path, len);
+    }
+
+    /* Get CertManager to verify leaf of chain with. Chains without
+     * intermediates below a trusted cert use the shared CA set, others a
+     * CertManager private to their intermediate path, created and cached
+     * on first use. Called with cmLock read lock held. */
+    private WolfSSLCertManager chainCertManager(X509Certificate[] certs,
+        byte[][] encoded) throws CertificateException {
+
+        WolfSSLCertManager chainCm;
+        WolfSSLCertManager prev;
+        ByteBuffer key;
+        long expiry = Long.MAX_VALUE;
+        long cur;
+        int[] path;
+        byte[][] pathDer;
+
+        path = intermediatePath(certs, encoded, this.loaded);
+        if (path.length == 0) {
+            return this.cm;
+        }
+        pathDer = new byte[path.length][];
+        for (int i = 0; i < path.length; i++) {
+            pathDer[i] = encoded[path[i]];
+        }
+
+        key = ByteBuffer.wrap(WolfSSLVerifiedChainCache.key(pathDer, false,
+            null));
+        chainCm = chainContexts.get(key);
+        if (chainCm != null) {
+            return chainCm;
+        }
+
+        chainCm = newCertManager(this.loadedDer, this.crls, null);
+        try {
+            /* starting from the one closest to a trusted CA */
+            for (int i = path.length - 1; i >= 0; i--) {
+                X509Certificate cert = certs[path[i]];
+                addIntermediate(chainCm, cert, pathDer[i]);
+                expiry = Math.min(expiry, cert.getNotAfter().getTime());
+            }
+        } catch (CertificateException e) {
+            chainCm.free();
+            throw e;
+        }
+
+        prev = chainContexts.putIfAbsent(key, chainCm);
+        if (prev != null) {
+            chainCm.free();
+            return prev;
+        }
+
+        do {
+            cur = intermediateExpiry.get();
+        } while (expiry < cur &&
+                 !intermediateExpiry.compareAndSet(cur, expiry));
+
+        return chainCm;
+    }
+
+    /**
+     * Verify cert chain using shared WolfSSLCertManager, throw
+     * CertificateException on error/failure. Chain is expected in peer
+     * order, leaf first. */
+    private void certManagerVerify(X509Certificate[] certs, String type,
+        boolean server) throws CertificateException {
+
+        int ret = WolfSSL.SSL_FAILURE;
+        byte[][] encoded;
+        byte[] cacheKey = null;
+        long cacheGen = 0;
+        long notAfter = Long.MAX_VALUE;
+
+        if (certs == null || certs.length == 0 || type.length() == 0) {
+            throw new CertificateException();
+        }
+
+        ensureCertManager();
+
+        encoded = new byte[certs.length][];
         for (int i = 0; i < certs.length; i++) {
-            byte[] encoded = certs[i].getEncoded();
-            ret = cm.CertManagerLoadCABuffer(encoded, encoded.length,
-                    WolfSSL.SSL_FILETYPE_ASN1);
+            encoded[i] = certs[i].getEncoded();
+            notAfter = Math.min(notAfter, certs[i].getNotAfter().getTime());
+        }
+
+        if (chainCache != null) {
+            cacheKey = WolfSSLVerifiedChainCache.key(encoded, server, type);
+            if (chainCache.contains(cacheKey)) {
+                return;
+            }
+            cacheGen = WolfSSLVerifiedChainCache.currentGeneration();
+        }
+
+        cmLock.readLock().lock();
+        try {
+            ret = chainCertManager(certs, encoded).CertManagerVerifyBuffer(
+                    encoded[0],
+                    encoded[0].length, WolfSSL.SSL_FILETYPE_ASN1);
             if (ret != WolfSSL.SSL_SUCCESS) {
-                cm.free();
-                throw new CertificateException();
+                throw new CertificateException(
+                    "Failed to verify certificate, ret = " + ret);
             }
+        } finally {
+            cmLock.readLock().unlock();
         }
 
-        cm.free();
+        if (cacheKey != null) {
+            chainCache.put(cacheKey, notAfter, cacheGen);
+        }
     }
 
     @Override
@@ -107,7 +492,7 @@ public class WolfSSLTrustX509 implements X509TrustManager {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered checkClientTrusted()");
 
-        certManagerVerify(certs, type);
+        certManagerVerify(certs, type, false);
     }
 
     @Override
@@ -117,7 +502,7 @@ public class WolfSSLTrustX509 implements X509TrustManager {
         WolfSSLDebug.log(getClass(), WolfSSLDebug.INFO,
             "entered checkServerTrusted()");
 
-        certManagerVerify(certs, type);
+        certManagerVerify(certs, type, true);
     }
 
     @Override
@@ -127,25 +512,7 @@ public class WolfSSLTrustX509 implements X509TrustManager {
             "entered getAcceptedIssuers()");
 
         try {
-            List<X509Certificate> CAs = new ArrayList<X509Certificate>();
-            /* Store the alias of all CAs */
-            Enumeration<String> aliases = store.aliases();
-            while (aliases.hasMoreElements()) {
-                final String name = aliases.nextElement();
-                X509Certificate cert = null;
-
-                if (store.isKeyEntry(name)) {
-                    Certificate[] chain = store.getCertificateChain(name);
-                    if (chain != null)
-                        cert = (X509Certificate) chain[0];
-                } else {
-                    cert = (X509Certificate) store.getCertificate(name);
-                }
-
-                if (cert != null && cert.getBasicConstraints() >= 0) {
-                    CAs.add(cert);
-                }
-            }
+            List<X509Certificate> CAs = getTrustAnchors();
 
             return CAs.toArray(new X509Certificate[CAs.size()]);
 
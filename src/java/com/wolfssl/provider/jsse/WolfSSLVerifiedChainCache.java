@@ -0,0 +1,274 @@
+/* WolfSSLVerifiedChainCache.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Security;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of peer certificate chains that a TrustManager accepted.
+ *
+ * Chains are identified by a SHA-256 hash over the DER encoding of each
+ * certificate, the peer role and the authentication type, so a repeated
+ * handshake with the same peer chain can skip converting and verifying
+ * the chain. An entry is valid until the earliest notAfter date in the
+ * chain, and at most the configured timeout. All caches are cleared when
+ * trusted certificates or CRLs loaded by wolfJSSE change, see
+ * invalidateAll(). Changes made directly to a KeyStore backing a
+ * TrustManager from another provider are only picked up once entries
+ * time out.
+ *
+ * The cache is disabled by default, and configured with these Security
+ * properties:
+ *
+ * <pre>
+ * wolfjsse.verifiedChainCache.size     maximum chains cached per
+ *                                      SSLContext, default 0 (disabled)
+ * wolfjsse.verifiedChainCache.timeout  maximum seconds a chain is
+ *                                      cached, default 3600
+ * </pre>
+ *
+ * @author wolfSSL
+ */
+final class WolfSSLVerifiedChainCache {
+
+    static final String SIZE_PROPERTY = "wolfjsse.verifiedChainCache.size";
+    static final String TIMEOUT_PROPERTY =
+        "wolfjsse.verifiedChainCache.timeout";
+
+    static final long DEFAULT_TIMEOUT = 3600;
+
+    /* incremented when trust anchors or CRLs change, caches built under
+     * an older generation are cleared on next use */
+    private static final AtomicLong generation = new AtomicLong(0);
+
+    private static final ThreadLocal<MessageDigest> digestCache =
+        new ThreadLocal<MessageDigest>();
+
+    private final int capacity;
+    private final long timeout;        /* milliseconds */
+    private final WolfSSLStats stats;
+    private long cacheGeneration;      /* protected by entries lock */
+
+    /* chain hash to expiry time in ms, least recently used first */
+    private final LinkedHashMap<ByteBuffer, Long> entries;
+
+    /**
+     * Create new verified chain cache
+     *
+     * @param capacity maximum number of chains cached
+     * @param timeoutSec maximum seconds a chain is cached
+     * @param stats counters updated on lookup, or null
+     */
+    WolfSSLVerifiedChainCache(final int capacity, long timeoutSec,
+        WolfSSLStats stats) {
+
+        this.capacity = capacity;
+        this.timeout = timeoutSec * 1000;
+        this.stats = stats;
+        this.cacheGeneration = generation.get();
+        this.entries = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<ByteBuffer, Long> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    private static long getLongProperty(String name, long def) {
+        String val = Security.getProperty(name);
+
+        if (val == null) {
+            return def;
+        }
+        try {
+            long ret = Long.parseLong(val.trim());
+            return (ret >= 0) ? ret : def;
+        } catch (NumberFormatException e) {
+            WolfSSLDebug.log(WolfSSLVerifiedChainCache.class,
+                WolfSSLDebug.INFO, "invalid " + name + ", using default: " +
+                val);
+            return def;
+        }
+    }
+
+    /**
+     * Create cache configured from Security properties
+     *
+     * @param stats counters updated on lookup, or null
+     * @return new cache, or null if disabled
+     */
+    static WolfSSLVerifiedChainCache create(WolfSSLStats stats) {
+        long size = getLongProperty(SIZE_PROPERTY, 0);
+        long timeout = getLongProperty(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+
+        if (size == 0 || timeout == 0) {
+            return null;
+        }
+        if (stats == WolfSSLStats.GLOBAL) {
+            WolfSSLStats.registerGlobal();
+        }
+
+        return new WolfSSLVerifiedChainCache(
+            (int)Math.min(size, Integer.MAX_VALUE), timeout, stats);
+    }
+
+    /**
+     * Clear all verified chain caches, called when trusted certificates or
+     * CRLs change.
+     */
+    static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return current cache generation, taken before verifying a chain
+     *         and passed to put()
+     */
+    static long currentGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Compute cache key for a peer chain
+     *
+     * @param chain DER encoded certificates, leaf first
+     * @param server true if the chain was sent by a server
+     * @param authType authentication type the chain is checked for,
+     *        may be null
+     * @return SHA-256 hash identifying chain, role and authType
+     */
+    static byte[] key(byte[][] chain, boolean server, String authType) {
+        MessageDigest md = digestCache.get();
+
+        if (md == null) {
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            digestCache.set(md);
+        }
+
+        md.update((byte)(server ? 1 : 0));
+        if (authType != null) {
+            md.update(authType.getBytes());
+        }
+        for (byte[] der : chain) {
+            int len = der.length;
+            md.update(new byte[] { 0, (byte)(len >>> 24), (byte)(len >>> 16),
+                (byte)(len >>> 8), (byte)len });
+            md.update(der);
+        }
+
+        return md.digest();
+    }
+
+    /**
+     * Check if a chain was verified successfully before
+     *
+     * @param key chain key from key()
+     * @return true if chain is cached and has not expired
+     */
+    boolean contains(byte[] key) {
+        long now = System.currentTimeMillis();
+        ByteBuffer k = ByteBuffer.wrap(key);
+        boolean hit = false;
+
+        synchronized (entries) {
+            if (cacheGeneration != generation.get()) {
+                entries.clear();
+                cacheGeneration = generation.get();
+            }
+
+            Long expiry = entries.get(k);
+            if (expiry != null) {
+                if (now < expiry) {
+                    hit = true;
+                } else {
+                    entries.remove(k);
+                }
+            }
+        }
+
+        if (stats != null) {
+            stats.verifiedChainLookup(hit);
+        }
+
+        return hit;
+    }
+
+    /**
+     * Record a chain that was verified successfully
+     *
+     * @param key chain key from key()
+     * @param notAfter earliest notAfter time of certificates in the chain,
+     *        in milliseconds
+     * @param gen currentGeneration() before the chain was verified, the
+     *        chain is not cached if trust changed since
+     */
+    void put(byte[] key, long notAfter, long gen) {
+        long now = System.currentTimeMillis();
+        long expiry = Math.min(notAfter, now + this.timeout);
+
+        if (expiry <= now) {
+            return;
+        }
+
+        synchronized (entries) {
+            if (cacheGeneration != generation.get()) {
+                entries.clear();
+                cacheGeneration = generation.get();
+            }
+            if (gen != cacheGeneration) {
+                return;
+            }
+            entries.put(ByteBuffer.wrap(key), expiry);
+        }
+    }
+
+    /**
+     * Remove all cached chains
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return number of chains currently cached
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
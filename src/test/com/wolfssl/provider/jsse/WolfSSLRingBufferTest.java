@@ -0,0 +1,180 @@
+/* WolfSSLRingBufferTest.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests WolfSSLRingBuffer, which is package private and so lives in the
+ * provider package. Does not use native wolfSSL.
+ */
+public class WolfSSLRingBufferTest {
+
+    @BeforeClass
+    public static void printClassName() {
+        System.out.println("WolfSSLRingBuffer Class");
+    }
+
+    /* len bytes counting up from start */
+    private static byte[] bytes(int start, int len) {
+        byte[] b = new byte[len];
+        for (int i = 0; i < len; i++) {
+            b[i] = (byte)(start + i);
+        }
+        return b;
+    }
+
+    private static byte[] get(WolfSSLRingBuffer rb, int len) {
+        byte[] b = new byte[len];
+        assertEquals(len, rb.get(b, 0, len));
+        return b;
+    }
+
+    @Test
+    public void testEmptyAndFull() {
+        System.out.print("\tTesting empty and full buffer");
+
+        WolfSSLRingBuffer rb = new WolfSSLRingBuffer(8);
+        byte[] out = new byte[8];
+
+        /* empty before first use and after draining */
+        assertTrue(rb.isEmpty());
+        assertEquals(0, rb.get(out, 0, out.length));
+        assertEquals(0, rb.get(ByteBuffer.wrap(out)));
+
+        /* exactly full, then drained */
+        rb.put(bytes(0, 8), 0, 8);
+        assertFalse(rb.isEmpty());
+        assertEquals(8, rb.length());
+        assertArrayEquals(bytes(0, 8), get(rb, 8));
+        assertTrue(rb.isEmpty());
+        assertEquals(0, rb.get(out, 0, out.length));
+
+        /* empty puts are ignored */
+        rb.put(new byte[0], 0, 0);
+        rb.put(ByteBuffer.allocate(0));
+        assertTrue(rb.isEmpty());
+
+        /* one more than capacity grows backing array, keeping order */
+        rb.put(bytes(0, 9), 0, 9);
+        assertEquals(9, rb.length());
+        assertArrayEquals(bytes(0, 9), get(rb, 9));
+
+        rb.put(bytes(0, 4), 0, 4);
+        rb.clear();
+        assertTrue(rb.isEmpty());
+        assertEquals(0, rb.get(out, 0, out.length));
+
+        try {
+            new WolfSSLRingBuffer(0);
+            System.out.println("\t... failed");
+            fail("zero capacity accepted");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        System.out.println("\t... passed");
+    }
+
+    @Test
+    public void testWraparound() {
+        System.out.print("\tTesting wraparound");
+
+        WolfSSLRingBuffer rb = new WolfSSLRingBuffer(8);
+        ByteBuffer dst;
+
+        /* move head to 5, then queue across end of backing array */
+        rb.put(bytes(0, 6), 0, 6);
+        assertArrayEquals(bytes(0, 5), get(rb, 5));
+        rb.put(bytes(6, 7), 0, 7);
+        assertEquals(8, rb.length());
+        assertArrayEquals(bytes(5, 8), get(rb, 8));
+        assertTrue(rb.isEmpty());
+
+        /* ByteBuffer put and get across the end */
+        rb.put(bytes(0, 6), 0, 6);
+        assertArrayEquals(bytes(0, 6), get(rb, 6));
+        rb.put(bytes(0, 1), 0, 1);
+        rb.put(ByteBuffer.wrap(bytes(1, 6)));
+        dst = ByteBuffer.allocate(7);
+        assertEquals(7, rb.get(dst));
+        assertArrayEquals(bytes(0, 7), dst.array());
+
+        /* growing while wrapped linearizes queued bytes in order */
+        rb.put(bytes(0, 6), 0, 6);
+        assertArrayEquals(bytes(0, 4), get(rb, 4));
+        rb.put(bytes(6, 6), 0, 6);
+        rb.put(bytes(12, 10), 0, 10);
+        assertEquals(18, rb.length());
+        assertArrayEquals(bytes(4, 14), get(rb, 14));
+        assertEquals(4, rb.length());
+
+        System.out.println("\t\t... passed");
+    }
+
+    @Test
+    public void testPartialReads() {
+        System.out.print("\tTesting partial reads");
+
+        WolfSSLRingBuffer rb = new WolfSSLRingBuffer(8);
+        byte[] out = new byte[10];
+        ByteBuffer dst = ByteBuffer.allocate(3);
+
+        rb.put(bytes(0, 7), 0, 7);
+
+        /* read into middle of array, smaller than queued */
+        assertEquals(2, rb.get(out, 4, 2));
+        assertEquals(0, out[4]);
+        assertEquals(1, out[5]);
+        assertEquals(0, out[3]);
+        assertEquals(0, out[6]);
+        assertEquals(5, rb.length());
+
+        /* ByteBuffer read limited by remaining space */
+        assertEquals(3, rb.get(dst));
+        assertFalse(dst.hasRemaining());
+        assertArrayEquals(bytes(2, 3), dst.array());
+        assertEquals(0, rb.get(dst));
+        assertEquals(2, rb.length());
+
+        /* request larger than queued returns what is queued */
+        assertEquals(2, rb.get(out, 0, out.length));
+        assertEquals(5, out[0]);
+        assertEquals(6, out[1]);
+        assertTrue(rb.isEmpty());
+
+        /* put from offset of source array */
+        rb.put(bytes(0, 10), 3, 4);
+        assertArrayEquals(bytes(3, 4), get(rb, 4));
+
+        System.out.println("\t\t... passed");
+    }
+}
@@ -0,0 +1,196 @@
+/* WolfSSLSessionCacheTest.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests WolfSSLSessionCache, which is package private and so lives in the
+ * provider package. Does not use native wolfSSL.
+ */
+public class WolfSSLSessionCacheTest {
+
+    @BeforeClass
+    public static void printClassName() {
+        System.out.println("WolfSSLSessionCache Class");
+    }
+
+    /* session not attached to a WOLFSSL, created at given time */
+    private static WolfSSLImplementSSLSession session(int id, long created) {
+        return new WolfSSLImplementSSLSession(null, 443, "host" + id,
+            new byte[] { (byte)(id >>> 8), (byte)id }, created);
+    }
+
+    private static WolfSSLImplementSSLSession session(int id) {
+        return session(id, System.currentTimeMillis());
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        System.out.print("\tTesting LRU eviction order");
+
+        /* Integer keys that are multiples of 16 share a segment */
+        WolfSSLSessionCache<Integer> cache =
+            new WolfSSLSessionCache<Integer>(3, 0);
+        WolfSSLImplementSSLSession s0 = session(0);
+
+        cache.put(0, s0);
+        cache.put(16, session(16));
+        cache.put(32, session(32));
+
+        /* touch 0, so 16 is least recently used */
+        assertSame(s0, cache.get(0));
+        cache.put(48, session(48));
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(16));
+        assertNotNull(cache.get(0));
+        assertNotNull(cache.get(32));
+        assertNotNull(cache.get(48));
+
+        /* other segments are evicted from first, keeping new entry */
+        cache = new WolfSSLSessionCache<Integer>(2, 0);
+        cache.put(1, session(1));
+        cache.put(0, session(0));
+        cache.put(16, session(16));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(0));
+        assertNotNull(cache.get(16));
+
+        /* lowering capacity evicts down to new size */
+        cache.setCapacity(1);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(0));
+        assertNotNull(cache.get(16));
+
+        System.out.println("\t\t... passed");
+    }
+
+    @Test
+    public void testExpiry() {
+        System.out.print("\tTesting session timeout");
+
+        long now = System.currentTimeMillis();
+        WolfSSLSessionCache<Integer> cache =
+            new WolfSSLSessionCache<Integer>(0, 1);
+        WolfSSLImplementSSLSession invalid = session(3);
+
+        cache.put(1, session(1, now - 2000));
+        cache.put(2, session(2, now));
+        cache.put(3, invalid);
+        invalid.invalidate();
+        assertEquals(3, cache.size());
+
+        /* expired and invalidated sessions are dropped on lookup */
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertNull(cache.get(3));
+        assertEquals(1, cache.size());
+
+        /* timeout of 0 is no limit, shorter timeout purges cached */
+        cache.setTimeout(0);
+        cache.put(4, session(4, now - 100000));
+        assertNotNull(cache.get(4));
+        assertEquals(2, cache.getIds().size());
+
+        cache.setTimeout(10);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(4));
+        assertNotNull(cache.findById(new byte[] { 0, 2 }));
+
+        System.out.println("\t\t... passed");
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        System.out.print("\tTesting concurrent put/get");
+
+        final int threads = 8;
+        final int perThread = 2000;
+        final int capacity = 500;
+        final WolfSSLSessionCache<Integer> cache =
+            new WolfSSLSessionCache<Integer>(capacity, 0);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error =
+            new AtomicReference<Throwable>();
+
+        for (int t = 0; t < threads; t++) {
+            final int base = t * perThread;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = base; i < base + perThread; i++) {
+                            WolfSSLImplementSSLSession ses = session(i);
+                            cache.put(i, ses);
+                            WolfSSLImplementSSLSession got = cache.get(i);
+                            if (got != null && got != ses) {
+                                throw new IllegalStateException(
+                                    "wrong session for key " + i);
+                            }
+                            cache.get(i - 1);
+                            if ((i & 7) == 0) {
+                                cache.remove(i);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+
+        if (error.get() != null) {
+            System.out.println("\t... failed");
+            fail("concurrent access failed: " + error.get());
+        }
+        if (cache.size() > capacity ||
+            cache.size() != cache.values().size()) {
+            System.out.println("\t... failed");
+            fail("cache size " + cache.size() + " does not match " +
+                 cache.values().size() + " entries, capacity " + capacity);
+        }
+
+        cache.clear();
+        assertEquals(0, cache.size());
+
+        System.out.println("\t... passed");
+    }
+}
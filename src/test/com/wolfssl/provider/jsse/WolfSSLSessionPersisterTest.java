@@ -0,0 +1,104 @@
+/* WolfSSLSessionPersisterTest.java
+ *
+ * Copyright (C) 2006-2020 wolfSSL Inc.
+ *
+ * This file is part of wolfSSL.
+ *
+ * wolfSSL is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * wolfSSL is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package com.wolfssl.provider.jsse;
+
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests snapshot file checks of WolfSSLSessionPersister, which is package
+ * private and so lives in the provider package. Does not use native
+ * wolfSSL.
+ */
+public class WolfSSLSessionPersisterTest {
+
+    @BeforeClass
+    public static void printClassName() {
+        System.out.println("WolfSSLSessionPersister Class");
+    }
+
+    private static void expectRefused(Path path, String msg) {
+        try {
+            WolfSSLSessionPersister.checkSnapshotFile(path);
+            System.out.println("\t... failed");
+            fail(msg);
+        } catch (IOException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void testCheckSnapshotFile() throws IOException {
+        System.out.print("\tTesting snapshot file checks");
+
+        Path dir = Files.createTempDirectory("wolfjsse-persist");
+        Path snapshot = dir.resolve("sessions.bin");
+        Path link = dir.resolve("link.bin");
+
+        try {
+            /* created the way save() creates snapshots */
+            WolfSSLSessionPersister.createPrivateFile(snapshot);
+            WolfSSLSessionPersister.checkSnapshotFile(snapshot);
+
+            expectRefused(dir, "directory accepted");
+
+            try {
+                Files.createSymbolicLink(link, snapshot);
+                expectRefused(link, "symbolic link accepted");
+            } catch (UnsupportedOperationException e) {
+                /* no symbolic links on this file system */
+            }
+
+            try {
+                Files.setPosixFilePermissions(snapshot,
+                    PosixFilePermissions.fromString("rw--w----"));
+                expectRefused(snapshot, "group writable file accepted");
+
+                Files.setPosixFilePermissions(snapshot,
+                    PosixFilePermissions.fromString("rw-r---w-"));
+                expectRefused(snapshot, "world writable file accepted");
+
+                /* readable by others is not refused, only writable */
+                Files.setPosixFilePermissions(snapshot,
+                    PosixFilePermissions.fromString("rw-r--r--"));
+                WolfSSLSessionPersister.checkSnapshotFile(snapshot);
+
+            } catch (UnsupportedOperationException e) {
+                /* no POSIX permissions on this file system */
+            }
+
+        } finally {
+            Files.deleteIfExists(link);
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println("\t... passed");
+    }
+}
@@ -251,23 +251,34 @@ public class WolfSSLContextTest {
                 return;
             }
 
-            /* test for UnsupportedOperationException */
-            try {
-                SSLSessionContext sess = ctx.getServerSessionContext();
+            SSLSessionContext srv = ctx.getServerSessionContext();
+            SSLSessionContext cli = ctx.getClientSessionContext();
+            if (srv == null || cli == null || srv == cli) {
                 System.out.println("\t\t... failed");
-                fail("Failed to return UnsupportedOperationException");
+                fail("Failed to get distinct session contexts");
+            }
 
-            } catch (UnsupportedOperationException e) {
-                /* expected */
+            cli.setSessionCacheSize(10);
+            cli.setSessionTimeout(60);
+            srv.setSessionTimeout(120);
+            if (cli.getSessionCacheSize() != 10 ||
+                cli.getSessionTimeout() != 60 ||
+                srv.getSessionTimeout() != 120) {
+                System.out.println("\t\t... failed");
+                fail("Session context settings not applied");
             }
 
-            /* test for UnsupportedOperationException */
-            try {
-                SSLSessionContext sess = ctx.getClientSessionContext();
+            if (cli.getIds() == null || srv.getIds() == null ||
+                cli.getSession(new byte[32]) != null) {
                 System.out.println("\t\t... failed");
-                fail("Failed to return UnsupportedOperationException");
+                fail("Unexpected session in new session context");
+            }
 
-            } catch (UnsupportedOperationException e) {
+            try {
+                cli.setSessionTimeout(-1);
+                System.out.println("\t\t... failed");
+                fail("Negative session timeout accepted");
+            } catch (IllegalArgumentException e) {
                 /* expected */
             }
         }
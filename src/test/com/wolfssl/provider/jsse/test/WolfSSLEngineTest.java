@@ -24,17 +24,38 @@ package com.wolfssl.provider.jsse.test;
 import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLException;
 import com.wolfssl.provider.jsse.WolfSSLProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.Security;
+import java.security.Signature;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
@@ -438,6 +459,46 @@ public class WolfSSLEngineTest {
         pass("\t\t... passed");
     }
 
+    @Test
+    public void testNativeMemoryIO()
+        throws NoSuchProviderException, NoSuchAlgorithmException {
+        SSLEngine server;
+        SSLEngine client;
+        int ret;
+
+        /* create new SSLEngine */
+        System.out.print("\tTesting native memory I/O");
+
+        System.setProperty("wolfjsse.engine.nativeIO", "true");
+        try {
+            this.ctx = tf.createSSLContext("TLS", engineProvider);
+            server = this.ctx.createSSLEngine();
+            client = this.ctx.createSSLEngine("wolfSSL native I/O test",
+                                              11111);
+        } finally {
+            System.clearProperty("wolfjsse.engine.nativeIO");
+        }
+
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(false);
+        client.setUseClientMode(true);
+
+        ret = tf.testConnection(server, client, null, null,
+                                "Test native memory I/O");
+        if (ret != 0) {
+            error("\t... failed");
+            fail("failed to connect using native memory I/O");
+        }
+
+        try {
+            CloseConnection(server, client, false);
+        } catch (SSLException ex) {
+            error("\t... failed");
+            fail("failed to close connection using native memory I/O");
+        }
+        pass("\t... passed");
+    }
+
     @Test
     public void testConnectionOutIn()
         throws NoSuchProviderException, NoSuchAlgorithmException {
@@ -659,6 +720,294 @@ public class WolfSSLEngineTest {
         pass("\t\t... passed");
     }
 
+    @Test
+    public void testOCSPStapling() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger(0);
+        final AtomicBoolean revoked = new AtomicBoolean(false);
+        final X509Certificate caCert;
+        final PrivateKey caKey;
+        SSLContext serverCtx;
+        SSLContext clientCtx;
+        HttpServer responder;
+        KeyStore all;
+        KeyStore serverKs;
+        InputStream stream;
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName stats = new ObjectName(
+            "com.wolfssl.provider.jsse:type=Stats,name=all");
+        long stapled;
+        int ret;
+
+        System.out.print("\tTesting OCSP stapling");
+
+        if (WolfSSL.isEnabledOCSPStapling() == 0) {
+            pass("\t\t... skipped");
+            return;
+        }
+
+        all = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.allJKS);
+        all.load(stream, jksPass);
+        stream.close();
+        caCert = (X509Certificate)all.getCertificate("ca");
+        caKey = (PrivateKey)all.getKey("ca", jksPass);
+
+        /* server keystore holding only the RSA server entry */
+        serverKs = KeyStore.getInstance(tf.keyStoreType);
+        serverKs.load(null, null);
+        serverKs.setKeyEntry("server", all.getKey("server", jksPass),
+            jksPass, all.getCertificateChain("server"));
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(serverKs, jksPass);
+
+        /* local responder signing "good" or "revoked" responses with the
+         * CA key */
+        responder = HttpServer.create(
+            new InetSocketAddress("127.0.0.1", 0), 0);
+        responder.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange ex) throws IOException {
+                try {
+                    byte[] resp = ocspResponse(readAll(ex.getRequestBody()),
+                        caCert, caKey, revoked.get());
+                    fetches.incrementAndGet();
+                    ex.getResponseHeaders().set("Content-Type",
+                        "application/ocsp-response");
+                    ex.sendResponseHeaders(200, resp.length);
+                    ex.getResponseBody().write(resp);
+                } catch (Exception e) {
+                    ex.sendResponseHeaders(500, -1);
+                } finally {
+                    ex.close();
+                }
+            }
+        });
+        responder.start();
+
+        String[] props = {
+            "jdk.tls.server.enableStatusRequestExtension",
+            "jdk.tls.client.enableStatusRequestExtension",
+            "jdk.tls.stapling.responderURI",
+            "jdk.tls.stapling.responderOverride"
+        };
+        String[] old = new String[props.length];
+        for (int i = 0; i < props.length; i++) {
+            old[i] = System.getProperty(props[i]);
+        }
+
+        try {
+            System.setProperty(props[0], "true");
+            System.setProperty(props[1], "true");
+            System.setProperty(props[2], "http://127.0.0.1:" +
+                responder.getAddress().getPort() + "/");
+            System.setProperty(props[3], "true");
+
+            serverCtx = tf.createSSLContext("TLS", engineProvider,
+                tf.createTrustManager("SunX509", tf.caJKS, engineProvider),
+                kmf.getKeyManagers());
+            clientCtx = tf.createSSLContext("TLS", engineProvider,
+                tf.createTrustManager("SunX509", tf.caJKS, engineProvider),
+                null);
+            waitForFetches(fetches, 1);
+
+            /* stapled handshakes verified by client, served from cache */
+            stapled = (Long)mbs.getAttribute(stats, "OCSPResponsesStapled");
+            for (int i = 0; i < 5; i++) {
+                ret = stapledConnection(serverCtx, clientCtx);
+                if (ret != 0) {
+                    error("\t\t... failed");
+                    fail("failed handshake with OCSP stapling");
+                }
+            }
+
+            if (fetches.get() != 1) {
+                error("\t\t... failed");
+                fail("OCSP response fetched per handshake: " +
+                    fetches.get());
+            }
+            if ((Long)mbs.getAttribute(stats, "OCSPResponsesStapled") <=
+                    stapled) {
+                error("\t\t... failed");
+                fail("no OCSP response stapled to handshakes");
+            }
+
+            /* server stapling a response that revokes its certificate */
+            revoked.set(true);
+            serverCtx = tf.createSSLContext("TLS", engineProvider,
+                tf.createTrustManager("SunX509", tf.caJKS, engineProvider),
+                kmf.getKeyManagers());
+            waitForFetches(fetches, 2);
+
+            ret = stapledConnection(serverCtx, clientCtx);
+            if (ret == 0) {
+                error("\t\t... failed");
+                fail("handshake succeeded with revoked stapled response");
+            }
+
+            /* same server succeeds with client not requesting a staple,
+             * so failure above comes from the stapled response */
+            System.setProperty(props[1], "false");
+            clientCtx = tf.createSSLContext("TLS", engineProvider,
+                tf.createTrustManager("SunX509", tf.caJKS, engineProvider),
+                null);
+            ret = stapledConnection(serverCtx, clientCtx);
+            if (ret != 0) {
+                error("\t\t... failed");
+                fail("handshake without status request failed");
+            }
+
+        } finally {
+            for (int i = 0; i < props.length; i++) {
+                if (old[i] == null) {
+                    System.clearProperty(props[i]);
+                } else {
+                    System.setProperty(props[i], old[i]);
+                }
+            }
+            responder.stop(0);
+        }
+
+        pass("\t\t... passed");
+    }
+
+    /* wait for background OCSP response fetches to reach count */
+    private void waitForFetches(AtomicInteger fetches, int count)
+        throws InterruptedException {
+
+        for (int i = 0; i < 50 && fetches.get() < count; i++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(100);
+        if (fetches.get() < count) {
+            error("\t\t... failed");
+            fail("OCSP response not fetched from responder");
+        }
+    }
+
+    /* handshake between new engines of serverCtx and clientCtx */
+    private int stapledConnection(SSLContext serverCtx, SSLContext clientCtx) {
+        SSLEngine server = serverCtx.createSSLEngine();
+        SSLEngine client = clientCtx.createSSLEngine(
+            "wolfSSL OCSP stapling test", 11111);
+
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(false);
+        client.setUseClientMode(true);
+
+        return tf.testConnection(server, client, null, null,
+            "Test OCSP stapling");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int n;
+
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /* DER element: tag, length, contents */
+    private static byte[] der(int tag, byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int len = 0;
+
+        for (byte[] p : parts) {
+            len += p.length;
+        }
+        out.write(tag);
+        if (len < 0x80) {
+            out.write(len);
+        } else if (len < 0x100) {
+            out.write(0x81);
+            out.write(len);
+        } else {
+            out.write(0x82);
+            out.write(len >>> 8);
+            out.write(len);
+        }
+        for (byte[] p : parts) {
+            out.write(p, 0, p.length);
+        }
+        return out.toByteArray();
+    }
+
+    /* offset just past tag and length of DER element at off */
+    private static int derContent(byte[] b, int off) {
+        int len = b[off + 1] & 0xff;
+        return (len > 0x80) ? off + 2 + (len & 0x7f) : off + 2;
+    }
+
+    /* offset past whole DER element at off */
+    private static int derEnd(byte[] b, int off) {
+        int len = b[off + 1] & 0xff;
+        int start = off + 2;
+
+        if (len > 0x80) {
+            int n = len & 0x7f;
+            len = 0;
+            for (int i = 0; i < n; i++) {
+                len = (len << 8) | (b[start++] & 0xff);
+            }
+        }
+        return start + len;
+    }
+
+    private static byte[] generalizedTime(long ms) {
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return der(0x18, fmt.format(new Date(ms)).getBytes(
+            StandardCharsets.US_ASCII));
+    }
+
+    /* Signed "good" or "revoked" BasicOCSPResponse for the CertID of the
+     * first request of a DER OCSPRequest, valid for one hour */
+    private static byte[] ocspResponse(byte[] req, X509Certificate ca,
+        PrivateKey key, boolean revoked) throws Exception {
+
+        /* OCSPRequest, TBSRequest, requestList, Request, CertID */
+        int off = derContent(req, 0);
+        off = derContent(req, off);
+        while ((req[off] & 0xff) == 0xA0 || (req[off] & 0xff) == 0xA1) {
+            off = derEnd(req, off);
+        }
+        off = derContent(req, off);
+        off = derContent(req, off);
+        byte[] certId = Arrays.copyOfRange(req, off, derEnd(req, off));
+
+        long now = System.currentTimeMillis();
+        /* good [0] NULL, or revoked [1] RevokedInfo with revocationTime */
+        byte[] status = revoked ?
+            der(0xA1, generalizedTime(now - 60000)) :
+            new byte[] { (byte)0x80, 0x00 };
+        byte[] single = der(0x30, certId, status,
+            generalizedTime(now - 60000),
+            der(0xA0, generalizedTime(now + 3600000)));
+        byte[] tbs = der(0x30,
+            der(0xA1, ca.getSubjectX500Principal().getEncoded()),
+            generalizedTime(now),
+            der(0x30, single));
+
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(key);
+        sig.update(tbs);
+        byte[] sigBytes = sig.sign();
+        byte[] bitString = new byte[sigBytes.length + 1];
+        System.arraycopy(sigBytes, 0, bitString, 1, sigBytes.length);
+
+        /* sha256WithRSAEncryption, id-pkix-ocsp-basic */
+        byte[] sigAlg = der(0x30, der(0x06, new byte[] { 0x2A,
+            (byte)0x86, 0x48, (byte)0x86, (byte)0xF7, 0x0D, 0x01, 0x01,
+            0x0B }), new byte[] { 0x05, 0x00 });
+        byte[] basicOid = der(0x06, new byte[] { 0x2B, 0x06, 0x01, 0x05,
+            0x05, 0x07, 0x30, 0x01, 0x01 });
+        byte[] basic = der(0x30, tbs, sigAlg, der(0x03, bitString));
+
+        return der(0x30, der(0x0A, new byte[] { 0x00 }),
+            der(0xA0, der(0x30, basicOid, der(0x04, basic))));
+    }
+
     /* status tests buffer overflow/underflow/closed test */
 
 
@@ -24,6 +24,10 @@ package com.wolfssl.provider.jsse.test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import com.wolfssl.provider.jsse.WolfSSLRingBufferTest;
+import com.wolfssl.provider.jsse.WolfSSLSessionCacheTest;
+import com.wolfssl.provider.jsse.WolfSSLSessionPersisterTest;
+
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
     WolfSSLTrustX509Test.class,
@@ -34,6 +38,9 @@ import org.junit.runners.Suite;
     WolfSSLServerSocketFactoryTest.class,
     WolfSSLServerSocketTest.class,
     WolfSSLSessionTest.class,
+    WolfSSLSessionCacheTest.class,
+    WolfSSLRingBufferTest.class,
+    WolfSSLSessionPersisterTest.class,
     WolfSSLX509Test.class,
     WolfSSLKeyX509Test.class,
 })
@@ -24,30 +24,54 @@ package com.wolfssl.provider.jsse.test;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
 import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
 import java.security.NoSuchProviderException;
 import java.security.Principal;
 import java.security.Provider;
 import java.security.Security;
 import java.util.ArrayList;
-
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSessionBindingEvent;
 import javax.net.ssl.SSLSessionBindingListener;
 import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509KeyManager;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
 
+import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLContext;
 import com.wolfssl.WolfSSLException;
+import com.wolfssl.provider.jsse.WolfSSLMappedSessionStore;
 import com.wolfssl.provider.jsse.WolfSSLProvider;
+import com.wolfssl.provider.jsse.WolfSSLTicketKeyManager;
 
 public class WolfSSLSessionTest {
     public final static char[] jksPass = "wolfSSL test".toCharArray();
@@ -267,7 +291,8 @@ public class WolfSSLSessionTest {
             if (session.getPeerCertificates() != null) {
                 Certificate[] certs = session.getPeerCertificates();
 
-                if (certs.length != 1) {
+                /* full chain sent by peer, leaf first */
+                if (certs.length < 1) {
                     error("\t\t... failed");
                     fail("unexpected number of peer certs found");
                 }
@@ -276,6 +301,21 @@ public class WolfSSLSessionTest {
                     error("\t\t... failed");
                     fail("unexpected cert type found");
                 }
+
+                if (!((java.security.cert.X509Certificate)certs[0])
+                        .getSubjectDN().equals(session.getPeerPrincipal()) ||
+                    session.getPeerCertificateChain().length !=
+                        certs.length) {
+                    error("\t\t... failed");
+                    fail("peer principal or chain does not match leaf");
+                }
+
+                /* returned array is a copy of cached chain */
+                certs[0] = null;
+                if (session.getPeerCertificates()[0] == null) {
+                    error("\t\t... failed");
+                    fail("cached peer certificates modified by caller");
+                }
             }
         } catch (SSLPeerUnverifiedException e) {
             error("\t\t... failed");
@@ -353,6 +393,84 @@ public class WolfSSLSessionTest {
         pass("\t\t... passed");
     }
 
+    /* KeyManager holding a single entry of all.jks */
+    private KeyManager[] singleKeyManager(String alias) throws Exception {
+        KeyStore all = KeyStore.getInstance(tf.keyStoreType);
+        InputStream stream = new FileInputStream(tf.allJKS);
+        all.load(stream, jksPass);
+        stream.close();
+
+        KeyStore ks = KeyStore.getInstance(tf.keyStoreType);
+        ks.load(null, null);
+        ks.setKeyEntry(alias, all.getKey(alias, jksPass), jksPass,
+            all.getCertificateChain(alias));
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+        kmf.init(ks, jksPass);
+        return kmf.getKeyManagers();
+    }
+
+    @Test
+    public void testPeerCertsAfterServerCertChange() throws Exception {
+        X509Certificate[] expected = new X509Certificate[2];
+        SSLSession[] sessions = new SSLSession[2];
+        String[] aliases = { "server", "server-1024" };
+
+        System.out.print("\tTesting peer certs after cert change");
+
+        /* TLS 1.2 without tickets, so the second server can not resume
+         * the session and a full handshake is made */
+        SSLContext clientCtx = tf.createSSLContext("TLSv1.2",
+            engineProvider);
+
+        for (int i = 0; i < aliases.length; i++) {
+            KeyManager[] km = singleKeyManager(aliases[i]);
+            SSLContext serverCtx = tf.createSSLContext("TLSv1.2",
+                engineProvider, tf.createTrustManager("SunX509",
+                    tf.clientJKS, engineProvider), km);
+            expected[i] = ((X509KeyManager)km[0]).getCertificateChain(
+                aliases[i])[0];
+
+            /* same host and port, client offers previous session */
+            SSLEngine client = clientCtx.createSSLEngine("server", 12346);
+            SSLEngine server = serverCtx.createSSLEngine();
+            server.setUseClientMode(false);
+            server.setNeedClientAuth(false);
+            client.setUseClientMode(true);
+            if (tf.testConnection(server, client, null, null,
+                    "Test cert change") != 0) {
+                error("\t... failed");
+                fail("failed to connect");
+            }
+
+            SSLSession session = client.getSession();
+            X509Certificate leaf =
+                (X509Certificate)session.getPeerCertificates()[0];
+            if (!Arrays.equals(leaf.getEncoded(),
+                    expected[i].getEncoded()) ||
+                !session.getPeerPrincipal().equals(
+                    expected[i].getSubjectDN()) ||
+                !Arrays.equals(session.getPeerCertificateChain()[0]
+                    .getEncoded(), expected[i].getEncoded())) {
+                error("\t... failed");
+                fail("peer certificate of previous connection returned");
+            }
+            sessions[i] = session;
+        }
+
+        /* first connection keeps its own peer chain after the second
+         * connection made a full handshake */
+        X509Certificate first =
+            (X509Certificate)sessions[0].getPeerCertificates()[0];
+        if (sessions[0] == sessions[1] ||
+            !Arrays.equals(first.getEncoded(), expected[0].getEncoded())) {
+            error("\t... failed");
+            fail("peer certificate of later connection returned");
+        }
+
+        pass("\t... passed");
+    }
+
     @Test
     public void testSessionContext() {
         int ret;
@@ -391,18 +509,495 @@ public class WolfSSLSessionTest {
             }
         }
 
-        /* @TODO difference in cache size for SunJSSE vs wolfJSSE  0 vs 33 */
-        context.getSessionCacheSize();
+        context.setSessionCacheSize(2);
+        if (context.getSessionCacheSize() != 2) {
+            error("\t\t... failed");
+            fail("failed to set session cache size");
+        }
+
+        if (session.getId().length > 0 &&
+            context.getSession(session.getId()) != session) {
+            error("\t\t... failed");
+            fail("session not found in session context");
+        }
+
+        if (ctx.getClientSessionContext() != context) {
+            error("\t\t... failed");
+            fail("session context does not match SSLContext");
+        }
+        pass("\t\t... passed");
+    }
+
+
+    /**
+     * Client run in a separate JVM by testSessionCachePersistence(). Enables
+     * session cache persistence, connects once to the port given in args[0]
+     * and prints the session ID. Snapshot file is given in args[1], it is
+     * saved when this JVM exits.
+     */
+    public static class PersistClient {
+        public static void main(String[] args) throws Exception {
+            Security.setProperty("wolfjsse.sessionCache.persistFile",
+                args[1]);
+            Security.setProperty("wolfjsse.sessionCache.persistInterval",
+                "0");
+            Security.insertProviderAt(new WolfSSLProvider(), 1);
+
+            SSLContext ctx = new WolfSSLTestFactory().createSSLContext(
+                "TLSv1.2", engineProvider);
+            SSLSocket cs = (SSLSocket)ctx.getSocketFactory().createSocket(
+                "localhost", Integer.parseInt(args[0]));
+            cs.startHandshake();
+
+            StringBuilder sb = new StringBuilder("ID:");
+            for (byte b : cs.getSession().getId()) {
+                sb.append(String.format("%02x", b));
+            }
+            cs.close();
+            System.out.println(sb.toString());
+        }
+    }
+
+    /* run PersistClient in a new JVM, return printed session ID */
+    private String runPersistClient(int port, File snapshot)
+        throws Exception {
+
+        String id = null;
+        String line;
+
+        ProcessBuilder pb = new ProcessBuilder(
+            System.getProperty("java.home") + File.separator + "bin" +
+                File.separator + "java",
+            "-cp", System.getProperty("java.class.path"),
+            "-Djava.library.path=" + System.getProperty("java.library.path"),
+            "-Dsun.boot.library.path=" +
+                System.getProperty("sun.boot.library.path"),
+            PersistClient.class.getName(),
+            Integer.toString(port), snapshot.getAbsolutePath());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(p.getInputStream()));
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("ID:")) {
+                id = line.substring(3);
+            }
+        }
+        if (p.waitFor() != 0) {
+            return null;
+        }
+
+        return id;
+    }
+
+    @Test
+    public void testSessionCachePersistence() throws Exception {
+        String id1, id2;
+
+        System.out.print("\tTesting session persistence");
+
+        /* needs TLS 1.2 session IDs and native cache persistence */
+        if (!WolfSSL.TLSv12Enabled() ||
+            WolfSSL.getSessionCacheMemsize() == WolfSSL.NOT_COMPILED_IN) {
+            pass("\t... skipped");
+            return;
+        }
+
+        final File snapshot = File.createTempFile("wolfjsse-sessions", ".bin");
+        snapshot.delete();
+
+        SSLContext ctx = tf.createSSLContext("TLSv1.2", engineProvider);
+        final SSLServerSocket ss = (SSLServerSocket)ctx.getServerSocketFactory()
+            .createServerSocket();
+        ss.bind(new InetSocketAddress("localhost", 0));
+
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<Void> serverFuture = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < 2; i++) {
+                    SSLSocket server = (SSLSocket)ss.accept();
+                    server.startHandshake();
+                    server.close();
+                }
+                return null;
+            }
+        });
+
         try {
-            context.setSessionCacheSize(2);
+            /* first client JVM makes a full handshake and saves snapshot
+             * on exit, second restores it and should resume */
+            id1 = runPersistClient(ss.getLocalPort(), snapshot);
+            if (id1 == null || !snapshot.exists()) {
+                error("\t... failed");
+                fail("first client failed or did not save snapshot");
+            }
+
+            id2 = runPersistClient(ss.getLocalPort(), snapshot);
+            if (id2 == null) {
+                error("\t... failed");
+                fail("second client failed");
+            }
+
+            if (!id1.equals(id2)) {
+                error("\t... failed");
+                fail("session not resumed after client restart");
+            }
+
+            serverFuture.get();
+
+        } finally {
+            es.shutdownNow();
+            ss.close();
+            snapshot.delete();
+        }
+
+        pass("\t... passed");
+    }
+
+    @Test
+    public void testStatsMBean() throws Exception {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName all = new ObjectName(
+            "com.wolfssl.provider.jsse:type=Stats,name=all");
+
+        System.out.print("\tTesting stats MBean");
+
+        /* registered on first SSLContext creation */
+        SSLContext ctx = tf.createSSLContext("TLS", engineProvider);
+        if (!mbs.isRegistered(all)) {
             error("\t\t... failed");
-            fail("unexpected set cache size passed, create test case");
-        } catch (Exception e) {
-            /* currently not available for wolfSSL, is set at build time */
+            fail("provider stats MBean not registered");
         }
+        long before = (Long)mbs.getAttribute(all, "FullHandshakes") +
+                      (Long)mbs.getAttribute(all, "ResumedHandshakes");
+
+        SSLEngine client = ctx.createSSLEngine("server", 12345);
+        SSLEngine server = ctx.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(false);
+        client.setUseClientMode(true);
+        if (tf.testConnection(server, client, null, null, "Test stats") != 0) {
+            error("\t\t... failed");
+            fail("failed to create connection");
+        }
+
+        /* client and server side of the connection are both counted */
+        long after = (Long)mbs.getAttribute(all, "FullHandshakes") +
+                     (Long)mbs.getAttribute(all, "ResumedHandshakes");
+        if (after < before + 2) {
+            error("\t\t... failed");
+            fail("handshakes not counted");
+        }
+
+        long[] hist = (long[])mbs.getAttribute(all,
+            "HandshakeLatencyHistogram");
+        long[] buckets = (long[])mbs.getAttribute(all,
+            "HandshakeLatencyBucketsMillis");
+        if (hist.length != buckets.length) {
+            error("\t\t... failed");
+            fail("latency histogram does not match buckets");
+        }
+
+        if (mbs.queryNames(new ObjectName(
+                "com.wolfssl.provider.jsse:type=Stats,protocol=*,*"),
+                null).isEmpty()) {
+            error("\t\t... failed");
+            fail("SSLContext stats MBean not registered");
+        }
+
+        /* resumed connection is counted on client and server side, TLS 1.3
+         * always resumes from a session ticket */
+        String protocol = WolfSSL.TLSv13Enabled() ? "TLSv1.3" :
+                          (WolfSSL.TLSv12Enabled() ? "TLSv1.2" : null);
+        if (protocol != null) {
+            long resumed = (Long)mbs.getAttribute(all, "ResumedHandshakes");
+            long tickets = (Long)mbs.getAttribute(all, "TicketResumptions");
+            long hits = (Long)mbs.getAttribute(all, "CacheHits");
+
+            resumedConnection(protocol);
+
+            if ((Long)mbs.getAttribute(all, "ResumedHandshakes") <
+                    resumed + 2 ||
+                (Long)mbs.getAttribute(all, "CacheHits") < hits + 1) {
+                error("\t\t... failed");
+                fail("resumed handshake not counted");
+            }
+            if (protocol.equals("TLSv1.3") &&
+                (Long)mbs.getAttribute(all, "TicketResumptions") <
+                    tickets + 1) {
+                error("\t\t... failed");
+                fail("ticket resumption not counted");
+            }
+        }
+
+        /* second client session, then shrink client cache to evict one */
+        long evictions = (Long)mbs.getAttribute(all, "CacheEvictions");
+        client = ctx.createSSLEngine("server", 12346);
+        server = ctx.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setNeedClientAuth(false);
+        client.setUseClientMode(true);
+        if (tf.testConnection(server, client, null, null, "Test stats") != 0) {
+            error("\t\t... failed");
+            fail("failed to create connection");
+        }
+        SSLSessionContext clientCtx = ctx.getClientSessionContext();
+        int size = clientCtx.getSessionCacheSize();
+        try {
+            clientCtx.setSessionCacheSize(1);
+        } finally {
+            clientCtx.setSessionCacheSize(size);
+        }
+        if ((Long)mbs.getAttribute(all, "CacheEvictions") < evictions + 1) {
+            error("\t\t... failed");
+            fail("cache eviction not counted");
+        }
+
         pass("\t\t... passed");
     }
 
+    /* two socket connections to the same server, the second resuming the
+     * session of the first */
+    private void resumedConnection(String protocol) throws Exception {
+        SSLContext ctx = tf.createSSLContext(protocol, engineProvider);
+        final SSLServerSocket ss = (SSLServerSocket)ctx.getServerSocketFactory()
+            .createServerSocket();
+        ss.bind(new InetSocketAddress("localhost", 0));
+
+        /* server writes one byte, so clients also process TLS 1.3
+         * session tickets */
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<Void> serverFuture = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < 2; i++) {
+                    SSLSocket server = (SSLSocket)ss.accept();
+                    server.startHandshake();
+                    server.getOutputStream().write(1);
+                    server.close();
+                }
+                return null;
+            }
+        });
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                SSLSocket cs = (SSLSocket)ctx.getSocketFactory().createSocket(
+                    "localhost", ss.getLocalPort());
+                cs.startHandshake();
+                cs.getInputStream().read();
+                cs.close();
+            }
+            serverFuture.get();
+
+        } finally {
+            es.shutdownNow();
+            ss.close();
+        }
+    }
+
+    @Test
+    public void testTicketKeyManager() throws Exception {
+        byte[] secret = new byte[WolfSSLTicketKeyManager.MIN_SECRET_SZ];
+        byte[] plain = "session ticket contents".getBytes();
+
+        System.out.print("\tTesting ticket key manager");
+
+        WolfSSLTicketKeyManager a = new WolfSSLTicketKeyManager(secret, 1, 0);
+        WolfSSLTicketKeyManager b = new WolfSSLTicketKeyManager(secret, 1, 5);
+        secret[0] = 1;
+        WolfSSLTicketKeyManager other =
+            new WolfSSLTicketKeyManager(secret, 1, 5);
+
+        Ticket t = new Ticket(plain);
+        if (t.call(a, 1) != WolfSSL.WOLFSSL_TICKET_RET_OK ||
+            t.outLen[0] != plain.length ||
+            Arrays.equals(Arrays.copyOf(t.ticket, plain.length), plain)) {
+            error("\t... failed");
+            fail("failed to encrypt ticket");
+        }
+
+        /* same secret decrypts, as another server would */
+        Ticket copy = t.copy();
+        int ret = copy.call(b, 0);
+        if ((ret != WolfSSL.WOLFSSL_TICKET_RET_OK &&
+             ret != WolfSSL.WOLFSSL_TICKET_RET_CREATE) ||
+            !Arrays.equals(Arrays.copyOf(copy.ticket, plain.length), plain)) {
+            error("\t... failed");
+            fail("failed to decrypt ticket");
+        }
+
+        if (t.copy().call(other, 0) != WolfSSL.WOLFSSL_TICKET_RET_REJECT) {
+            error("\t... failed");
+            fail("ticket accepted with different secret");
+        }
+
+        copy = t.copy();
+        copy.ticket[0] ^= 1;
+        if (copy.call(b, 0) != WolfSSL.WOLFSSL_TICKET_RET_REJECT) {
+            error("\t... failed");
+            fail("modified ticket accepted");
+        }
+
+        /* after rotation, old key is only accepted within overlap window
+         * and a new ticket is requested */
+        Thread.sleep(1100);
+        if (t.copy().call(a, 0) != WolfSSL.WOLFSSL_TICKET_RET_REJECT) {
+            error("\t... failed");
+            fail("ticket accepted after key expired");
+        }
+        if (t.copy().call(b, 0) != WolfSSL.WOLFSSL_TICKET_RET_CREATE) {
+            error("\t... failed");
+            fail("rotated ticket key not accepted in overlap window");
+        }
+
+        try {
+            new WolfSSLTicketKeyManager(new byte[16], 1, 0);
+            error("\t... failed");
+            fail("short ticket secret accepted");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        pass("\t... passed");
+    }
+
+    @Test
+    public void testTicketReplayWindow() throws Exception {
+        byte[] secret = new byte[WolfSSLTicketKeyManager.MIN_SECRET_SZ];
+        byte[] plain = "session ticket contents".getBytes();
+
+        System.out.print("\tTesting ticket replay window");
+
+        WolfSSLTicketKeyManager mgr =
+            new WolfSSLTicketKeyManager(secret, 3600, 0);
+        Ticket t = new Ticket(plain);
+        t.call(mgr, 1);
+
+        /* without early data, tickets may be used more than once */
+        if (t.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_OK ||
+            t.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_OK) {
+            error("\t... failed");
+            fail("ticket rejected with early data disabled");
+        }
+
+        mgr.setEarlyData(16384, 1, 1);
+        if (mgr.getMaxEarlyData() != 16384 || mgr.getReplayWindow() != 1) {
+            error("\t... failed");
+            fail("unexpected early data settings");
+        }
+
+        /* second use within window is rejected, refusing early data */
+        if (t.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_OK ||
+            mgr.getEarlyDataRefused() != 0 ||
+            t.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_REJECT ||
+            mgr.getEarlyDataRefused() != 1) {
+            error("\t... failed");
+            fail("replayed ticket not rejected");
+        }
+
+        /* cache full, other tickets are rejected until entries expire */
+        Ticket t2 = new Ticket(plain);
+        t2.call(mgr, 1);
+        if (t2.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_REJECT ||
+            mgr.getEarlyDataRefused() != 2) {
+            error("\t... failed");
+            fail("ticket not rejected with full replay cache");
+        }
+
+        Thread.sleep(1100);
+        if (t2.copy().call(mgr, 0) != WolfSSL.WOLFSSL_TICKET_RET_OK ||
+            mgr.getEarlyDataRefused() != 2) {
+            error("\t... failed");
+            fail("early data refused after replay window expired");
+        }
+
+        try {
+            mgr.setEarlyData(16384, 0, 1);
+            error("\t... failed");
+            fail("early data enabled without replay window");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+
+        pass("\t... passed");
+    }
+
+    @Test
+    public void testMappedSessionStore() throws Exception {
+        byte[] id = new byte[32];
+        byte[] other = new byte[32];
+        byte[] ses = "serialized session".getBytes();
+        File f = File.createTempFile("wolfjsse", ".store");
+
+        System.out.print("\tTesting mapped session store");
+
+        id[0] = 1;
+        other[0] = 2;
+        try {
+            WolfSSLMappedSessionStore store =
+                new WolfSSLMappedSessionStore(f.getPath(), 16, 256);
+            store.put(id, ses, 0);
+            store.put(other, new byte[512], 0);
+            if (!Arrays.equals(store.get(id), ses) ||
+                store.get(other) != null || store.get(new byte[32]) != null) {
+                error("\t... failed");
+                fail("unexpected session store contents");
+            }
+            store.close();
+
+            /* reopened store keeps sessions and original geometry */
+            store = new WolfSSLMappedSessionStore(f.getPath(), 32, 512);
+            if (store.getSlotCount() != 16 || store.getSlotSize() != 256 ||
+                !Arrays.equals(store.get(id), ses)) {
+                error("\t... failed");
+                fail("session store contents lost on reopen");
+            }
+
+            store.put(id, ses, 1);
+            Thread.sleep(1100);
+            if (store.get(id) != null) {
+                error("\t... failed");
+                fail("expired session returned from store");
+            }
+            store.close();
+
+        } finally {
+            f.delete();
+        }
+
+        pass("\t... passed");
+    }
+
+    /* ticket buffers as passed by native session ticket callback */
+    private static class Ticket {
+        byte[] name = new byte[WolfSSL.WOLFSSL_TICKET_NAME_SZ];
+        byte[] iv = new byte[WolfSSL.WOLFSSL_TICKET_IV_SZ];
+        byte[] mac = new byte[WolfSSL.WOLFSSL_TICKET_MAC_SZ];
+        byte[] ticket;
+        int inLen;
+        int[] outLen = new int[1];
+
+        Ticket(byte[] plain) {
+            this.ticket = Arrays.copyOf(plain, plain.length + 16);
+            this.inLen = plain.length;
+        }
+
+        Ticket copy() {
+            Ticket c = new Ticket(Arrays.copyOf(ticket, inLen));
+            c.name = name.clone();
+            c.iv = iv.clone();
+            c.mac = mac.clone();
+            return c;
+        }
+
+        int call(WolfSSLTicketKeyManager mgr, int enc) {
+            return mgr.sessionTicketCallback(null, name, iv, mac, enc,
+                ticket, inLen, outLen, null);
+        }
+    }
 
     private void pass(String msg) {
         WolfSSLTestFactory.pass(msg);
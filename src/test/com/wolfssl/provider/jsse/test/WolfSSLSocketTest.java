@@ -35,6 +35,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -42,6 +43,7 @@ import java.io.FileInputStream;
 import java.io.ByteArrayInputStream;
 import java.net.Socket;
 import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLServerSocket;
@@ -76,6 +78,7 @@ import java.security.cert.CertificateException;
 import com.wolfssl.provider.jsse.WolfSSLProvider;
 import com.wolfssl.provider.jsse.WolfSSLSocketFactory;
 import com.wolfssl.provider.jsse.WolfSSLSocket;
+import com.wolfssl.provider.jsse.WolfSSLTicketKeyManager;
 import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLException;
 
@@ -98,6 +101,9 @@ import com.wolfssl.WolfSSLException;
     public void testProtocolTLSv13();
     public void testSessionResumption();
     public void testSessionResumptionWithTicketEnabled();
+    public void testSessionResumptionCipherMismatch();
+    public void testSoTimeout();
+    public void testFullDuplex();
  */
 public class WolfSSLSocketTest {
 
@@ -1292,6 +1298,115 @@ public class WolfSSLSocketTest {
         System.out.println("\t... passed");
     }
 
+    /* Protocol for session ID resumption test, highest of TLS 1.2, 1.1
+     * and 1.0 enabled, or null if none. TLS 1.3 resumes with PSKs, which
+     * do not keep the session ID of the first connection. */
+    private static String resumptionProtocol() {
+        if (WolfSSL.TLSv12Enabled()) {
+            return "TLSv1.2";
+        } else if (WolfSSL.TLSv11Enabled()) {
+            return "TLSv1.1";
+        } else if (WolfSSL.TLSv1Enabled()) {
+            return "TLSv1.0";
+        }
+        return null;
+    }
+
+    /* Make two connections from new client sockets of one SSLContext to
+     * its server socket, returning session IDs of both. The second
+     * connection only enables the cipher suite negotiated by the first. */
+    private byte[][] resumptionConnections(String protocol)
+        throws Exception {
+
+        byte[][] ids = new byte[2][];
+        String cipher;
+
+        /* create new CTX */
+        this.ctx = tf.createSSLContext(protocol, ctxProvider);
+
+        /* create SSLServerSocket first to get ephemeral port */
+        final SSLServerSocket ss = (SSLServerSocket)ctx.getServerSocketFactory()
+             .createServerSocket(0);
+
+        SSLSocketFactory cliFactory = ctx.getSocketFactory();
+
+        SSLSocket cs = (SSLSocket)cliFactory.createSocket();
+        cs.connect(new InetSocketAddress(InetAddress.getLocalHost(),
+                                         ss.getLocalPort()));
+
+        /* start server */
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<Void> serverFuture = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        SSLSocket server = (SSLSocket)ss.accept();
+                        server.startHandshake();
+                        server.close();
+                    }
+
+                } catch (SSLException e) {
+                    System.out.println("\t... failed");
+                    fail();
+                }
+                return null;
+            }
+        });
+
+        try {
+            /* connection #1 */
+            cs.startHandshake();
+            ids[0] = cs.getSession().getId();
+            cipher = cs.getSession().getCipherSuite();
+            cs.close();
+
+            /* connection #2, other enabled cipher suites */
+            cs = (SSLSocket)cliFactory.createSocket();
+            cs.setEnabledCipherSuites(new String[] { cipher });
+            cs.connect(new InetSocketAddress(InetAddress.getLocalHost(),
+                                             ss.getLocalPort()));
+            cs.startHandshake();
+            ids[1] = cs.getSession().getId();
+            cs.close();
+
+        } catch (SSLHandshakeException e) {
+            System.out.println("\t... failed");
+            fail();
+        }
+
+        es.shutdown();
+        serverFuture.get();
+        ss.close();
+
+        return ids;
+    }
+
+    @Test
+    public void testSessionResumptionCipherMismatch() throws Exception {
+
+        byte[][] ids;
+        String protocol = resumptionProtocol();
+
+        System.out.print("\tresumption with other ciphers");
+
+        if (protocol == null) {
+            System.out.println("\t... skipped");
+            return;
+        }
+
+        /* same peer but different enabled cipher suites, session from
+         * connection #1 must not be offered */
+        ids = resumptionConnections(protocol);
+        if (Arrays.equals(ids[0], ids[1])) {
+            /* session resumed across different cipher settings */
+            System.out.println("\t... failed");
+            fail();
+        }
+
+        System.out.println("\t... passed");
+    }
+
     @Test
     public void testSessionResumptionWithTicketEnabled() throws Exception {
 
@@ -1390,6 +1505,315 @@ public class WolfSSLSocketTest {
         System.out.println("\t... passed");
     }
 
+    /* Client socket for early data tests, connected to server port */
+    private SSLSocket earlyDataClient(int port) throws IOException {
+        SSLSocket cs = (SSLSocket)ctx.getSocketFactory().createSocket();
+        cs.connect(new InetSocketAddress(InetAddress.getLocalHost(), port));
+        cs.setSoTimeout(5000);
+        return cs;
+    }
+
+    @Test
+    public void testEarlyDataReplay() throws Exception {
+
+        final byte[] request = "early data request".getBytes();
+        final int[] earlyRead = new int[3];
+        WolfSSLTicketKeyManager mgr = WolfSSLTicketKeyManager.getDefault();
+        int oldMax = mgr.getMaxEarlyData();
+        long oldWindow = mgr.getReplayWindow();
+        com.wolfssl.WolfSSLContext nativeCtx;
+        WolfSSLSocket first, replay;
+        SSLSocket cs;
+
+        System.out.print("\tTesting early data replay");
+
+        if (!WolfSSL.TLSv13Enabled()) {
+            System.out.println("\t... skipped");
+            return;
+        }
+        nativeCtx = new com.wolfssl.WolfSSLContext(
+            WolfSSL.SSLv23_ServerMethod());
+        int ret = nativeCtx.setMaxEarlyData(0);
+        nativeCtx.free();
+        if (ret == WolfSSL.NOT_COMPILED_IN) {
+            System.out.println("\t... skipped");
+            return;
+        }
+
+        /* accept early data, tickets used again within 10 sec rejected */
+        mgr.setEarlyData(16384, 10, 1024);
+        try {
+            this.ctx = tf.createSSLContext("TLSv1.3", ctxProvider);
+
+            final SSLServerSocket ss = (SSLServerSocket)ctx
+                .getServerSocketFactory().createServerSocket(0);
+
+            /* server reads early data, finishes handshake and writes one
+             * byte, so clients also process the session ticket */
+            ExecutorService es = Executors.newSingleThreadExecutor();
+            Future<Void> serverFuture = es.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    byte[] buf = new byte[1024];
+                    for (int i = 0; i < earlyRead.length; i++) {
+                        WolfSSLSocket server = (WolfSSLSocket)ss.accept();
+                        server.setSoTimeout(5000);
+                        int n;
+                        while ((n = server.readEarlyData(buf, 0,
+                                buf.length)) > 0) {
+                            earlyRead[i] += n;
+                        }
+                        server.startHandshake();
+                        server.getOutputStream().write(1);
+                        server.close();
+                    }
+                    return null;
+                }
+            });
+
+            /* connection #1, full handshake to get a ticket */
+            cs = earlyDataClient(ss.getLocalPort());
+            cs.startHandshake();
+            cs.getInputStream().read();
+            cs.close();
+
+            /* connections #2 and #3 resume with the same ticket, both
+             * sending early data before either handshake completes */
+            first = (WolfSSLSocket)earlyDataClient(ss.getLocalPort());
+            replay = (WolfSSLSocket)earlyDataClient(ss.getLocalPort());
+            if (first.sendEarlyData(request, 0, request.length) !=
+                    request.length ||
+                replay.sendEarlyData(request, 0, request.length) !=
+                    request.length) {
+                System.out.println("\t... failed");
+                fail("early data not sent on resumption");
+            }
+
+            if (!first.isEarlyDataAccepted()) {
+                System.out.println("\t... failed");
+                fail("early data refused on first use of ticket");
+            }
+            first.getInputStream().read();
+            first.close();
+
+            if (replay.isEarlyDataAccepted()) {
+                System.out.println("\t... failed");
+                fail("early data accepted on replayed ticket");
+            }
+            replay.getInputStream().read();
+            replay.close();
+
+            es.shutdown();
+            serverFuture.get();
+            ss.close();
+
+            if (earlyRead[0] != 0 || earlyRead[1] != request.length ||
+                earlyRead[2] != 0) {
+                System.out.println("\t... failed");
+                fail("server read unexpected early data: " +
+                    Arrays.toString(earlyRead));
+            }
+
+        } finally {
+            mgr.setEarlyData(oldMax, oldWindow, 65536);
+        }
+
+        System.out.println("\t... passed");
+    }
+
+    @Test
+    public void testSoTimeout() throws Exception {
+
+        System.out.print("\tTesting setSoTimeout()");
+
+        /* create new CTX */
+        this.ctx = tf.createSSLContext("TLS", ctxProvider);
+
+        /* handshake against a peer that never answers should time out */
+        ServerSocket silent = new ServerSocket(0);
+        SSLSocket cs = (SSLSocket)ctx.getSocketFactory().createSocket();
+        cs.connect(new InetSocketAddress(silent.getLocalPort()));
+        Socket silentPeer = silent.accept();
+        cs.setSoTimeout(200);
+        assertEquals(200, cs.getSoTimeout());
+
+        try {
+            cs.startHandshake();
+            System.out.println("\t\t... failed");
+            fail("handshake did not time out");
+        } catch (SocketTimeoutException e) {
+            /* expected */
+        }
+        cs.close();
+        silentPeer.close();
+        silent.close();
+
+        /* read with no data available should time out, connection stays
+         * usable and a later read gets data sent afterwards */
+        final SSLServerSocket ss = (SSLServerSocket)ctx.getServerSocketFactory()
+            .createServerSocket(0);
+        cs = (SSLSocket)ctx.getSocketFactory().createSocket();
+        cs.connect(new InetSocketAddress(ss.getLocalPort()));
+        final SSLSocket server = (SSLSocket)ss.accept();
+
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<Void> serverFuture = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                server.startHandshake();
+                return null;
+            }
+        });
+
+        cs.startHandshake();
+        serverFuture.get();
+
+        cs.setSoTimeout(200);
+        byte[] buf = new byte[16];
+        long start = System.currentTimeMillis();
+        try {
+            cs.getInputStream().read(buf);
+            System.out.println("\t\t... failed");
+            fail("read did not time out");
+        } catch (SocketTimeoutException e) {
+            /* expected */
+        }
+        if (System.currentTimeMillis() - start > 5000) {
+            System.out.println("\t\t... failed");
+            fail("read timeout took too long");
+        }
+
+        server.getOutputStream().write("hello".getBytes());
+        cs.setSoTimeout(5000);
+        int ret = cs.getInputStream().read(buf);
+        assertEquals(5, ret);
+        assertEquals("hello", new String(buf, 0, ret));
+
+        es.shutdown();
+        cs.close();
+        server.close();
+        ss.close();
+
+        System.out.println("\t\t... passed");
+    }
+
+    /* writes total bytes of a known pattern to the socket */
+    private Callable<Void> duplexWriter(final SSLSocket sock,
+        final int total, final int chunk) {
+
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                OutputStream out = sock.getOutputStream();
+                byte[] buf = new byte[chunk];
+                int sent = 0;
+
+                while (sent < total) {
+                    int sz = Math.min(chunk, total - sent);
+                    for (int i = 0; i < sz; i++) {
+                        buf[i] = (byte)((sent + i) % 251);
+                    }
+                    out.write(buf, 0, sz);
+                    sent += sz;
+                }
+                return null;
+            }
+        };
+    }
+
+    /* reads total bytes from the socket, checking the pattern */
+    private Callable<Void> duplexReader(final SSLSocket sock,
+        final int total, final int chunk) {
+
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                InputStream in = sock.getInputStream();
+                byte[] buf = new byte[chunk];
+                int recvd = 0;
+
+                while (recvd < total) {
+                    int ret = in.read(buf, 0, buf.length);
+                    if (ret < 0) {
+                        throw new IOException("Unexpected end of stream " +
+                            "after " + recvd + " bytes");
+                    }
+                    for (int i = 0; i < ret; i++) {
+                        if (buf[i] != (byte)((recvd + i) % 251)) {
+                            throw new IOException("Data mismatch at byte " +
+                                (recvd + i));
+                        }
+                    }
+                    recvd += ret;
+                }
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void testFullDuplex() throws Exception {
+
+        /* bytes sent each way, large enough to fill the socket buffers so
+         * both writers block while their peers are also writing */
+        final int total = 8 * 1024 * 1024;
+        final int chunk = 16 * 1024;
+
+        System.out.print("\tTesting full-duplex I/O");
+
+        /* create new CTX */
+        this.ctx = tf.createSSLContext("TLS", ctxProvider);
+
+        SSLServerSocket ss = (SSLServerSocket)ctx.getServerSocketFactory()
+            .createServerSocket(0);
+        final SSLSocket cs = (SSLSocket)ctx.getSocketFactory().createSocket();
+        cs.connect(new InetSocketAddress(ss.getLocalPort()));
+        final SSLSocket server = (SSLSocket)ss.accept();
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        Future<Void> serverHs = es.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                server.startHandshake();
+                return null;
+            }
+        });
+        cs.startHandshake();
+        serverHs.get(30, TimeUnit.SECONDS);
+
+        /* each side reads and writes at the same time from two threads.
+         * If reads and writes shared a lock, both writers would block on
+         * full socket buffers while the readers wait for that lock */
+        long start = System.currentTimeMillis();
+        ArrayList<Future<Void>> tasks = new ArrayList<Future<Void>>();
+        tasks.add(es.submit(duplexReader(cs, total, chunk)));
+        tasks.add(es.submit(duplexReader(server, total, chunk)));
+        tasks.add(es.submit(duplexWriter(cs, total, chunk)));
+        tasks.add(es.submit(duplexWriter(server, total, chunk)));
+
+        try {
+            for (Future<Void> f : tasks) {
+                f.get(120, TimeUnit.SECONDS);
+            }
+        } catch (Exception e) {
+            System.out.println("\t\t... failed");
+            es.shutdownNow();
+            cs.close();
+            server.close();
+            ss.close();
+            fail("full-duplex transfer failed: " + e);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        es.shutdown();
+        cs.close();
+        server.close();
+        ss.close();
+
+        System.out.println("\t\t... passed (" +
+            ((2L * total / 1024) * 1000 / Math.max(elapsed, 1)) + " KB/s)");
+    }
+
     protected class TestServer extends Thread
     {
         private SSLContext ctx;
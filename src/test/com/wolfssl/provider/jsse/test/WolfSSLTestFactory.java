@@ -66,6 +66,8 @@ class WolfSSLTestFactory {
     protected String rsaJKS;
     protected String googleCACert;
     protected String exampleComCert;
+    protected String revokedCRL;
+    protected String caCRL;
     protected final static char[] jksPass = "wolfSSL test".toCharArray();
     protected String keyStoreType = "JKS";
     private boolean extraDebug = false;
@@ -79,6 +81,8 @@ class WolfSSLTestFactory {
         rsaJKS = "examples/provider/rsa.jks";
         googleCACert = "examples/certs/ca-google-root.der";
         exampleComCert = "examples/certs/example-com.der";
+        revokedCRL = "examples/certs/crl/crl.revoked";
+        caCRL = "examples/certs/crl/crl.pem";
 
         /* test if running from IDE directory */
         File f = new File(serverJKS);
@@ -107,6 +111,8 @@ class WolfSSLTestFactory {
         rsaJKS = in.concat(rsaJKS);
         googleCACert = in.concat(googleCACert);
         exampleComCert = in.concat(exampleComCert);
+        revokedCRL = in.concat(revokedCRL);
+        caCRL = in.concat(caCRL);
     }
 
     private boolean isIDEFile() {
@@ -28,6 +28,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -36,7 +41,11 @@ import java.security.Provider;
 import java.security.Security;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.security.cert.Certificate;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.net.ssl.X509TrustManager;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
@@ -371,6 +380,290 @@ public class WolfSSLTrustX509Test {
     }
     
     
+    @Test
+    public void testVerifyKeyStoreChange()
+        throws NoSuchProviderException, NoSuchAlgorithmException, KeyStoreException,
+            FileNotFoundException, IOException, CertificateException,
+            InterruptedException {
+        TrustManagerFactory tmf;
+        X509TrustManager x509tm;
+        X509Certificate[] chain;
+        Certificate ca;
+        InputStream stream;
+        KeyStore ks;
+        KeyStore server;
+
+        System.out.print("\tTesting KeyStore change");
+
+        ks = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.caJKS);
+        ks.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+        ca = ks.getCertificate("cacert");
+
+        server = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.serverJKS);
+        server.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+        chain = new X509Certificate[] {
+            (X509Certificate)server.getCertificate("server") };
+
+        tmf = TrustManagerFactory.getInstance("SunX509", provider);
+        tmf.init(ks);
+        x509tm = (X509TrustManager) tmf.getTrustManagers()[0];
+
+        /* repeated verifications share the loaded CA */
+        for (int i = 0; i < 10; i++) {
+            try {
+                x509tm.checkServerTrusted(chain, "RSA");
+            } catch (CertificateException e) {
+                error("\t\t... failed");
+                fail("failed to verify");
+            }
+        }
+
+        /* removed CA is no longer trusted once change is picked up */
+        ks.deleteEntry("cacert");
+        Thread.sleep(1100);
+        try {
+            x509tm.checkServerTrusted(chain, "RSA");
+            error("\t\t... failed");
+            fail("verified with CA removed from KeyStore");
+        } catch (CertificateException e) {
+            /* expected */
+        }
+
+        ks.setCertificateEntry("cacert", ca);
+        Thread.sleep(1100);
+        try {
+            x509tm.checkServerTrusted(chain, "RSA");
+        } catch (CertificateException e) {
+            error("\t\t... failed");
+            fail("failed to verify after CA added back to KeyStore");
+        }
+
+        pass("\t\t... passed");
+    }
+
+
+    @Test
+    public void testVerifiedChainCache() throws Exception {
+        TrustManagerFactory tmf;
+        X509TrustManager x509tm;
+        X509Certificate[] chain;
+        InputStream stream;
+        KeyStore ks;
+        KeyStore server;
+
+        System.out.print("\tTesting verified chain cache");
+
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName all = new ObjectName(
+            "com.wolfssl.provider.jsse:type=Stats,name=all");
+        if (!mbs.isRegistered(all)) {
+            pass("\t... skipped");
+            return;
+        }
+
+        ks = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.caJKS);
+        ks.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+
+        server = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.serverJKS);
+        server.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+        chain = new X509Certificate[] {
+            (X509Certificate)server.getCertificate("server") };
+
+        /* cache size is read when the TrustManager is created */
+        String oldSize = Security.getProperty(
+            "wolfjsse.verifiedChainCache.size");
+        Security.setProperty("wolfjsse.verifiedChainCache.size", "16");
+        try {
+            tmf = TrustManagerFactory.getInstance("SunX509", provider);
+            tmf.init(ks);
+            x509tm = (X509TrustManager) tmf.getTrustManagers()[0];
+        } finally {
+            Security.setProperty("wolfjsse.verifiedChainCache.size",
+                (oldSize == null) ? "0" : oldSize);
+        }
+
+        long hits = (Long)mbs.getAttribute(all, "VerifiedChainCacheHits");
+        long misses = (Long)mbs.getAttribute(all,
+            "VerifiedChainCacheMisses");
+
+        for (int i = 0; i < 3; i++) {
+            x509tm.checkServerTrusted(chain, "RSA");
+        }
+
+        if ((Long)mbs.getAttribute(all, "VerifiedChainCacheHits") !=
+                hits + 2 ||
+            (Long)mbs.getAttribute(all, "VerifiedChainCacheMisses") !=
+                misses + 1) {
+            error("\t... failed");
+            fail("unexpected verified chain cache counters");
+        }
+
+        /* a different authType is not served from the cache */
+        x509tm.checkServerTrusted(chain, "ECDHE_RSA");
+        if ((Long)mbs.getAttribute(all, "VerifiedChainCacheMisses") !=
+                misses + 2) {
+            error("\t... failed");
+            fail("chain served from cache for different authType");
+        }
+
+        pass("\t... passed");
+    }
+
+
+    @Test
+    public void testCRLDirectory() throws Exception {
+        X509TrustManager x509tm;
+        X509Certificate[] chain;
+        InputStream stream;
+        KeyStore ks;
+        KeyStore server;
+        Path dir;
+        Path crl;
+
+        System.out.print("\tTesting CRL directory");
+
+        if (WolfSSL.isEnabledCRL() == 0) {
+            pass("\t\t... skipped");
+            return;
+        }
+
+        ks = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.caJKS);
+        ks.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+
+        server = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.serverJKS);
+        server.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+        chain = new X509Certificate[] {
+            (X509Certificate)server.getCertificate("server") };
+
+        /* CRL revoking the server cert, read when TrustManager is created
+         * and not refreshed, so no refresh task outlives this test */
+        dir = Files.createTempDirectory("wolfjsse-crl");
+        crl = Files.copy(Paths.get(tf.revokedCRL),
+            dir.resolve("crl.revoked"));
+        x509tm = createCRLTrustManager(ks, dir, "0");
+
+        try {
+            x509tm.checkServerTrusted(chain, "RSA");
+            error("\t\t... failed");
+            fail("verified certificate revoked by CRL");
+        } catch (CertificateException e) {
+            /* expected */
+        } finally {
+            Files.delete(crl);
+            Files.delete(dir);
+        }
+
+        pass("\t\t... passed");
+    }
+
+    @Test
+    public void testCRLDirectoryRefresh() throws Exception {
+        X509TrustManager x509tm;
+        X509Certificate[] chain;
+        InputStream stream;
+        KeyStore ks;
+        KeyStore server;
+        Path dir;
+        Path crl;
+        boolean revoked = false;
+
+        System.out.print("\tTesting CRL directory refresh");
+
+        if (WolfSSL.isEnabledCRL() == 0) {
+            pass("\t... skipped");
+            return;
+        }
+
+        ks = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.caJKS);
+        ks.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+
+        server = KeyStore.getInstance(tf.keyStoreType);
+        stream = new FileInputStream(tf.serverJKS);
+        server.load(stream, "wolfSSL test".toCharArray());
+        stream.close();
+        chain = new X509Certificate[] {
+            (X509Certificate)server.getCertificate("server") };
+
+        /* CA CRL not revoking the server cert, checked every second */
+        dir = Files.createTempDirectory("wolfjsse-crl");
+        crl = Files.copy(Paths.get(tf.caCRL), dir.resolve("ca.crl"));
+        x509tm = createCRLTrustManager(ks, dir, "1");
+
+        try {
+            try {
+                x509tm.checkServerTrusted(chain, "RSA");
+            } catch (CertificateException e) {
+                error("\t... failed");
+                fail("certificate not revoked by CRL failed to verify: " +
+                     e.getMessage());
+            }
+
+            /* replace it with a CRL revoking the server cert after the
+             * TrustManager was created */
+            Files.copy(Paths.get(tf.revokedCRL), crl,
+                StandardCopyOption.REPLACE_EXISTING);
+
+            for (int i = 0; i < 40 && !revoked; i++) {
+                Thread.sleep(250);
+                try {
+                    x509tm.checkServerTrusted(chain, "RSA");
+                } catch (CertificateException e) {
+                    revoked = true;
+                }
+            }
+
+            if (!revoked) {
+                error("\t... failed");
+                fail("certificate not revoked after CRL directory refresh");
+            }
+        } finally {
+            /* refresh task stops once it finds the directory deleted */
+            Files.delete(crl);
+            Files.delete(dir);
+        }
+
+        pass("\t... passed");
+    }
+
+    /* create TrustManager with CRL directory and refresh interval set,
+     * restoring previous Security properties afterwards */
+    private X509TrustManager createCRLTrustManager(KeyStore ks, Path dir,
+        String interval) throws Exception {
+
+        TrustManagerFactory tmf;
+        String oldDir = Security.getProperty("wolfjsse.crl.dir");
+        String oldInterval =
+            Security.getProperty("wolfjsse.crl.refreshInterval");
+
+        Security.setProperty("wolfjsse.crl.dir", dir.toString());
+        Security.setProperty("wolfjsse.crl.refreshInterval", interval);
+        try {
+            tmf = TrustManagerFactory.getInstance("SunX509", provider);
+            tmf.init(ks);
+            return (X509TrustManager) tmf.getTrustManagers()[0];
+        } finally {
+            Security.setProperty("wolfjsse.crl.dir",
+                (oldDir == null) ? "" : oldDir);
+            Security.setProperty("wolfjsse.crl.refreshInterval",
+                (oldInterval == null) ? "" : oldInterval);
+        }
+    }
+
+
     private void pass(String msg) {
         WolfSSLTestFactory.pass(msg);
     }
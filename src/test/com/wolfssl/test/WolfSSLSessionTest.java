@@ -29,11 +29,16 @@ import static org.junit.Assert.*;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 
 import com.wolfssl.WolfSSL;
 import com.wolfssl.WolfSSLContext;
 import com.wolfssl.WolfSSLException;
 import com.wolfssl.WolfSSLJNIException;
+import com.wolfssl.WolfSSLIORecvCallback;
+import com.wolfssl.WolfSSLIOSendCallback;
 import com.wolfssl.WolfSSLPskClientCallback;
 import com.wolfssl.WolfSSLPskServerCallback;
 import com.wolfssl.WolfSSLSession;
@@ -46,6 +51,8 @@ public class WolfSSLSessionTest {
     public static String cliCert = "./examples/certs/client-cert.pem";
     public static String cliKey  = "./examples/certs/client-key.pem";
     public static String caCert  = "./examples/certs/ca-cert.pem";
+    public static String srvCert = "./examples/certs/server-cert.pem";
+    public static String srvKey  = "./examples/certs/server-key.pem";
     public static String bogusFile = "/dev/null";
 
     public final static String exampleHost = "www.example.com";
@@ -64,6 +71,8 @@ public class WolfSSLSessionTest {
         cliCert = WolfSSLTestCommon.getPath(cliCert);
         cliKey = WolfSSLTestCommon.getPath(cliKey);
         caCert = WolfSSLTestCommon.getPath(caCert);
+        srvCert = WolfSSLTestCommon.getPath(srvCert);
+        srvKey = WolfSSLTestCommon.getPath(srvKey);
 
         test_WolfSSLSession_new();
         test_WolfSSLSession_useCertificateFile();
@@ -81,6 +90,7 @@ public class WolfSSLSessionTest {
         test_WolfSSLSession_freeSSL();
         test_WolfSSLSession_UseAfterFree();
         test_WolfSSLSession_getSessionID();
+        test_WolfSSLSession_readWriteBuffers();
     }
 
     public void test_WolfSSLSession_new() {
@@ -540,5 +550,192 @@ public class WolfSSLSessionTest {
 
         System.out.println("\t\t... passed");
     }
-}
 
+    /* in-memory transport used to connect two WolfSSLSession objects */
+    static class MemQueue {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int readIdx = 0;
+
+        synchronized void put(byte[] buf, int sz) {
+            data.write(buf, 0, sz);
+        }
+
+        synchronized int get(byte[] buf, int sz) {
+            byte[] all = data.toByteArray();
+            int avail = all.length - readIdx;
+
+            if (avail <= 0) {
+                return WolfSSL.WOLFSSL_CBIO_ERR_WANT_READ;
+            }
+            if (sz > avail) {
+                sz = avail;
+            }
+            System.arraycopy(all, readIdx, buf, 0, sz);
+            readIdx += sz;
+            if (readIdx == all.length) {
+                data.reset();
+                readIdx = 0;
+            }
+
+            return sz;
+        }
+    }
+
+    static class MemRecvCallback implements WolfSSLIORecvCallback {
+        public int receiveCallback(WolfSSLSession ssl, byte[] buf, int sz,
+                Object ctx) {
+            return ((MemQueue)ctx).get(buf, sz);
+        }
+    }
+
+    static class MemSendCallback implements WolfSSLIOSendCallback {
+        public int sendCallback(WolfSSLSession ssl, byte[] buf, int sz,
+                Object ctx) {
+            ((MemQueue)ctx).put(buf, sz);
+            return sz;
+        }
+    }
+
+    private static boolean memHandshakeStep(WolfSSLSession ssl,
+        boolean client) {
+
+        int ret = client ? ssl.connect() : ssl.accept();
+        int err;
+
+        if (ret == WolfSSL.SSL_SUCCESS) {
+            return true;
+        }
+
+        err = ssl.getError(ret);
+        if (err != WolfSSL.SSL_ERROR_WANT_READ &&
+            err != WolfSSL.SSL_ERROR_WANT_WRITE) {
+            fail((client ? "connect" : "accept") + " failed, err = " + err);
+        }
+
+        return false;
+    }
+
+    public void test_WolfSSLSession_readWriteBuffers() {
+
+        int ret, i;
+        WolfSSLContext cliCtx = null;
+        WolfSSLContext srvCtx = null;
+        WolfSSLSession client = null;
+        WolfSSLSession server = null;
+        boolean cliDone = false;
+        boolean srvDone = false;
+
+        System.out.print("\tread/write array regions, buffers");
+
+        try {
+            srvCtx = new WolfSSLContext(WolfSSL.TLSv1_2_ServerMethod());
+            cliCtx = new WolfSSLContext(WolfSSL.TLSv1_2_ClientMethod());
+            cliCtx.setVerify(WolfSSL.SSL_VERIFY_NONE, null);
+            srvCtx.setVerify(WolfSSL.SSL_VERIFY_NONE, null);
+
+            ret = srvCtx.useCertificateFile(srvCert, WolfSSL.SSL_FILETYPE_PEM);
+            assertEquals(WolfSSL.SSL_SUCCESS, ret);
+            ret = srvCtx.usePrivateKeyFile(srvKey, WolfSSL.SSL_FILETYPE_PEM);
+            assertEquals(WolfSSL.SSL_SUCCESS, ret);
+
+            for (WolfSSLContext c : new WolfSSLContext[] {cliCtx, srvCtx}) {
+                c.setIORecv(new MemRecvCallback());
+                c.setIOSend(new MemSendCallback());
+            }
+
+            MemQueue cToS = new MemQueue();
+            MemQueue sToC = new MemQueue();
+            client = new WolfSSLSession(cliCtx);
+            server = new WolfSSLSession(srvCtx);
+            client.setIOReadCtx(sToC);
+            client.setIOWriteCtx(cToS);
+            server.setIOReadCtx(cToS);
+            server.setIOWriteCtx(sToC);
+
+            for (i = 0; i < 100 && !(cliDone && srvDone); i++) {
+                if (!cliDone) {
+                    cliDone = memHandshakeStep(client, true);
+                }
+                if (!srvDone) {
+                    srvDone = memHandshakeStep(server, false);
+                }
+            }
+            assertTrue("handshake did not complete", cliDone && srvDone);
+
+            /* small write out of a large array, read into a large array.
+             * Bytes past those read must be left untouched */
+            byte[] big = new byte[1024 * 1024];
+            for (i = 0; i < 5; i++) {
+                big[i] = (byte)('a' + i);
+            }
+            assertEquals(5, client.write(big, 5));
+
+            byte[] in = new byte[1024 * 1024];
+            Arrays.fill(in, (byte)0x55);
+            assertEquals(5, server.read(in, in.length));
+            assertEquals("abcde", new String(in, 0, 5));
+            for (i = 5; i < in.length; i++) {
+                if (in[i] != (byte)0x55) {
+                    fail("read() modified array past bytes read, index " + i);
+                }
+            }
+
+            /* length larger than the array is rejected */
+            assertEquals(WolfSSL.BAD_FUNC_ARG, client.write(new byte[4], 5));
+            assertEquals(WolfSSL.BAD_FUNC_ARG, server.read(new byte[4], 5));
+
+            /* offset variants work in place on caller arrays */
+            System.arraycopy("offset".getBytes(), 0, big, 1000, 6);
+            assertEquals(6, client.write(big, 1000, 6));
+            Arrays.fill(in, (byte)0x55);
+            assertEquals(6, server.read(in, 2000, 64));
+            assertEquals("offset", new String(in, 2000, 6));
+            assertEquals((byte)0x55, in[1999]);
+            assertEquals((byte)0x55, in[2006]);
+            assertEquals(WolfSSL.BAD_FUNC_ARG, client.write(big, -1, 6));
+            assertEquals(WolfSSL.BAD_FUNC_ARG,
+                server.read(in, in.length - 2, 3));
+
+            /* direct buffers, positions advance by bytes transferred */
+            ByteBuffer out = ByteBuffer.allocateDirect(64);
+            out.put("direct".getBytes());
+            out.flip();
+            assertEquals(6, client.write(out));
+            assertEquals(6, out.position());
+
+            ByteBuffer dIn = ByteBuffer.allocateDirect(64);
+            dIn.position(10);
+            assertEquals(6, server.read(dIn));
+            assertEquals(16, dIn.position());
+            byte[] got = new byte[6];
+            dIn.position(10);
+            dIn.get(got);
+            assertEquals("direct", new String(got));
+
+            /* heap buffer slices with a non-zero array offset */
+            ByteBuffer heapOut = ByteBuffer.wrap("xxheapyy".getBytes());
+            heapOut.position(2);
+            heapOut = heapOut.slice();
+            assertEquals(4, client.write(heapOut, 4));
+
+            ByteBuffer heapIn = ByteBuffer.allocate(16);
+            heapIn.position(3);
+            heapIn = heapIn.slice();
+            assertEquals(4, server.read(heapIn));
+            assertEquals("heap", new String(heapIn.array(),
+                heapIn.arrayOffset(), 4));
+
+            client.freeSSL();
+            server.freeSSL();
+            cliCtx.free();
+            srvCtx.free();
+
+        } catch (WolfSSLException | WolfSSLJNIException e) {
+            System.out.println("\t... failed");
+            e.printStackTrace();
+            fail("failed to set up in-memory connection");
+        }
+
+        System.out.println("\t... passed");
+    }
+}